@@ -0,0 +1,994 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import com.google.common.collect.ImmutableMap;
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.stack.TIntStack;
+import gnu.trove.stack.array.TIntArrayStack;
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.interfaces.DependencyGraph;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.core.interfaces.Status;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Dependency;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Neighborhood;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.danilopianini.util.concurrent.FastReadWriteLock;
+import org.jooq.lambda.fi.lang.CheckedRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static it.unibo.alchemist.core.interfaces.Status.PAUSED;
+import static it.unibo.alchemist.core.interfaces.Status.RUNNING;
+import static it.unibo.alchemist.core.interfaces.Status.TERMINATED;
+
+/**
+ * Base class for simulation engines. It manages the lifecycle of the
+ * simulation, the commands, the output monitors, and the dependency graph,
+ * leaving to subclasses how reactions are scheduled and picked for execution.
+ *
+ * @param <T>
+ *            concentration type
+ * @param <P>
+ *            {@link Position} type
+ */
+public abstract class AbstractEngine<T, P extends Position<? extends P>> implements Simulation<T, P> {
+
+    private static final Logger L = LoggerFactory.getLogger(AbstractEngine.class);
+    private final Lock statusLock = new ReentrantLock();
+    private final ImmutableMap<Status, SynchBox> statusLocks = Arrays.stream(Status.values())
+            .collect(ImmutableMap.toImmutableMap(Function.identity(), it -> new SynchBox()));
+    private final BlockingQueue<CheckedRunnable> commands = new LinkedBlockingQueue<>();
+    private final Queue<Update> afterExecutionUpdates = new ArrayDeque<>();
+    /*
+     * Applied updates, reused for the next topology changes
+     */
+    private final Queue<Movement> freeMovements = new ArrayDeque<>();
+    private final Queue<NeigborAdded> freeNeighborAdditions = new ArrayDeque<>();
+    private final Queue<NeigborRemoved> freeNeighborRemovals = new ArrayDeque<>();
+    /*
+     * Whether the pending updates may add or remove dependencies
+     */
+    private boolean pendingAdditions;
+    private boolean pendingRemovals;
+    private final Environment<T, P> env;
+    private final DependencyGraph<T> dg;
+    private final Time finalTime;
+    private final FastReadWriteLock monitorLock = new FastReadWriteLock();
+    private final List<OutputMonitor<T, P>> monitors = new ArrayList<>();
+    private final ReactionBuffer toUpdate = new ReactionBuffer();
+    private volatile boolean hasMonitors;
+    private final long finalStep;
+    private volatile Status status = Status.INIT;
+    private Optional<Throwable> error = Optional.empty();
+    private Time currentTime = DoubleTime.ZERO_TIME;
+    private long currentStep;
+    private boolean resumed;
+    private Thread myThread;
+
+
+    /**
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param dependencyGraph
+     *            the {@link DependencyGraph} to use. It must be empty, and
+     *            built for the same environment.
+     */
+    protected AbstractEngine(final Environment<T, P> e, final long maxSteps, final Time t,
+            final DependencyGraph<T> dependencyGraph) {
+        L.trace("Engine created");
+        env = e;
+        env.setSimulation(this);
+        dg = Objects.requireNonNull(dependencyGraph);
+        this.finalStep = maxSteps;
+        this.finalTime = t;
+    }
+
+    /**
+     * Builds an engine resuming a simulation (e.g., from a checkpoint) whose
+     * reactions are already initialized and scheduled: they are not
+     * initialized again, and subclasses must not schedule them again.
+     *
+     * @param e
+     *            the environment at the resumed time
+     * @param maxSteps
+     *            the maximum number of steps to do, including the already done
+     *            ones
+     * @param t
+     *            the maximum time to reach
+     * @param dependencyGraph
+     *            the {@link DependencyGraph} to use. It must be empty, and
+     *            built for the same environment.
+     * @param initialTime
+     *            the time reached by the resumed simulation
+     * @param initialStep
+     *            the steps done by the resumed simulation
+     */
+    protected AbstractEngine(final Environment<T, P> e, final long maxSteps, final Time t,
+            final DependencyGraph<T> dependencyGraph, final Time initialTime, final long initialStep) {
+        this(e, maxSteps, t, dependencyGraph);
+        currentTime = Objects.requireNonNull(initialTime);
+        currentStep = initialStep;
+        resumed = true;
+    }
+
+    @Override
+    public void addOutputMonitor(final OutputMonitor<T, P> op) {
+        monitorLock.write();
+        monitors.add(op);
+        hasMonitors = true;
+        monitorLock.release();
+    }
+
+    private void checkCaller() {
+        if (Thread.currentThread() != myThread) {
+            throw new IllegalMonitorStateException("This method must get called from the simulation thread.");
+        }
+    }
+
+    private <R> R doOnStatus(final Supplier<R> fun) {
+        try {
+            statusLock.lock();
+            return fun.get();
+        } finally {
+            statusLock.unlock();
+        }
+    }
+
+    private void doOnStatus(final Runnable fun) {
+        doOnStatus(() -> {
+            fun.run();
+            return 0;
+        });
+    }
+
+    /**
+     * Executes the next event(s). Implementations must call
+     * {@link #notifyStepDone(Reaction, Time)} and {@link #endStep()} once per
+     * executed reaction, or {@link #noMoreReactions()} if nothing is left.
+     */
+    protected abstract void doStep();
+
+    /**
+     * Adds a reaction to the reactions to execute. Its dependencies are
+     * already in the dependency graph.
+     *
+     * @param reaction
+     *            the reaction
+     */
+    protected abstract void addToSchedule(Reaction<T> reaction);
+
+    /**
+     * Removes a reaction from the reactions to execute.
+     *
+     * @param reaction
+     *            the reaction
+     */
+    protected abstract void removeFromSchedule(Reaction<T> reaction);
+
+    /**
+     * Notifies that the putative time of a scheduled reaction changed.
+     *
+     * @param reaction
+     *            the reaction
+     */
+    protected abstract void reschedule(Reaction<T> reaction);
+
+    /**
+     * Notifies that the position or the neighborhood of a node changed, after
+     * the dependency graph got updated.
+     *
+     * @param node
+     *            the node
+     */
+    protected abstract void onTopologyChange(Node<T> node);
+
+    /**
+     * Moves the simulation time forward.
+     *
+     * @param mu
+     *            the reaction about to be executed, used for error reporting
+     * @param t
+     *            the new time
+     * @throws IllegalStateException
+     *             if t is before the current time
+     */
+    protected final void advanceTime(final Reaction<T> mu, final Time t) {
+        if (t.compareTo(currentTime) < 0) {
+            throw new IllegalStateException(mu + "\nis scheduled in the past at time " + t
+                    + ", current time is " + currentTime
+                    + ". Problem occurred at step " + currentStep);
+        }
+        currentTime = t;
+    }
+
+    /**
+     * Executes a reaction if it can, updates the reactions depending on it,
+     * and reschedules it. The changes to the environment topology get applied
+     * as well: hence, if the reaction may change the topology, this method
+     * must be called from the simulation thread.
+     *
+     * @param mu
+     *            the reaction
+     * @param t
+     *            the execution time
+     */
+    protected final void execute(final Reaction<T> mu, final Time t) {
+        if (mu.canExecute()) {
+            /*
+             * This must be taken before execution, because the reaction
+             * might remove itself (or its node) from the environment.
+             */
+            final List<it.unibo.alchemist.model.interfaces.Condition<T>> conditions = mu.getConditions();
+            for (int i = 0; i < conditions.size(); i++) {
+                conditions.get(i).reactionReady();
+            }
+            mu.execute();
+            if (afterExecutionUpdates.isEmpty()) {
+                updateAll(dg.outboundDependencies(mu), t);
+            } else {
+                toUpdate.clear();
+                final boolean before = pendingRemovals;
+                final boolean after = pendingAdditions || !pendingRemovals;
+                if (before) {
+                    /*
+                     * The dependency graph may return a live view: collect
+                     * the dependencies about to be removed before changing it
+                     */
+                    toUpdate.addAll(dg.outboundDependencies(mu));
+                }
+                performPendingChanges();
+                if (after) {
+                    toUpdate.addAll(dg.outboundDependencies(mu));
+                }
+                updateAll(toUpdate, t);
+            }
+        }
+        mu.update(t, true, env);
+        reschedule(mu);
+    }
+
+    /**
+     * Updates, once each, the reactions depending on any of the provided ones,
+     * which got executed at the same time without updating their dependencies.
+     * Pending changes to the environment topology get applied as well.
+     *
+     * @param executed
+     *            the executed reactions
+     * @param t
+     *            the execution time
+     */
+    protected final void updateDependencies(final List<? extends Reaction<T>> executed, final Time t) {
+        toUpdate.clear();
+        final boolean changes = !afterExecutionUpdates.isEmpty();
+        final boolean before = !changes || pendingRemovals;
+        final boolean after = changes && (pendingAdditions || !pendingRemovals);
+        if (before) {
+            for (int i = 0; i < executed.size(); i++) {
+                toUpdate.addAll(dg.outboundDependencies(executed.get(i)));
+            }
+        }
+        if (changes) {
+            performPendingChanges();
+        }
+        if (after) {
+            for (int i = 0; i < executed.size(); i++) {
+                toUpdate.addAll(dg.outboundDependencies(executed.get(i)));
+            }
+        }
+        updateAll(toUpdate, t);
+    }
+
+    /*
+     * Applies the pending topology changes, then recycles them. Only removed
+     * nodes and neighbors can remove dependencies, and only added nodes and
+     * neighbors can add them: the dependencies of the executed reactions are
+     * collected before the changes, after the changes, or, if both happen,
+     * both times.
+     */
+    private void performPendingChanges() {
+        for (Update update = afterExecutionUpdates.poll(); update != null; update = afterExecutionUpdates.poll()) {
+            update.performChanges();
+            update.recycle();
+        }
+        pendingAdditions = false;
+        pendingRemovals = false;
+    }
+
+    private void recyclePendingChanges() {
+        for (Update update = afterExecutionUpdates.poll(); update != null; update = afterExecutionUpdates.poll()) {
+            update.recycle();
+        }
+        pendingAdditions = false;
+        pendingRemovals = false;
+    }
+
+    /**
+     * Notifies the output monitors that a reaction was executed.
+     *
+     * @param mu
+     *            the executed reaction
+     * @param t
+     *            the execution time
+     */
+    protected final void notifyStepDone(final Reaction<T> mu, final Time t) {
+        if (hasMonitors) {
+            monitorLock.read();
+            for (int i = 0; i < monitors.size(); i++) {
+                monitors.get(i).stepDone(env, mu, t, currentStep);
+            }
+            monitorLock.release();
+        }
+    }
+
+    /**
+     * Checks the termination conditions, and moves to the next step.
+     */
+    protected final void endStep() {
+        if (env.isTerminated()) {
+            newStatus(TERMINATED);
+            L.info("Termination condition reached.");
+        }
+        currentStep++;
+    }
+
+    /**
+     * Called on the simulation thread once the simulation is over, before
+     * notifying the output monitors. Subclasses holding resources (e.g.
+     * threads) should release them here. Does nothing by default.
+     */
+    protected void onTermination() {
+    }
+
+    /**
+     * Terminates the simulation, as there is nothing left to execute.
+     */
+    protected final void noMoreReactions() {
+        newStatus(TERMINATED);
+        L.info("No more reactions.");
+        endStep();
+    }
+
+    private void finalizeConstructor() {
+        for (final Node<T> n : env) {
+            for (final Reaction<T> r : n.getReactions()) {
+                if (resumed) {
+                    toUpdate.register(r);
+                    dg.createDependencies(r);
+                } else {
+                    scheduleReaction(r);
+                }
+            }
+        }
+        resumed = false;
+    }
+
+    /**
+     * @return the dependency graph
+     */
+    public final DependencyGraph<T> getDependencyGraph() {
+        return dg;
+    }
+
+    @Override
+    public Environment<T, P> getEnvironment() {
+        return env;
+    }
+
+    @Override
+    public Optional<Throwable> getError() {
+        return error;
+    }
+
+    @Override
+    public long getFinalStep() {
+        return finalStep;
+    }
+
+    @Override
+    public Time getFinalTime() {
+        return finalTime;
+    }
+
+
+    @Override
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public long getStep() {
+        return currentStep;
+    }
+
+    @Override
+    public Time getTime() {
+        return currentTime;
+    }
+
+    @Override
+    public void goToStep(final long step) {
+        pauseWhen(() -> getStep() >= step);
+    }
+
+    @Override
+    public void goToTime(final Time t) {
+        pauseWhen(() -> getTime().compareTo(t) >= 0);
+    }
+
+    private void idleProcessSingleCommand() throws Throwable {
+        CheckedRunnable nextCommand = null;
+        // This is for spurious wakeups. Blame Java.
+        while (nextCommand == null) {
+            try {
+                nextCommand = commands.take();
+                processCommand(nextCommand);
+            } catch (InterruptedException e) {
+                L.debug("Look! A spurious wakeup! :-)");
+            }
+        }
+    }
+
+    @Override
+    public void neighborAdded(final Node<T> node, final Node<T> n) {
+        checkCaller();
+        final NeigborAdded recycled = freeNeighborAdditions.poll();
+        afterExecutionUpdates.add(recycled == null ? new NeigborAdded(node, n) : recycled.reset(node, n));
+        pendingAdditions = true;
+    }
+
+    @Override
+    public void neighborRemoved(final Node<T> node, final Node<T> n) {
+        checkCaller();
+        final NeigborRemoved recycled = freeNeighborRemovals.poll();
+        afterExecutionUpdates.add(recycled == null ? new NeigborRemoved(node, n) : recycled.reset(node, n));
+        pendingRemovals = true;
+    }
+
+    private void newStatus(final Status next) {
+        schedule(() -> doOnStatus(() -> {
+            if (next.isReachableFrom(status)) {
+                status = next;
+                statusLocks.get(next).releaseAll();
+            }
+        }));
+    }
+
+    @Override
+    public void nodeAdded(final Node<T> node) {
+        checkCaller();
+        afterExecutionUpdates.add(new Addition(node));
+        pendingAdditions = true;
+    }
+
+    @Override
+    public void nodeMoved(final Node<T> node) {
+        checkCaller();
+        final Movement recycled = freeMovements.poll();
+        afterExecutionUpdates.add(recycled == null ? new Movement(node) : recycled.reset(node));
+    }
+
+    @Override
+    public void nodeRemoved(final Node<T> node, final Neighborhood<T> oldNeighborhood) {
+        checkCaller();
+        afterExecutionUpdates.add(new Removal(node));
+        pendingRemovals = true;
+    }
+
+    @Override
+    public void pause() {
+        newStatus(PAUSED);
+    }
+
+    @Override
+    public void play() {
+        newStatus(RUNNING);
+    }
+
+    private void processCommand(final CheckedRunnable command) throws Throwable {
+        command.run();
+        if (!afterExecutionUpdates.isEmpty()) {
+            // Update all reactions before applying dependency graph updates
+            toUpdate.clear();
+            afterExecutionUpdates.forEach(update -> update.collectReactionsToUpdate(toUpdate));
+            updateAll(toUpdate, currentTime);
+            // Now update the dependency graph as needed
+            final int alreadyUpdated = toUpdate.size();
+            afterExecutionUpdates.forEach(Update::performChanges);
+            // Now update the new reactions
+            afterExecutionUpdates.forEach(update -> update.collectReactionsToUpdate(toUpdate));
+            recyclePendingChanges();
+            for (int i = alreadyUpdated; i < toUpdate.size(); i++) {
+                updateReaction(toUpdate.get(i), currentTime);
+            }
+        }
+    }
+
+    @Override
+    public void removeOutputMonitor(final OutputMonitor<T, P> op) {
+        new Thread(() -> {
+            monitorLock.write();
+            monitors.remove(op);
+            hasMonitors = !monitors.isEmpty();
+            monitorLock.release();
+        }).start();
+    }
+
+    @Override
+    public void run() {
+        synchronized (env) {
+            myThread = Thread.currentThread();
+            finalizeConstructor();
+            status = Status.READY;
+            final long currentThread = Thread.currentThread().getId();
+            L.trace("Thread {} started running.", currentThread);
+            monitorLock.read();
+            for (final OutputMonitor<T, P> m : monitors) {
+                m.initialized(env);
+            }
+            monitorLock.release();
+            try {
+                while (status.equals(Status.READY)) {
+                    idleProcessSingleCommand();
+                }
+                while (status != TERMINATED && currentStep < finalStep && currentTime.compareTo(finalTime) < 0) {
+                    while (!commands.isEmpty()) {
+                        processCommand(commands.poll());
+                    }
+                    if (status.equals(RUNNING)) {
+                        doStep();
+                    }
+                    while (status.equals(PAUSED)) {
+                        idleProcessSingleCommand();
+                    }
+                }
+            } catch (Throwable e) { // NOPMD: forced by CheckedRunnable
+                error = Optional.of(e);
+                L.error("The simulation engine crashed.", e);
+            } finally {
+                status = TERMINATED;
+                commands.clear();
+                onTermination();
+                monitorLock.read();
+                for (final OutputMonitor<T, P> m : monitors) {
+                    m.finished(env, currentTime, currentStep);
+                }
+                monitorLock.release();
+            }
+        }
+    }
+
+    private void pauseWhen(final BooleanSupplier condition) {
+        addOutputMonitor(new OutputMonitor<T, P>() {
+            @Override
+            public void finished(final Environment<T, P> env, final Time time, final long step) {
+            }
+            @Override
+            public void initialized(final Environment<T, P> env) {
+                if (condition.getAsBoolean()) {
+                    pause();
+                }
+            }
+            @Override
+            public void stepDone(final Environment<T, P> env, final Reaction<T> r, final Time time, final long step) {
+                initialized(env);
+            }
+        });
+    }
+
+    @Override
+    public void schedule(final CheckedRunnable r) {
+        if (getStatus().equals(TERMINATED)) {
+            throw new IllegalStateException("This simulation is terminated and can not get resumed.");
+        }
+        commands.add(r);
+    }
+
+    private void scheduleReaction(final Reaction<T> r) {
+        toUpdate.register(r);
+        dg.createDependencies(r);
+        r.initializationComplete(currentTime, env);
+        addToSchedule(r);
+    }
+
+    @Override
+    public void terminate() {
+        newStatus(TERMINATED);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " t: " + getTime() + ", s: " + getStep();
+    }
+
+    private void updateAll(final List<? extends Reaction<T>> reactions, final Time t) {
+        for (int i = 0; i < reactions.size(); i++) {
+            updateReaction(reactions.get(i), t);
+        }
+    }
+
+    private void updateReaction(final Reaction<T> r, final Time t) {
+        final Time tau = r.getTau();
+        r.update(t, false, env);
+        if (!r.getTau().equals(tau)) {
+            reschedule(r);
+        }
+    }
+
+    @Override
+    public Status waitFor(final Status next, final long timeout, final TimeUnit tu) {
+        return statusLocks.get(next).waitFor(next, timeout, tu);
+    }
+
+    private static boolean dependsOnMovement(final Reaction<?> reaction) {
+        final List<? extends Dependency> inbound = reaction.getInboundDependencies();
+        for (int i = 0; i < inbound.size(); i++) {
+            if (inbound.get(i).dependsOn(Dependency.MOVEMENT)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // CHECKSTYLE: FinalClassCheck OFF
+    private class Update {
+        private Node<T> source;
+
+        private Update(final Node<T> source) {
+            this.source = source;
+        }
+
+        protected final void collectReactionsRelatedTo(
+                final Node<T> node,
+                final Neighborhood<T> neighborhood,
+                final Predicate<Reaction<T>> filter,
+                final ReactionBuffer buffer) {
+            for (final Reaction<T> reaction : node.getReactions()) {
+                if (filter.test(reaction)) {
+                    buffer.add(reaction);
+                }
+            }
+            for (final Node<T> neighbor : neighborhood) {
+                for (final Reaction<T> reaction : neighbor.getReactions()) {
+                    if (reaction.getInputContext() == Context.NEIGHBORHOOD && filter.test(reaction)) {
+                        buffer.add(reaction);
+                    }
+                }
+            }
+            collectGlobalReactions(filter, buffer);
+        }
+
+        protected final void collectGlobalReactions(final Predicate<Reaction<T>> filter, final ReactionBuffer buffer) {
+            final List<Reaction<T>> globals = dg.globalInputContextReactions();
+            for (int i = 0; i < globals.size(); i++) {
+                if (filter.test(globals.get(i))) {
+                    buffer.add(globals.get(i));
+                }
+            }
+        }
+
+        public void collectReactionsToUpdate(final ReactionBuffer buffer) { }
+
+        public void performChanges() { }
+
+        /*
+         * Called once the update got applied: frequent updates can be reused
+         */
+        public void recycle() { }
+
+        protected final Node<T> getSource() {
+            return source;
+        }
+
+        protected final void setSource(final Node<T> source) {
+            this.source = source;
+        }
+    }
+
+    private final class Movement extends Update {
+
+        private Movement(final Node<T> source) {
+            super(source);
+        }
+
+        private Movement reset(final Node<T> source) {
+            setSource(source);
+            return this;
+        }
+
+        @Override
+        public void collectReactionsToUpdate(final ReactionBuffer buffer) {
+            collectReactionsRelatedTo(getSource(), env.getNeighborhood(getSource()),
+                    AbstractEngine::dependsOnMovement, buffer);
+        }
+
+        @Override
+        public void performChanges() {
+            onTopologyChange(getSource());
+        }
+
+        @Override
+        public void recycle() {
+            setSource(null);
+            freeMovements.add(this);
+        }
+
+    }
+
+    private final class Removal extends Update {
+
+        private Removal(final Node<T> source) {
+            super(source);
+        }
+
+        @Override
+        public void performChanges() {
+            for (final Reaction<T> r : getSource().getReactions()) {
+                dg.removeDependencies(r);
+                removeFromSchedule(r);
+                toUpdate.unregister(r);
+            }
+        }
+    }
+
+    private final class Addition extends Update {
+        private Addition(final Node<T> source) {
+            super(source);
+        }
+        @Override
+        public void performChanges() {
+            getSource().getReactions().forEach(AbstractEngine.this::scheduleReaction);
+            onTopologyChange(getSource());
+        }
+    }
+
+    private class NeighborhoodChanged extends Update {
+
+        private Node<T> target;
+
+        private NeighborhoodChanged(final Node<T> source, final Node<T> target) {
+            super(source);
+            this.target = target;
+        }
+
+        protected final void setNodes(final Node<T> source, final Node<T> target) {
+            setSource(source);
+            this.target = target;
+        }
+
+        public Node<T> getTarget() {
+            return target;
+        }
+
+        @Override
+        public void collectReactionsToUpdate(final ReactionBuffer buffer) {
+            // source, target, and all their neighbors are candidates.
+            collectNeighborhoodReactions(getSource(), buffer);
+            collectNeighborhoodReactions(target, buffer);
+            for (final Node<T> neighbor : env.getNeighborhood(getSource())) {
+                collectNeighborhoodReactions(neighbor, buffer);
+            }
+            for (final Node<T> neighbor : env.getNeighborhood(target)) {
+                collectNeighborhoodReactions(neighbor, buffer);
+            }
+            // Global reactions
+            collectGlobalReactions(it -> true, buffer);
+        }
+
+        private void collectNeighborhoodReactions(final Node<T> node, final ReactionBuffer buffer) {
+            for (final Reaction<T> reaction : node.getReactions()) {
+                if (reaction.getInputContext() == Context.NEIGHBORHOOD) {
+                    buffer.add(reaction);
+                }
+            }
+        }
+    }
+
+    private final class NeigborAdded extends NeighborhoodChanged {
+
+        private NeigborAdded(final Node<T> source, final Node<T> target) {
+            super(source, target);
+        }
+
+        private NeigborAdded reset(final Node<T> source, final Node<T> target) {
+            setNodes(source, target);
+            return this;
+        }
+
+        @Override
+        public void recycle() {
+            setNodes(null, null);
+            freeNeighborAdditions.add(this);
+        }
+
+        @Override
+        public void performChanges() {
+            dg.addNeighbor(getSource(), getTarget());
+            onTopologyChange(getSource());
+            onTopologyChange(getTarget());
+        }
+    }
+
+    private final class NeigborRemoved extends NeighborhoodChanged {
+
+        private NeigborRemoved(final Node<T> source, final Node<T> target) {
+            super(source, target);
+        }
+
+        private NeigborRemoved reset(final Node<T> source, final Node<T> target) {
+            setNodes(source, target);
+            return this;
+        }
+
+        @Override
+        public void recycle() {
+            setNodes(null, null);
+            freeNeighborRemovals.add(this);
+        }
+
+        @Override
+        public void performChanges() {
+            dg.removeNeighbor(getSource(), getTarget());
+            onTopologyChange(getSource());
+            onTopologyChange(getTarget());
+        }
+    }
+
+    /*
+     * A reusable list of reactions, ignoring those already added since the
+     * last clear. Each scheduled reaction gets an integer id, used to stamp
+     * it with the epoch in which it was last added, so that no set is needed.
+     */
+    private final class ReactionBuffer extends AbstractList<Reaction<T>> {
+        private static final int NONE = -1;
+        private static final int INITIAL_CAPACITY = 16;
+        private final TObjectIntMap<Reaction<T>> ids =
+                new TObjectIntHashMap<>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NONE);
+        private final TIntStack freeIds = new TIntArrayStack();
+        private int[] stamps = new int[INITIAL_CAPACITY];
+        private Object[] reactions = new Object[INITIAL_CAPACITY];
+        private int allocatedIds;
+        private int epoch = 1;
+        private int size;
+
+        @Override
+        public boolean add(final Reaction<T> reaction) {
+            final int id = ids.get(reaction);
+            if (id != NONE) {
+                if (stamps[id] == epoch) {
+                    return false;
+                }
+                stamps[id] = epoch;
+            }
+            if (size == reactions.length) {
+                reactions = Arrays.copyOf(reactions, size * 2);
+            }
+            reactions[size++] = reaction;
+            return true;
+        }
+
+        public void addAll(final List<? extends Reaction<T>> toAdd) {
+            for (int i = 0; i < toAdd.size(); i++) {
+                add(toAdd.get(i));
+            }
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(reactions, 0, size, null);
+            size = 0;
+            epoch++;
+            if (epoch == 0) {
+                Arrays.fill(stamps, 0);
+                epoch = 1;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Reaction<T> get(final int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            return (Reaction<T>) reactions[index];
+        }
+
+        public void register(final Reaction<T> reaction) {
+            if (!ids.containsKey(reaction)) {
+                final int id;
+                if (freeIds.size() > 0) {
+                    id = freeIds.pop();
+                } else {
+                    id = allocatedIds++;
+                    if (id == stamps.length) {
+                        stamps = Arrays.copyOf(stamps, id * 2);
+                    }
+                }
+                ids.put(reaction, id);
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        public void unregister(final Reaction<T> reaction) {
+            final int id = ids.remove(reaction);
+            if (id != NONE) {
+                stamps[id] = 0;
+                freeIds.push(id);
+            }
+        }
+    }
+
+    private final class SynchBox {
+        private final AtomicInteger queueLength = new AtomicInteger();
+        private final Condition statusReached = statusLock.newCondition();
+        private final Condition allReleased = statusLock.newCondition();
+        public Status waitFor(final Status next, final long timeout, final TimeUnit tu) {
+            return doOnStatus(() -> {
+                boolean notTimedOut = true;
+                while (notTimedOut && next != status && next.isReachableFrom(status)) {
+                    try {
+                        queueLength.getAndIncrement();
+                        notTimedOut = statusReached.await(timeout, tu);
+                        queueLength.getAndDecrement();
+                    } catch (InterruptedException e) {
+                        L.info("Spurious wakeup?", e);
+                    }
+                }
+                if (queueLength.get() == 0) {
+                    allReleased.signal();
+                }
+                return status;
+            });
+        }
+        public void releaseAll() {
+            doOnStatus(() -> {
+                while (queueLength.get() != 0) {
+                    statusReached.signalAll();
+                    allReleased.awaitUninterruptibly();
+                }
+            });
+        }
+    }
+
+}
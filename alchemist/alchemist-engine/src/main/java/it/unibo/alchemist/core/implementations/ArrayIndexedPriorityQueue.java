@@ -19,6 +19,7 @@ import it.unibo.alchemist.model.interfaces.Reaction;
 import it.unibo.alchemist.model.interfaces.Time;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -117,6 +118,14 @@ public final class ArrayIndexedPriorityQueue<T> implements Scheduler<T> {
         times.set(i2, t);
     }
 
+    /*
+     * In heap order: adding them in this order to an empty queue rebuilds
+     * the very same heap, as reactions never move above an equal time
+     */
+    List<Reaction<T>> getReactions() {
+        return Collections.unmodifiableList(tree);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
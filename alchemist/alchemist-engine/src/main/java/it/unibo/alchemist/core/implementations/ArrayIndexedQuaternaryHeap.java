@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.stack.TIntStack;
+import gnu.trove.stack.array.TIntArrayStack;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.interfaces.Reaction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class implements the indexed priority queue through a 4-ary heap
+ * stored in primitive arrays.
+ *
+ * Every reaction gets a stable integer handle when it is added, and the heap
+ * only moves handles and putative times (as plain doubles) around, so that no
+ * {@link it.unibo.alchemist.model.interfaces.Time} gets compared or boxed while
+ * sifting. Reactions scheduled at the very same time are ordered by handle,
+ * hence the execution order does not depend on the heap layout.
+ *
+ * This tie order differs from that of {@link ArrayIndexedPriorityQueue},
+ * where simultaneous reactions leave the heap in an order depending on its
+ * history: the same reactions get executed at each time, but simulations
+ * with simultaneous events (e.g. driven by
+ * {@link it.unibo.alchemist.model.implementations.timedistributions.DiracComb})
+ * may execute them in a different order, and hence reach a different state,
+ * than the same simulations with the same seed scheduled by
+ * {@link ArrayIndexedPriorityQueue}. Handles are assigned in insertion order,
+ * and the handle of a removed reaction is reused by the next one added.
+ *
+ * @param <T> concentration type
+ */
+public final class ArrayIndexedQuaternaryHeap<T> implements Scheduler<T> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int LOG_ARITY = 2;
+    private static final int ARITY = 1 << LOG_ARITY;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final TObjectIntMap<Reaction<T>> handles =
+            new TObjectIntHashMap<>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
+    private final TIntStack freeHandles = new TIntArrayStack();
+    /*
+     * Indexed by handle
+     */
+    private Object[] reactions = new Object[INITIAL_CAPACITY];
+    private int[] positions = new int[INITIAL_CAPACITY];
+    /*
+     * Indexed by heap position
+     */
+    private int[] heap = new int[INITIAL_CAPACITY];
+    private double[] taus = new double[INITIAL_CAPACITY];
+    private int size;
+    private int allocatedHandles;
+
+    @Override
+    public void addReaction(final Reaction<T> r) {
+        final int handle;
+        if (freeHandles.size() > 0) {
+            handle = freeHandles.pop();
+        } else {
+            handle = allocatedHandles++;
+            ensureCapacity(allocatedHandles);
+        }
+        schedule(handle, r);
+    }
+
+    private void schedule(final int handle, final Reaction<T> r) {
+        reactions[handle] = r;
+        handles.put(r, handle);
+        final int index = size++;
+        restore(index, handle, r.getTau().toDouble());
+    }
+
+    private void ensureCapacity(final int required) {
+        if (required > reactions.length) {
+            final int newCapacity = Math.max(required, reactions.length * 2);
+            reactions = Arrays.copyOf(reactions, newCapacity);
+            positions = Arrays.copyOf(positions, newCapacity);
+            heap = Arrays.copyOf(heap, newCapacity);
+            taus = Arrays.copyOf(taus, newCapacity);
+        }
+    }
+
+    @Override
+    public Reaction<T> getNext() {
+        return size == 0 ? null : reactionOf(heap[0]);
+    }
+
+    @Override
+    public void removeReaction(final Reaction<T> r) {
+        final int handle = handles.remove(r);
+        if (handle == handles.getNoEntryValue()) {
+            throw new IllegalArgumentException(r + " is not scheduled.");
+        }
+        final int index = positions[handle];
+        reactions[handle] = null;
+        freeHandles.push(handle);
+        final int last = --size;
+        if (index != last) {
+            restore(index, heap[last], taus[last]);
+        }
+    }
+
+    @Override
+    public void updateReaction(final Reaction<T> r) {
+        final int handle = handles.get(r);
+        if (handle != handles.getNoEntryValue()) {
+            restore(positions[handle], handle, r.getTau().toDouble());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Reaction<T> reactionOf(final int handle) {
+        return (Reaction<T>) reactions[handle];
+    }
+
+    private void restore(final int index, final int handle, final double tau) {
+        if (!up(index, handle, tau)) {
+            down(index, handle, tau);
+        }
+    }
+
+    private boolean up(final int index, final int handle, final double tau) {
+        int hole = index;
+        while (hole > 0) {
+            final int parent = (hole - 1) >> LOG_ARITY;
+            final int parentHandle = heap[parent];
+            final double parentTau = taus[parent];
+            if (!precedes(tau, handle, parentTau, parentHandle)) {
+                break;
+            }
+            set(hole, parentHandle, parentTau);
+            hole = parent;
+        }
+        set(hole, handle, tau);
+        return hole != index;
+    }
+
+    private void down(final int index, final int handle, final double tau) {
+        int hole = index;
+        while (true) {
+            final int firstChild = (hole << LOG_ARITY) + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            final int end = Math.min(firstChild + ARITY, size);
+            int minIndex = firstChild;
+            int minHandle = heap[firstChild];
+            double minTau = taus[firstChild];
+            for (int child = firstChild + 1; child < end; child++) {
+                final int childHandle = heap[child];
+                final double childTau = taus[child];
+                if (precedes(childTau, childHandle, minTau, minHandle)) {
+                    minIndex = child;
+                    minHandle = childHandle;
+                    minTau = childTau;
+                }
+            }
+            if (!precedes(minTau, minHandle, tau, handle)) {
+                break;
+            }
+            set(hole, minHandle, minTau);
+            hole = minIndex;
+        }
+        set(hole, handle, tau);
+    }
+
+    private void set(final int index, final int handle, final double tau) {
+        heap[index] = handle;
+        taus[index] = tau;
+        positions[handle] = index;
+    }
+
+    private static boolean precedes(final double tau1, final int handle1, final double tau2, final int handle2) {
+        return tau1 < tau2 || tau1 == tau2 && handle1 < handle2; // NOPMD: exact comparison is desired
+    }
+
+    /*
+     * The scheduling order only depends on the putative times, on the handles
+     * of the reactions, and on the order in which free handles get reused:
+     * these methods let checkpoints save and restore the latter two.
+     */
+    int getAllocatedHandles() {
+        return allocatedHandles;
+    }
+
+    Reaction<T> getReaction(final int handle) {
+        return reactionOf(handle);
+    }
+
+    /*
+     * The next handle to be reused comes first
+     */
+    int[] getFreeHandles() {
+        return freeHandles.toArray();
+    }
+
+    /*
+     * Schedules each reaction with the handle equal to its index, null
+     * entries being the free handles
+     */
+    void restoreHandles(final List<? extends Reaction<T>> byHandle, final int[] free) {
+        if (allocatedHandles > 0) {
+            throw new IllegalStateException("Handles can only be restored in an empty scheduler");
+        }
+        allocatedHandles = byHandle.size();
+        ensureCapacity(allocatedHandles);
+        for (int i = free.length - 1; i >= 0; i--) {
+            if (byHandle.get(free[i]) != null) {
+                throw new IllegalArgumentException("Handle " + free[i] + " is both free and in use");
+            }
+            freeHandles.push(free[i]);
+        }
+        for (int handle = 0; handle < allocatedHandles; handle++) {
+            final Reaction<T> reaction = byHandle.get(handle);
+            if (reaction != null) {
+                schedule(handle, reaction);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        int levelEnd = 0;
+        int levelSize = 1;
+        for (int i = 0; i < size; i++) {
+            sb.append(taus[i]).append('\t');
+            if (i == levelEnd) {
+                levelSize *= ARITY;
+                levelEnd += levelSize;
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+}
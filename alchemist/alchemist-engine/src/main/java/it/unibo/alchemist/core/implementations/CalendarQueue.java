@@ -0,0 +1,527 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.stack.TIntStack;
+import gnu.trove.stack.array.TIntArrayStack;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.interfaces.Reaction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A self-resizing calendar queue (R. Brown, 1988), meant for workloads where
+ * most reactions are periodic (e.g. {@link
+ * it.unibo.alchemist.model.implementations.timedistributions.DiracComb}).
+ *
+ * Time is split in windows of fixed width, hashed on a circular array of
+ * buckets. Buckets are unsorted intrusive lists, so insertion, removal and
+ * update cost O(1). When the earliest window is reached, its reactions are
+ * moved to a sorted front from which they are served in order. Reactions at
+ * the very same time are ordered by handle, exactly as in
+ * {@link ArrayIndexedQuaternaryHeap}. Reactions whose putative time is too
+ * far away (e.g. infinite) are kept aside and served only when nothing else is
+ * scheduled.
+ *
+ * The number of buckets doubles (halves) when the reactions are more than
+ * twice (less than half) the buckets, and the window width is re-estimated
+ * from the current distribution of putative times.
+ *
+ * @param <T> concentration type
+ */
+public final class CalendarQueue<T> implements Scheduler<T> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_BUCKETS = 16;
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final double EVENTS_PER_WINDOW = 3;
+    private static final double SAMPLED_QUANTILE = 0.1;
+    private static final double MAX_WINDOW = 0x1p62;
+    private static final int NONE = -1;
+    private static final int IN_FRONT = -2;
+    private static final int OVERFLOW = -3;
+    private static final int FREE = -4;
+
+    private final TObjectIntMap<Reaction<T>> handles =
+            new TObjectIntHashMap<>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NONE);
+    private final TIntStack freeHandles = new TIntArrayStack();
+    /*
+     * Indexed by handle
+     */
+    private Object[] reactions = new Object[INITIAL_CAPACITY];
+    private double[] taus = new double[INITIAL_CAPACITY];
+    private long[] windows = new long[INITIAL_CAPACITY];
+    private int[] location = new int[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int[] previous = new int[INITIAL_CAPACITY];
+    private int[] frontIndex = new int[INITIAL_CAPACITY];
+    /*
+     * Calendar
+     */
+    private int[] buckets = newBuckets(MIN_BUCKETS);
+    private double width = 1;
+    private long currentWindow = Long.MIN_VALUE;
+    private int overflow = NONE;
+    private int inCalendar;
+    /*
+     * Sorted front, holding every reaction whose window is not after the current one
+     */
+    private double[] frontTaus = new double[INITIAL_CAPACITY];
+    private int[] frontHandles = new int[INITIAL_CAPACITY];
+    private int frontStart;
+    private int frontEnd;
+    private int size;
+    private int allocatedHandles;
+
+    @Override
+    public void addReaction(final Reaction<T> r) {
+        final int handle;
+        if (freeHandles.size() > 0) {
+            handle = freeHandles.pop();
+        } else {
+            handle = allocatedHandles++;
+            ensureCapacity(allocatedHandles);
+        }
+        schedule(handle, r);
+    }
+
+    private void schedule(final int handle, final Reaction<T> r) {
+        reactions[handle] = r;
+        handles.put(r, handle);
+        size++;
+        insert(handle, r.getTau().toDouble());
+        if (size > 2 * buckets.length) {
+            resize(buckets.length * 2);
+        }
+    }
+
+    @Override
+    public Reaction<T> getNext() {
+        while (true) {
+            while (frontStart < frontEnd && !isValidFrontEntry(frontStart)) {
+                frontStart++;
+            }
+            if (frontStart < frontEnd) {
+                return reactionOf(frontHandles[frontStart]);
+            }
+            if (inCalendar == 0) {
+                return overflow == NONE ? null : reactionOf(earliestOverflowing());
+            }
+            advanceWindow();
+        }
+    }
+
+    @Override
+    public void removeReaction(final Reaction<T> r) {
+        final int handle = handles.remove(r);
+        if (handle == handles.getNoEntryValue()) {
+            throw new IllegalArgumentException(r + " is not scheduled.");
+        }
+        detach(handle);
+        reactions[handle] = null;
+        freeHandles.push(handle);
+        size--;
+        if (buckets.length > MIN_BUCKETS && size < buckets.length / 2) {
+            resize(buckets.length / 2);
+        }
+    }
+
+    @Override
+    public void updateReaction(final Reaction<T> r) {
+        final int handle = handles.get(r);
+        if (handle != handles.getNoEntryValue()) {
+            detach(handle);
+            insert(handle, r.getTau().toDouble());
+        }
+    }
+
+    private void advanceWindow() {
+        assert inCalendar > 0;
+        frontStart = 0;
+        frontEnd = 0;
+        /*
+         * One lap over the calendar. If it finds nothing, the next event is
+         * more than one year away: look for it directly.
+         */
+        for (int i = 1; i <= buckets.length; i++) {
+            if (collect(currentWindow + i)) {
+                return;
+            }
+        }
+        long earliest = Long.MAX_VALUE;
+        for (final int head : buckets) {
+            for (int handle = head; handle != NONE; handle = next[handle]) {
+                earliest = Math.min(earliest, windows[handle]);
+            }
+        }
+        final boolean found = collect(earliest);
+        assert found;
+    }
+
+    private boolean collect(final long window) {
+        final int bucket = bucketOf(window);
+        int handle = buckets[bucket];
+        while (handle != NONE) {
+            final int following = next[handle];
+            if (windows[handle] == window) {
+                unlink(handle, bucket);
+                inCalendar--;
+                appendToFront(handle);
+            }
+            handle = following;
+        }
+        if (frontEnd > 0) {
+            currentWindow = window;
+            sortFront(0, frontEnd);
+            for (int i = 0; i < frontEnd; i++) {
+                frontIndex[frontHandles[i]] = i;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void appendToFront(final int handle) {
+        ensureFrontCapacity(frontEnd + 1);
+        frontTaus[frontEnd] = taus[handle];
+        frontHandles[frontEnd] = handle;
+        frontIndex[handle] = frontEnd;
+        location[handle] = IN_FRONT;
+        frontEnd++;
+    }
+
+    private int bucketOf(final long window) {
+        return (int) window & (buckets.length - 1);
+    }
+
+    private void detach(final int handle) {
+        final int where = location[handle];
+        if (where >= 0) {
+            unlink(handle, where);
+            inCalendar--;
+        } else if (where == OVERFLOW) {
+            unlinkOverflowing(handle);
+        }
+        /*
+         * Front entries are removed lazily
+         */
+        location[handle] = FREE;
+    }
+
+    private int earliestOverflowing() {
+        int earliest = overflow;
+        for (int handle = next[overflow]; handle != NONE; handle = next[handle]) {
+            if (precedes(taus[handle], handle, taus[earliest], earliest)) {
+                earliest = handle;
+            }
+        }
+        return earliest;
+    }
+
+    private void ensureCapacity(final int required) {
+        if (required > reactions.length) {
+            final int newCapacity = Math.max(required, reactions.length * 2);
+            reactions = Arrays.copyOf(reactions, newCapacity);
+            taus = Arrays.copyOf(taus, newCapacity);
+            windows = Arrays.copyOf(windows, newCapacity);
+            location = Arrays.copyOf(location, newCapacity);
+            next = Arrays.copyOf(next, newCapacity);
+            previous = Arrays.copyOf(previous, newCapacity);
+            frontIndex = Arrays.copyOf(frontIndex, newCapacity);
+        }
+    }
+
+    private void ensureFrontCapacity(final int required) {
+        if (required > frontTaus.length) {
+            final int newCapacity = Math.max(required, frontTaus.length * 2);
+            frontTaus = Arrays.copyOf(frontTaus, newCapacity);
+            frontHandles = Arrays.copyOf(frontHandles, newCapacity);
+        }
+    }
+
+    private void insert(final int handle, final double tau) {
+        taus[handle] = tau;
+        final double window = Math.floor(tau / width);
+        if (!(window < MAX_WINDOW)) { // NOPMD: also catches NaN
+            location[handle] = OVERFLOW;
+            previous[handle] = NONE;
+            next[handle] = overflow;
+            if (overflow != NONE) {
+                previous[overflow] = handle;
+            }
+            overflow = handle;
+        } else {
+            windows[handle] = (long) Math.max(window, -MAX_WINDOW);
+            if (windows[handle] <= currentWindow) {
+                insertInFront(handle);
+            } else {
+                final int bucket = bucketOf(windows[handle]);
+                location[handle] = bucket;
+                previous[handle] = NONE;
+                next[handle] = buckets[bucket];
+                if (buckets[bucket] != NONE) {
+                    previous[buckets[bucket]] = handle;
+                }
+                buckets[bucket] = handle;
+                inCalendar++;
+            }
+        }
+    }
+
+    private void insertInFront(final int handle) {
+        if (frontEnd == frontTaus.length && frontStart > 0) {
+            /*
+             * Compact the front before growing it
+             */
+            for (int i = frontStart; i < frontEnd; i++) {
+                moveFrontEntry(i, i - frontStart);
+            }
+            frontEnd -= frontStart;
+            frontStart = 0;
+        }
+        ensureFrontCapacity(frontEnd + 1);
+        final double tau = taus[handle];
+        int low = frontStart;
+        int high = frontEnd;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (precedes(frontTaus[middle], frontHandles[middle], tau, handle)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = frontEnd; i > low; i--) {
+            moveFrontEntry(i - 1, i);
+        }
+        frontEnd++;
+        frontTaus[low] = tau;
+        frontHandles[low] = handle;
+        frontIndex[handle] = low;
+        location[handle] = IN_FRONT;
+    }
+
+    private boolean isValidFrontEntry(final int index) {
+        final int handle = frontHandles[index];
+        return location[handle] == IN_FRONT && frontIndex[handle] == index;
+    }
+
+    private void moveFrontEntry(final int from, final int to) {
+        final boolean valid = isValidFrontEntry(from);
+        frontTaus[to] = frontTaus[from];
+        frontHandles[to] = frontHandles[from];
+        if (valid) {
+            frontIndex[frontHandles[to]] = to;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Reaction<T> reactionOf(final int handle) {
+        return (Reaction<T>) reactions[handle];
+    }
+
+    private void resize(final int bucketCount) {
+        /*
+         * Estimate the new width on a sample of the central part of the finite putative times
+         */
+        final int stride = Math.max(1, size / SAMPLE_SIZE);
+        final double[] sample = new double[Math.min(size, SAMPLE_SIZE)];
+        int sampled = 0;
+        int seen = 0;
+        for (int handle = 0; handle < allocatedHandles && sampled < sample.length; handle++) {
+            if (location[handle] != FREE && location[handle] != OVERFLOW && seen++ % stride == 0) {
+                sample[sampled++] = taus[handle];
+            }
+        }
+        if (sampled > 1) {
+            Arrays.sort(sample, 0, sampled);
+            final int low = (int) (sampled * SAMPLED_QUANTILE);
+            final int high = sampled - 1 - low;
+            final double span = sample[high] - sample[low];
+            final double newWidth = EVENTS_PER_WINDOW * span / ((high - low) * (double) stride);
+            if (newWidth > 0 && !Double.isInfinite(newWidth)) {
+                width = newWidth;
+            }
+        }
+        /*
+         * Re-insert everything
+         */
+        buckets = newBuckets(bucketCount);
+        overflow = NONE;
+        inCalendar = 0;
+        frontStart = 0;
+        frontEnd = 0;
+        currentWindow = Long.MIN_VALUE;
+        long earliest = Long.MAX_VALUE;
+        for (int handle = 0; handle < allocatedHandles; handle++) {
+            if (location[handle] != FREE) {
+                insert(handle, taus[handle]);
+                if (location[handle] >= 0) {
+                    earliest = Math.min(earliest, windows[handle]);
+                }
+            }
+        }
+        if (inCalendar > 0) {
+            currentWindow = earliest - 1;
+        }
+    }
+
+    private void sortFront(final int from, final int to) {
+        int low = from;
+        int high = to;
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            /*
+             * Median of three, then Hoare partitioning. Recur on the smaller side.
+             */
+            final int middle = (low + high - 1) >>> 1;
+            if (frontPrecedes(middle, low)) {
+                swapFront(middle, low);
+            }
+            if (frontPrecedes(high - 1, low)) {
+                swapFront(high - 1, low);
+            }
+            if (frontPrecedes(high - 1, middle)) {
+                swapFront(high - 1, middle);
+            }
+            final double pivotTau = frontTaus[middle];
+            final int pivotHandle = frontHandles[middle];
+            int i = low - 1;
+            int j = high;
+            while (true) {
+                do {
+                    i++;
+                } while (precedes(frontTaus[i], frontHandles[i], pivotTau, pivotHandle));
+                do {
+                    j--;
+                } while (precedes(pivotTau, pivotHandle, frontTaus[j], frontHandles[j]));
+                if (i >= j) {
+                    break;
+                }
+                swapFront(i, j);
+            }
+            if (j + 1 - low < high - j - 1) {
+                sortFront(low, j + 1);
+                low = j + 1;
+            } else {
+                sortFront(j + 1, high);
+                high = j + 1;
+            }
+        }
+        for (int i = low + 1; i < high; i++) {
+            for (int j = i; j > low && frontPrecedes(j, j - 1); j--) {
+                swapFront(j, j - 1);
+            }
+        }
+    }
+
+    private boolean frontPrecedes(final int i, final int j) {
+        return precedes(frontTaus[i], frontHandles[i], frontTaus[j], frontHandles[j]);
+    }
+
+    private void swapFront(final int i, final int j) {
+        final double tau = frontTaus[i];
+        frontTaus[i] = frontTaus[j];
+        frontTaus[j] = tau;
+        final int handle = frontHandles[i];
+        frontHandles[i] = frontHandles[j];
+        frontHandles[j] = handle;
+    }
+
+    private void unlink(final int handle, final int bucket) {
+        if (previous[handle] == NONE) {
+            buckets[bucket] = next[handle];
+        } else {
+            next[previous[handle]] = next[handle];
+        }
+        if (next[handle] != NONE) {
+            previous[next[handle]] = previous[handle];
+        }
+    }
+
+    private void unlinkOverflowing(final int handle) {
+        if (previous[handle] == NONE) {
+            overflow = next[handle];
+        } else {
+            next[previous[handle]] = next[handle];
+        }
+        if (next[handle] != NONE) {
+            previous[next[handle]] = previous[handle];
+        }
+    }
+
+    private static int[] newBuckets(final int count) {
+        final int[] result = new int[count];
+        Arrays.fill(result, NONE);
+        return result;
+    }
+
+    private static boolean precedes(final double tau1, final int handle1, final double tau2, final int handle2) {
+        return tau1 < tau2 || tau1 == tau2 && handle1 < handle2; // NOPMD: exact comparison is desired
+    }
+
+    /*
+     * Reactions are served by putative time and handle, whatever the calendar
+     * layout: checkpoints only need the handles in use and the order in which
+     * the free ones will be reused.
+     */
+    int getAllocatedHandles() {
+        return allocatedHandles;
+    }
+
+    Reaction<T> getReaction(final int handle) {
+        return reactionOf(handle);
+    }
+
+    /*
+     * The next handle to be reused comes first
+     */
+    int[] getFreeHandles() {
+        return freeHandles.toArray();
+    }
+
+    /*
+     * Schedules each reaction with the handle equal to its index, null
+     * entries being the free handles
+     */
+    void restoreHandles(final List<? extends Reaction<T>> byHandle, final int[] free) {
+        if (allocatedHandles > 0) {
+            throw new IllegalStateException("Handles can only be restored in an empty scheduler");
+        }
+        allocatedHandles = byHandle.size();
+        ensureCapacity(allocatedHandles);
+        /*
+         * Resizing while scheduling must skip the handles not scheduled yet
+         */
+        Arrays.fill(location, 0, allocatedHandles, FREE);
+        for (int i = free.length - 1; i >= 0; i--) {
+            if (byHandle.get(free[i]) != null) {
+                throw new IllegalArgumentException("Handle " + free[i] + " is both free and in use");
+            }
+            freeHandles.push(free[i]);
+        }
+        for (int handle = 0; handle < allocatedHandles; handle++) {
+            final Reaction<T> reaction = byHandle.get(handle);
+            if (reaction != null) {
+                schedule(handle, reaction);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size + ", buckets=" + buckets.length + ", width=" + width
+                + ", window=" + currentWindow + ", front=" + (frontEnd - frontStart) + ']';
+    }
+
+}
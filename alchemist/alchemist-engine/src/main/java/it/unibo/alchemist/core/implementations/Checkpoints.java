@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import it.unibo.alchemist.core.interfaces.DependencyGraph;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Saves the state of an {@link Engine} and restores it in a new engine which
+ * continues the simulation exactly as the original one would have.
+ * <p>
+ * A checkpoint is a compressed binary stream made of:
+ * <ul>
+ * <li>the simulation time, as a double, and the step;</li>
+ * <li>the environment, with its nodes, their contents and reactions
+ * (along with the putative times in their time distributions), positions,
+ * neighborhoods, and any random generator reachable from them. Node contents,
+ * reactions and actions are arbitrary user types, hence this section is
+ * written through Java serialization;</li>
+ * <li>the scheduler, whose type is written as a tag followed by its state:
+ * each reaction is written as the index of its node in the environment and
+ * its index within the node. {@link ArrayIndexedPriorityQueue} writes its
+ * reactions in heap order, {@link ArrayIndexedQuaternaryHeap} and
+ * {@link CalendarQueue} write their reactions by handle and their free
+ * handles, so that simultaneous reactions keep their order. Other schedulers
+ * get serialized.</li>
+ * </ul>
+ * The dependency graph is rebuilt when restoring. Data is compressed as it
+ * gets written, in blocks of fixed size, hence no in-memory copy of the state
+ * is ever built; the same holds when restoring.
+ * <p>
+ * Engines must not be running while being saved: save them when paused or
+ * terminated, or from within a command passed to
+ * {@link Engine#schedule(org.jooq.lambda.fi.lang.CheckedRunnable)}.
+ */
+public final class Checkpoints {
+
+    /*
+     * "ACKP"
+     */
+    private static final int MAGIC = 0x41434B50;
+    private static final int VERSION = 2;
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final byte PRIORITY_QUEUE = 0;
+    private static final byte QUATERNARY_HEAP = 1;
+    private static final byte CALENDAR_QUEUE = 2;
+    private static final byte SERIALIZED = 3;
+    private static final int NONE = -1;
+
+    private Checkpoints() {
+    }
+
+    /**
+     * Writes a checkpoint. The stream is not closed.
+     *
+     * @param engine
+     *            the engine to save
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if writing fails, or if some part of the state is not
+     *             serializable
+     */
+    public static void save(final Engine<?, ?> engine, final OutputStream out) throws IOException {
+        final DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.flush();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            final DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater, BLOCK_SIZE);
+            final ObjectOutputStream objects = new ObjectOutputStream(new BufferedOutputStream(compressed, BLOCK_SIZE));
+            objects.writeDouble(engine.getTime().toDouble());
+            objects.writeLong(engine.getStep());
+            objects.writeObject(engine.getEnvironment());
+            writeScheduler(objects, engine);
+            objects.flush();
+            compressed.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads a checkpoint, rebuilding the dependencies through a
+     * {@link JGraphTDependencyGraph}, as {@link Engine} does by default. The
+     * stream is not closed, but it may have been read past the end of the
+     * checkpoint.
+     *
+     * @param in
+     *            the source
+     * @param maxSteps
+     *            the maximum number of steps to do, including the ones done
+     *            before the checkpoint
+     * @param finalTime
+     *            the maximum time to reach
+     * @param <T>
+     *            concentration type
+     * @param <P>
+     *            {@link Position} type
+     * @return an engine resuming the saved simulation
+     * @throws IOException
+     *             if reading fails, or if the stream is not a valid checkpoint
+     */
+    public static <T, P extends Position<? extends P>> Engine<T, P> restore(
+            final InputStream in,
+            final long maxSteps,
+            final Time finalTime) throws IOException {
+        return restore(in, maxSteps, finalTime, JGraphTDependencyGraph::new);
+    }
+
+    /**
+     * Reads a checkpoint. The dependency graph should be of the same type of
+     * the one of the saved engine, for the order of the updates to be the same.
+     * The stream is not closed, but it may have been read past the end of the
+     * checkpoint.
+     *
+     * @param in
+     *            the source
+     * @param maxSteps
+     *            the maximum number of steps to do, including the ones done
+     *            before the checkpoint
+     * @param finalTime
+     *            the maximum time to reach
+     * @param dependencyGraph
+     *            builds an empty {@link DependencyGraph} for the restored
+     *            environment
+     * @param <T>
+     *            concentration type
+     * @param <P>
+     *            {@link Position} type
+     * @return an engine resuming the saved simulation
+     * @throws IOException
+     *             if reading fails, or if the stream is not a valid checkpoint
+     */
+    public static <T, P extends Position<? extends P>> Engine<T, P> restore(
+            final InputStream in,
+            final long maxSteps,
+            final Time finalTime,
+            final Function<? super Environment<T, P>, ? extends DependencyGraph<T>> dependencyGraph) throws IOException {
+        return restore(in, maxSteps, finalTime, dependencyGraph, generator -> { });
+    }
+
+    /**
+     * Reads a checkpoint, as {@link #restore(InputStream, long, Time, Function)}
+     * does, and passes each {@link RandomGenerator} of the restored state to
+     * the provided consumer before building the engine: once each, in the
+     * order they were saved. Reseeding them lets several simulations restored
+     * from the same checkpoint diverge. Every restored simulation is a deep
+     * copy, sharing no state with the saved one or with the others.
+     *
+     * @param in
+     *            the source
+     * @param maxSteps
+     *            the maximum number of steps to do, including the ones done
+     *            before the checkpoint
+     * @param finalTime
+     *            the maximum time to reach
+     * @param dependencyGraph
+     *            builds an empty {@link DependencyGraph} for the restored
+     *            environment
+     * @param generators
+     *            receives the restored random generators
+     * @param <T>
+     *            concentration type
+     * @param <P>
+     *            {@link Position} type
+     * @return an engine resuming the saved simulation
+     * @throws IOException
+     *             if reading fails, or if the stream is not a valid checkpoint
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, P extends Position<? extends P>> Engine<T, P> restore(
+            final InputStream in,
+            final long maxSteps,
+            final Time finalTime,
+            final Function<? super Environment<T, P>, ? extends DependencyGraph<T>> dependencyGraph,
+            final Consumer<? super RandomGenerator> generators) throws IOException {
+        final DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a simulation checkpoint");
+        }
+        final int version = header.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + ", expected " + VERSION);
+        }
+        final Inflater inflater = new Inflater();
+        try {
+            final GeneratorCollector objects = new GeneratorCollector(
+                    new BufferedInputStream(new InflaterInputStream(in, inflater, BLOCK_SIZE), BLOCK_SIZE));
+            final Time time = new DoubleTime(objects.readDouble());
+            final long step = objects.readLong();
+            final Environment<T, P> env = (Environment<T, P>) objects.readObject();
+            final Scheduler<T> scheduler = readScheduler(objects, env);
+            objects.getGenerators().forEach(generators);
+            return new Engine<>(env, maxSteps, finalTime, scheduler, dependencyGraph.apply(env), time, step);
+        } catch (final ClassNotFoundException | ClassCastException
+                | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted checkpoint", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static <T> void writeScheduler(final ObjectOutputStream out, final Engine<T, ?> engine) throws IOException {
+        final Scheduler<T> scheduler = engine.getReactionManager();
+        if (scheduler instanceof ArrayIndexedPriorityQueue) {
+            out.writeByte(PRIORITY_QUEUE);
+            final Map<Reaction<T>, int[]> references = referencesOf(engine.getEnvironment());
+            final List<Reaction<T>> reactions = ((ArrayIndexedPriorityQueue<T>) scheduler).getReactions();
+            out.writeInt(reactions.size());
+            for (final Reaction<T> reaction : reactions) {
+                writeReaction(out, references, reaction);
+            }
+        } else if (scheduler instanceof ArrayIndexedQuaternaryHeap) {
+            out.writeByte(QUATERNARY_HEAP);
+            final ArrayIndexedQuaternaryHeap<T> heap = (ArrayIndexedQuaternaryHeap<T>) scheduler;
+            writeHandles(out, referencesOf(engine.getEnvironment()),
+                    heap.getAllocatedHandles(), heap::getReaction, heap.getFreeHandles());
+        } else if (scheduler instanceof CalendarQueue) {
+            out.writeByte(CALENDAR_QUEUE);
+            final CalendarQueue<T> calendar = (CalendarQueue<T>) scheduler;
+            writeHandles(out, referencesOf(engine.getEnvironment()),
+                    calendar.getAllocatedHandles(), calendar::getReaction, calendar.getFreeHandles());
+        } else {
+            out.writeByte(SERIALIZED);
+            out.writeObject(scheduler);
+        }
+    }
+
+    private static <T> void writeHandles(
+            final ObjectOutputStream out,
+            final Map<Reaction<T>, int[]> references,
+            final int handles,
+            final IntFunction<Reaction<T>> byHandle,
+            final int[] free) throws IOException {
+        out.writeInt(handles);
+        for (int handle = 0; handle < handles; handle++) {
+            writeReaction(out, references, byHandle.apply(handle));
+        }
+        out.writeInt(free.length);
+        for (final int handle : free) {
+            out.writeInt(handle);
+        }
+    }
+
+    /*
+     * Maps each reaction to the index of its node and its index in the node
+     */
+    private static <T> Map<Reaction<T>, int[]> referencesOf(final Environment<T, ?> env) {
+        final Map<Reaction<T>, int[]> references = new IdentityHashMap<>();
+        final List<Node<T>> nodes = env.getNodes();
+        for (int node = 0; node < nodes.size(); node++) {
+            final List<Reaction<T>> reactions = nodes.get(node).getReactions();
+            for (int reaction = 0; reaction < reactions.size(); reaction++) {
+                references.put(reactions.get(reaction), new int[] {node, reaction});
+            }
+        }
+        return references;
+    }
+
+    private static <T> void writeReaction(
+            final ObjectOutputStream out,
+            final Map<Reaction<T>, int[]> references,
+            final Reaction<T> reaction) throws IOException {
+        if (reaction == null) {
+            out.writeInt(NONE);
+        } else {
+            final int[] reference = references.get(reaction);
+            if (reference == null) {
+                throw new IOException(reaction + " is scheduled, but it is not in the environment");
+            }
+            out.writeInt(reference[0]);
+            out.writeInt(reference[1]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Scheduler<T> readScheduler(final ObjectInputStream in, final Environment<T, ?> env)
+            throws IOException, ClassNotFoundException {
+        final List<Node<T>> nodes = env.getNodes();
+        final byte type = in.readByte();
+        switch (type) {
+        case PRIORITY_QUEUE:
+            final ArrayIndexedPriorityQueue<T> queue = new ArrayIndexedPriorityQueue<>();
+            for (final Reaction<T> reaction : readReactions(in, nodes)) {
+                if (reaction == null) {
+                    throw new IOException("Corrupted checkpoint: missing scheduled reaction");
+                }
+                queue.addReaction(reaction);
+            }
+            return queue;
+        case QUATERNARY_HEAP:
+            final ArrayIndexedQuaternaryHeap<T> heap = new ArrayIndexedQuaternaryHeap<>();
+            heap.restoreHandles(readReactions(in, nodes), readFreeHandles(in));
+            return heap;
+        case CALENDAR_QUEUE:
+            final CalendarQueue<T> calendar = new CalendarQueue<>();
+            calendar.restoreHandles(readReactions(in, nodes), readFreeHandles(in));
+            return calendar;
+        case SERIALIZED:
+            return (Scheduler<T>) in.readObject();
+        default:
+            throw new IOException("Unknown scheduler type " + type);
+        }
+    }
+
+    private static <T> List<Reaction<T>> readReactions(final ObjectInputStream in, final List<Node<T>> nodes)
+            throws IOException {
+        final int size = in.readInt();
+        final List<Reaction<T>> reactions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            reactions.add(readReaction(in, nodes));
+        }
+        return reactions;
+    }
+
+    private static int[] readFreeHandles(final ObjectInputStream in) throws IOException {
+        final int[] free = new int[in.readInt()];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = in.readInt();
+        }
+        return free;
+    }
+
+    private static <T> Reaction<T> readReaction(final ObjectInputStream in, final List<Node<T>> nodes)
+            throws IOException {
+        final int node = in.readInt();
+        return node == NONE ? null : nodes.get(node).getReactions().get(in.readInt());
+    }
+
+    /*
+     * Collects the random generators while reading them
+     */
+    private static final class GeneratorCollector extends ObjectInputStream {
+        private final List<RandomGenerator> generators = new ArrayList<>();
+
+        private GeneratorCollector(final InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(final Object obj) {
+            if (obj instanceof RandomGenerator) {
+                generators.add((RandomGenerator) obj);
+            }
+            return obj;
+        }
+
+        private List<RandomGenerator> getGenerators() {
+            return generators;
+        }
+    }
+
+}
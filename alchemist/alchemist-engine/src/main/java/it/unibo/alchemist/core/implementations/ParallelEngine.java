@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import it.unibo.alchemist.core.interfaces.DependencyGraph;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Dependency;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A simulation engine which splits the environment in a grid of regions, and
+ * executes the events of different regions on different threads when they can
+ * not influence each other.
+ * <p>
+ * A reaction is <i>interior</i> if it has no global context, it only writes
+ * molecules, all the nodes within three hops of its node lie in its same
+ * region, and the time distributions of both the reaction and the reactions
+ * depending on it are
+ * {@link it.unibo.alchemist.model.interfaces.TimeDistribution#isExecutionDriven()
+ * execution driven}: its execution, the update of its dependencies, and their
+ * conditions can not touch any other region, nor draw random numbers for
+ * scheduling. Every other reaction is a <i>boundary</i> reaction. Each region
+ * keeps its interior and boundary reactions in two separate {@link Scheduler}s.
+ * <p>
+ * As interior events can not reschedule boundary reactions, the interior
+ * events scheduled no later than the earliest boundary event get executed in
+ * parallel, region by region, with no need for rollbacks. While a region
+ * executes an event, {@link #getTime()} returns its time on the executing
+ * thread, as it would in {@link Engine}. The output monitors are notified
+ * sequentially, in time order, once the whole window got executed: they hence
+ * observe the environment at the end of the window. Boundary events, and every
+ * event while reactions with global input context exist, get executed alone,
+ * as in {@link Engine}.
+ * <p>
+ * Random numbers are hence drawn by time distributions only on the simulation
+ * thread, in the same order of {@link Engine}: runs with the same seed are
+ * reproducible. Reactions executed in parallel must not change the topology
+ * of the environment without declaring it (through {@link Dependency#MOVEMENT},
+ * {@link Dependency#EVERYTHING}, or a global output context), nor use the
+ * {@link org.apache.commons.math3.random.RandomGenerator} of the simulation in
+ * their conditions and actions. The maximum number of steps is honored, but
+ * the steps executed in the last window are not necessarily the earliest ones.
+ *
+ * @param <T>
+ *            concentration type
+ * @param <P>
+ *            {@link Position} type
+ */
+public final class ParallelEngine<T, P extends Position<? extends P>> extends AbstractEngine<T, P> {
+
+    private static final int HOPS = 3;
+    private final int threads;
+    private final int regionsPerSide;
+    private final Supplier<? extends Scheduler<T>> schedulerFactory;
+    private final Map<Reaction<T>, Placement<T>> placements = new HashMap<>();
+    /*
+     * Time of the event being executed in parallel by the current thread
+     */
+    private final ThreadLocal<Time> eventTime = new ThreadLocal<>();
+    private List<Region<T>> regions;
+    private double[] offset;
+    private double[] size;
+    private ExecutorService executor;
+
+    /**
+     * Builds a parallel simulation splitting each dimension of the environment
+     * in as many regions as threads, using {@link ArrayIndexedPriorityQueue}
+     * schedulers and a {@link CompactDependencyGraph}.
+     *
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param threads
+     *            the number of threads executing events
+     */
+    public ParallelEngine(final Environment<T, P> e, final long maxSteps, final Time t, final int threads) {
+        this(e, maxSteps, t, threads, threads, ArrayIndexedPriorityQueue::new, new CompactDependencyGraph<>(e));
+    }
+
+    /**
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param threads
+     *            the number of threads executing events
+     * @param regionsPerSide
+     *            in how many regions each dimension of the environment gets
+     *            split. Larger values expose more parallelism, but make more
+     *            reactions boundary ones.
+     * @param schedulerFactory
+     *            builds a new, empty {@link Scheduler} for each region
+     * @param dependencyGraph
+     *            the {@link DependencyGraph} to use. It must be empty, built
+     *            for the same environment, and must support concurrent calls to
+     *            {@link DependencyGraph#outboundDependencies(Reaction)}.
+     */
+    public ParallelEngine(
+            final Environment<T, P> e,
+            final long maxSteps,
+            final Time t,
+            final int threads,
+            final int regionsPerSide,
+            final Supplier<? extends Scheduler<T>> schedulerFactory,
+            final DependencyGraph<T> dependencyGraph) {
+        super(e, maxSteps, t, dependencyGraph);
+        if (threads < 1 || regionsPerSide < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + threads + " threads, "
+                    + regionsPerSide + " regions per side");
+        }
+        this.threads = threads;
+        this.regionsPerSide = regionsPerSide;
+        this.schedulerFactory = Objects.requireNonNull(schedulerFactory);
+    }
+
+    @Override
+    protected void addToSchedule(final Reaction<T> reaction) {
+        if (regions == null) {
+            buildRegions();
+        }
+        place(reaction);
+        if (!reaction.getTimeDistribution().isExecutionDriven()) {
+            /*
+             * The reactions it depends on can no longer run in parallel
+             */
+            reclassifyAround(reaction.getNode());
+        }
+    }
+
+    @Override
+    protected void doStep() {
+        if (!canParallelize() || executeWindow() == 0) {
+            executeEarliest();
+        }
+    }
+
+    @Override
+    protected void onTermination() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public Time getTime() {
+        final Time executing = eventTime.get();
+        return executing == null ? super.getTime() : executing;
+    }
+
+    @Override
+    protected void onTopologyChange(final Node<T> node) {
+        reclassifyAround(node);
+    }
+
+    @Override
+    protected void removeFromSchedule(final Reaction<T> reaction) {
+        final Placement<T> placement = placements.remove(reaction);
+        if (placement != null) {
+            placement.getScheduler().removeReaction(reaction);
+        }
+    }
+
+    @Override
+    protected void reschedule(final Reaction<T> reaction) {
+        placements.get(reaction).getScheduler().updateReaction(reaction);
+    }
+
+    private void buildRegions() {
+        final Environment<T, P> env = getEnvironment();
+        final int dimensions = env.getDimensions();
+        offset = env.getOffset();
+        size = env.getSize();
+        final boolean bounded = offset != null && size != null
+                && offset.length == dimensions && size.length == dimensions
+                && Arrays.stream(offset).allMatch(Double::isFinite)
+                && Arrays.stream(size).allMatch(Double::isFinite);
+        final int count = bounded ? (int) Math.pow(regionsPerSide, dimensions) : 1;
+        if (!bounded) {
+            offset = new double[0];
+            size = new double[0];
+        }
+        regions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            regions.add(new Region<>(schedulerFactory.get(), schedulerFactory.get()));
+        }
+    }
+
+    private boolean canParallelize() {
+        return threads > 1 && regions != null && regions.size() > 1
+                && getDependencyGraph().globalInputContextReactions().isEmpty();
+    }
+
+    private void place(final Reaction<T> reaction) {
+        final Placement<T> placement = placementOf(reaction);
+        placements.put(reaction, placement);
+        placement.getScheduler().addReaction(reaction);
+    }
+
+    /*
+     * Moves the reactions close to the node whose placement changed
+     */
+    private void reclassifyAround(final Node<T> node) {
+        for (final Node<T> near : nodesWithinHops(node)) {
+            for (final Reaction<T> reaction : near.getReactions()) {
+                final Placement<T> current = placements.get(reaction);
+                if (current != null) {
+                    final Placement<T> updated = placementOf(reaction);
+                    if (!updated.equals(current)) {
+                        removeFromSchedule(reaction);
+                        placements.put(reaction, updated);
+                        updated.getScheduler().addReaction(reaction);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Runs the earliest event, as Engine does
+     */
+    private void executeEarliest() {
+        Reaction<T> mu = null;
+        if (regions != null) {
+            for (final Region<T> region : regions) {
+                mu = earliest(mu, region.getInterior().getNext());
+                mu = earliest(mu, region.getBoundary().getNext());
+            }
+        }
+        if (mu == null) {
+            noMoreReactions();
+        } else {
+            final Time t = mu.getTau();
+            advanceTime(mu, t);
+            execute(mu, t);
+            notifyStepDone(mu, t);
+            endStep();
+        }
+    }
+
+    /*
+     * Runs in parallel all the interior events preceding the earliest boundary
+     * event, and returns how many got executed.
+     */
+    private int executeWindow() {
+        Time horizon = getFinalTime();
+        for (final Region<T> region : regions) {
+            final Reaction<T> head = region.getBoundary().getNext();
+            if (head != null && head.getTau().compareTo(horizon) < 0) {
+                horizon = head.getTau();
+            }
+        }
+        final Time limit = horizon;
+        final Collection<Callable<List<Event<T>>>> tasks = new ArrayList<>();
+        final AtomicLong budget = new AtomicLong(getFinalStep() - getStep());
+        for (final Region<T> region : regions) {
+            final Reaction<T> head = region.getInterior().getNext();
+            if (head != null && head.getTau().compareTo(limit) <= 0) {
+                tasks.add(() -> executeInterior(region.getInterior(), limit, budget));
+            }
+        }
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+        final List<Event<T>> executed = new ArrayList<>();
+        if (tasks.size() == 1) {
+            try {
+                executed.addAll(tasks.iterator().next().call());
+            } catch (final RuntimeException | Error e) { // NOPMD: rethrown as is
+                throw e;
+            } catch (final Exception e) { // NOPMD: forced by Callable
+                throw new IllegalStateException(e);
+            }
+        } else {
+            executed.addAll(executeAll(tasks));
+        }
+        executed.sort(Comparator.comparing(Event::getTime));
+        for (final Event<T> event : executed) {
+            advanceTime(event.getReaction(), event.getTime());
+            notifyStepDone(event.getReaction(), event.getTime());
+            endStep();
+        }
+        return executed.size();
+    }
+
+    private List<Event<T>> executeAll(final Collection<Callable<List<Event<T>>>> tasks) {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                final Thread thread = new Thread(runnable, "alchemist-parallel-engine");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        final List<Future<List<Event<T>>>> futures = new ArrayList<>(tasks.size());
+        for (final Callable<List<Event<T>>> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        final List<Event<T>> result = new ArrayList<>();
+        Throwable failure = null;
+        /*
+         * All the tasks must be over before returning, even if one failed
+         */
+        for (final Future<List<Event<T>>> future : futures) {
+            try {
+                result.addAll(future.get());
+            } catch (final ExecutionException e) {
+                failure = failure == null ? e.getCause() : failure;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+        return result;
+    }
+
+    private List<Event<T>> executeInterior(final Scheduler<T> interior, final Time limit, final AtomicLong budget) {
+        final List<Event<T>> executed = new ArrayList<>();
+        try {
+            for (Reaction<T> mu = interior.getNext();
+                    mu != null && mu.getTau().compareTo(limit) <= 0 && budget.getAndDecrement() > 0;
+                    mu = interior.getNext()) {
+                final Time t = mu.getTau();
+                eventTime.set(t);
+                execute(mu, t);
+                executed.add(new Event<>(mu, t));
+            }
+        } finally {
+            eventTime.remove();
+        }
+        return executed;
+    }
+
+    private boolean isInterior(final Reaction<T> reaction, final Region<T> region) {
+        if (reaction.getInputContext() == Context.GLOBAL || reaction.getOutputContext() == Context.GLOBAL
+                || !reaction.getTimeDistribution().isExecutionDriven()) {
+            return false;
+        }
+        for (final Dependency dependency : reaction.getOutboundDependencies()) {
+            if (!(dependency instanceof Molecule || dependency == Dependency.EVERY_MOLECULE)) {
+                return false;
+            }
+        }
+        for (final Reaction<T> dependent : getDependencyGraph().outboundDependencies(reaction)) {
+            if (!dependent.getTimeDistribution().isExecutionDriven()) {
+                return false;
+            }
+        }
+        for (final Node<T> node : nodesWithinHops(reaction.getNode())) {
+            if (regionOf(node) != region) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Set<Node<T>> nodesWithinHops(final Node<T> center) {
+        final Environment<T, P> env = getEnvironment();
+        final Set<Node<T>> result = new LinkedHashSet<>();
+        result.add(center);
+        List<Node<T>> frontier = new ArrayList<>();
+        frontier.add(center);
+        for (int hop = 0; hop < HOPS && !frontier.isEmpty(); hop++) {
+            final List<Node<T>> next = new ArrayList<>();
+            for (final Node<T> node : frontier) {
+                for (final Node<T> neighbor : env.getNeighborhood(node)) {
+                    if (result.add(neighbor)) {
+                        next.add(neighbor);
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return result;
+    }
+
+    private Placement<T> placementOf(final Reaction<T> reaction) {
+        final Region<T> region = regionOf(reaction.getNode());
+        return new Placement<>(region, isInterior(reaction, region));
+    }
+
+    private Region<T> regionOf(final Node<T> node) {
+        int index = 0;
+        if (offset.length > 0) {
+            final P position = getEnvironment().getPosition(node);
+            for (int dimension = 0; dimension < offset.length; dimension++) {
+                final double relative = size[dimension] > 0
+                        ? (position.getCoordinate(dimension) - offset[dimension]) / size[dimension]
+                        : 0;
+                final int cell = Math.max(0, Math.min(regionsPerSide - 1, (int) (relative * regionsPerSide)));
+                index = index * regionsPerSide + cell;
+            }
+        }
+        return regions.get(index);
+    }
+
+    private static <T> Reaction<T> earliest(final Reaction<T> current, final Reaction<T> candidate) {
+        if (candidate != null && (current == null || candidate.getTau().compareTo(current.getTau()) < 0)) {
+            return candidate;
+        }
+        return current;
+    }
+
+    private static final class Event<T> {
+        private final Reaction<T> reaction;
+        private final Time time;
+
+        private Event(final Reaction<T> reaction, final Time time) {
+            this.reaction = reaction;
+            this.time = time;
+        }
+
+        private Reaction<T> getReaction() {
+            return reaction;
+        }
+
+        private Time getTime() {
+            return time;
+        }
+    }
+
+    private static final class Placement<T> {
+        private final Region<T> region;
+        private final boolean interior;
+
+        private Placement(final Region<T> region, final boolean interior) {
+            this.region = region;
+            this.interior = interior;
+        }
+
+        private Scheduler<T> getScheduler() {
+            return interior ? region.getInterior() : region.getBoundary();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj instanceof Placement) {
+                final Placement<?> other = (Placement<?>) obj;
+                return region == other.region && interior == other.interior;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(region), interior);
+        }
+    }
+
+    private static final class Region<T> {
+        private final Scheduler<T> interior;
+        private final Scheduler<T> boundary;
+
+        private Region(final Scheduler<T> interior, final Scheduler<T> boundary) {
+            this.interior = interior;
+            this.boundary = boundary;
+        }
+
+        private Scheduler<T> getInterior() {
+            return interior;
+        }
+
+        private Scheduler<T> getBoundary() {
+            return boundary;
+        }
+    }
+
+}
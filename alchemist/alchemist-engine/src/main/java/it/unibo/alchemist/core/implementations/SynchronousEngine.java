@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations;
+
+import it.unibo.alchemist.core.interfaces.DependencyGraph;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.interfaces.Condition;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Dependency;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+/**
+ * A simulation engine for round-based scenarios (e.g., aggregate programs),
+ * where every device fires a round per period. All the round-based reactions
+ * due at the same instant are executed as a single batch, in parallel, and
+ * their dependencies are then updated once for the whole batch, applying the
+ * topology changes just once. Any other event is executed alone, as in
+ * {@link Engine}.
+ * <p>
+ * By default, a reaction is round-based if its time distribution is
+ * {@link it.unibo.alchemist.model.interfaces.TimeDistribution#isExecutionDriven()
+ * execution driven}, it reads and writes only its own node, and it only writes
+ * molecules (see {@link #isRoundBased(Reaction)}). Rounds on different nodes
+ * thus can not observe each other, and the batch result does not depend on the
+ * execution order; rounds on the same node run sequentially. State shared with
+ * neighbors through other channels must be buffered and delivered after the
+ * round (read-old, write-new) while {@link #isExecutingBatch()}, and the shared
+ * {@link org.apache.commons.math3.random.RandomGenerator} must be thread safe if
+ * rounds use it. Rounds are notified to output monitors once the whole batch
+ * got executed.
+ *
+ * @param <T>
+ *            concentration type
+ * @param <P>
+ *            {@link Position} type
+ */
+public final class SynchronousEngine<T, P extends Position<? extends P>> extends AbstractEngine<T, P> {
+
+    /*
+     * Minimum number of rounds worth a fork
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+    private final Scheduler<T> ipq;
+    private final int threads;
+    private final Predicate<? super Reaction<T>> roundBased;
+    private final List<Reaction<T>> batch = new ArrayList<>();
+    private final List<Reaction<T>> executed = new ArrayList<>();
+    private boolean[] fired = new boolean[SEQUENTIAL_THRESHOLD];
+    private ForkJoinPool pool;
+    private volatile boolean executingBatch;
+
+    /**
+     * Builds a synchronous simulation which detects round-based reactions
+     * through {@link #isRoundBased(Reaction)}, using an
+     * {@link ArrayIndexedPriorityQueue} and a {@link CompactDependencyGraph}.
+     *
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param threads
+     *            the number of threads executing rounds
+     */
+    public SynchronousEngine(final Environment<T, P> e, final long maxSteps, final Time t, final int threads) {
+        this(e, maxSteps, t, threads, new ArrayIndexedPriorityQueue<>(), new CompactDependencyGraph<>(e),
+                SynchronousEngine::isRoundBased);
+    }
+
+    /**
+     * @param e
+     *            the environment at the initial time
+     * @param maxSteps
+     *            the maximum number of steps to do
+     * @param t
+     *            the maximum time to reach
+     * @param threads
+     *            the number of threads executing rounds
+     * @param scheduler
+     *            the {@link Scheduler} to use. It must be empty.
+     * @param dependencyGraph
+     *            the {@link DependencyGraph} to use. It must be empty, and
+     *            built for the same environment.
+     * @param roundBased
+     *            tells which reactions can be executed in the same batch of
+     *            the other round-based reactions scheduled at the same time
+     */
+    public SynchronousEngine(
+            final Environment<T, P> e,
+            final long maxSteps,
+            final Time t,
+            final int threads,
+            final Scheduler<T> scheduler,
+            final DependencyGraph<T> dependencyGraph,
+            final Predicate<? super Reaction<T>> roundBased) {
+        super(e, maxSteps, t, dependencyGraph);
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least a thread is required, got " + threads);
+        }
+        this.threads = threads;
+        this.ipq = Objects.requireNonNull(scheduler);
+        this.roundBased = Objects.requireNonNull(roundBased);
+    }
+
+    @Override
+    protected void addToSchedule(final Reaction<T> reaction) {
+        ipq.addReaction(reaction);
+    }
+
+    @Override
+    protected void doStep() {
+        final Reaction<T> first = ipq.getNext();
+        if (first == null) {
+            noMoreReactions();
+            return;
+        }
+        final Time t = first.getTau();
+        advanceTime(first, t);
+        if (!roundBased.test(first)) {
+            execute(first, t);
+            notifyStepDone(first, t);
+            endStep();
+            return;
+        }
+        final long budget = getFinalStep() - getStep();
+        for (Reaction<T> next = first;
+                next != null && batch.size() < budget && next.getTau().equals(t) && roundBased.test(next);
+                next = ipq.getNext()) {
+            ipq.removeReaction(next);
+            batch.add(next);
+        }
+        executeRound(t);
+        for (int i = 0; i < batch.size(); i++) {
+            notifyStepDone(batch.get(i), t);
+            endStep();
+        }
+        batch.clear();
+        executed.clear();
+    }
+
+    /**
+     * @return true while the round-based reactions of a batch are executing
+     */
+    @Override
+    public boolean isExecutingBatch() {
+        return executingBatch;
+    }
+
+    /**
+     * @return The IPQ
+     */
+    public Scheduler<T> getReactionManager() {
+        return ipq;
+    }
+
+    @Override
+    protected void onTermination() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    protected void onTopologyChange(final Node<T> node) {
+    }
+
+    @Override
+    protected void removeFromSchedule(final Reaction<T> reaction) {
+        ipq.removeReaction(reaction);
+    }
+
+    @Override
+    protected void reschedule(final Reaction<T> reaction) {
+        ipq.updateReaction(reaction);
+    }
+
+    private void executeRound(final Time t) {
+        if (fired.length < batch.size()) {
+            fired = new boolean[Math.max(batch.size(), fired.length * 2)];
+        }
+        executingBatch = true;
+        try {
+            if (threads > 1 && batch.size() > SEQUENTIAL_THRESHOLD) {
+                /*
+                 * Rounds of the same node must run in the same task
+                 */
+                batch.sort(Comparator.comparingInt(it -> it.getNode().getId()));
+                if (pool == null) {
+                    pool = new ForkJoinPool(threads);
+                }
+                pool.invoke(new Round(0, batch.size()));
+            } else {
+                fire(0, batch.size());
+            }
+        } finally {
+            executingBatch = false;
+        }
+        /*
+         * Reinsert the batch before updating the dependencies, as rounds may depend on each other
+         */
+        for (int i = 0; i < batch.size(); i++) {
+            ipq.addReaction(batch.get(i));
+            if (fired[i]) {
+                executed.add(batch.get(i));
+            }
+        }
+        updateDependencies(executed, t);
+        for (int i = 0; i < batch.size(); i++) {
+            final Reaction<T> round = batch.get(i);
+            round.update(t, true, getEnvironment());
+            ipq.updateReaction(round);
+        }
+    }
+
+    private void fire(final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            final Reaction<T> round = batch.get(i);
+            fired[i] = round.canExecute();
+            if (fired[i]) {
+                final List<Condition<T>> conditions = round.getConditions();
+                for (int j = 0; j < conditions.size(); j++) {
+                    conditions.get(j).reactionReady();
+                }
+                round.execute();
+            }
+        }
+    }
+
+    /**
+     * @param reaction
+     *            the reaction
+     * @return true if the reaction has an execution driven time distribution,
+     *         local input and output contexts, and only writes molecules
+     */
+    public static boolean isRoundBased(final Reaction<?> reaction) {
+        if (reaction.getInputContext() != Context.LOCAL
+                || reaction.getOutputContext() != Context.LOCAL
+                || !reaction.getTimeDistribution().isExecutionDriven()) {
+            return false;
+        }
+        for (final Dependency dependency : reaction.getOutboundDependencies()) {
+            if (!(dependency instanceof Molecule || dependency == Dependency.EVERY_MOLECULE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Executes a range of the batch, splitting it between nodes
+     */
+    private final class Round extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        private Round(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                fire(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                final Node<T> node = batch.get(middle).getNode();
+                while (middle < to && batch.get(middle).getNode().equals(node)) {
+                    middle++;
+                }
+                if (middle == to) {
+                    fire(from, to);
+                } else {
+                    invokeAll(new Round(from, middle), new Round(middle, to));
+                }
+            }
+        }
+    }
+
+}
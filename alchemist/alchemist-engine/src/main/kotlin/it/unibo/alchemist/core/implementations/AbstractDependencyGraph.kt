@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations
+
+import it.unibo.alchemist.core.interfaces.DependencyGraph
+import it.unibo.alchemist.model.interfaces.Context
+import it.unibo.alchemist.model.interfaces.Environment
+import it.unibo.alchemist.model.interfaces.Node
+import it.unibo.alchemist.model.interfaces.Reaction
+import org.danilopianini.util.ArrayListSet
+import org.danilopianini.util.ListSet
+import org.danilopianini.util.ListSets
+
+/**
+ * Base class for [DependencyGraph] implementations. It contains the logic that
+ * finds out which reactions depend on which, and leaves to subclasses the
+ * storage of reactions (vertices) and dependencies (directed edges).
+ *
+ * @param <T> concentration type
+ */
+abstract class AbstractDependencyGraph<T>(private val environment: Environment<T, *>) : DependencyGraph<T> {
+    private val inGlobals = ArrayListSet<Reaction<T>>()
+    private val outGlobals = ArrayListSet<Reaction<T>>()
+    private val index = DependencyIndex<T>()
+
+    /**
+     * @return true if [reaction] is in the graph
+     */
+    protected abstract fun contains(reaction: Reaction<T>): Boolean
+
+    /**
+     * Adds [reaction] to the graph, with no dependencies.
+     *
+     * @return false if [reaction] was already in the graph
+     */
+    protected abstract fun addVertex(reaction: Reaction<T>): Boolean
+
+    /**
+     * Removes [reaction] from the graph, along with all its inbound and outbound dependencies.
+     *
+     * @return false if [reaction] was not in the graph
+     */
+    protected abstract fun removeVertex(reaction: Reaction<T>): Boolean
+
+    /**
+     * Records that [target] depends on [source]. Does nothing if the dependency is already there.
+     */
+    protected abstract fun addEdge(source: Reaction<T>, target: Reaction<T>)
+
+    /**
+     * Removes the dependency of [target] on [source], if any.
+     */
+    protected abstract fun removeEdge(source: Reaction<T>, target: Reaction<T>)
+
+    override fun createDependencies(newReaction: Reaction<T>) {
+        val neighborhood by lazy { newReaction.node.neighborhood }
+        val localReactions by lazy {
+            newReaction.node.reactions.filter { contains(it) }.asSequence()
+        }
+        val neighborhoodReactions by lazy {
+            neighborhood.asSequence()
+                .flatMap { it.reactions.asSequence() }
+                .filter { contains(it) }
+                .toList().asSequence()
+        }
+        val extendedNeighborhoodReactions by lazy {
+            neighborhood.asSequence()
+                // Neighbors of neighbors
+                .flatMap { it.neighborhood.asSequence() }
+                // No duplicates
+                .distinct()
+                // Exclude direct neighbors
+                .filterNot { neighborhood.contains(it) }
+                .flatMap { it.reactions.asSequence() }
+                .filter { contains(it) }
+                .toList().asSequence()
+        }
+        val inboundCandidates: Sequence<Reaction<T>> = (outGlobals.asSequence() + when (newReaction.inputContext) {
+            Context.LOCAL ->
+                localReactions + neighborhoodReactions.filter { it.outputContext == Context.NEIGHBORHOOD }
+            Context.NEIGHBORHOOD ->
+                localReactions + neighborhoodReactions +
+                extendedNeighborhoodReactions.filter { it.outputContext == Context.NEIGHBORHOOD }
+            else -> index.influencersOf(newReaction).asSequence()
+        }).filter { it != newReaction && newReaction.dependsOn(it) }
+        val outboundCandidates: Sequence<Reaction<T>> = (inGlobals.asSequence() + when (newReaction.outputContext) {
+            Context.LOCAL ->
+                localReactions + neighborhoodReactions.filter { it.inputContext == Context.NEIGHBORHOOD }
+            Context.NEIGHBORHOOD ->
+                localReactions + neighborhoodReactions +
+                extendedNeighborhoodReactions.filter { it.inputContext == Context.NEIGHBORHOOD }
+            else -> index.influencedBy(newReaction).asSequence()
+        }).filter { it != newReaction && it.dependsOn(newReaction) }
+        if (!addVertex(newReaction)) {
+            throw IllegalArgumentException("$newReaction was already in the dependency graph")
+        }
+        index.add(newReaction)
+        inboundCandidates.forEach { addEdge(it, newReaction) }
+        outboundCandidates.forEach { addEdge(newReaction, it) }
+        if (newReaction.inputContext == Context.GLOBAL) {
+            inGlobals.add(newReaction)
+        }
+        if (newReaction.outputContext == Context.GLOBAL) {
+            outGlobals.add(newReaction)
+        }
+    }
+
+    private val Node<T>.neighborhood
+        get() = environment.getNeighborhood(this).neighbors
+
+    private fun Reaction<T>.dependsOn(other: Reaction<T>) = inboundDependencies.any {
+            inbound -> other.outboundDependencies.any { outbound ->
+                inbound.dependsOn(outbound) || outbound.makesDependent(inbound)
+            }
+        }
+
+    override fun removeDependencies(r: Reaction<T>) {
+        if (!removeVertex(r)) {
+            throw IllegalStateException("Inconsistent state: $r was not in the reaction pool.")
+        }
+        index.remove(r)
+        if (r.inputContext == Context.GLOBAL && !inGlobals.remove(r)) {
+            throw IllegalStateException(
+                "Inconsistent state: " + r + " , with global input context, " +
+                    "was not in the appropriate reaction pool."
+            )
+        }
+        if (r.outputContext == Context.GLOBAL && !outGlobals.remove(r)) {
+            throw IllegalStateException(
+                "Inconsistent state: " + r + " , with global output context, " +
+                    "was not in the appropriate reaction pool."
+            )
+        }
+    }
+
+    private fun addNeighborDirected(n1: Node<T>, n2: Node<T>) {
+        val n2NonGlobalReactions: Iterable<Reaction<T>> by lazy {
+            n2.reactions.filterNot { it.outputContext == Context.GLOBAL }
+        }
+        val n2NeighborhoodReactions: Iterable<Reaction<T>> by lazy {
+            n2NonGlobalReactions.filter { it.outputContext == Context.NEIGHBORHOOD }
+        }
+        val neighborInputInfluencers: Iterable<Reaction<T>> by lazy {
+            // All the non-global reactions of the new neighbor
+            n2NonGlobalReactions +
+            // Plus all the reactions of the new neighbor's neighbors with neighborhood output
+            (n2.neighborhood - n1.neighborhood).asSequence()
+                .flatMap { it.reactions.asSequence() }
+                .filter { it.outputContext == Context.NEIGHBORHOOD }
+        }
+        n1.reactions.forEach { reaction ->
+            when (reaction.inputContext) {
+                // Local-reading reactions can be only influenced by the new neighbor's neighborhood reactions
+                Context.LOCAL -> n2NeighborhoodReactions
+                Context.NEIGHBORHOOD -> neighborInputInfluencers
+                else -> emptyList()
+            }.asSequence()
+            .filter { reaction.dependsOn(it) }
+            .forEach { addEdge(it, reaction) }
+        }
+    }
+
+    /** @see [DependencyGraph.addNeighbor] */
+    override fun addNeighbor(n1: Node<T>, n2: Node<T>) {
+        addNeighborDirected(n1, n2)
+        addNeighborDirected(n2, n1)
+    }
+
+    private fun removeNeighborDirected(n1: Node<T>, n2: Node<T>) {
+        val n2NonGlobalReactions by lazy { n2.reactions.filterNot { it.outputContext == Context.GLOBAL } }
+        val n2NeighborhoodReactions by lazy { n2NonGlobalReactions.filter { it.outputContext == Context.NEIGHBORHOOD } }
+        val neighborInputInfluencers by lazy {
+            // All the non-global reactions of the old neighbor
+            n2NonGlobalReactions +
+                // Plus all the reactions of the new neighbor's neighbors with neighborhood output
+                (n2.neighborhood - n1.neighborhood - n1.neighborhood.flatMap { it.neighborhood }).asSequence()
+                    .flatMap { it.reactions.asSequence() }
+                    .filter { it.outputContext == Context.NEIGHBORHOOD }
+                    .toList()
+        }
+        n1.reactions.forEach { reaction ->
+            when (reaction.inputContext) {
+                // Local-reading reactions can be only influenced by the new neighbor's neighborhood reactions
+                Context.LOCAL -> n2NeighborhoodReactions
+                Context.NEIGHBORHOOD -> neighborInputInfluencers
+                else -> emptyList()
+            }.asSequence()
+            .filter { reaction.dependsOn(it) }
+            .forEach { removeEdge(it, reaction) }
+        }
+    }
+
+    override fun removeNeighbor(n1: Node<T>, n2: Node<T>) {
+        removeNeighborDirected(n1, n2)
+        removeNeighborDirected(n2, n1)
+    }
+
+    override fun globalInputContextReactions(): ListSet<Reaction<T>> = ListSets.unmodifiableListSet(inGlobals)
+}
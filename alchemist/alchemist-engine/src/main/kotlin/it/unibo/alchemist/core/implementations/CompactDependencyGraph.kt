@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations
+
+import gnu.trove.impl.Constants
+import gnu.trove.map.TObjectIntMap
+import gnu.trove.map.hash.TObjectIntHashMap
+import gnu.trove.stack.TIntStack
+import gnu.trove.stack.array.TIntArrayStack
+import it.unibo.alchemist.model.interfaces.Environment
+import it.unibo.alchemist.model.interfaces.Reaction
+import org.danilopianini.util.ListSet
+import java.util.AbstractList
+import java.util.Spliterator
+import java.util.Spliterators
+
+/**
+ * A dependency graph which gives each reaction an integer id and stores the
+ * dependencies as rows of primitive ints, one row of successors and one of
+ * predecessors per reaction. No object is allocated per dependency.
+ *
+ * [outboundDependencies] returns a live, read-only view over the successors
+ * row of the reaction: it reflects any later change to the graph, and it must
+ * not be used after the reaction is removed. Dependencies are listed in
+ * insertion order, as in [JGraphTDependencyGraph].
+ *
+ * @param <T> concentration type
+ */
+class CompactDependencyGraph<T>(environment: Environment<T, *>) : AbstractDependencyGraph<T>(environment) {
+    private val ids: TObjectIntMap<Reaction<T>> =
+        TObjectIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NONE)
+    private val freeIds: TIntStack = TIntArrayStack()
+    /*
+     * Indexed by id
+     */
+    private var reactions: Array<Any?> = arrayOfNulls(INITIAL_CAPACITY)
+    private var views: Array<Any?> = arrayOfNulls(INITIAL_CAPACITY)
+    private var successors: Array<IntArray> = Array(INITIAL_CAPACITY) { EMPTY_ROW }
+    private var successorCount = IntArray(INITIAL_CAPACITY)
+    private var predecessors: Array<IntArray> = Array(INITIAL_CAPACITY) { EMPTY_ROW }
+    private var predecessorCount = IntArray(INITIAL_CAPACITY)
+    private var allocatedIds = 0
+    private var edges = 0
+
+    override fun contains(reaction: Reaction<T>) = ids.containsKey(reaction)
+
+    override fun addVertex(reaction: Reaction<T>): Boolean {
+        if (ids.containsKey(reaction)) {
+            return false
+        }
+        val id = if (freeIds.size() > 0) freeIds.pop() else allocatedIds++.also { ensureCapacity(allocatedIds) }
+        reactions[id] = reaction
+        ids.put(reaction, id)
+        return true
+    }
+
+    override fun removeVertex(reaction: Reaction<T>): Boolean {
+        val id = ids.remove(reaction)
+        if (id == NONE) {
+            return false
+        }
+        for (i in 0 until successorCount[id]) {
+            val successor = successors[id][i]
+            if (successor != id) {
+                removeFromRow(predecessors, predecessorCount, successor, id)
+            }
+        }
+        for (i in 0 until predecessorCount[id]) {
+            val predecessor = predecessors[id][i]
+            if (predecessor != id) {
+                removeFromRow(successors, successorCount, predecessor, id)
+                edges--
+            }
+        }
+        edges -= successorCount[id]
+        successorCount[id] = 0
+        predecessorCount[id] = 0
+        reactions[id] = null
+        freeIds.push(id)
+        return true
+    }
+
+    override fun addEdge(source: Reaction<T>, target: Reaction<T>) {
+        val from = idOf(source)
+        val to = idOf(target)
+        if (indexInRow(successors[from], successorCount[from], to) < 0) {
+            appendToRow(successors, successorCount, from, to)
+            appendToRow(predecessors, predecessorCount, to, from)
+            edges++
+        }
+    }
+
+    override fun removeEdge(source: Reaction<T>, target: Reaction<T>) {
+        val from = ids.get(source)
+        val to = ids.get(target)
+        if (from != NONE && to != NONE && removeFromRow(successors, successorCount, from, to)) {
+            removeFromRow(predecessors, predecessorCount, to, from)
+            edges--
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun outboundDependencies(reaction: Reaction<T>): ListSet<Reaction<T>> {
+        val id = idOf(reaction)
+        return views[id] as OutboundView? ?: OutboundView(id).also { views[id] = it }
+    }
+
+    private fun ensureCapacity(required: Int) {
+        if (required > reactions.size) {
+            val newCapacity = maxOf(required, reactions.size * 2)
+            reactions = reactions.copyOf(newCapacity)
+            views = views.copyOf(newCapacity)
+            successors = Array(newCapacity) { if (it < successors.size) successors[it] else EMPTY_ROW }
+            successorCount = successorCount.copyOf(newCapacity)
+            predecessors = Array(newCapacity) { if (it < predecessors.size) predecessors[it] else EMPTY_ROW }
+            predecessorCount = predecessorCount.copyOf(newCapacity)
+        }
+    }
+
+    private fun idOf(reaction: Reaction<T>) = ids.get(reaction).also {
+        require(it != NONE) { "$reaction is not in the dependency graph" }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun reactionOf(id: Int) = reactions[id] as Reaction<T>
+
+    override fun toString() = "${javaClass.simpleName}[reactions=${ids.size()}, dependencies=$edges]"
+
+    private inner class OutboundView(private val id: Int) : AbstractList<Reaction<T>>(), ListSet<Reaction<T>> {
+
+        override val size: Int
+            get() = successorCount[id]
+
+        override fun get(index: Int): Reaction<T> {
+            if (index < 0 || index >= size) {
+                throw IndexOutOfBoundsException("Index: $index, size: $size")
+            }
+            return reactionOf(successors[id][index])
+        }
+
+        override fun contains(element: Reaction<T>): Boolean {
+            val other = ids.get(element)
+            return other != NONE && indexInRow(successors[id], size, other) >= 0
+        }
+
+        override fun spliterator(): Spliterator<Reaction<T>> =
+            Spliterators.spliterator(this, Spliterator.ORDERED or Spliterator.DISTINCT)
+    }
+
+    private companion object {
+        private const val NONE = -1
+        private const val INITIAL_CAPACITY = 16
+        private const val INITIAL_ROW_CAPACITY = 4
+        private val EMPTY_ROW = IntArray(0)
+
+        private fun indexInRow(row: IntArray, count: Int, value: Int): Int {
+            for (i in 0 until count) {
+                if (row[i] == value) {
+                    return i
+                }
+            }
+            return -1
+        }
+
+        private fun appendToRow(rows: Array<IntArray>, counts: IntArray, row: Int, value: Int) {
+            val count = counts[row]
+            if (count == rows[row].size) {
+                rows[row] = rows[row].copyOf(maxOf(INITIAL_ROW_CAPACITY, count * 2))
+            }
+            rows[row][count] = value
+            counts[row] = count + 1
+        }
+
+        /*
+         * Shifts the following elements, so that the insertion order is preserved
+         */
+        private fun removeFromRow(rows: Array<IntArray>, counts: IntArray, row: Int, value: Int): Boolean {
+            val index = indexInRow(rows[row], counts[row], value)
+            if (index < 0) {
+                return false
+            }
+            val values = rows[row]
+            System.arraycopy(values, index + 1, values, index, counts[row] - index - 1)
+            counts[row]--
+            return true
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.implementations
+
+import it.unibo.alchemist.model.interfaces.Dependency
+import it.unibo.alchemist.model.interfaces.Molecule
+import it.unibo.alchemist.model.interfaces.Reaction
+
+/**
+ * An inverted index from each [Dependency] to the reactions reading and
+ * writing it, used to find the reactions that may depend on each other
+ * without testing every pair.
+ *
+ * Dependencies relying on the default [Dependency.dependsOn] and
+ * [Dependency.makesDependent] (i.e., on equality) are looked up by key.
+ * [Dependency.EVERYTHING] and [Dependency.EVERY_MOLECULE] have their own
+ * buckets. Dependencies redefining the relation (e.g. molecules matching
+ * templates) can not be looked up: they make every reaction a candidate.
+ * Lookups hence return a superset of the actual dependencies, which callers
+ * must still check.
+ *
+ * @param <T> concentration type
+ */
+internal class DependencyIndex<T> {
+    private val all = LinkedHashSet<Reaction<T>>()
+    private val readers = Side { inboundDependencies }
+    private val writers = Side { outboundDependencies }
+
+    /**
+     * Indexes [reaction].
+     */
+    fun add(reaction: Reaction<T>) {
+        all.add(reaction)
+        readers.add(reaction)
+        writers.add(reaction)
+    }
+
+    /**
+     * Removes [reaction] from the index.
+     */
+    fun remove(reaction: Reaction<T>) {
+        all.remove(reaction)
+        readers.remove(reaction)
+        writers.remove(reaction)
+    }
+
+    /**
+     * @return the reactions whose execution may influence [reaction]
+     */
+    fun influencersOf(reaction: Reaction<T>): Collection<Reaction<T>> = writers.matching(reaction.inboundDependencies)
+
+    /**
+     * @return the reactions which may be influenced by the execution of [reaction]
+     */
+    fun influencedBy(reaction: Reaction<T>): Collection<Reaction<T>> = readers.matching(reaction.outboundDependencies)
+
+    private inner class Side(private val dependenciesOf: Reaction<T>.() -> Collection<Dependency>) {
+        private val byKey = LinkedHashMap<Dependency, MutableSet<Reaction<T>>>()
+        /*
+         * Reactions with at least a molecule, and with at least a non-indexable dependency on this side
+         */
+        private val molecules = LinkedHashSet<Reaction<T>>()
+        private val custom = LinkedHashSet<Reaction<T>>()
+
+        fun add(reaction: Reaction<T>) = reaction.dependenciesOf().forEach {
+            byKey.getOrPut(it) { LinkedHashSet() }.add(reaction)
+            if (it is Molecule) {
+                molecules.add(reaction)
+            }
+            if (it.isCustom) {
+                custom.add(reaction)
+            }
+        }
+
+        fun remove(reaction: Reaction<T>) {
+            reaction.dependenciesOf().forEach {
+                val bucket = byKey[it]
+                if (bucket != null && bucket.remove(reaction) && bucket.isEmpty()) {
+                    byKey.remove(it)
+                }
+            }
+            molecules.remove(reaction)
+            custom.remove(reaction)
+        }
+
+        /*
+         * Reactions with a dependency on this side which may match any of the provided ones
+         */
+        fun matching(dependencies: Collection<Dependency>): Collection<Reaction<T>> = when {
+            dependencies.isEmpty() -> emptySet()
+            dependencies.any { it === Dependency.EVERYTHING || it.isCustom } -> all
+            else -> LinkedHashSet<Reaction<T>>().also { result ->
+                result += this[Dependency.EVERYTHING]
+                result += custom
+                dependencies.forEach {
+                    result += this[it]
+                    if (it === Dependency.EVERY_MOLECULE) {
+                        result += molecules
+                    } else if (it is Molecule) {
+                        result += this[Dependency.EVERY_MOLECULE]
+                    }
+                }
+            }
+        }
+
+        private operator fun get(dependency: Dependency): Set<Reaction<T>> = byKey[dependency].orEmpty()
+    }
+
+    private companion object {
+        private val overridesRelation = object : ClassValue<Boolean>() {
+            override fun computeValue(type: Class<*>) = listOf("dependsOn", "makesDependent").any {
+                type.getMethod(it, Dependency::class.java).declaringClass != Dependency::class.java
+            }
+        }
+
+        private val Dependency.isCustom
+            get() = this !== Dependency.EVERYTHING &&
+                this !== Dependency.EVERY_MOLECULE &&
+                overridesRelation.get(javaClass)
+    }
+}
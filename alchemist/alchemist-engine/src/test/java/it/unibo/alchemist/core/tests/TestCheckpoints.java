@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.ArrayIndexedQuaternaryHeap;
+import it.unibo.alchemist.core.implementations.CalendarQueue;
+import it.unibo.alchemist.core.implementations.Checkpoints;
+import it.unibo.alchemist.core.implementations.CompactDependencyGraph;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.AbstractReaction;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import it.unibo.alchemist.model.interfaces.TimeDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that a simulation restored from a checkpoint continues exactly as
+ * the original one.
+ */
+public class TestCheckpoints {
+
+    private static final int SIDE = 10;
+    private static final int NODES = SIDE * SIDE;
+    private static final long STEPS = 5000;
+    private static final long CHECKPOINT_STEP = 2000;
+    private static final double RANGE = 1.5;
+    private static final long SEED = 42;
+    private static final int NOISE = 1000;
+    private static final long MODULO = 1_000_003;
+    private static final long FACTOR = 31;
+    private static final Time NEVER = new DoubleTime(Double.POSITIVE_INFINITY);
+    private static final Molecule VALUE = new SimpleMolecule("value");
+    private static final int FORK_SEED = 1;
+    private static final int OTHER_FORK_SEED = 2;
+
+    /**
+     * Runs a stochastic simulation in a single shot, and in two parts through
+     * a checkpoint, and checks that the results are identical.
+     *
+     * @throws IOException
+     *             if the checkpoint can not be written or read
+     */
+    @Test
+    public void testResumeIsExact() throws IOException {
+        assertResumeIsExact(ArrayIndexedPriorityQueue::new, false);
+    }
+
+    /**
+     * As {@link #testResumeIsExact()}, with each scheduler, and with half of
+     * the reactions being periodic, hence executed at the same times: their
+     * order must be restored as well.
+     *
+     * @throws IOException
+     *             if the checkpoint can not be written or read
+     */
+    @Test
+    public void testResumeIsExactWithEveryScheduler() throws IOException {
+        for (final Supplier<Scheduler<Object>> scheduler : Arrays.<Supplier<Scheduler<Object>>>asList(
+                ArrayIndexedPriorityQueue::new, ArrayIndexedQuaternaryHeap::new, CalendarQueue::new)) {
+            assertResumeIsExact(scheduler, true);
+        }
+    }
+
+    private static void assertResumeIsExact(final Supplier<Scheduler<Object>> scheduler, final boolean periodic)
+            throws IOException {
+        final Engine<Object, Euclidean2DPosition> single = run(createEngine(STEPS, scheduler.get(), periodic));
+        final Engine<Object, Euclidean2DPosition> first = run(createEngine(CHECKPOINT_STEP, scheduler.get(), periodic));
+        final ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        Checkpoints.save(first, checkpoint);
+        final Engine<Object, Euclidean2DPosition> resumed = Checkpoints.restore(
+                new ByteArrayInputStream(checkpoint.toByteArray()), STEPS, NEVER, CompactDependencyGraph::new);
+        assertEquals(first.getReactionManager().getClass(), resumed.getReactionManager().getClass());
+        assertEquals(first.getStep(), resumed.getStep());
+        assertEquals(first.getTime(), resumed.getTime());
+        run(resumed);
+        assertEquals(single.getStep(), resumed.getStep());
+        assertEquals(single.getTime(), resumed.getTime());
+        assertEquals(valuesOf(single), valuesOf(resumed));
+    }
+
+    /**
+     * Restores several forks from a single checkpoint, reseeding them, runs
+     * two of them concurrently, and checks that they start from the same
+     * state, diverge, and do not interfere with each other nor with the
+     * simulation they were saved from.
+     *
+     * @throws IOException
+     *             if the checkpoint can not be written or read
+     * @throws InterruptedException
+     *             if interrupted while waiting for the forks
+     */
+    @Test
+    public void testForksDivergeIndependently() throws IOException, InterruptedException {
+        final Engine<Object, Euclidean2DPosition> prefix =
+                run(createEngine(CHECKPOINT_STEP, new ArrayIndexedPriorityQueue<>(), false));
+        final List<Object> prefixValues = valuesOf(prefix);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Checkpoints.save(prefix, out);
+        final byte[] checkpoint = out.toByteArray();
+        final AtomicInteger generators = new AtomicInteger();
+        final Engine<Object, Euclidean2DPosition> fork = Checkpoints.restore(new ByteArrayInputStream(checkpoint),
+                STEPS, NEVER, CompactDependencyGraph::new, generator -> {
+                    generator.setSeed(FORK_SEED);
+                    generators.incrementAndGet();
+                });
+        assertEquals(1, generators.get());
+        final Engine<Object, Euclidean2DPosition> other = Checkpoints.restore(new ByteArrayInputStream(checkpoint),
+                STEPS, NEVER, CompactDependencyGraph::new, generator -> generator.setSeed(OTHER_FORK_SEED));
+        for (final Engine<Object, Euclidean2DPosition> sim : Arrays.asList(fork, other)) {
+            assertEquals(prefix.getStep(), sim.getStep());
+            assertEquals(prefix.getTime(), sim.getTime());
+            assertEquals(prefixValues, valuesOf(sim));
+        }
+        final Thread forkThread = new Thread(() -> run(fork));
+        final Thread otherThread = new Thread(() -> run(other));
+        forkThread.start();
+        otherThread.start();
+        forkThread.join();
+        otherThread.join();
+        assertEquals(STEPS, fork.getStep());
+        assertEquals(STEPS, other.getStep());
+        assertNotEquals(valuesOf(fork), valuesOf(other));
+        assertEquals(prefixValues, valuesOf(prefix));
+        final Engine<Object, Euclidean2DPosition> replay = run(Checkpoints.restore(new ByteArrayInputStream(checkpoint),
+                STEPS, NEVER, CompactDependencyGraph::new, generator -> generator.setSeed(FORK_SEED)));
+        assertEquals(fork.getTime(), replay.getTime());
+        assertEquals(valuesOf(fork), valuesOf(replay));
+    }
+
+    /**
+     * Checks that streams which are not checkpoints get refused.
+     */
+    @Test
+    public void testInvalidCheckpoint() {
+        assertThrows(IOException.class, () ->
+                Checkpoints.restore(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }), STEPS, NEVER));
+    }
+
+    private static Engine<Object, Euclidean2DPosition> createEngine(
+            final long steps,
+            final Scheduler<Object> scheduler,
+            final boolean periodic) {
+        final Environment<Object, Euclidean2DPosition> env = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        final RandomGenerator rng = new MersenneTwister(SEED);
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(env);
+            node.setConcentration(VALUE, (long) i);
+            node.addReaction(new Gossip(node, env, rng, periodic && i % 2 == 0
+                    ? new DiracComb<>(1)
+                    : new ExponentialTime<>(1, rng)));
+            env.addNode(node, env.makePosition(i % SIDE, i / SIDE));
+        }
+        return new Engine<>(env, steps, NEVER, scheduler, new CompactDependencyGraph<>(env));
+    }
+
+    private static Engine<Object, Euclidean2DPosition> run(final Engine<Object, Euclidean2DPosition> sim) {
+        sim.play();
+        sim.run();
+        assertFalse(sim.getError().isPresent());
+        return sim;
+    }
+
+    private static List<Object> valuesOf(final Engine<Object, Euclidean2DPosition> sim) {
+        return sim.getEnvironment().getNodes().stream()
+            .map(node -> node.getConcentration(VALUE))
+            .collect(Collectors.toList());
+    }
+
+    /*
+     * Mixes the value of the node with those of its neighbors and some noise
+     */
+    private static final class Gossip extends AbstractReaction<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Environment<Object, ?> env;
+        private final RandomGenerator rng;
+        private Gossip(
+                final Node<Object> node,
+                final Environment<Object, ?> env,
+                final RandomGenerator rng,
+                final TimeDistribution<Object> timeDistribution) {
+            super(node, timeDistribution);
+            this.env = env;
+            this.rng = rng;
+            addInboundDependency(VALUE);
+            addOutboundDependency(VALUE);
+            setInputContext(Context.NEIGHBORHOOD);
+        }
+        @Override
+        public void execute() {
+            long result = (Long) getNode().getConcentration(VALUE) * FACTOR + rng.nextInt(NOISE);
+            for (final Node<Object> neighbor : env.getNeighborhood(getNode())) {
+                result += (Long) neighbor.getConcentration(VALUE);
+            }
+            getNode().setConcentration(VALUE, result % MODULO);
+        }
+        @Override
+        public void initializationComplete(final Time t, final Environment<Object, ?> env) {
+            update(t, true, env);
+        }
+        @Override
+        protected void updateInternalStatus(final Time curTime, final boolean executed, final Environment<Object, ?> env) {
+        }
+        @Override
+        public double getRate() {
+            return getTimeDistribution().getRate();
+        }
+        @Override
+        public Reaction<Object> cloneOnNewNode(final Node<Object> node, final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return 0L;
+        }
+    }
+
+}
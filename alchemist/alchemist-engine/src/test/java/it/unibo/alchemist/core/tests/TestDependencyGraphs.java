@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import com.google.common.collect.ImmutableSet;
+import it.unibo.alchemist.core.implementations.CompactDependencyGraph;
+import it.unibo.alchemist.core.implementations.JGraphTDependencyGraph;
+import it.unibo.alchemist.core.interfaces.DependencyGraph;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.AbstractReaction;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Dependency;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link CompactDependencyGraph} finds the same dependencies of
+ * {@link JGraphTDependencyGraph}.
+ */
+public class TestDependencyGraphs {
+
+    private static final int NODES = 200;
+    private static final int REACTIONS_PER_NODE = 4;
+    private static final int MOLECULES = 5;
+    private static final double GLOBAL_PROBABILITY = 0.01;
+    private static final double HALF = 0.5;
+    private static final double SIZE = 20;
+    private static final double RANGE = 2;
+    private static final long SEED = 42;
+
+    private Environment<Object, Euclidean2DPosition> env;
+    private RandomGenerator rng;
+    private List<Reaction<Object>> reactions;
+
+    /**
+     * Builds a random environment whose reactions read and write random
+     * molecules, with random contexts.
+     */
+    @BeforeEach
+    public void setUp() {
+        populate(GLOBAL_PROBABILITY);
+    }
+
+    private void populate(final double globalProbability) {
+        rng = new MersenneTwister(SEED);
+        env = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        reactions = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(env);
+            for (int j = 0; j < REACTIONS_PER_NODE; j++) {
+                final Reaction<Object> reaction = new RandomReaction(node, rng, globalProbability);
+                node.addReaction(reaction);
+                reactions.add(reaction);
+            }
+            env.addNode(node, env.makePosition(rng.nextDouble() * SIZE, rng.nextDouble() * SIZE));
+        }
+    }
+
+    /**
+     * Builds both graphs, then removes some reactions and some neighbors,
+     * checking after each phase that the two graphs agree.
+     */
+    @Test
+    public void testSameDependencies() {
+        final DependencyGraph<Object> reference = new JGraphTDependencyGraph<>(env);
+        final DependencyGraph<Object> compact = new CompactDependencyGraph<>(env);
+        for (final Reaction<Object> reaction : reactions) {
+            reference.createDependencies(reaction);
+            compact.createDependencies(reaction);
+        }
+        assertSameDependencies(reference, compact);
+        for (int i = 0; i < NODES; i++) {
+            final Reaction<Object> victim = reactions.remove(rng.nextInt(reactions.size()));
+            reference.removeDependencies(victim);
+            compact.removeDependencies(victim);
+            victim.getNode().removeReaction(victim);
+        }
+        assertSameDependencies(reference, compact);
+        for (final Node<Object> node : env) {
+            for (final Node<Object> neighbor : env.getNeighborhood(node)) {
+                if (rng.nextBoolean()) {
+                    reference.removeNeighbor(node, neighbor);
+                    compact.removeNeighbor(node, neighbor);
+                }
+            }
+        }
+        assertSameDependencies(reference, compact);
+        for (final Node<Object> node : env) {
+            for (final Node<Object> neighbor : env.getNeighborhood(node)) {
+                reference.addNeighbor(node, neighbor);
+                compact.addNeighbor(node, neighbor);
+            }
+        }
+        assertSameDependencies(reference, compact);
+    }
+
+    /**
+     * Checks that the outbound dependencies of the compact graph are a live,
+     * reusable view.
+     */
+    @Test
+    public void testOutboundDependenciesAreReused() {
+        final DependencyGraph<Object> compact = new CompactDependencyGraph<>(env);
+        reactions.forEach(compact::createDependencies);
+        final Reaction<Object> reaction = reactions.stream()
+            .filter(it -> compact.outboundDependencies(it).stream().anyMatch(other -> !other.equals(it)))
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+        final Reaction<Object> dependent = compact.outboundDependencies(reaction).stream()
+            .filter(it -> !it.equals(reaction))
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+        final int dependencies = compact.outboundDependencies(reaction).size();
+        assertSame(compact.outboundDependencies(reaction), compact.outboundDependencies(reaction));
+        compact.removeDependencies(dependent);
+        assertFalse(compact.outboundDependencies(reaction).contains(dependent));
+        assertEquals(dependencies - 1, compact.outboundDependencies(reaction).size());
+    }
+
+    /**
+     * Checks that the dependencies found through the inverted index, with
+     * global input or output contexts mixed with local ones, are exactly
+     * those found testing every pair of reactions. Reactions depending on
+     * themselves never get a self edge.
+     */
+    @Test
+    public void testGlobalDependencies() {
+        populate(HALF);
+        final DependencyGraph<Object> compact = new CompactDependencyGraph<>(env);
+        reactions.forEach(compact::createDependencies);
+        assertTrue(reactions.stream().anyMatch(it -> it.getInputContext() == Context.GLOBAL && it.getOutputContext() != Context.GLOBAL));
+        assertTrue(reactions.stream().anyMatch(it -> it.getInputContext() != Context.GLOBAL && it.getOutputContext() == Context.GLOBAL));
+        assertTrue(reactions.stream().anyMatch(it -> it.getInputContext() == Context.GLOBAL && dependsOn(it, it)));
+        assertTrue(reactions.stream().anyMatch(it -> it.getOutputContext() == Context.GLOBAL && dependsOn(it, it)));
+        for (final Reaction<Object> reaction : reactions) {
+            final ImmutableSet<Reaction<Object>> expected = reactions.stream()
+                .filter(it -> !it.equals(reaction) && dependsOn(it, reaction) && canReach(reaction, it))
+                .collect(ImmutableSet.toImmutableSet());
+            assertEquals(expected, ImmutableSet.copyOf(compact.outboundDependencies(reaction)));
+            assertFalse(compact.outboundDependencies(reaction).contains(reaction));
+        }
+    }
+
+    /*
+     * Whether the contexts of the two reactions and the distance between
+     * their nodes allow the influencer to change what the dependent reads
+     */
+    private boolean canReach(final Reaction<Object> influencer, final Reaction<Object> dependent) {
+        if (influencer.getOutputContext() == Context.GLOBAL || dependent.getInputContext() == Context.GLOBAL) {
+            return true;
+        }
+        final Node<Object> source = influencer.getNode();
+        final Node<Object> target = dependent.getNode();
+        final int wide = (influencer.getOutputContext() == Context.NEIGHBORHOOD ? 1 : 0)
+            + (dependent.getInputContext() == Context.NEIGHBORHOOD ? 1 : 0);
+        if (source.equals(target)) {
+            return true;
+        }
+        if (env.getNeighborhood(source).contains(target)) {
+            return wide >= 1;
+        }
+        return wide == 2 && env.getNeighborhood(source).getNeighbors().stream()
+            .anyMatch(it -> env.getNeighborhood(it).contains(target));
+    }
+
+    private static boolean dependsOn(final Reaction<?> dependent, final Reaction<?> influencer) {
+        return dependent.getInboundDependencies().stream()
+            .anyMatch(inbound -> influencer.getOutboundDependencies().stream()
+                .anyMatch(outbound -> inbound.dependsOn(outbound) || outbound.makesDependent(inbound)));
+    }
+
+    private void assertSameDependencies(final DependencyGraph<Object> expected, final DependencyGraph<Object> actual) {
+        int dependencies = 0;
+        for (final Reaction<Object> reaction : reactions) {
+            final ImmutableSet<Reaction<Object>> outbound = ImmutableSet.copyOf(expected.outboundDependencies(reaction));
+            assertEquals(outbound, ImmutableSet.copyOf(actual.outboundDependencies(reaction)));
+            assertEquals(outbound.size(), actual.outboundDependencies(reaction).size());
+            dependencies += outbound.size();
+        }
+        assertTrue(dependencies > 0);
+        assertEquals(
+            ImmutableSet.copyOf(expected.globalInputContextReactions()),
+            ImmutableSet.copyOf(actual.globalInputContextReactions())
+        );
+    }
+
+    private static final class RandomReaction extends AbstractReaction<Object> {
+        private static final long serialVersionUID = 1L;
+        private static final double SPECIAL_PROBABILITY = 0.05;
+        private static final Dependency[] SPECIAL = {
+            Dependency.EVERYTHING, Dependency.EVERY_MOLECULE, Dependency.MOVEMENT, new FirstMolecule(),
+        };
+        private RandomReaction(final Node<Object> node, final RandomGenerator rng, final double globalProbability) {
+            super(node, new DiracComb<>(1));
+            addInboundDependency(randomDependency(rng));
+            addOutboundDependency(randomDependency(rng));
+            setInputContext(randomContext(rng, globalProbability));
+            setOutputContext(randomContext(rng, globalProbability));
+        }
+        private static Dependency randomDependency(final RandomGenerator rng) {
+            if (rng.nextDouble() < SPECIAL_PROBABILITY) {
+                return SPECIAL[rng.nextInt(SPECIAL.length)];
+            }
+            return new SimpleMolecule("m" + rng.nextInt(MOLECULES));
+        }
+        private static Context randomContext(final RandomGenerator rng, final double globalProbability) {
+            if (rng.nextDouble() < globalProbability) {
+                return Context.GLOBAL;
+            }
+            return rng.nextBoolean() ? Context.LOCAL : Context.NEIGHBORHOOD;
+        }
+        @Override
+        protected void updateInternalStatus(final Time curTime, final boolean executed, final Environment<Object, ?> env) {
+        }
+        @Override
+        public double getRate() {
+            return getTimeDistribution().getRate();
+        }
+        @Override
+        public Reaction<Object> cloneOnNewNode(final Node<Object> node, final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * A dependency redefining the relation, which can not be indexed
+     */
+    private static final class FirstMolecule implements Dependency {
+        private static final long serialVersionUID = 1L;
+        private static final Dependency FIRST = new SimpleMolecule("m0");
+        @Override
+        public boolean dependsOn(final Dependency dependency) {
+            return FIRST.equals(dependency);
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
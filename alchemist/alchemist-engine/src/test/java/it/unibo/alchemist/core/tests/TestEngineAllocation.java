@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.implementations.ArrayIndexedQuaternaryHeap;
+import it.unibo.alchemist.core.implementations.CompactDependencyGraph;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.DependencyGraph;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.AbstractReaction;
+import it.unibo.alchemist.model.implementations.timedistributions.AbstractDistribution;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.danilopianini.util.ListSet;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that, once warmed up, the {@link Engine} does not allocate memory
+ * for each executed reaction, even when reactions change the topology.
+ */
+public class TestEngineAllocation {
+
+    private static final int REACTIONS = 10;
+    private static final int WARMUP_STEPS = 200_000;
+    private static final int MEASURED_STEPS = 200_000;
+    /*
+     * Less than an object per step, on average
+     */
+    private static final double MAX_BYTES_PER_STEP = 16;
+    private static final Molecule SHARED = new SimpleMolecule("shared");
+
+    /**
+     * Runs a simulation whose reactions all depend on each other, and whose
+     * time distributions do not allocate, measuring the memory allocated by
+     * the simulation thread after the warmup.
+     */
+    @Test
+    public void testNoAllocationPerStep() {
+        final Environment<Object, Euclidean2DPosition> env = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new NoLinks<>());
+        final Node<Object> node = new DummyNode(env);
+        for (int i = 0; i < REACTIONS; i++) {
+            node.addReaction(new SharedMoleculeReaction(node, new PrecomputedTimes(i)));
+        }
+        env.addNode(node, env.makePosition(0, 0));
+        assertNoAllocationPerStep(env, new CompactDependencyGraph<>(env));
+    }
+
+    /**
+     * As {@link #testNoAllocationPerStep()}, but some reactions notify the
+     * engine that their node moved, or that it gained or lost a neighbor. The
+     * environment is left untouched, and the dependency graph ignores the
+     * neighborhood changes: their cost belongs to the graph, and only the
+     * engine handling of the topology changes gets measured.
+     */
+    @Test
+    public void testNoAllocationPerStepWithTopologyChanges() {
+        final Environment<Object, Euclidean2DPosition> env = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new NoLinks<>());
+        final Node<Object> node = new DummyNode(env);
+        final Node<Object> other = new DummyNode(env);
+        for (int i = 0; i < REACTIONS; i++) {
+            node.addReaction(i % 2 == 0
+                    ? new SharedMoleculeReaction(node, new PrecomputedTimes(i))
+                    : new TopologyChangeReaction(env, node, other, new PrecomputedTimes(i)));
+        }
+        env.addNode(node, env.makePosition(0, 0));
+        env.addNode(other, env.makePosition(1, 0));
+        final FixedNeighborhoods graph = new FixedNeighborhoods(new CompactDependencyGraph<>(env));
+        assertNoAllocationPerStep(env, graph);
+        assertTrue(graph.changes > 0);
+    }
+
+    private static void assertNoAllocationPerStep(
+            final Environment<Object, Euclidean2DPosition> env,
+            final DependencyGraph<Object> graph) {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final Engine<Object, Euclidean2DPosition> sim = new Engine<>(env, WARMUP_STEPS + MEASURED_STEPS,
+                DoubleTime.INFINITE_TIME, new ArrayIndexedQuaternaryHeap<>(), graph);
+        final long[] allocated = new long[2];
+        sim.addOutputMonitor(new OutputMonitor<Object, Euclidean2DPosition>() {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public void finished(final Environment<Object, Euclidean2DPosition> env, final Time time, final long step) {
+                allocated[1] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            @Override
+            public void initialized(final Environment<Object, Euclidean2DPosition> env) {
+            }
+            @Override
+            public void stepDone(
+                    final Environment<Object, Euclidean2DPosition> env,
+                    final Reaction<Object> r,
+                    final Time time,
+                    final long step) {
+                if (step == WARMUP_STEPS) {
+                    allocated[0] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+        });
+        sim.play();
+        sim.run();
+        assertFalse(sim.getError().isPresent());
+        assertEquals(WARMUP_STEPS + MEASURED_STEPS, sim.getStep());
+        final double bytesPerStep = (allocated[1] - allocated[0]) / (double) MEASURED_STEPS;
+        assertTrue(bytesPerStep < MAX_BYTES_PER_STEP, "The engine allocated " + bytesPerStep + " bytes per step");
+    }
+
+    /*
+     * Reads and writes the same molecule, so that every reaction of the node depends on every other
+     */
+    private static final class SharedMoleculeReaction extends AbstractReaction<Object> {
+        private static final long serialVersionUID = 1L;
+        private SharedMoleculeReaction(final Node<Object> node, final PrecomputedTimes times) {
+            super(node, times);
+            addInboundDependency(SHARED);
+            addOutboundDependency(SHARED);
+        }
+        @Override
+        protected void updateInternalStatus(final Time curTime, final boolean executed, final Environment<Object, ?> env) {
+        }
+        @Override
+        public double getRate() {
+            return getTimeDistribution().getRate();
+        }
+        @Override
+        public Reaction<Object> cloneOnNewNode(final Node<Object> node, final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * Shares the molecule as well, and alternately reports a movement of its
+     * node, a new neighbor, and the loss of that neighbor
+     */
+    private static final class TopologyChangeReaction extends AbstractReaction<Object> {
+        private static final long serialVersionUID = 1L;
+        private static final int KINDS = 3;
+        private final Environment<Object, ?> env;
+        private final Node<Object> neighbor;
+        private int executions;
+        private TopologyChangeReaction(
+                final Environment<Object, ?> env,
+                final Node<Object> node,
+                final Node<Object> neighbor,
+                final PrecomputedTimes times) {
+            super(node, times);
+            this.env = env;
+            this.neighbor = neighbor;
+            addInboundDependency(SHARED);
+            addOutboundDependency(SHARED);
+        }
+        @Override
+        public void execute() {
+            final Simulation<Object, ?> simulation = env.getSimulation();
+            switch (executions++ % KINDS) {
+            case 0:
+                simulation.nodeMoved(getNode());
+                break;
+            case 1:
+                simulation.neighborAdded(getNode(), neighbor);
+                break;
+            default:
+                simulation.neighborRemoved(getNode(), neighbor);
+            }
+        }
+        @Override
+        protected void updateInternalStatus(final Time curTime, final boolean executed, final Environment<Object, ?> env) {
+        }
+        @Override
+        public double getRate() {
+            return getTimeDistribution().getRate();
+        }
+        @Override
+        public Reaction<Object> cloneOnNewNode(final Node<Object> node, final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * Delegates everything but the neighborhood changes, which only get counted
+     */
+    private static final class FixedNeighborhoods implements DependencyGraph<Object> {
+        private final DependencyGraph<Object> delegate;
+        private long changes;
+        private FixedNeighborhoods(final DependencyGraph<Object> delegate) {
+            this.delegate = delegate;
+        }
+        @Override
+        public void addNeighbor(final Node<Object> n1, final Node<Object> n2) {
+            changes++;
+        }
+        @Override
+        public void createDependencies(final Reaction<Object> rh) {
+            delegate.createDependencies(rh);
+        }
+        @Override
+        public void removeDependencies(final Reaction<Object> rh) {
+            delegate.removeDependencies(rh);
+        }
+        @Override
+        public void removeNeighbor(final Node<Object> n1, final Node<Object> n2) {
+            changes++;
+        }
+        @Override
+        public ListSet<Reaction<Object>> outboundDependencies(final Reaction<Object> reaction) {
+            return delegate.outboundDependencies(reaction);
+        }
+        @Override
+        public ListSet<Reaction<Object>> globalInputContextReactions() {
+            return delegate.globalInputContextReactions();
+        }
+    }
+
+    /*
+     * A periodic time distribution whose times are all built in advance
+     */
+    private static final class PrecomputedTimes extends AbstractDistribution<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Time[] times;
+        private int next;
+        private PrecomputedTimes(final int phase) {
+            this(buildTimes(phase));
+        }
+        private PrecomputedTimes(final Time[] times) {
+            super(times[0]);
+            this.times = times;
+        }
+        private static Time[] buildTimes(final int phase) {
+            final Time[] result = new Time[(WARMUP_STEPS + MEASURED_STEPS) / REACTIONS + 2];
+            for (int i = 0; i < result.length - 1; i++) {
+                result[i] = new DoubleTime(i + phase / (double) REACTIONS);
+            }
+            result[result.length - 1] = DoubleTime.INFINITE_TIME;
+            return result;
+        }
+        @Override
+        protected void updateStatus(final Time curTime, final boolean executed, final double param, final Environment<Object, ?> env) {
+            if (executed && next < times.length - 1) {
+                setTau(times[++next]);
+            }
+        }
+        @Override
+        public double getRate() {
+            return 1;
+        }
+        @Override
+        public AbstractDistribution<Object> clone(final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
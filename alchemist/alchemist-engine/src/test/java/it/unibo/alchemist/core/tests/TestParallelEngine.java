@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.core.implementations.AbstractEngine;
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.CompactDependencyGraph;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.implementations.ParallelEngine;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.AbstractReaction;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that {@link ParallelEngine} reaches the same state of {@link Engine}.
+ */
+public class TestParallelEngine {
+
+    private static final int SIDE = 20;
+    private static final int NODES = SIDE * SIDE;
+    private static final int ROUNDS = 30;
+    private static final int THREADS = 4;
+    private static final int REGIONS_PER_SIDE = 2;
+    private static final double RANGE = 1.1;
+    private static final long MODULO = 1_000_003;
+    private static final long FACTOR = 31;
+    private static final int NOISY_EVERY = 7;
+    private static final double NOISE_RATE = 0.3;
+    private static final long SEED = 1;
+    private static final Molecule VALUE = new SimpleMolecule("value");
+    /*
+     * Between two events, so that both engines stop after the same one
+     */
+    private static final Time FINAL_TIME = new DoubleTime(ROUNDS + 0.5 / (NODES + 1));
+
+    /**
+     * Runs the same order-sensitive, time-dependent computation on a static
+     * grid of nodes with both engines, and checks that the nodes end up with
+     * the same values.
+     */
+    @Test
+    public void testSameResults() {
+        assertSameResults(false);
+    }
+
+    /**
+     * As {@link #testSameResults()}, with some nodes also changing their value
+     * randomly, at random times drawn from the shared generator: with the same
+     * seed, both engines draw the same numbers.
+     */
+    @Test
+    public void testSameResultsWithRandomReactions() {
+        assertSameResults(true);
+    }
+
+    private static void assertSameResults(final boolean noisy) {
+        final AbstractEngine<Object, Euclidean2DPosition> sequential = run(noisy, env ->
+            new Engine<>(env, Long.MAX_VALUE, FINAL_TIME, new ArrayIndexedPriorityQueue<>(),
+                new CompactDependencyGraph<>(env)));
+        final AbstractEngine<Object, Euclidean2DPosition> parallel = run(noisy, env ->
+            new ParallelEngine<>(env, Long.MAX_VALUE, FINAL_TIME, THREADS, REGIONS_PER_SIDE,
+                ArrayIndexedPriorityQueue::new, new CompactDependencyGraph<>(env)));
+        assertEquals(sequential.getStep(), parallel.getStep());
+        assertEquals(valuesOf(sequential), valuesOf(parallel));
+    }
+
+    private static AbstractEngine<Object, Euclidean2DPosition> run(
+            final boolean noisy,
+            final Function<Environment<Object, Euclidean2DPosition>, AbstractEngine<Object, Euclidean2DPosition>> engine) {
+        final RandomGenerator rng = new MersenneTwister(SEED);
+        final Environment<Object, Euclidean2DPosition> env = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(env);
+            node.setConcentration(VALUE, (long) i);
+            /*
+             * Every event happens at a different time
+             */
+            node.addReaction(new Mixing(node, env, new DoubleTime(i / (double) (NODES + 1))));
+            if (noisy && i % NOISY_EVERY == 0) {
+                node.addReaction(new Noise(node, rng));
+            }
+            env.addNode(node, env.makePosition(i % SIDE, i / SIDE));
+        }
+        final AbstractEngine<Object, Euclidean2DPosition> sim = engine.apply(env);
+        sim.play();
+        sim.run();
+        assertFalse(sim.getError().isPresent());
+        return sim;
+    }
+
+    private static List<Object> valuesOf(final AbstractEngine<Object, Euclidean2DPosition> sim) {
+        return sim.getEnvironment().getNodes().stream()
+            .map(node -> node.getConcentration(VALUE))
+            .collect(Collectors.toList());
+    }
+
+    /*
+     * Mixes the value of the node with those of its neighbors and with the
+     * current time: the result depends on the execution order
+     */
+    private static final class Mixing extends AbstractReaction<Object> {
+        private static final long serialVersionUID = 1L;
+        private final Environment<Object, ?> env;
+        private Mixing(final Node<Object> node, final Environment<Object, ?> env, final Time start) {
+            super(node, new DiracComb<>(start, 1));
+            this.env = env;
+            addInboundDependency(VALUE);
+            addOutboundDependency(VALUE);
+            setInputContext(Context.NEIGHBORHOOD);
+        }
+        @Override
+        public void execute() {
+            long result = (Long) getNode().getConcentration(VALUE) * FACTOR + 1
+                + (long) (env.getSimulation().getTime().toDouble() * NODES);
+            for (final Node<Object> neighbor : env.getNeighborhood(getNode())) {
+                result += (Long) neighbor.getConcentration(VALUE);
+            }
+            getNode().setConcentration(VALUE, result % MODULO);
+        }
+        @Override
+        protected void updateInternalStatus(final Time curTime, final boolean executed, final Environment<Object, ?> env) {
+        }
+        @Override
+        public double getRate() {
+            return getTimeDistribution().getRate();
+        }
+        @Override
+        public Reaction<Object> cloneOnNewNode(final Node<Object> node, final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * Adds a random number to the value of the node
+     */
+    private static final class Noise extends AbstractReaction<Object> {
+        private static final long serialVersionUID = 1L;
+        private final RandomGenerator rng;
+        private Noise(final Node<Object> node, final RandomGenerator rng) {
+            super(node, new ExponentialTime<>(NOISE_RATE, rng));
+            this.rng = rng;
+            addInboundDependency(VALUE);
+            addOutboundDependency(VALUE);
+        }
+        @Override
+        public void execute() {
+            getNode().setConcentration(VALUE, ((Long) getNode().getConcentration(VALUE) + rng.nextInt(NODES)) % MODULO);
+        }
+        @Override
+        protected void updateInternalStatus(final Time curTime, final boolean executed, final Environment<Object, ?> env) {
+        }
+        @Override
+        public double getRate() {
+            return getTimeDistribution().getRate();
+        }
+        @Override
+        public Reaction<Object> cloneOnNewNode(final Node<Object> node, final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return 0L;
+        }
+    }
+
+}
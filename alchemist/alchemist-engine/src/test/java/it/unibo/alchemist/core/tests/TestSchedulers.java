@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.ArrayIndexedQuaternaryHeap;
+import it.unibo.alchemist.core.implementations.CalendarQueue;
+import it.unibo.alchemist.core.interfaces.Scheduler;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.Event;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import it.unibo.alchemist.model.interfaces.TimeDistribution;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that alternative {@link Scheduler} implementations produce the same
+ * ordering of {@link ArrayIndexedPriorityQueue}.
+ */
+public class TestSchedulers {
+
+    private static final int REACTIONS = 500;
+    private static final int STEPS = 20_000;
+    private static final long SEED = 42;
+
+    /**
+     * Test the 4-ary heap.
+     */
+    @Test
+    public void testQuaternaryHeap() {
+        assertSameOrder(ArrayIndexedQuaternaryHeap::new);
+    }
+
+    /**
+     * Under periodic time distributions many reactions share the same
+     * putative time. The 4-ary heap executes them in handle order, rather than
+     * in the order left by the binary heap of {@link ArrayIndexedPriorityQueue},
+     * but both execute the same reactions at each time.
+     */
+    @Test
+    public void testQuaternaryHeapTies() {
+        final List<List<Integer>> reference = byTime(run(ArrayIndexedPriorityQueue::new, TestSchedulers::periodic));
+        final List<List<Integer>> heap = byTime(run(ArrayIndexedQuaternaryHeap::new, TestSchedulers::periodic));
+        assertEquals(reference.size(), heap.size());
+        assertTrue(heap.stream().anyMatch(simultaneous -> simultaneous.size() > 1));
+        /*
+         * The last instant may have been cut by the end of the run
+         */
+        for (int i = 0; i < heap.size() - 1; i++) {
+            final List<Integer> simultaneous = heap.get(i);
+            assertEquals(simultaneous.stream().sorted().collect(Collectors.toList()), simultaneous);
+            assertEquals(simultaneous, reference.get(i).stream().sorted().collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Test the calendar queue, both with random and with periodic reactions.
+     * In the latter case many reactions share the same putative time, so the
+     * reference is the 4-ary heap, which breaks ties in the same way.
+     */
+    @Test
+    public void testCalendarQueue() {
+        assertSameOrder(CalendarQueue::new);
+        assertEquals(
+            run(ArrayIndexedQuaternaryHeap::new, TestSchedulers::periodic),
+            run(CalendarQueue::new, TestSchedulers::periodic)
+        );
+    }
+
+    private static void assertSameOrder(final Supplier<Scheduler<Object>> candidate) {
+        assertEquals(run(ArrayIndexedPriorityQueue::new, TestSchedulers::exponential),
+            run(candidate, TestSchedulers::exponential));
+    }
+
+    private static TimeDistribution<Object> exponential(final int index, final RandomGenerator rng) {
+        return new ExponentialTime<>(1 + index % 10, rng);
+    }
+
+    private static TimeDistribution<Object> periodic(final int index, final RandomGenerator rng) {
+        return new DiracComb<>(new DoubleTime(index % 3), 1 + index % 4);
+    }
+
+    /*
+     * Splits the executions in groups of simultaneous ones
+     */
+    private static List<List<Integer>> byTime(final List<Execution> executions) {
+        final List<List<Integer>> result = new ArrayList<>();
+        Time last = null;
+        for (final Execution execution : executions) {
+            if (!execution.getTime().equals(last)) {
+                result.add(new ArrayList<>());
+                last = execution.getTime();
+            }
+            result.get(result.size() - 1).add(execution.getIndex());
+        }
+        return result;
+    }
+
+    private static List<Execution> run(
+            final Supplier<Scheduler<Object>> schedulerFactory,
+            final BiFunction<Integer, RandomGenerator, TimeDistribution<Object>> timeDistribution) {
+        final Environment<Object, Euclidean2DPosition> env = new Continuous2DEnvironment<>();
+        final RandomGenerator rng = new MersenneTwister(SEED);
+        final Scheduler<Object> scheduler = schedulerFactory.get();
+        final List<Reaction<Object>> reactions = new ArrayList<>(REACTIONS);
+        for (int i = 0; i < REACTIONS; i++) {
+            final Reaction<Object> reaction = new Event<>(new DummyNode(env), timeDistribution.apply(i, rng));
+            reaction.update(DoubleTime.ZERO_TIME, false, env);
+            reactions.add(reaction);
+            scheduler.addReaction(reaction);
+        }
+        final List<Execution> executionOrder = new ArrayList<>(STEPS);
+        for (int step = 0; step < STEPS; step++) {
+            final Reaction<Object> next = scheduler.getNext();
+            final Time now = next.getTau();
+            final int index = reactions.indexOf(next);
+            executionOrder.add(new Execution(index, now));
+            next.update(now, true, env);
+            scheduler.updateReaction(next);
+            /*
+             * Periodically shuffle the structure by removing and re-adding some reactions
+             */
+            if (step % 97 == 0) {
+                final Reaction<Object> victim = reactions.get(rng.nextInt(REACTIONS));
+                scheduler.removeReaction(victim);
+                victim.update(now, false, env);
+                scheduler.addReaction(victim);
+            }
+        }
+        reactions.forEach(scheduler::removeReaction);
+        assertNull(scheduler.getNext());
+        return executionOrder;
+    }
+
+    private static final class Execution {
+        private final int index;
+        private final Time time;
+        private Execution(final int index, final Time time) {
+            this.index = index;
+            this.time = time;
+        }
+        private int getIndex() {
+            return index;
+        }
+        private Time getTime() {
+            return time;
+        }
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj instanceof Execution) {
+                final Execution other = (Execution) obj;
+                return index == other.index && time.equals(other.time);
+            }
+            return false;
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, time);
+        }
+        @Override
+        public String toString() {
+            return index + "@" + time;
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.core.tests;
+
+import it.unibo.alchemist.core.implementations.AbstractEngine;
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.CompactDependencyGraph;
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.implementations.SynchronousEngine;
+import it.unibo.alchemist.model.implementations.actions.DepositInLayer;
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.layers.DiffusionLayer;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.molecules.SimpleMolecule;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.AbstractReaction;
+import it.unibo.alchemist.model.implementations.reactions.DiffusionLayerUpdate;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Layer;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link SynchronousEngine} reaches the same state of {@link Engine}.
+ */
+public class TestSynchronousEngine {
+
+    private static final int SIDE = 25;
+    private static final int NODES = SIDE * SIDE;
+    private static final int ROUNDS = 20;
+    private static final int PHASES = 3;
+    private static final int THREADS = 4;
+    private static final double RANGE = 1.5;
+    private static final double HALF = 0.5;
+    private static final long MODULO = 1_000_003;
+    private static final long FACTOR = 31;
+    private static final Molecule VALUE = new SimpleMolecule("value");
+    private static final Molecule SUM = new SimpleMolecule("sum");
+    private static final Molecule PHEROMONE = new SimpleMolecule("pheromone");
+    private static final int DEPOSIT_SITES = 4;
+    private static final double DIFFUSION = 0.1;
+    private static final double TOLERANCE = 1e-9;
+    /*
+     * Between two events, so that both engines stop after the same one
+     */
+    private static final Time FINAL_TIME = new DoubleTime(ROUNDS + HALF / 2);
+
+    /**
+     * Runs local rounds, many at the same time, interleaved with reactions
+     * reading the neighborhood, and checks that both engines compute the same
+     * values in the same number of steps.
+     */
+    @Test
+    public void testSameResults() {
+        final AbstractEngine<Object, Euclidean2DPosition> sequential = run(env ->
+            new Engine<>(env, Long.MAX_VALUE, FINAL_TIME, new ArrayIndexedPriorityQueue<>(),
+                new CompactDependencyGraph<>(env)));
+        final AbstractEngine<Object, Euclidean2DPosition> synchronous = run(env ->
+            new SynchronousEngine<>(env, Long.MAX_VALUE, FINAL_TIME, THREADS));
+        assertEquals(sequential.getStep(), synchronous.getStep());
+        assertEquals(valuesOf(sequential, VALUE), valuesOf(synchronous, VALUE));
+        assertEquals(valuesOf(sequential, SUM), valuesOf(synchronous, SUM));
+    }
+
+    /**
+     * Checks the default detection of round-based reactions.
+     */
+    @Test
+    public void testRoundDetection() {
+        final Environment<Object, Euclidean2DPosition> env = new Continuous2DEnvironment<>();
+        final Node<Object> node = new DummyNode(env);
+        assertTrue(SynchronousEngine.isRoundBased(new Round(node)));
+        assertFalse(SynchronousEngine.isRoundBased(new Sum(node, env)));
+    }
+
+    /**
+     * Many nodes update and deposit into the same {@link DiffusionLayer}: they
+     * must never run concurrently, and the layer must evolve as it does with
+     * {@link Engine}.
+     */
+    @Test
+    public void testSharedLayer() {
+        final List<Double> sequential = runLayer(env ->
+            new Engine<>(env, Long.MAX_VALUE, FINAL_TIME, new ArrayIndexedPriorityQueue<>(),
+                new CompactDependencyGraph<>(env)));
+        final List<Double> synchronous = runLayer(env ->
+            new SynchronousEngine<>(env, Long.MAX_VALUE, FINAL_TIME, THREADS));
+        assertEquals(sequential, synchronous);
+        assertEquals((double) NODES * ROUNDS, synchronous.stream().mapToDouble(Double::doubleValue).sum(), NODES * ROUNDS * TOLERANCE);
+    }
+
+    private static List<Double> runLayer(
+            final Function<Environment<Object, Euclidean2DPosition>, AbstractEngine<Object, Euclidean2DPosition>> engine) {
+        final Environment<Object, Euclidean2DPosition> env = new Continuous2DEnvironment<>();
+        final DiffusionLayer<Euclidean2DPosition> layer = new DiffusionLayer<>(0, 0, SIDE, SIDE, 1, DIFFUSION, 0);
+        @SuppressWarnings("unchecked")
+        final Layer<Object, Euclidean2DPosition> asLayer = (Layer<Object, Euclidean2DPosition>) (Layer<?, ?>) layer;
+        env.addLayer(PHEROMONE, asLayer);
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(env);
+            final Reaction<Object> update = new DiffusionLayerUpdate<>(env, node, new DiracComb<>(new DoubleTime(1), 1), PHEROMONE);
+            final Reaction<Object> deposit = new Deposit(node, env);
+            assertFalse(SynchronousEngine.isRoundBased(update));
+            assertFalse(SynchronousEngine.isRoundBased(deposit));
+            node.addReaction(update);
+            node.addReaction(deposit);
+            env.addNode(node, env.makePosition(i % DEPOSIT_SITES, 0));
+        }
+        final AbstractEngine<Object, Euclidean2DPosition> sim = engine.apply(env);
+        sim.play();
+        sim.run();
+        assertFalse(sim.getError().isPresent());
+        final List<Double> values = new ArrayList<>();
+        for (int x = 0; x <= SIDE; x++) {
+            for (int y = 0; y <= SIDE; y++) {
+                values.add(layer.getValue(x, y));
+            }
+        }
+        return values;
+    }
+
+    private static AbstractEngine<Object, Euclidean2DPosition> run(
+            final Function<Environment<Object, Euclidean2DPosition>, AbstractEngine<Object, Euclidean2DPosition>> engine) {
+        final Environment<Object, Euclidean2DPosition> env = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        for (int i = 0; i < NODES; i++) {
+            final Node<Object> node = new DummyNode(env);
+            node.setConcentration(VALUE, (long) i);
+            node.setConcentration(SUM, 0L);
+            node.addReaction(new Round(node));
+            node.addReaction(new Sum(node, env));
+            env.addNode(node, env.makePosition(i % SIDE, i / SIDE));
+        }
+        final AbstractEngine<Object, Euclidean2DPosition> sim = engine.apply(env);
+        sim.play();
+        sim.run();
+        assertFalse(sim.getError().isPresent());
+        return sim;
+    }
+
+    private static List<Object> valuesOf(final AbstractEngine<Object, Euclidean2DPosition> sim, final Molecule molecule) {
+        return sim.getEnvironment().getNodes().stream()
+            .map(node -> node.getConcentration(molecule))
+            .collect(Collectors.toList());
+    }
+
+    private abstract static class TestReaction extends AbstractReaction<Object> {
+        private static final long serialVersionUID = 1L;
+        private TestReaction(final Node<Object> node, final double start) {
+            super(node, new DiracComb<>(new DoubleTime(start), 1));
+        }
+        @Override
+        protected final void updateInternalStatus(final Time curTime, final boolean executed, final Environment<Object, ?> env) {
+        }
+        @Override
+        public final double getRate() {
+            return getTimeDistribution().getRate();
+        }
+        @Override
+        public final Reaction<Object> cloneOnNewNode(final Node<Object> node, final Time currentTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * Updates the local value, at integer times
+     */
+    private static final class Round extends TestReaction {
+        private static final long serialVersionUID = 1L;
+        private Round(final Node<Object> node) {
+            super(node, node.getId() % PHASES);
+            addInboundDependency(VALUE);
+            addOutboundDependency(VALUE);
+        }
+        @Override
+        public void execute() {
+            final long value = (Long) getNode().getConcentration(VALUE);
+            getNode().setConcentration(VALUE, (value * FACTOR + getNode().getId() + 1) % MODULO);
+        }
+    }
+
+    /*
+     * Sums the values of the neighborhood, between two rounds
+     */
+    private static final class Sum extends TestReaction {
+        private static final long serialVersionUID = 1L;
+        private final Environment<Object, ?> env;
+        private Sum(final Node<Object> node, final Environment<Object, ?> env) {
+            super(node, HALF);
+            this.env = env;
+            addInboundDependency(VALUE);
+            addOutboundDependency(SUM);
+            setInputContext(Context.NEIGHBORHOOD);
+        }
+        @Override
+        public void execute() {
+            long sum = (Long) getNode().getConcentration(VALUE);
+            for (final Node<Object> neighbor : env.getNeighborhood(getNode())) {
+                sum += (Long) neighbor.getConcentration(VALUE);
+            }
+            getNode().setConcentration(SUM, sum % MODULO);
+        }
+    }
+
+    /*
+     * Deposits into the shared layer, between two updates
+     */
+    private static final class Deposit extends TestReaction {
+        private static final long serialVersionUID = 1L;
+        private Deposit(final Node<Object> node, final Environment<Object, Euclidean2DPosition> env) {
+            super(node, HALF);
+            setActions(Collections.singletonList(new DepositInLayer<>(env, node, PHEROMONE, 1)));
+        }
+    }
+
+    private static final class DummyNode extends AbstractNode<Object> {
+        private static final long serialVersionUID = 1L;
+        private DummyNode(final Environment<?, ?> env) {
+            super(env);
+        }
+        @Override
+        protected Object createT() {
+            return 0L;
+        }
+    }
+
+}
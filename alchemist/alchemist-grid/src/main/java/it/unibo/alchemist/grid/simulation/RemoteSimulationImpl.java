@@ -24,6 +24,7 @@ import org.kaikikm.threadresloader.ResourceLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
 import it.unibo.alchemist.core.implementations.Engine;
 import it.unibo.alchemist.core.interfaces.Simulation;
 import it.unibo.alchemist.grid.config.GeneralSimulationConfig;
@@ -74,7 +75,8 @@ public final class RemoteSimulationImpl<T, P extends Position<P>> implements Rem
                 ResourceLoader.injectURLs(wd.getDirectoryUrl());
                 final Loader loader = generalConfig.getLoader();
                 final Environment<T, P> env = loader.getWith(config.getVariables());
-                final Simulation<T, P> sim = new Engine<>(env, generalConfig.getEndStep(), generalConfig.getEndTime());
+                final Simulation<T, P> sim = new Engine<>(env, generalConfig.getEndStep(), generalConfig.getEndTime(),
+                        loader.<T>getScheduler().orElseGet(ArrayIndexedPriorityQueue::new));
                 final Map<String, Object> defaultVars = loader.getVariables().entrySet().stream()
                         .collect(Collectors.toMap(Entry::getKey, e -> e.getValue().getDefault()));
                 defaultVars.putAll(config.getVariables());
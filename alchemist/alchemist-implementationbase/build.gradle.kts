@@ -10,6 +10,14 @@ plugins {
     scala
 }
 
+val benchmark by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += output + compileClasspath
+}
+
+configurations[benchmark.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[benchmark.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
 dependencies {
     api(project(":alchemist-interfaces"))
     api(Libs.commons_math3)
@@ -21,7 +29,6 @@ dependencies {
     implementation(Libs.classgraph)
     implementation(Libs.commons_lang3)
     implementation(Libs.concurrentlinkedhashmap_lru)
-    implementation(Libs.rtree)
     implementation(Libs.scala_compiler)
     implementation(Libs.scala_library)
     implementation(Libs.trove4j)
@@ -38,3 +45,9 @@ configurations {
         )
     }
 }
+
+tasks.register<JavaExec>("benchmark") {
+    description = "Measures the spatial indexes on large numbers of moving nodes."
+    classpath = benchmark.runtimeClasspath
+    main = "it.unibo.alchemist.benchmark.BenchmarkSpatialIndexes"
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.benchmark;
+
+import it.unibo.alchemist.model.implementations.spatialindexes.Octree;
+import it.unibo.alchemist.model.implementations.spatialindexes.UniformGridIndex;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.danilopianini.util.FlexibleQuadTree;
+import org.danilopianini.util.SpatialIndex;
+
+import java.util.function.Supplier;
+
+/**
+ * Compares the {@link UniformGridIndex} with the {@link FlexibleQuadTree} on
+ * uniformly distributed elements (one per unit of area), moving by small
+ * steps and queried within a fixed range, as nodes of an environment linked
+ * by a {@link it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance}.
+ * The {@link Octree} is measured the same way, with one element per unit of
+ * volume.
+ * Being slow, it is not part of the tests: run it with the benchmark task.
+ */
+public final class BenchmarkSpatialIndexes {
+
+    private static final int[] SIZES = { 10_000, 100_000, 1_000_000 };
+    private static final int OPERATIONS = 100_000;
+    private static final double RANGE = 1.5;
+    private static final double STEP = 0.05;
+    private static final long SEED = 0;
+    private static final int DIMENSIONS_3D = 3;
+
+    private BenchmarkSpatialIndexes() {
+    }
+
+    /**
+     * Prints the time per operation of insertions, moves and queries.
+     *
+     * @param args
+     *            ignored
+     */
+    public static void main(final String[] args) {
+        for (final int size: SIZES) {
+            final long treeResults = run("quadtree", size, 2, FlexibleQuadTree::new);
+            final long gridResults = run("grid", size, 2, () -> new UniformGridIndex<>(RANGE));
+            if (treeResults != gridResults) {
+                throw new IllegalStateException("The grid found " + gridResults
+                        + " elements, the quadtree " + treeResults);
+            }
+            run("octree", size, DIMENSIONS_3D, Octree::new);
+        }
+    }
+
+    /*
+     * Returns the total number of elements found by the queries, for the
+     * indexes to be cross-checked, and for the queries not to be optimized
+     * away
+     */
+    private static long run(final String name, final int size, final int dimensions,
+            final Supplier<SpatialIndex<Integer>> indexFactory) {
+        final RandomGenerator rng = new MersenneTwister(SEED);
+        final double side = FastMath.pow(size, 1d / dimensions);
+        final double[][] positions = new double[size][dimensions];
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < dimensions; d++) {
+                positions[i][d] = rng.nextDouble() * side;
+            }
+        }
+        final SpatialIndex<Integer> index = indexFactory.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            index.insert(i, positions[i]);
+        }
+        final long insertion = System.nanoTime() - start;
+        final int operations = Math.min(size, OPERATIONS);
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            final int target = rng.nextInt(size);
+            final double[] destination = new double[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                destination[d] = positions[target][d] + (rng.nextDouble() * 2 - 1) * STEP;
+            }
+            index.move(target, positions[target], destination);
+            positions[target] = destination;
+        }
+        final long moves = System.nanoTime() - start;
+        long found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            final double[] center = positions[rng.nextInt(size)];
+            final double[] min = new double[dimensions];
+            final double[] max = new double[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                min[d] = center[d] - RANGE;
+                max[d] = center[d] + RANGE;
+            }
+            found += index.query(min, max).size();
+        }
+        final long queries = System.nanoTime() - start;
+        System.out.printf("%-8s %9d nodes: insert %6d ns/op, move %6d ns/op, query %6d ns/op%n", // NOPMD
+                name, size, insertion / size, moves / operations, queries / operations);
+        return found;
+    }
+
+}
@@ -53,7 +53,11 @@ public final class BrownianMove<T, P extends Position<P>> extends AbstractMoveNo
 
     @Override
     public P getNextPosition() {
-        return getEnvironment().makePosition(genRandom() * r, genRandom() * r);
+        final Number[] displacement = new Number[getEnvironment().getDimensions()];
+        for (int i = 0; i < displacement.length; i++) {
+            displacement[i] = genRandom() * r;
+        }
+        return getEnvironment().makePosition(displacement);
     }
 
     private double genRandom() {
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.actions;
+
+import it.unibo.alchemist.model.implementations.layers.DiffusionLayer;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position2D;
+import it.unibo.alchemist.model.interfaces.Reaction;
+
+/**
+ * Deposits a fixed quantity into a {@link DiffusionLayer}, in the position of
+ * the node. Negative quantities remove from the layer.
+ * <p>
+ * The layer is shared by all the nodes, hence this action has a global
+ * context: engines never execute it concurrently with other events.
+ *
+ * @param <T> concentration type
+ * @param <P> position type
+ */
+public final class DepositInLayer<T, P extends Position2D<? extends P>> extends AbstractAction<T> {
+
+    private static final long serialVersionUID = 1L;
+    private final Environment<T, P> environment;
+    private final DiffusionLayer<P> layer;
+    private final Molecule molecule;
+    private final double quantity;
+
+    /**
+     * @param environment
+     *            the environment, containing the layer
+     * @param node
+     *            the node depositing
+     * @param molecule
+     *            the molecule identifying the {@link DiffusionLayer}
+     * @param quantity
+     *            the quantity deposited at each execution
+     */
+    @SuppressWarnings("unchecked")
+    public DepositInLayer(final Environment<T, P> environment, final Node<T> node, final Molecule molecule, final double quantity) {
+        super(node);
+        this.environment = environment;
+        this.molecule = molecule;
+        this.quantity = quantity;
+        this.layer = environment.getLayer(molecule)
+                .filter(it -> it instanceof DiffusionLayer)
+                .map(it -> (DiffusionLayer<P>) it)
+                .orElseThrow(() -> new IllegalArgumentException("There is no " + DiffusionLayer.class.getSimpleName()
+                        + " for " + molecule));
+    }
+
+    @Override
+    public Action<T> cloneAction(final Node<T> n, final Reaction<T> r) {
+        return new DepositInLayer<>(environment, n, molecule, quantity);
+    }
+
+    /**
+     * @return {@link Context#GLOBAL}, as the layer is shared by all the nodes
+     */
+    @Override
+    public Context getContext() {
+        return Context.GLOBAL;
+    }
+
+    @Override
+    public void execute() {
+        layer.deposit(environment.getPosition(getNode()), quantity);
+    }
+
+}
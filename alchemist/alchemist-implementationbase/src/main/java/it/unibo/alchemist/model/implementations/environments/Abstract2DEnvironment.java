@@ -13,6 +13,7 @@ import static java.lang.Double.POSITIVE_INFINITY;
 
 import org.apache.commons.math3.util.FastMath;
 import org.danilopianini.util.FlexibleQuadTree;
+import org.danilopianini.util.SpatialIndex;
 
 import it.unibo.alchemist.model.interfaces.Neighborhood;
 import it.unibo.alchemist.model.interfaces.Node;
@@ -33,10 +34,31 @@ public abstract class Abstract2DEnvironment<T, P extends Position2D<P>> extends
             maxY = NEGATIVE_INFINITY;
 
     /**
-     * 
+     * Builds an environment indexing its nodes with a {@link FlexibleQuadTree}.
      */
     protected Abstract2DEnvironment() {
-        super(new FlexibleQuadTree<>());
+        this(new FlexibleQuadTree<>());
+    }
+
+    /**
+     * @param internalIndex
+     *            the bidimensional {@link SpatialIndex} to use in order to
+     *            efficiently retrieve nodes.
+     */
+    protected Abstract2DEnvironment(final SpatialIndex<Node<T>> internalIndex) {
+        super(internalIndex);
+    }
+
+    /**
+     * @param internalIndex
+     *            the bidimensional {@link SpatialIndex} to use in order to
+     *            efficiently retrieve nodes.
+     * @param positions
+     *            the empty {@link PositionStore} keeping the positions of the
+     *            nodes
+     */
+    protected Abstract2DEnvironment(final SpatialIndex<Node<T>> internalIndex, final PositionStore<P> positions) {
+        super(internalIndex, positions);
     }
 
     /**
@@ -11,6 +11,9 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -30,15 +33,16 @@ import java.util.stream.StreamSupport;
 
 import javax.annotation.Nonnull;
 
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.math3.util.FastMath;
+import org.apache.commons.math3.util.Pair;
 import org.danilopianini.util.ArrayListSet;
 import org.danilopianini.util.LinkedListSet;
 import org.danilopianini.util.ListSet;
 import org.danilopianini.util.ListSets;
 import org.danilopianini.util.SpatialIndex;
+import org.danilopianini.util.stream.SmallestN;
+import org.jooq.lambda.tuple.Tuple2;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.common.collect.Sets;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
@@ -46,6 +50,8 @@ import gnu.trove.set.TIntSet;
 import gnu.trove.set.hash.TIntHashSet;
 import it.unibo.alchemist.SupportedIncarnations;
 import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.neighborhoods.Neighborhoods;
 import it.unibo.alchemist.model.interfaces.Environment;
 import it.unibo.alchemist.model.interfaces.Incarnation;
 import it.unibo.alchemist.model.interfaces.Layer;
@@ -71,9 +77,9 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
     private final Map<Molecule, Layer<T, P>> layers = new LinkedHashMap<>();
     private final TIntObjectHashMap<Neighborhood<T>> neighCache = new TIntObjectHashMap<>();
     private final ListSet<Node<T>> nodes = new ArrayListSet<>();
-    private final TIntObjectHashMap<P> nodeToPos = new TIntObjectHashMap<>();
+    private final PositionStore<P> positions;
     private final SpatialIndex<Node<T>> spatialIndex;
-    private transient LoadingCache<ImmutablePair<P, Double>, ListSet<Node<T>>> cache;
+    private transient volatile RangeQueryCache<T, P> cache;
     private transient Incarnation<T, P> incarnation;
     private LinkingRule<T, P> rule;
     private transient Simulation<T, P> simulation;
@@ -85,7 +91,20 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
      *            retrieve nodes.
      */
     protected AbstractEnvironment(final SpatialIndex<Node<T>> internalIndex) {
+        this(internalIndex, new MapPositionStore<>());
+    }
+
+    /**
+     * @param internalIndex
+     *            the {@link SpatialIndex} to use in order to efficiently
+     *            retrieve nodes.
+     * @param positions
+     *            the empty {@link PositionStore} keeping the positions of the
+     *            nodes
+     */
+    protected AbstractEnvironment(final SpatialIndex<Node<T>> internalIndex, final PositionStore<P> positions) {
         spatialIndex = Objects.requireNonNull(internalIndex);
+        this.positions = Objects.requireNonNull(positions);
     }
 
     @Override
@@ -121,11 +140,110 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         }
     }
 
+    /**
+     * Nodes are admitted and indexed in order, as by
+     * {@link #addNode(Node, Position)}. If the linking rule connects exactly
+     * the nodes within a range and {@link #canAddInBulk(Collection)} allows it,
+     * the neighborhoods of all the new nodes are then computed in parallel,
+     * each neighborhood of the nodes already present is rebuilt at most once,
+     * and the simulation and {@link #nodeAdded(Node, Position, Neighborhood)}
+     * get notified only once all the neighborhoods are in place. Otherwise,
+     * nodes are added one by one.
+     */
+    @Override
+    public final void addNodes(final Collection<? extends Pair<? extends Node<T>, ? extends P>> toAdd) {
+        if (!(rule instanceof ConnectWithinDistance
+                && ((ConnectWithinDistance<T, P>) rule).isExactlyWithinRange()
+                && ((ConnectWithinDistance<T, P>) rule).getRange() > 0
+                && canAddInBulk(toAdd))) {
+            for (final Pair<? extends Node<T>, ? extends P> pair: toAdd) {
+                addNode(pair.getFirst(), pair.getSecond());
+            }
+            return;
+        }
+        final double range = ((ConnectWithinDistance<T, P>) rule).getRange();
+        final List<Node<T>> added = new ArrayList<>(toAdd.size());
+        final List<P> requested = new ArrayList<>(toAdd.size());
+        final TIntSet addedIds = new TIntHashSet(toAdd.size());
+        for (final Pair<? extends Node<T>, ? extends P> pair: toAdd) {
+            final Node<T> node = pair.getFirst();
+            final P p = pair.getSecond();
+            if (nodeShouldBeAdded(node, p)) {
+                final P actualPosition = computeActualInsertionPosition(node, p);
+                setPosition(node, actualPosition);
+                if (!nodes.add(node)) {
+                    throw new IllegalArgumentException("Node with id " + node.getId() + " was already existing in this environment.");
+                }
+                spatialIndex.insert(node, actualPosition.getCartesianCoordinates());
+                added.add(node);
+                requested.add(p);
+                addedIds.add(node.getId());
+            }
+        }
+        /*
+         * Queries only read the spatial index and the positions, hence they
+         * can run concurrently. The range query cache is bypassed, as each
+         * query is run once and would only evict useful results.
+         */
+        final List<Neighborhood<T>> neighborhoods = added.parallelStream()
+                .map(node -> {
+                    final List<Node<T>> neighbors = new ArrayList<>(runQuery(getPosition(node), range));
+                    if (!neighbors.remove(node)) {
+                        throw new IllegalStateException("Node " + node + " located at " + getPosition(node)
+                                + " could not be found within range " + range + " from its own position.");
+                    }
+                    return Neighborhoods.make(this, node, neighbors);
+                })
+                .collect(Collectors.toList());
+        /*
+         * The nodes already present gain all their new neighbors at once
+         */
+        final Map<Node<T>, List<Node<T>>> gained = new LinkedHashMap<>();
+        for (int i = 0; i < added.size(); i++) {
+            final Node<T> node = added.get(i);
+            final Neighborhood<T> neighborhood = neighborhoods.get(i);
+            neighCache.put(node.getId(), neighborhood);
+            for (final Node<T> neighbor: neighborhood) {
+                if (!addedIds.contains(neighbor.getId())) {
+                    gained.computeIfAbsent(neighbor, it -> new ArrayList<>()).add(node);
+                }
+            }
+        }
+        gained.forEach((node, newNeighbors) -> {
+            final List<Node<T>> neighbors = new ArrayList<>(getNeighborhood(node).getNeighbors());
+            neighbors.addAll(newNeighbors);
+            neighCache.put(node.getId(), Neighborhoods.make(this, node, neighbors));
+        });
+        for (int i = 0; i < added.size(); i++) {
+            final Node<T> node = added.get(i);
+            ifEngineAvailable(s -> s.nodeAdded(node));
+            nodeAdded(node, requested.get(i), getNeighborhood(node));
+        }
+    }
+
     @Override
     public final void addTerminator(final Predicate<Environment<T, P>> terminator) {
         this.terminator = this.terminator.orPredicate(terminator);
     }
 
+    /**
+     * Allows subclasses to prevent {@link #addNodes(Collection)} from notifying
+     * {@link #nodeAdded(Node, Position, Neighborhood)} after all the given
+     * nodes have been admitted and indexed. This must happen if
+     * {@link #nodeShouldBeAdded(Node, Position)} or
+     * {@link #computeActualInsertionPosition(Node, Position)} depend on the
+     * state that {@link #nodeAdded(Node, Position, Neighborhood)} updates for
+     * these nodes: they would get added one by one.
+     *
+     * @param toAdd
+     *            the nodes about to be added, with their requested positions
+     * @return true if the nodes can be added in bulk. This implementation
+     *         always returns true
+     */
+    protected boolean canAddInBulk(final Collection<? extends Pair<? extends Node<T>, ? extends P>> toAdd) {
+        return true;
+    }
+
     /**
      * Allows subclasses to tune the actual position of a node, applying spatial
      * constrains at node addition.
@@ -154,17 +272,22 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         if (range <= 0) {
             throw new IllegalArgumentException("Range query must be positive (provided: " + range + ")");
         }
-        if (cache == null) {
-            cache = Caffeine.newBuilder()
-                    .maximumSize(1000)
-                    .build(pair -> runQuery(pair.left, pair.right));
+        RangeQueryCache<T, P> current = cache;
+        if (current == null) {
+            synchronized (this) {
+                current = cache;
+                if (current == null) {
+                    current = new RangeQueryCache<>(this::runQuery);
+                    cache = current;
+                }
+            }
         }
-        return cache.get(new ImmutablePair<>(center, range));
+        return current.get(center, range);
     }
 
     @Override
     public final double getDistanceBetweenNodes(final Node<T> n1, final Node<T> n2) {
-        return getPosition(n1).getDistanceTo(getPosition(n2));
+        return positions.getDistance(n1.getId(), getPosition(n2));
     }
 
     @Override
@@ -181,6 +304,51 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         }
     }
 
+    /**
+     * Queries the spatial index within growing ranges, starting from the range
+     * that would contain about k nodes if they were uniformly distributed,
+     * and doubling it until at least k nodes are found.
+     */
+    @Override
+    public final ListSet<Node<T>> getKNearestNodes(final P center, final int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("The number of nodes to find must be non negative (provided: " + k + ")");
+        }
+        if (k == 0) {
+            return ListSets.emptyListSet();
+        }
+        if (k < nodes.size()) {
+            final double[] size = getSizeInDistanceUnits();
+            double volume = 1;
+            double diagonal = 0;
+            for (final double side: size) {
+                volume *= side;
+                diagonal = FastMath.hypot(diagonal, side);
+            }
+            /*
+             * Beyond this range, every node would be found
+             */
+            final double limit = positions.getDistance(nodes.get(0).getId(), center) + diagonal;
+            for (double range = FastMath.pow(volume * k / nodes.size(), 1d / size.length); range > 0 && range < limit; range *= 2) {
+                final ListSet<Node<T>> inRange = runQuery(center, range);
+                if (inRange.size() >= k) {
+                    return closestFirst(center, inRange, k);
+                }
+            }
+        }
+        return closestFirst(center, nodes, k);
+    }
+
+    private ListSet<Node<T>> closestFirst(final P center, final Collection<Node<T>> candidates, final int k) {
+        return candidates.stream()
+                .map(node -> new Tuple2<>(positions.getDistance(node.getId(), center), node))
+                .collect(new SmallestN<>(k))
+                .stream()
+                .sorted()
+                .map(Tuple2::v2)
+                .collect(Collectors.toCollection(() -> new ArrayListSet<>(Math.min(k, candidates.size()))));
+    }
+
     @Override
     public final Optional<Layer<T, P>> getLayer(final Molecule m) {
         return Optional.ofNullable(layers.get(m));
@@ -260,7 +428,7 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
      */
     @Override
     public P getPosition(final Node<T> node) {
-        return nodeToPos.get(Objects.requireNonNull(node).getId());
+        return positions.get(Objects.requireNonNull(node).getId());
     }
 
     @Override
@@ -297,9 +465,36 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         Optional.ofNullable(getSimulation()).ifPresent(action);
     }
 
-    private void invalidateCache() {
-        if (cache != null) {
-            cache.invalidateAll();
+    /**
+     * @return the number of range queries answered without querying the
+     *         spatial index, since this environment was created or restored
+     */
+    public final long getRangeQueryCacheHits() {
+        final RangeQueryCache<T, P> current = cache;
+        return current == null ? 0 : current.getHits();
+    }
+
+    /**
+     * @return the number of range queries which required a lookup in the
+     *         spatial index, since this environment was created or restored
+     */
+    public final long getRangeQueryCacheMisses() {
+        final RangeQueryCache<T, P> current = cache;
+        return current == null ? 0 : current.getMisses();
+    }
+
+    /**
+     * @return the {@link SpatialIndex} used to retrieve the nodes of this
+     *         environment. It must not be modified from outside.
+     */
+    public final SpatialIndex<Node<T>> getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    private void invalidateCache(final double[] coordinates) {
+        final RangeQueryCache<T, P> current = cache;
+        if (current != null) {
+            current.changed(coordinates);
         }
     }
 
@@ -360,10 +555,12 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
 
     private void readObject(final ObjectInputStream in) throws ClassNotFoundException, IOException {
         in.defaultReadObject();
-        final String name = in.readObject().toString();
-        incarnation = SupportedIncarnations.<T, P>get(name).orElseThrow(() ->
-                new IllegalStateException("Unknown incarnation " + name)
-        );
+        final Object name = in.readObject();
+        if (name != null) {
+            incarnation = SupportedIncarnations.<T, P>get(name.toString()).orElseThrow(() ->
+                    new IllegalStateException("Unknown incarnation " + name)
+            );
+        }
     }
 
     private Queue<Operation> recursiveOperation(final Node<T> origin) {
@@ -372,23 +569,13 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
         return toQueue(origin, oldNeighborhood, newNeighborhood);
     }
 
-    private Queue<Operation> recursiveOperation(final Node<T> origin, final Node<T> destination, final boolean isAdd) {
-        if (isAdd) {
-            ifEngineAvailable(s -> s.neighborAdded(origin, destination));
-        } else {
-            ifEngineAvailable(s -> s.neighborRemoved(origin, destination));
-        }
-        final Neighborhood<T> newNeighborhood = rule.computeNeighborhood(Objects.requireNonNull(destination), this);
-        final Neighborhood<T> oldNeighborhood = neighCache.put(destination.getId(), newNeighborhood);
-        return toQueue(destination, oldNeighborhood, newNeighborhood);
-    }
-
     @Override
     public final void removeNode(@Nonnull final Node<T> node) {
-        invalidateCache();
         nodes.remove(Objects.requireNonNull(node));
-        final P pos = nodeToPos.remove(node.getId());
-        spatialIndex.remove(node, pos.getCartesianCoordinates());
+        final double[] coordinates = positions.get(node.getId()).getCartesianCoordinates();
+        positions.remove(node.getId());
+        invalidateCache(coordinates);
+        spatialIndex.remove(node, coordinates);
         /*
          * Neighborhood update
          */
@@ -414,12 +601,12 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
                 .toArray(double[][]::new));
         final int size = result.size();
         return ListSets.unmodifiableListSet(result.stream()
-                .filter(it -> getPosition(it).getDistanceTo(center) <= range)
+                .filter(it -> positions.getDistance(it.getId(), center) <= range)
                 .collect(Collectors.toCollection(() -> new ArrayListSet<>(size))));
     }
 
     /**
-     * Adds or changes a position entry in the position map.
+     * Adds or changes a position entry in the position store.
      *
      * @param n
      *            the node
@@ -427,13 +614,42 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
      *            its new position
      */
     protected final void setPosition(final Node<T> n, final P p) {
-        final P pos = nodeToPos.put(Objects.requireNonNull(n).getId(), Objects.requireNonNull(p));
-        if (!p.equals(pos)) {
-            invalidateCache();
+        final int id = Objects.requireNonNull(n).getId();
+        /*
+         * Coordinates are copied once, and shared by the cache and the index
+         */
+        final double[] destination = Objects.requireNonNull(p).getCartesianCoordinates();
+        final double[] origin = new double[destination.length];
+        final boolean present = positions.getCoordinates(id, origin);
+        positions.put(id, p);
+        if (present) {
+            moveInIndex(n, origin, destination);
+        } else {
+            invalidateCache(destination);
         }
-        if (pos != null && !spatialIndex.move(n, pos.getCartesianCoordinates(), p.getCartesianCoordinates())) {
-            throw new IllegalArgumentException("Tried to move a node not previously present in the environment: \n"
-                    + "Node: " + n + "\n" + "Requested position" + p);
+    }
+
+    /**
+     * Moves a node in the spatial index, for subclasses which update their
+     * {@link PositionStore} directly, rather than through
+     * {@link #setPosition(Node, Position)}. Does nothing if the coordinates
+     * are the same.
+     *
+     * @param n
+     *            the node
+     * @param origin
+     *            its previous coordinates
+     * @param destination
+     *            its new coordinates
+     */
+    protected final void moveInIndex(final Node<T> n, final double[] origin, final double[] destination) {
+        if (!Arrays.equals(origin, destination)) {
+            invalidateCache(destination);
+            invalidateCache(origin);
+            if (!spatialIndex.move(n, origin, destination)) {
+                throw new IllegalArgumentException("Tried to move a node not previously present in the environment: \n"
+                        + "Node: " + n + "\n" + "Requested position" + Arrays.toString(destination));
+            }
         }
     }
 
@@ -474,7 +690,11 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
          * normally considered global. This because for each node which is
          * detached, all the dependencies are updated, ensuring the soundness.
          */
-        if (Objects.requireNonNull(rule).isLocallyConsistent()) {
+        if (!isNewNode && rule instanceof ConnectWithinDistance
+                && ((ConnectWithinDistance<T, P>) rule).isExactlyWithinRange()
+                && neighCache.containsKey(node.getId())) {
+            updateNeighborhoodWithinRange(node, ((ConnectWithinDistance<T, P>) rule).getRange());
+        } else if (Objects.requireNonNull(rule).isLocallyConsistent()) {
             final Neighborhood<T> newNeighborhood = rule.computeNeighborhood(Objects.requireNonNull(node), this);
             final Neighborhood<T> oldNeighborhood = neighCache.put(node.getId(), newNeighborhood);
             /*
@@ -507,24 +727,133 @@ public abstract class AbstractEnvironment<T, P extends Position<P>> implements E
                 }
             }
         } else {
-            final Queue<Operation> operations = recursiveOperation(node);
-            final TIntSet processed = new TIntHashSet(getNodesNumber());
-            processed.add(node.getId());
-            while (!operations.isEmpty()) {
-                final Operation next = operations.poll();
-                final Node<T> dest = next.destination;
-                final int destId = dest.getId();
-                if (!processed.contains(destId)) {
-                    operations.addAll(recursiveOperation(next.origin, next.destination, next.isAdd));
-                    processed.add(destId);
+            propagateNeighborhood(node);
+        }
+    }
+
+    /*
+     * Rules which are not locally consistent get re-applied to the nodes whose
+     * links changed, breadth first, one layer of nodes at a time. Each node
+     * is recomputed once, when first reached. If the rule allows it, the
+     * neighborhoods of a layer are computed in parallel, and then stored in
+     * order, exactly as a serial visit would do. Past the propagation depth of
+     * the rule, the changes are mirrored on the other end of each link.
+     */
+    private void propagateNeighborhood(final Node<T> node) {
+        final TIntSet processed = new TIntHashSet(getNodesNumber());
+        processed.add(node.getId());
+        Queue<Operation> operations = recursiveOperation(node);
+        for (int depth = 1; !operations.isEmpty(); depth++) {
+            if (depth > rule.getPropagationDepth()) {
+                operations.forEach(this::mirror);
+                return;
+            }
+            final Map<Node<T>, Operation> reached = new LinkedHashMap<>();
+            for (final Operation operation: operations) {
+                if (processed.add(operation.destination.getId())) {
+                    reached.put(operation.destination, operation);
                 }
             }
+            final List<Neighborhood<T>> computed;
+            if (rule.isParallelizable() && reached.size() > 1) {
+                /*
+                 * Nothing gets modified while computing
+                 */
+                computed = reached.keySet().parallelStream()
+                        .map(target -> rule.computeNeighborhood(target, this))
+                        .collect(Collectors.toList());
+            } else {
+                computed = null;
+            }
+            final Queue<Operation> next = new LinkedList<>();
+            int index = 0;
+            for (final Operation operation: reached.values()) {
+                notifyLinkChange(operation);
+                final Node<T> target = operation.destination;
+                final Neighborhood<T> newNeighborhood = computed == null
+                        ? rule.computeNeighborhood(target, this)
+                        : computed.get(index);
+                final Neighborhood<T> oldNeighborhood = neighCache.put(target.getId(), newNeighborhood);
+                next.addAll(toQueue(target, oldNeighborhood, newNeighborhood));
+                index++;
+            }
+            operations = next;
+        }
+    }
+
+    /*
+     * Makes the link described by the operation symmetric, if the origin still
+     * holds it and the destination does not
+     */
+    private void mirror(final Operation operation) {
+        final Node<T> origin = operation.origin;
+        final Node<T> destination = operation.destination;
+        final Neighborhood<T> neighborhood = getNeighborhood(destination);
+        if (operation.isAdd == getNeighborhood(origin).contains(destination)
+                && operation.isAdd != neighborhood.contains(origin)) {
+            neighCache.put(destination.getId(), operation.isAdd ? neighborhood.add(origin) : neighborhood.remove(origin));
+            notifyLinkChange(operation);
+        }
+    }
+
+    private void notifyLinkChange(final Operation operation) {
+        if (operation.isAdd) {
+            ifEngineAvailable(s -> s.neighborAdded(operation.origin, operation.destination));
+        } else {
+            ifEngineAvailable(s -> s.neighborRemoved(operation.origin, operation.destination));
+        }
+    }
+
+    /*
+     * Incremental version of updateNeighborhood for moving nodes and rules
+     * linking exactly the nodes within range: former neighbors are checked
+     * against the new position, and the nodes in range which were not already
+     * neighbors get linked. Only the lost and gained neighbors are removed
+     * from and added to the existing neighborhood, rather than rebuilding it,
+     * and notifications are the same as in the general case.
+     */
+    private void updateNeighborhoodWithinRange(final Node<T> node, final double range) {
+        final Neighborhood<T> oldNeighborhood = neighCache.get(node.getId());
+        final P position = getPosition(node);
+        final List<Node<T>> lost = new ArrayList<>();
+        for (final Node<T> neighbor: oldNeighborhood) {
+            if (positions.getDistance(neighbor.getId(), position) > range) {
+                lost.add(neighbor);
+            }
+        }
+        final List<Node<T>> gained = new ArrayList<>();
+        for (final Node<T> candidate: runQuery(position, range)) {
+            if (!candidate.equals(node) && !oldNeighborhood.contains(candidate)) {
+                gained.add(candidate);
+            }
+        }
+        if (lost.isEmpty() && gained.isEmpty()) {
+            return;
+        }
+        Neighborhood<T> newNeighborhood = oldNeighborhood;
+        for (final Node<T> formerNeighbor: lost) {
+            newNeighborhood = newNeighborhood.remove(formerNeighbor);
+        }
+        for (final Node<T> newNeighbor: gained) {
+            newNeighborhood = newNeighborhood.add(newNeighbor);
+        }
+        neighCache.put(node.getId(), newNeighborhood);
+        for (final Node<T> formerNeighbor: lost) {
+            final Neighborhood<T> neighborhoodToChange = neighCache.get(formerNeighbor.getId());
+            if (neighborhoodToChange.contains(node)) {
+                neighCache.put(formerNeighbor.getId(), neighborhoodToChange.remove(node));
+                ifEngineAvailable(s -> s.neighborRemoved(node, formerNeighbor));
+            }
+        }
+        for (final Node<T> newNeighbor: gained) {
+            neighCache.put(newNeighbor.getId(), neighCache.get(newNeighbor.getId()).add(node));
+            ifEngineAvailable(s -> s.neighborAdded(node, newNeighbor));
         }
     }
 
     private void writeObject(final ObjectOutputStream out) throws IOException {
         out.defaultWriteObject();
-        out.writeObject(incarnation.getClass().getSimpleName());
+        out.writeObject(incarnation == null ? null : incarnation.getClass().getSimpleName());
     }
 
     @FunctionalInterface
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.utils.CollisionMap;
+import it.unibo.alchemist.model.implementations.utils.RectObstacle2D;
+import it.unibo.alchemist.model.interfaces.environments.EuclideanPhysics2DEnvironmentWithObstacles;
+import org.apache.commons.math3.util.FastMath;
+import org.kaikikm.threadresloader.ResourceLoader;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads an image and marks as obstacles all the pixels of a given color, as
+ * {@link ImageEnvironment} does. Rather than turning the image into
+ * rectangular obstacles, pixels are kept in a {@link CollisionMap}: checking
+ * positions, finding free positions and line of sight queries do not depend
+ * on the number of obstacles, and large floor plans load quickly.
+ * <p>
+ * Obstacles have the resolution of the pixels. {@link #getObstacles()}
+ * computes a set of rectangles covering them on demand, and
+ * {@link #getObstaclesInRange(double, double, double)} covers only the pixels
+ * in range. Obstacles added or removed are rasterized, and covered pixels
+ * become occupied or free.
+ *
+ * @param <T> concentration type
+ */
+public class BitmapEnvironment<T> extends LimitedContinuos2D<T> implements EuclideanPhysics2DEnvironmentWithObstacles<RectObstacle2D, T> {
+
+    private static final long serialVersionUID = 1L;
+    /*
+     * Distance, in pixels, kept between nodes stopped by an obstacle and the
+     * obstacle itself
+     */
+    private static final double MARGIN = 1e-6;
+    private final CollisionMap map;
+    private final double zoom;
+    private final double dx;
+    private final double dy;
+    /*
+     * Built on demand, discarded when obstacles change
+     */
+    private transient List<RectObstacle2D> obstacles;
+
+    /**
+     * @param path
+     *            the path where to load the image, or of the resource in the
+     *            classpath
+     * @throws IOException
+     *             if image file cannot be found
+     */
+    public BitmapEnvironment(final String path) throws IOException {
+        this(path, ImageEnvironment.DEFAULT_ZOOM);
+    }
+
+    /**
+     * @param path
+     *            the path where to load the image, or of the resource in the
+     *            classpath
+     * @param zoom
+     *            zoom level, namely the size of a pixel
+     * @throws IOException
+     *             if image file cannot be found
+     */
+    public BitmapEnvironment(final String path, final double zoom) throws IOException {
+        this(path, zoom, ImageEnvironment.DEFAULT_DELTA_X, ImageEnvironment.DEFAULT_DELTA_Y);
+    }
+
+    /**
+     * @param path
+     *            the path where to load the image, or of the resource in the
+     *            classpath
+     * @param zoom
+     *            zoom level, namely the size of a pixel
+     * @param dx
+     *            delta X position
+     * @param dy
+     *            delta Y position
+     * @throws IOException
+     *             if image file cannot be found
+     */
+    public BitmapEnvironment(final String path, final double zoom, final double dx, final double dy) throws IOException {
+        this(ImageEnvironment.DEFAULT_COLOR, path, zoom, dx, dy);
+    }
+
+    /**
+     * @param obs
+     *            integer representing the RGB color to use as color for the
+     *            obstacle detection in image, see {@link java.awt.Color#getRGB()}
+     * @param path
+     *            the path where to load the image, or of the resource in the
+     *            classpath
+     * @param zoom
+     *            zoom level, namely the size of a pixel
+     * @param dx
+     *            delta X position
+     * @param dy
+     *            delta Y position
+     * @throws IOException
+     *             if image file cannot be found
+     */
+    public BitmapEnvironment(final int obs, final String path, final double zoom, final double dx, final double dy) throws IOException {
+        super();
+        if (!(zoom > 0) || Double.isInfinite(zoom)) {
+            throw new IllegalArgumentException("The zoom must be a positive finite number, got " + zoom);
+        }
+        final InputStream resource = ResourceLoader.getResourceAsStream(path);
+        final BufferedImage img = resource == null
+                ? ImageIO.read(new File(path))
+                : ImageIO.read(resource);
+        if (img == null) {
+            throw new IOException(path + " is not a supported image");
+        }
+        final int width = img.getWidth();
+        final int height = img.getHeight();
+        this.map = new CollisionMap(width, height);
+        this.zoom = zoom;
+        this.dx = dx;
+        this.dy = dy;
+        /*
+         * Image rows go downwards, map rows upwards. Runs of pixels are
+         * filled at once.
+         */
+        for (int y = 0; y < height; y++) {
+            final int row = height - 1 - y;
+            int x = 0;
+            while (x < width) {
+                if (img.getRGB(x, y) == obs) {
+                    final int start = x;
+                    while (x < width && img.getRGB(x, y) == obs) {
+                        x++;
+                    }
+                    map.fill(start, row, x, row + 1, true);
+                } else {
+                    x++;
+                }
+            }
+        }
+        includeObject(dx, dx + width * zoom, dy, dy + height * zoom);
+    }
+
+    /**
+     * The pixels covered by the obstacle, if any, become occupied.
+     */
+    @Override
+    public final void addObstacle(final RectObstacle2D o) {
+        if (fill(o, true)) {
+            includeObject(o.getMinX(), o.getMaxX(), o.getMinY(), o.getMaxY());
+        }
+    }
+
+    /**
+     * @return rectangles covering the occupied pixels, computed after each
+     *         change of the obstacles
+     */
+    @Override
+    public final List<RectObstacle2D> getObstacles() {
+        return new ArrayList<>(obstacles());
+    }
+
+    /**
+     * Decomposes in rectangles only the occupied pixels within the square
+     * bounding the range, hence the rectangles are clipped to the square, and
+     * may differ from those of {@link #getObstacles()}. The cost depends on
+     * the range, not on the number of obstacles.
+     */
+    @Override
+    public final List<RectObstacle2D> getObstaclesInRange(final double centerx, final double centery, final double range) {
+        final List<RectObstacle2D> result = new ArrayList<>();
+        if (range >= 0) {
+            map.forEachRectangle(
+                (int) FastMath.floor(toColumn(centerx - range)), (int) FastMath.floor(toRow(centery - range)),
+                (int) FastMath.ceil(toColumn(centerx + range)), (int) FastMath.ceil(toRow(centery + range)),
+                (minColumn, minRow, maxColumn, maxRow) -> {
+                    final RectObstacle2D obstacle = toObstacle(minColumn, minRow, maxColumn, maxRow);
+                    final double distX = FastMath.max(0, FastMath.max(obstacle.getMinX() - centerx, centerx - obstacle.getMaxX()));
+                    final double distY = FastMath.max(0, FastMath.max(obstacle.getMinY() - centery, centery - obstacle.getMaxY()));
+                    if (FastMath.hypot(distX, distY) <= range) {
+                        result.add(obstacle);
+                    }
+                });
+        }
+        return result;
+    }
+
+    /**
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     * @return the position itself if free, otherwise the closest position in
+     *         the free pixel closest to the one of the position
+     * @throws IllegalStateException
+     *             if all the pixels are occupied
+     */
+    public final Euclidean2DPosition getNearestFreePosition(final double x, final double y) {
+        final double column = toColumn(x);
+        final double row = toRow(y);
+        final int pixelColumn = (int) FastMath.floor(column);
+        final int pixelRow = (int) FastMath.floor(row);
+        if (!map.isOccupied(pixelColumn, pixelRow)) {
+            return new Euclidean2DPosition(x, y);
+        }
+        final int free = map.getNearestFreeCell(pixelColumn, pixelRow);
+        if (free < 0) {
+            throw new IllegalStateException("There are no free positions in " + this);
+        }
+        final int freeColumn = free % map.getColumns();
+        final int freeRow = free / map.getColumns();
+        return new Euclidean2DPosition(
+                dx + zoom * FastMath.max(freeColumn + MARGIN, FastMath.min(column, freeColumn + 1 - MARGIN)),
+                dy + zoom * FastMath.max(freeRow + MARGIN, FastMath.min(row, freeRow + 1 - MARGIN)));
+    }
+
+    /**
+     * @return false
+     */
+    @Override
+    public boolean hasMobileObstacles() {
+        return false;
+    }
+
+    @Override
+    public final boolean intersectsObstacle(final double sx, final double sy, final double ex, final double ey) {
+        return map.intersects(toColumn(sx), toRow(sy), toColumn(ex), toRow(ey));
+    }
+
+    @Override
+    public final boolean intersectsObstacle(final Euclidean2DPosition p1, final Euclidean2DPosition p2) {
+        return intersectsObstacle(p1.getX(), p1.getY(), p2.getX(), p2.getY());
+    }
+
+    @Override
+    protected final boolean isAllowed(final Euclidean2DPosition p) {
+        return !map.isOccupied(toColumn(p.getX()), toRow(p.getY()));
+    }
+
+    /**
+     * Nodes stop right before the first obstacle along their way. Nodes that
+     * already are against an obstacle slide along it.
+     */
+    @Override
+    public final Euclidean2DPosition next(final double ox, final double oy, final double nx, final double ny) {
+        final double sx = toColumn(ox);
+        final double sy = toRow(oy);
+        final double hit = map.firstHit(sx, sy, toColumn(nx), toRow(ny));
+        if (hit > 1) {
+            return new Euclidean2DPosition(nx, ny);
+        }
+        if (hit * FastMath.hypot(toColumn(nx) - sx, toRow(ny) - sy) > 2 * MARGIN) {
+            return stop(ox, oy, nx, ny, hit);
+        }
+        /*
+         * Move along a single axis, whichever goes farther
+         */
+        final Euclidean2DPosition alongX = stop(ox, oy, nx, oy, map.firstHit(sx, sy, toColumn(nx), sy));
+        final Euclidean2DPosition alongY = stop(ox, oy, ox, ny, map.firstHit(sx, sy, sx, toRow(ny)));
+        return FastMath.abs(alongX.getX() - ox) >= FastMath.abs(alongY.getY() - oy) ? alongX : alongY;
+    }
+
+    /**
+     * The pixels covered by the obstacle, if any, become free.
+     */
+    @Override
+    public final boolean removeObstacle(final RectObstacle2D o) {
+        return fill(o, false);
+    }
+
+    /*
+     * Stops MARGIN pixels before the hit, if any
+     */
+    private Euclidean2DPosition stop(final double ox, final double oy, final double nx, final double ny, final double hit) {
+        if (hit > 1) {
+            return new Euclidean2DPosition(nx, ny);
+        }
+        final double length = FastMath.hypot(toColumn(nx) - toColumn(ox), toRow(ny) - toRow(oy));
+        final double t = FastMath.max(0, hit - MARGIN / length);
+        final double x = ox + t * (nx - ox);
+        final double y = oy + t * (ny - oy);
+        return map.isOccupied(toColumn(x), toRow(y)) ? new Euclidean2DPosition(ox, oy) : new Euclidean2DPosition(x, y);
+    }
+
+    private boolean fill(final RectObstacle2D o, final boolean occupied) {
+        final boolean changed = map.fill(
+                (int) FastMath.floor(toColumn(o.getMinX())), (int) FastMath.floor(toRow(o.getMinY())),
+                (int) FastMath.ceil(toColumn(o.getMaxX())), (int) FastMath.ceil(toRow(o.getMaxY())),
+                occupied);
+        if (changed) {
+            obstacles = null;
+        }
+        return changed;
+    }
+
+    private List<RectObstacle2D> obstacles() {
+        if (obstacles == null) {
+            final List<RectObstacle2D> result = new ArrayList<>();
+            map.forEachRectangle((minColumn, minRow, maxColumn, maxRow) -> result.add(toObstacle(minColumn, minRow, maxColumn, maxRow)));
+            obstacles = result;
+        }
+        return obstacles;
+    }
+
+    private RectObstacle2D toObstacle(final int minColumn, final int minRow, final int maxColumn, final int maxRow) {
+        return new RectObstacle2D(dx + minColumn * zoom, dy + minRow * zoom, (maxColumn - minColumn) * zoom, (maxRow - minRow) * zoom);
+    }
+
+    private double toColumn(final double x) {
+        return (x - dx) / zoom;
+    }
+
+    private double toRow(final double y) {
+        return (y - dy) / zoom;
+    }
+
+}
@@ -7,48 +7,65 @@
  */
 package it.unibo.alchemist.model.implementations.environments;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
-import com.github.davidmoten.rtree.Entry;
+import it.unibo.alchemist.model.implementations.spatialindexes.ObstacleIndex;
 import it.unibo.alchemist.model.interfaces.environments.EuclideanPhysics2DEnvironmentWithObstacles;
+import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.math3.util.Pair;
 
-import com.github.davidmoten.rtree.RTree;
-import com.github.davidmoten.rtree.geometry.Geometries;
-import com.github.davidmoten.rtree.geometry.Rectangle;
-import com.github.davidmoten.rtree.internal.EntryDefault;
-
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
 import it.unibo.alchemist.model.implementations.utils.RectObstacle2D;
+import it.unibo.alchemist.model.implementations.utils.VisibilityIndex;
 
 /**
+ * Obstacles are stored in an {@link ObstacleIndex}: collision checks and
+ * movements query it without allocating, using a buffer of ids owned by the
+ * querying thread, so that they can run concurrently.
+ *
  * @param <T>
  */
 public class Continuous2DObstacles<T> extends LimitedContinuos2D<T> implements EuclideanPhysics2DEnvironmentWithObstacles<RectObstacle2D, T> {
 
     private static final double TOLERANCE_MULTIPLIER = 0.01;
+    private static final int INITIAL_QUERY_CAPACITY = 16;
     private static final long serialVersionUID = 69931743897405107L;
-    private transient RTree<RectObstacle2D, Rectangle> rtree = RTree.create();
+    /*
+     * Ids of the obstacles found by the last query of each thread
+     */
+    private static final ThreadLocal<int[]> FOUND = ThreadLocal.withInitial(() -> new int[INITIAL_QUERY_CAPACITY]);
+    private final ObstacleIndex<RectObstacle2D> obstacles = new ObstacleIndex<>();
+    /*
+     * Built on the first line of sight query, discarded when obstacles change
+     */
+    private transient volatile VisibilityIndex visibility;
 
     @Override
     public final void addObstacle(final RectObstacle2D o) {
-        rtree = rtree.add(o, toGeometry(o));
+        obstacles.insert(o);
+        visibility = null;
         includeObject(o.getMinX(), o.getMaxX(), o.getMinY(), o.getMaxY());
     }
 
     @Override
     public final List<RectObstacle2D> getObstacles() {
-        return rtree.entries().map(Entry::value).toList().toBlocking().single();
+        return obstacles.getAll();
     }
 
     @Override
     public final List<RectObstacle2D> getObstaclesInRange(final double centerx, final double centery, final double range) {
-        return rtree.search(Geometries.circle(centerx, centery, range)).map(Entry::value).toList().toBlocking().single();
+        final List<RectObstacle2D> result = new ArrayList<>();
+        obstacles.forEach(centerx - range, centery - range, centerx + range, centery + range, obstacle -> {
+            final double dx = FastMath.max(0, FastMath.max(obstacle.getMinX() - centerx, centerx - obstacle.getMaxX()));
+            final double dy = FastMath.max(0, FastMath.max(obstacle.getMinY() - centery, centery - obstacle.getMaxY()));
+            if (FastMath.hypot(dx, dy) <= range) {
+                result.add(obstacle);
+            }
+            return true;
+        });
+        return result;
     }
 
     /**
@@ -61,16 +78,32 @@ public class Continuous2DObstacles<T> extends LimitedContinuos2D<T> implements E
         return false;
     }
 
+    /**
+     * Line of sight queries are answered by a {@link VisibilityIndex}, which
+     * is rebuilt after obstacles get added, removed or replaced. If obstacles
+     * are mobile, the obstacles along the segment are tested directly instead.
+     */
     @Override
     @SuppressFBWarnings("FE_FLOATING_POINT_EQUALITY")
     public final boolean intersectsObstacle(final double sx, final double sy, final double ex, final double ey) {
-        for (final RectObstacle2D obstacle : query(sx, sy, ex, ey, 0)) {
-            final double[] coords = obstacle.nearestIntersection(sx, sy, ex, ey);
-            if (coords[0] != ex || coords[1] != ey || obstacle.contains(coords[0], coords[1])) {
-                return true;
+        if (hasMobileObstacles()) {
+            final int count = query(sx, sy, ex, ey, 0);
+            final int[] found = FOUND.get();
+            for (int i = 0; i < count; i++) {
+                final RectObstacle2D obstacle = obstacles.get(found[i]);
+                final double[] coords = obstacle.nearestIntersection(sx, sy, ex, ey);
+                if (coords[0] != ex || coords[1] != ey || obstacle.contains(coords[0], coords[1])) {
+                    return true;
+                }
             }
+            return false;
         }
-        return false;
+        VisibilityIndex index = visibility;
+        if (index == null) {
+            index = new VisibilityIndex(getObstacles());
+            visibility = index;
+        }
+        return index.intersectsObstacle(sx, sy, ex, ey);
     }
 
     @Override
@@ -80,16 +113,17 @@ public class Continuous2DObstacles<T> extends LimitedContinuos2D<T> implements E
 
     @Override
     protected final boolean isAllowed(final Euclidean2DPosition p) {
-        return rtree.search(Geometries.point(p.getX(), p.getY())).isEmpty().toBlocking().single();
+        return obstacles.forEach(p.getX(), p.getY(), p.getX(), p.getY(), obstacle -> false);
     }
 
     @Override
     @SuppressFBWarnings("FE_FLOATING_POINT_EQUALITY")
     public final Euclidean2DPosition next(final double ox, final double oy, final double nx, final double ny) {
-        final List<RectObstacle2D> l = query(ox, oy, nx, ny, TOLERANCE_MULTIPLIER);
-        if (l.isEmpty()) {
+        int count = query(ox, oy, nx, ny, TOLERANCE_MULTIPLIER);
+        if (count == 0) {
             return new Euclidean2DPosition(nx, ny);
         }
+        final int[] found = FOUND.get();
         Pair<Double, Double> shortest = null;
         double fx = nx;
         double fy = ny;
@@ -98,8 +132,8 @@ public class Continuous2DObstacles<T> extends LimitedContinuos2D<T> implements E
         while (fx != fxCache || fy != fyCache) {
             fxCache = fx;
             fyCache = fy;
-            for (int i = 0; i < l.size(); i++) {
-                shortest = l.get(i).next(ox, oy, fx, fy);
+            for (int i = 0; i < count; i++) {
+                shortest = obstacles.get(found[i]).next(ox, oy, fx, fy);
                 /*
                  * If one of the dimensions is limited, such limit must be
                  * retained!
@@ -112,7 +146,8 @@ public class Continuous2DObstacles<T> extends LimitedContinuos2D<T> implements E
                      */
                     fx = sfx;
                     fy = sfy;
-                    l.remove(i);
+                    System.arraycopy(found, i + 1, found, i, count - i - 1);
+                    count--;
                     i--;
                 }
             }
@@ -120,7 +155,11 @@ public class Continuous2DObstacles<T> extends LimitedContinuos2D<T> implements E
         return makePosition(shortest.getFirst(), shortest.getSecond());
     }
 
-    private List<RectObstacle2D> query(final double ox, final double oy, final double nx, final double ny, final double tolerance) {
+    /*
+     * Writes the ids of the obstacles found in the buffer of the current
+     * thread, returns how many
+     */
+    private int query(final double ox, final double oy, final double nx, final double ny, final double tolerance) {
         double minx = Math.min(ox, nx);
         double miny = Math.min(oy, ny);
         double maxx = Math.max(ox, nx);
@@ -131,34 +170,40 @@ public class Continuous2DObstacles<T> extends LimitedContinuos2D<T> implements E
         maxx += dx;
         miny -= dy;
         maxy += dy;
-        return rtree.search(Geometries.rectangle(minx, miny, maxx, maxy)).map(Entry::value).toList().toBlocking().single();
+        final int[] found = FOUND.get();
+        final int count = obstacles.query(minx, miny, maxx, maxy, found);
+        if (count > found.length) {
+            final int[] larger = new int[count * 2];
+            FOUND.set(larger);
+            return obstacles.query(minx, miny, maxx, maxy, larger);
+        }
+        return count;
     }
 
     @Override
     public final boolean removeObstacle(final RectObstacle2D o) {
-        final int initialSize = rtree.size();
-        rtree = rtree.delete(o, toGeometry(o));
-        return rtree.size() == initialSize - 1;
-    }
-
-    private static Rectangle toGeometry(final RectObstacle2D o) {
-        return Geometries.rectangle(o.getMinX(), o.getMinY(), o.getMaxX(), o.getMaxY());
+        visibility = null;
+        return obstacles.remove(o);
     }
 
-    private void writeObject(final ObjectOutputStream o) throws IOException {
-        o.defaultWriteObject();
-        o.writeObject(getObstacles());
-    }
-
-    private void readObject(final ObjectInputStream o) throws ClassNotFoundException, IOException {
-        o.defaultReadObject();
-        rtree = RTree.create();
-        rtree = RTree.<RectObstacle2D, Rectangle>create().add(
-            ((List<?>) o.readObject()).parallelStream()
-                .map(obs -> (RectObstacle2D) obs)
-                .map(obs -> new EntryDefault<>(obs, toGeometry(obs)))
-                .collect(Collectors.toList())
-        );
+    /**
+     * Updates only the portion of the index that changed: subclasses with
+     * mobile obstacles should move them with this method.
+     *
+     * @param o
+     *            the obstacle to replace
+     * @param replacement
+     *            the new obstacle
+     * @return true if the obstacle has actually been replaced
+     */
+    @Override
+    public final boolean replaceObstacle(final RectObstacle2D o, final RectObstacle2D replacement) {
+        if (obstacles.replace(o, replacement)) {
+            visibility = null;
+            includeObject(replacement.getMinX(), replacement.getMaxX(), replacement.getMinY(), replacement.getMaxY());
+            return true;
+        }
+        return false;
     }
 
 }
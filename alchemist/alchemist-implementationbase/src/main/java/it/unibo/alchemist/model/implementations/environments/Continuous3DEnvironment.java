@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import it.unibo.alchemist.model.implementations.positions.Euclidean3DPosition;
+import it.unibo.alchemist.model.implementations.spatialindexes.Octree;
+import it.unibo.alchemist.model.interfaces.Neighborhood;
+import it.unibo.alchemist.model.interfaces.Node;
+import org.apache.commons.math3.util.FastMath;
+import org.danilopianini.util.SpatialIndex;
+
+import java.util.Arrays;
+
+/**
+ * A tridimensional continuous environment, with no obstacles and no limits.
+ *
+ * @param <T>
+ *            concentration type
+ */
+public class Continuous3DEnvironment<T> extends AbstractEnvironment<T, Euclidean3DPosition> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DIMENSIONS = 3;
+    private final double[] min = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+    private final double[] max = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+    /**
+     * Builds an environment indexing its nodes with an {@link Octree}.
+     */
+    public Continuous3DEnvironment() {
+        this(new Octree<>());
+    }
+
+    /**
+     * @param index
+     *            the tridimensional {@link SpatialIndex} to use in order to
+     *            efficiently retrieve nodes
+     */
+    public Continuous3DEnvironment(final SpatialIndex<Node<T>> index) {
+        this(index, new MapPositionStore<>());
+    }
+
+    /**
+     * @param index
+     *            the tridimensional {@link SpatialIndex} to use in order to
+     *            efficiently retrieve nodes
+     * @param positions
+     *            the empty {@link PositionStore} keeping the positions of the
+     *            nodes
+     */
+    protected Continuous3DEnvironment(final SpatialIndex<Node<T>> index, final PositionStore<Euclidean3DPosition> positions) {
+        super(index, positions);
+        if (index.getDimensions() != DIMENSIONS) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " requires a " + DIMENSIONS
+                    + "D spatial index, but " + index + " has " + index.getDimensions() + " dimensions");
+        }
+    }
+
+    /**
+     * Subclasses can override this method if they will to modify the actual
+     * position a node gets inserted in (e.g. to restrict the areas in which a node
+     * can be)
+     */
+    @Override
+    protected Euclidean3DPosition computeActualInsertionPosition(final Node<T> node, final Euclidean3DPosition p) {
+        return p;
+    }
+
+    @Override
+    public final int getDimensions() {
+        return DIMENSIONS;
+    }
+
+    @Override
+    public final double[] getOffset() {
+        final double[] offset = new double[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            offset[i] = min[i] <= max[i] ? min[i] : Double.NaN;
+        }
+        return offset;
+    }
+
+    @Override
+    public final double[] getSize() {
+        final double[] size = new double[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            size[i] = Math.max(0, max[i] - min[i]);
+        }
+        return size;
+    }
+
+    /**
+     * Updates the environment size to include the provided position.
+     *
+     * @param position
+     *            the position to include
+     */
+    protected final void includeObject(final Euclidean3DPosition position) {
+        for (int i = 0; i < DIMENSIONS; i++) {
+            include(i, position.getCoordinate(i));
+        }
+    }
+
+    /**
+     * Updates the environment size to include the provided coordinates.
+     *
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     * @param z
+     *            the z coordinate
+     */
+    protected final void includeObject(final double x, final double y, final double z) {
+        include(0, x);
+        include(1, y);
+        include(2, z);
+    }
+
+    private void include(final int i, final double coordinate) {
+        if (coordinate < min[i]) {
+            min[i] = FastMath.nextDown(coordinate);
+        }
+        if (coordinate > max[i]) {
+            max[i] = FastMath.nextUp(coordinate);
+        }
+    }
+
+    @Override
+    public final Euclidean3DPosition makePosition(final Number... coordinates) {
+        if (coordinates.length != DIMENSIONS) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " only supports tridimensional coordinates (x, y, z), got "
+                    + Arrays.toString(coordinates));
+        }
+        return new Euclidean3DPosition(coordinates[0].doubleValue(), coordinates[1].doubleValue(), coordinates[2].doubleValue());
+    }
+
+    /**
+     * Subclasses may override this method if they want to change the way a node
+     * moves towards some direction. The current implementation internally calls
+     * {@link #moveNodeToPosition(Node, Euclidean3DPosition)}, as such, overriding
+     * that method may suffice.
+     */
+    @Override
+    public void moveNode(final Node<T> node, final Euclidean3DPosition direction) {
+        moveNodeToPosition(node, getPosition(node).plus(direction));
+    }
+
+    /**
+     * Subclasses may override this method if they want to change the way a node
+     * moves towards some absolute position. Overriding this method will also
+     * influence {@link #moveNode(Node, Euclidean3DPosition)}, as it calls this
+     * method in the current implementation
+     */
+    @Override
+    public void moveNodeToPosition(final Node<T> node, final Euclidean3DPosition newpos) {
+        includeObject(newpos);
+        setPosition(node, newpos);
+        updateNeighborhood(node, false);
+        ifEngineAvailable(sim -> sim.nodeMoved(node));
+    }
+
+    /**
+     * Subclasses may want to override this method to hook to the node addition
+     * event. Overriders should call the super implementation, as it ensures the
+     * environment bounds are updated considering the newly included object.
+     */
+    @Override
+    protected void nodeAdded(final Node<T> node, final Euclidean3DPosition position, final Neighborhood<T> neighborhood) {
+        includeObject(position);
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TIntIntHashMap;
+import it.unibo.alchemist.model.interfaces.Position;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the Euclidean coordinates of the nodes in dense arrays, one per axis,
+ * indexed by a compact slot assigned to each node. Removals move the last
+ * slot in place of the freed one. Positions are built only when requested.
+ *
+ * @param <P>
+ *            {@link Position} type
+ */
+abstract class CoordinateColumns<P extends Position<P>> implements PositionStore<P> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NO_SLOT = -1;
+    private final TIntIntHashMap slots = new TIntIntHashMap(INITIAL_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_SLOT, NO_SLOT);
+    private final double[][] columns;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param dimensions
+     *            the number of axes
+     */
+    CoordinateColumns(final int dimensions) {
+        columns = new double[dimensions][INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param slot
+     *            the slot of a node
+     * @return the position of the node in the slot
+     */
+    abstract P makePosition(int slot);
+
+    /**
+     * @param id
+     *            the node id
+     * @return the slot of the node
+     * @throws IllegalArgumentException
+     *             if the node has no position
+     */
+    final int slotOf(final int id) {
+        final int slot = slots.get(id);
+        if (slot == NO_SLOT) {
+            throw new IllegalArgumentException("Node with id " + id + " is not part of this environment");
+        }
+        return slot;
+    }
+
+    /**
+     * @param slot
+     *            the slot of a node
+     * @param dimension
+     *            the axis
+     * @return the coordinate of the node along the axis
+     */
+    final double getCoordinate(final int slot, final int dimension) {
+        return columns[dimension][slot];
+    }
+
+    /**
+     * @param slot
+     *            the slot of a node
+     * @param dimension
+     *            the axis
+     * @param value
+     *            the new coordinate of the node along the axis
+     */
+    final void setCoordinate(final int slot, final int dimension, final double value) {
+        columns[dimension][slot] = value;
+    }
+
+    /**
+     * @param first
+     *            the slot of a node
+     * @param second
+     *            the slot of another node
+     * @return the distance between the nodes
+     */
+    final double getDistanceBetween(final int first, final int second) {
+        double squares = 0;
+        for (final double[] column : columns) {
+            final double delta = column[first] - column[second];
+            squares += delta * delta;
+        }
+        return FastMath.sqrt(squares);
+    }
+
+    @Override
+    public final P get(final int id) {
+        final int slot = slots.get(id);
+        return slot == NO_SLOT ? null : makePosition(slot);
+    }
+
+    @Override
+    public final boolean getCoordinates(final int id, final double[] destination) {
+        final int slot = slots.get(id);
+        if (slot == NO_SLOT) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            destination[i] = columns[i][slot];
+        }
+        return true;
+    }
+
+    @Override
+    public final double getDistance(final int id, final P position) {
+        final int slot = slotOf(id);
+        double squares = 0;
+        for (int i = 0; i < columns.length; i++) {
+            final double delta = columns[i][slot] - position.getCoordinate(i);
+            squares += delta * delta;
+        }
+        return FastMath.sqrt(squares);
+    }
+
+    @Override
+    public final void put(final int id, final P position) {
+        int slot = slots.get(id);
+        if (slot == NO_SLOT) {
+            if (size == ids.length) {
+                final int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], capacity);
+                }
+            }
+            slot = size++;
+            ids[slot] = id;
+            slots.put(id, slot);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            columns[i][slot] = position.getCoordinate(i);
+        }
+    }
+
+    @Override
+    public final boolean remove(final int id) {
+        final int slot = slots.remove(id);
+        if (slot == NO_SLOT) {
+            return false;
+        }
+        size--;
+        if (slot != size) {
+            ids[slot] = ids[size];
+            for (final double[] column : columns) {
+                column[slot] = column[size];
+            }
+            slots.put(ids[slot], slot);
+        }
+        return true;
+    }
+
+}
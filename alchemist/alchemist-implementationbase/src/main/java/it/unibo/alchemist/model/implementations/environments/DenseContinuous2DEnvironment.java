@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.interfaces.Node;
+import org.danilopianini.util.FlexibleQuadTree;
+import org.danilopianini.util.SpatialIndex;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A bidimensional continuous environment, with no obstacles and no limits,
+ * whose nodes are points. The coordinates of the nodes are kept in two dense
+ * arrays, one per axis, indexed by a compact slot assigned to each node, and
+ * no {@link Euclidean2DPosition} is stored: positions are built only when
+ * requested, e.g. by {@link #getPosition(Node)}. It offers primitive
+ * accessors and movements, meant for movement-heavy simulations with many
+ * nodes: reading coordinates and computing distances allocate no objects, and
+ * neither do movements, including the update of the {@link SpatialIndex}.
+ * What follows each movement still allocates: the linking rule computing the
+ * new neighborhood, and the engine handling the movement.
+ * <p>
+ * Unlike {@link Continuous2DEnvironment}, node shapes and collisions are not
+ * considered. All movements go through {@link #moveTo(Node, double, double)}.
+ *
+ * @param <T>
+ *            concentration type
+ */
+public class DenseContinuous2DEnvironment<T> extends Abstract2DEnvironment<T, Euclidean2DPosition> {
+
+    private static final long serialVersionUID = 2L;
+    private final Columns columns;
+    /*
+     * Scratch arrays for the spatial index: movements are never concurrent
+     */
+    private final double[] origin = new double[2];
+    private final double[] destination = new double[2];
+
+    /**
+     * Builds an environment indexing its nodes with a {@link FlexibleQuadTree}.
+     */
+    public DenseContinuous2DEnvironment() {
+        this(new FlexibleQuadTree<>());
+    }
+
+    /**
+     * @param index
+     *            the {@link SpatialIndex} to use in order to efficiently
+     *            retrieve nodes
+     */
+    public DenseContinuous2DEnvironment(final SpatialIndex<Node<T>> index) {
+        this(index, new Columns());
+    }
+
+    private DenseContinuous2DEnvironment(final SpatialIndex<Node<T>> index, final Columns columns) {
+        super(index, columns);
+        this.columns = columns;
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the x coordinate of the node
+     */
+    public final double getX(final Node<T> node) {
+        return columns.getCoordinate(slotOf(node), 0);
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the y coordinate of the node
+     */
+    public final double getY(final Node<T> node) {
+        return columns.getCoordinate(slotOf(node), 1);
+    }
+
+    /**
+     * @param first
+     *            the first node
+     * @param second
+     *            the second node
+     * @return the distance between the two nodes
+     */
+    public final double getDistance(final Node<T> first, final Node<T> second) {
+        return columns.getDistanceBetween(slotOf(first), slotOf(second));
+    }
+
+    @Override
+    public final Euclidean2DPosition makePosition(final Number... coordinates) {
+        if (coordinates.length != 2) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " only supports bidimensional coordinates (x, y), got "
+                    + Arrays.toString(coordinates));
+        }
+        return new Euclidean2DPosition(coordinates[0].doubleValue(), coordinates[1].doubleValue());
+    }
+
+    /**
+     * Moves a node by the given displacement.
+     *
+     * @param node
+     *            the node to move
+     * @param dx
+     *            the displacement along the x axis
+     * @param dy
+     *            the displacement along the y axis
+     */
+    public final void moveBy(final Node<T> node, final double dx, final double dy) {
+        final int slot = slotOf(node);
+        moveTo(node, columns.getCoordinate(slot, 0) + dx, columns.getCoordinate(slot, 1) + dy);
+    }
+
+    /**
+     * Moves a node to the given coordinates, updating its neighborhood. Does
+     * nothing if the node is already there.
+     *
+     * @param node
+     *            the node to move
+     * @param x
+     *            the destination x coordinate
+     * @param y
+     *            the destination y coordinate
+     */
+    public final void moveTo(final Node<T> node, final double x, final double y) {
+        final int slot = slotOf(node);
+        origin[0] = columns.getCoordinate(slot, 0);
+        origin[1] = columns.getCoordinate(slot, 1);
+        if (origin[0] != x || origin[1] != y) { // NOPMD: exact comparison is intended
+            includeObject(x, x, y, y);
+            columns.setCoordinate(slot, 0, x);
+            columns.setCoordinate(slot, 1, y);
+            destination[0] = x;
+            destination[1] = y;
+            moveInIndex(node, origin, destination);
+            updateNeighborhood(node, false);
+            final Simulation<T, Euclidean2DPosition> simulation = getSimulation();
+            if (simulation != null) {
+                simulation.nodeMoved(node);
+            }
+        }
+    }
+
+    /**
+     * Delegates to {@link #moveBy(Node, double, double)}.
+     */
+    @Override
+    public final void moveNode(final Node<T> node, final Euclidean2DPosition direction) {
+        moveBy(node, direction.getX(), direction.getY());
+    }
+
+    /**
+     * Delegates to {@link #moveTo(Node, double, double)}.
+     */
+    @Override
+    public final void moveNodeToPosition(final Node<T> node, final Euclidean2DPosition newpos) {
+        moveTo(node, newpos.getX(), newpos.getY());
+    }
+
+    private int slotOf(final Node<T> node) {
+        return columns.slotOf(Objects.requireNonNull(node).getId());
+    }
+
+    private static final class Columns extends CoordinateColumns<Euclidean2DPosition> {
+        private static final long serialVersionUID = 1L;
+
+        private Columns() {
+            super(2);
+        }
+
+        @Override
+        Euclidean2DPosition makePosition(final int slot) {
+            return new Euclidean2DPosition(getCoordinate(slot, 0), getCoordinate(slot, 1));
+        }
+    }
+
+}
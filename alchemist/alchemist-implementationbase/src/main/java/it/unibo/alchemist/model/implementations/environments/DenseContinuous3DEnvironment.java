@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.model.implementations.positions.Euclidean3DPosition;
+import it.unibo.alchemist.model.implementations.spatialindexes.Octree;
+import it.unibo.alchemist.model.interfaces.Node;
+import org.danilopianini.util.SpatialIndex;
+
+import java.util.Objects;
+
+/**
+ * A {@link Continuous3DEnvironment} keeping the coordinates of the nodes in
+ * three dense arrays, one per axis, as {@link DenseContinuous2DEnvironment}
+ * does: no {@link Euclidean3DPosition} is stored, and reading coordinates,
+ * computing distances, and moving nodes allocate no objects, up to the
+ * neighborhood update that follows each movement. All movements go through
+ * {@link #moveTo(Node, double, double, double)}.
+ *
+ * @param <T>
+ *            concentration type
+ */
+public class DenseContinuous3DEnvironment<T> extends Continuous3DEnvironment<T> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DIMENSIONS = 3;
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int Z = 2;
+    private final Columns columns;
+    /*
+     * Scratch arrays for the spatial index: movements are never concurrent
+     */
+    private final double[] origin = new double[DIMENSIONS];
+    private final double[] destination = new double[DIMENSIONS];
+
+    /**
+     * Builds an environment indexing its nodes with an {@link Octree}.
+     */
+    public DenseContinuous3DEnvironment() {
+        this(new Octree<>());
+    }
+
+    /**
+     * @param index
+     *            the tridimensional {@link SpatialIndex} to use in order to
+     *            efficiently retrieve nodes
+     */
+    public DenseContinuous3DEnvironment(final SpatialIndex<Node<T>> index) {
+        this(index, new Columns());
+    }
+
+    private DenseContinuous3DEnvironment(final SpatialIndex<Node<T>> index, final Columns columns) {
+        super(index, columns);
+        this.columns = columns;
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the x coordinate of the node
+     */
+    public final double getX(final Node<T> node) {
+        return columns.getCoordinate(slotOf(node), X);
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the y coordinate of the node
+     */
+    public final double getY(final Node<T> node) {
+        return columns.getCoordinate(slotOf(node), Y);
+    }
+
+    /**
+     * @param node
+     *            the node
+     * @return the z coordinate of the node
+     */
+    public final double getZ(final Node<T> node) {
+        return columns.getCoordinate(slotOf(node), Z);
+    }
+
+    /**
+     * @param first
+     *            the first node
+     * @param second
+     *            the second node
+     * @return the distance between the two nodes
+     */
+    public final double getDistance(final Node<T> first, final Node<T> second) {
+        return columns.getDistanceBetween(slotOf(first), slotOf(second));
+    }
+
+    /**
+     * Moves a node by the given displacement.
+     *
+     * @param node
+     *            the node to move
+     * @param dx
+     *            the displacement along the x axis
+     * @param dy
+     *            the displacement along the y axis
+     * @param dz
+     *            the displacement along the z axis
+     */
+    public final void moveBy(final Node<T> node, final double dx, final double dy, final double dz) {
+        final int slot = slotOf(node);
+        moveTo(node, columns.getCoordinate(slot, X) + dx, columns.getCoordinate(slot, Y) + dy, columns.getCoordinate(slot, Z) + dz);
+    }
+
+    /**
+     * Moves a node to the given coordinates, updating its neighborhood. Does
+     * nothing if the node is already there.
+     *
+     * @param node
+     *            the node to move
+     * @param x
+     *            the destination x coordinate
+     * @param y
+     *            the destination y coordinate
+     * @param z
+     *            the destination z coordinate
+     */
+    public final void moveTo(final Node<T> node, final double x, final double y, final double z) {
+        final int slot = slotOf(node);
+        for (int i = 0; i < DIMENSIONS; i++) {
+            origin[i] = columns.getCoordinate(slot, i);
+        }
+        destination[X] = x;
+        destination[Y] = y;
+        destination[Z] = z;
+        if (origin[X] != x || origin[Y] != y || origin[Z] != z) { // NOPMD: exact comparison is intended
+            includeObject(x, y, z);
+            for (int i = 0; i < DIMENSIONS; i++) {
+                columns.setCoordinate(slot, i, destination[i]);
+            }
+            moveInIndex(node, origin, destination);
+            updateNeighborhood(node, false);
+            final Simulation<T, Euclidean3DPosition> simulation = getSimulation();
+            if (simulation != null) {
+                simulation.nodeMoved(node);
+            }
+        }
+    }
+
+    /**
+     * Delegates to {@link #moveBy(Node, double, double, double)}.
+     */
+    @Override
+    public final void moveNode(final Node<T> node, final Euclidean3DPosition direction) {
+        moveBy(node, direction.getX(), direction.getY(), direction.getZ());
+    }
+
+    /**
+     * Delegates to {@link #moveTo(Node, double, double, double)}.
+     */
+    @Override
+    public final void moveNodeToPosition(final Node<T> node, final Euclidean3DPosition newpos) {
+        moveTo(node, newpos.getX(), newpos.getY(), newpos.getZ());
+    }
+
+    private int slotOf(final Node<T> node) {
+        return columns.slotOf(Objects.requireNonNull(node).getId());
+    }
+
+    private static final class Columns extends CoordinateColumns<Euclidean3DPosition> {
+        private static final long serialVersionUID = 1L;
+
+        private Columns() {
+            super(DIMENSIONS);
+        }
+
+        @Override
+        Euclidean3DPosition makePosition(final int slot) {
+            return new Euclidean3DPosition(getCoordinate(slot, X), getCoordinate(slot, Y), getCoordinate(slot, Z));
+        }
+    }
+
+}
@@ -23,6 +23,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
  * This environment loads an image from the file system, and marks as obstacles all the pixels of a given color.
+ * Pixels are merged in rectangular obstacles: for large images with many of them, consider {@link BitmapEnvironment}.
  * 
  * @param <T>
  */
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import it.unibo.alchemist.model.interfaces.Position;
+
+/**
+ * Keeps one {@link Position} object per node.
+ *
+ * @param <P>
+ *            {@link Position} type
+ */
+final class MapPositionStore<P extends Position<P>> implements PositionStore<P> {
+
+    private static final long serialVersionUID = 1L;
+    private final TIntObjectHashMap<P> positions = new TIntObjectHashMap<>();
+
+    @Override
+    public P get(final int id) {
+        return positions.get(id);
+    }
+
+    @Override
+    public boolean getCoordinates(final int id, final double[] destination) {
+        final P position = positions.get(id);
+        if (position == null) {
+            return false;
+        }
+        final double[] coordinates = position.getCartesianCoordinates();
+        System.arraycopy(coordinates, 0, destination, 0, destination.length);
+        return true;
+    }
+
+    @Override
+    public double getDistance(final int id, final P position) {
+        return positions.get(id).getDistanceTo(position);
+    }
+
+    @Override
+    public void put(final int id, final P position) {
+        positions.put(id, position);
+    }
+
+    @Override
+    public boolean remove(final int id) {
+        return positions.remove(id) != null;
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import it.unibo.alchemist.model.interfaces.Position;
+
+import java.io.Serializable;
+
+/**
+ * Keeps the positions of the nodes of an {@link AbstractEnvironment}, by node
+ * id. Implementations may store coordinates rather than positions, and build
+ * positions only when requested.
+ *
+ * @param <P>
+ *            {@link Position} type
+ */
+public interface PositionStore<P extends Position<P>> extends Serializable {
+
+    /**
+     * @param id
+     *            the node id
+     * @return the position of the node, or null if the node has none
+     */
+    P get(int id);
+
+    /**
+     * Copies the coordinates of a node, in the same order as
+     * {@link Position#getCartesianCoordinates()}, which is the order used by
+     * spatial indexes.
+     *
+     * @param id
+     *            the node id
+     * @param destination
+     *            the array to fill, as long as the number of dimensions
+     * @return false, leaving the destination untouched, if the node has no
+     *         position
+     */
+    boolean getCoordinates(int id, double[] destination);
+
+    /**
+     * @param id
+     *            the node id
+     * @param position
+     *            the position to compute the distance from
+     * @return the distance of the node from the position
+     */
+    double getDistance(int id, P position);
+
+    /**
+     * Sets the position of a node, replacing the previous one, if any.
+     *
+     * @param id
+     *            the node id
+     * @param position
+     *            the new position
+     */
+    void put(int id, P position);
+
+    /**
+     * @param id
+     *            the node id
+     * @return false if the node had no position
+     */
+    boolean remove(int id);
+
+}
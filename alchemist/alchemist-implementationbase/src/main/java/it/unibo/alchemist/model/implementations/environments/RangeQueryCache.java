@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.environments;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position;
+import org.apache.commons.math3.util.FastMath;
+import org.danilopianini.util.ListSet;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Caches the results of range queries, evicting only those which may have been
+ * affected by a change.
+ * <p>
+ * The space is divided in cells, each storing the epoch of its last change (a
+ * node being added, removed, or moving from or to it). Every cached result
+ * remembers the epoch it was computed at, and it is still valid if none of the
+ * cells overlapping the bounding box of the query disc changed since. Cells
+ * are sized after the largest range queried, hence a validity check visits
+ * a few cells. Cells are hashed, collisions are harmless: they can only cause
+ * some result to be recomputed.
+ * <p>
+ * Results are stored in a two-way set associative table, keyed by the query
+ * center and range, so that hits do not allocate. The cache can be used by concurrent
+ * threads: its bookkeeping is guarded by the cache itself, while missing
+ * results are computed outside of the lock. Results computed while the cache
+ * got reset are never considered valid.
+ *
+ * @param <T>
+ *            concentration type
+ * @param <P>
+ *            position type
+ */
+final class RangeQueryCache<T, P extends Position<P>> {
+
+    private static final int SLOTS = 1 << 10;
+    private static final int MAX_CHECKED_CELLS = 256;
+    private static final int MAX_TRACKED_CELLS = 1 << 16;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private final Object[] entries = new Object[SLOTS];
+    private final TLongLongHashMap lastChange = new TLongLongHashMap();
+    private final BiFunction<P, Double, ListSet<Node<T>>> query;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private double cellSize = Double.NaN;
+    private long epoch;
+    /*
+     * Results computed before this epoch predate the last reset
+     */
+    private long horizon;
+    /*
+     * Scratch space for validity checks
+     */
+    private long[] min = new long[0];
+    private long[] max = new long[0];
+    private long[] current = new long[0];
+
+    /**
+     * @param query
+     *            computes the nodes within the given range from the given
+     *            position
+     */
+    RangeQueryCache(final BiFunction<P, Double, ListSet<Node<T>>> query) {
+        this.query = query;
+    }
+
+    /**
+     * @param center
+     *            the query center
+     * @param range
+     *            the query range
+     * @return the nodes within range, possibly from the cache
+     */
+    ListSet<Node<T>> get(final P center, final double range) {
+        final int set = (center.hashCode() * 31 + Double.hashCode(range)) & (SLOTS - 2);
+        final long observed;
+        synchronized (this) {
+            if (Double.isFinite(range) && !(range <= cellSize)) {
+                /*
+                 * Cells sized after smaller ranges would make validity checks
+                 * too expensive: drop the history and start over
+                 */
+                cellSize = range;
+                reset();
+            }
+            for (int slot = set; slot < set + 2; slot++) {
+                final Entry<T, P> cached = entry(slot);
+                if (cached != null && cached.matches(center, range) && isValid(cached)) {
+                    hits.increment();
+                    return cached.result;
+                }
+            }
+            observed = epoch;
+        }
+        misses.increment();
+        final ListSet<Node<T>> result = query.apply(center, range);
+        final Entry<T, P> entry = new Entry<>(center, range, result, observed);
+        synchronized (this) {
+            if (observed >= horizon) {
+                /*
+                 * Replaces the same query if present, otherwise the oldest
+                 */
+                final Entry<T, P> first = entry(set);
+                final Entry<T, P> second = entry(set + 1);
+                final boolean replaceFirst = first != null && first.matches(center, range)
+                        || !(second != null && second.matches(center, range))
+                            && (first == null || second != null && first.epoch <= second.epoch);
+                entries[replaceFirst ? set : set + 1] = entry;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records that the content of the area around the coordinates changed. Must
+     * be called for both the old and the new position of moving nodes.
+     *
+     * @param coordinates
+     *            the coordinates of the node added, removed or moved
+     */
+    synchronized void changed(final double[] coordinates) {
+        epoch++;
+        if (!Double.isNaN(cellSize)) {
+            if (lastChange.size() >= MAX_TRACKED_CELLS) {
+                reset();
+            }
+            long cell = 0;
+            for (final double coordinate: coordinates) {
+                cell = cell * HASH_MULTIPLIER + cellOf(coordinate);
+            }
+            lastChange.put(cell, epoch);
+        }
+    }
+
+    /**
+     * @return the number of queries answered from the cache
+     */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of queries which required a lookup in the spatial
+     *         index
+     */
+    long getMisses() {
+        return misses.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<T, P> entry(final int slot) {
+        return (Entry<T, P>) entries[slot];
+    }
+
+    private void reset() {
+        Arrays.fill(entries, null);
+        lastChange.clear();
+        epoch++;
+        horizon = epoch;
+    }
+
+    private long cellOf(final double coordinate) {
+        return (long) FastMath.floor(coordinate / cellSize);
+    }
+
+    private boolean isValid(final Entry<T, P> entry) {
+        if (entry.epoch < horizon) {
+            return false;
+        }
+        if (entry.epoch == epoch) {
+            return true;
+        }
+        if (!Double.isFinite(entry.range)) {
+            return false;
+        }
+        final double[] coordinates = entry.coordinates;
+        if (min.length != coordinates.length) {
+            min = new long[coordinates.length];
+            max = new long[coordinates.length];
+            current = new long[coordinates.length];
+        }
+        double cells = 1;
+        for (int i = 0; i < coordinates.length; i++) {
+            min[i] = cellOf(coordinates[i] - entry.range);
+            max[i] = cellOf(coordinates[i] + entry.range);
+            cells *= (double) max[i] - min[i] + 1;
+        }
+        if (!(cells <= MAX_CHECKED_CELLS)) {
+            return false;
+        }
+        /*
+         * Visits every cell in [min, max], odometer-style
+         */
+        System.arraycopy(min, 0, current, 0, min.length);
+        while (true) {
+            long cell = 0;
+            for (final long index: current) {
+                cell = cell * HASH_MULTIPLIER + index;
+            }
+            if (lastChange.get(cell) > entry.epoch) {
+                return false;
+            }
+            int dimension = 0;
+            while (dimension < current.length && current[dimension] == max[dimension]) {
+                current[dimension] = min[dimension];
+                dimension++;
+            }
+            if (dimension == current.length) {
+                return true;
+            }
+            current[dimension]++;
+        }
+    }
+
+    private static final class Entry<T, P extends Position<P>> {
+        private final P center;
+        private final double[] coordinates;
+        private final double range;
+        private final ListSet<Node<T>> result;
+        private final long epoch;
+        private Entry(final P center, final double range, final ListSet<Node<T>> result, final long epoch) {
+            this.center = center;
+            this.coordinates = center.getCartesianCoordinates();
+            this.range = range;
+            this.result = result;
+            this.epoch = epoch;
+        }
+        private boolean matches(final P other, final double otherRange) {
+            return Double.compare(range, otherRange) == 0 && center.equals(other);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.layers;
+
+import it.unibo.alchemist.model.interfaces.Layer;
+import it.unibo.alchemist.model.interfaces.Position2D;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.stream.IntStream;
+
+/**
+ * A {@link Layer} whose values diffuse and decay over time, following
+ * dc/dt = D * laplacian(c) - k * c.
+ * <p>
+ * Values are stored on a regular grid, and interpolated bilinearly in between
+ * as in {@link RasterLayer}. The equation is solved with explicit finite
+ * differences, with no flux across the borders of the grid: time is split in
+ * as many sub steps as needed to keep the solution stable, non negative and
+ * free from oscillations, while decay is applied exactly. Each sub step
+ * updates the rows of large grids in parallel.
+ * <p>
+ * The layer only changes when {@link #advanceTo(double)} is called, usually
+ * by a {@link it.unibo.alchemist.model.implementations.reactions.DiffusionLayerUpdate}.
+ * Nodes can read it as any other layer, and change it through
+ * {@link #deposit(double, double, double)}. This class is not thread safe:
+ * {@link it.unibo.alchemist.model.implementations.reactions.DiffusionLayerUpdate}
+ * and {@link it.unibo.alchemist.model.implementations.actions.DepositInLayer}
+ * declare a global context, so that engines never run them concurrently.
+ *
+ * @param <P> position type
+ */
+public final class DiffusionLayer<P extends Position2D<? extends P>> implements Layer<Double, P> {
+
+    private static final long serialVersionUID = 1L;
+    /*
+     * Grids smaller than this number of values are not worth parallelizing
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    private static final int NEIGHBORS = 4;
+    /*
+     * Fraction of the weight each point keeps of its own value in a sub
+     * step: explicit diffusion is stable as long as it is non negative, but
+     * oscillates between adjacent points when it approaches zero
+     */
+    private static final double SELF_WEIGHT = 0.5;
+    private final double minX;
+    private final double minY;
+    private final double step;
+    private final int columns;
+    private final int rows;
+    private final double diffusion;
+    private final double decay;
+    private double[] values;
+    private transient double[] buffer;
+    private double time;
+
+    /**
+     * @param minX
+     *            minimum x of the grid
+     * @param minY
+     *            minimum y of the grid
+     * @param maxX
+     *            maximum x of the grid
+     * @param maxY
+     *            maximum y of the grid
+     * @param step
+     *            distance between two adjacent grid points along each axis
+     * @param diffusion
+     *            the diffusion coefficient D, in squared distance units per
+     *            time unit
+     * @param decay
+     *            the decay rate k, per time unit
+     */
+    public DiffusionLayer(
+            final double minX,
+            final double minY,
+            final double maxX,
+            final double maxY,
+            final double step,
+            final double diffusion,
+            final double decay) {
+        if (!(diffusion >= 0 && decay >= 0) || Double.isInfinite(diffusion) || Double.isInfinite(decay)) {
+            throw new IllegalArgumentException("Diffusion and decay must be non negative finite numbers, got "
+                    + diffusion + " and " + decay);
+        }
+        this.columns = RasterLayer.samples(minX, maxX, step);
+        this.rows = RasterLayer.samples(minY, maxY, step);
+        if ((long) columns * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(columns + "x" + rows + " grid points can not be stored");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.step = step;
+        this.diffusion = diffusion;
+        this.decay = decay;
+        this.values = new double[columns * rows];
+    }
+
+    @Override
+    public Double getValue(final P p) {
+        return getValue(p.getX(), p.getY());
+    }
+
+    /**
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     * @return the value in the given point, or in the closest point of the
+     *         grid if it lies outside
+     */
+    public double getValue(final double x, final double y) {
+        return RasterLayer.interpolate(values, columns, rows, (x - minX) / step, (y - minY) / step);
+    }
+
+    /**
+     * Adds a quantity to the grid point closest to the given position. Values
+     * can be decreased by depositing negative quantities, but never below
+     * zero.
+     *
+     * @param position
+     *            the position
+     * @param quantity
+     *            the quantity to add
+     * @return false if the position is outside of the grid, and nothing has
+     *         been deposited
+     */
+    public boolean deposit(final P position, final double quantity) {
+        return deposit(position.getX(), position.getY(), quantity);
+    }
+
+    /**
+     * Adds a quantity to the grid point closest to the given position. Values
+     * can be decreased by depositing negative quantities, but never below
+     * zero.
+     *
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     * @param quantity
+     *            the quantity to add
+     * @return false if the position is outside of the grid, and nothing has
+     *         been deposited
+     */
+    public boolean deposit(final double x, final double y, final double quantity) {
+        final double column = FastMath.rint((x - minX) / step);
+        final double row = FastMath.rint((y - minY) / step);
+        if (column >= 0 && column < columns && row >= 0 && row < rows) {
+            final int index = (int) row * columns + (int) column;
+            values[index] = FastMath.max(0, values[index] + quantity);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lets values diffuse and decay up to the given time. Times in the past
+     * are ignored, so that several reactions can advance the same layer.
+     *
+     * @param target
+     *            the time to reach
+     */
+    public void advanceTo(final double target) {
+        if (target > time) {
+            final double delta = target - time;
+            final double rate = NEIGHBORS * diffusion / (step * step) / (1 - SELF_WEIGHT);
+            final int subSteps = (int) FastMath.max(1, FastMath.ceil(delta * rate));
+            final double dt = delta / subSteps;
+            if (buffer == null) {
+                buffer = new double[values.length];
+            }
+            for (int i = 0; i < subSteps; i++) {
+                final double[] from = values;
+                final double[] to = buffer;
+                final IntStream allRows = IntStream.range(0, rows);
+                (values.length < PARALLEL_THRESHOLD ? allRows : allRows.parallel())
+                    .forEach(row -> updateRow(from, to, row, dt));
+                buffer = values;
+                values = to;
+            }
+            time = target;
+        }
+    }
+
+    /**
+     * @return the time the layer has been advanced to
+     */
+    public double getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + columns + "x" + rows + " from (" + minX + ", " + minY + "), step " + step
+                + ", D=" + diffusion + ", k=" + decay + ", t=" + time + ']';
+    }
+
+    /*
+     * Neighbors beyond the border are the point itself: no flux crosses it
+     */
+    private void updateRow(final double[] from, final double[] to, final int row, final double dt) {
+        final double spread = diffusion * dt / (step * step);
+        final double kept = FastMath.exp(-decay * dt);
+        final int offset = row * columns;
+        final int below = row == 0 ? offset : offset - columns;
+        final int above = row == rows - 1 ? offset : offset + columns;
+        for (int column = 0; column < columns; column++) {
+            final double current = from[offset + column];
+            final double left = column == 0 ? current : from[offset + column - 1];
+            final double right = column == columns - 1 ? current : from[offset + column + 1];
+            final double laplacian = left + right + from[below + column] + from[above + column] - NEIGHBORS * current;
+            to[offset + column] = FastMath.max(0, kept * (current + spread * laplacian));
+        }
+    }
+
+}
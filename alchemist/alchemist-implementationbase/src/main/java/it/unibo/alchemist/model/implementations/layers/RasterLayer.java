@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.layers;
+
+import com.google.common.io.ByteStreams;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Layer;
+import it.unibo.alchemist.model.interfaces.Position2D;
+import org.apache.commons.math3.util.FastMath;
+import org.kaikikm.threadresloader.ResourceLoader;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link Layer} whose values are sampled on a regular grid, and bilinearly
+ * interpolated in between. Values are stored in a flat array, row by row,
+ * starting from the row with the lowest y.
+ * <p>
+ * The grid can be obtained by sampling another layer once, which is useful
+ * when such layer is expensive to compute and read frequently, or loaded from
+ * a binary or image file. Outside of the grid, either the sampled layer is
+ * used, or the value of the closest border.
+ *
+ * @param <P> position type
+ */
+public final class RasterLayer<P extends Position2D<? extends P>> implements Layer<Double, P> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int COLOR_CHANNEL = 0xFF;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final double RED_WEIGHT = 0.299;
+    private static final double GREEN_WEIGHT = 0.587;
+    private static final double BLUE_WEIGHT = 0.114;
+    private final double minX;
+    private final double minY;
+    private final double step;
+    private final int columns;
+    private final int rows;
+    private final double[] values;
+    private final Layer<? extends Number, P> outside;
+
+    /**
+     * @param minX
+     *            x coordinate of the first column
+     * @param minY
+     *            y coordinate of the first row
+     * @param step
+     *            distance between two adjacent rows or columns
+     * @param columns
+     *            number of columns
+     * @param values
+     *            the values, row by row. Their number must be a multiple of
+     *            the columns.
+     */
+    public RasterLayer(final double minX, final double minY, final double step, final int columns, final double[] values) {
+        this(minX, minY, step, columns, values, null);
+    }
+
+    /**
+     * Samples a layer in a rectangular area. The original layer is used
+     * outside such area.
+     *
+     * @param environment
+     *            the environment, used to build the sampled positions
+     * @param layer
+     *            the layer to sample
+     * @param minX
+     *            minimum x of the sampled area
+     * @param minY
+     *            minimum y of the sampled area
+     * @param maxX
+     *            maximum x of the sampled area
+     * @param maxY
+     *            maximum y of the sampled area
+     * @param step
+     *            distance between two adjacent samples along each axis
+     */
+    public RasterLayer(
+            final Environment<?, P> environment,
+            final Layer<? extends Number, P> layer,
+            final double minX,
+            final double minY,
+            final double maxX,
+            final double maxY,
+            final double step) {
+        this(minX, minY, step, samples(minX, maxX, step), sample(environment, layer, minX, minY, maxX, maxY, step), layer);
+    }
+
+    /**
+     * Loads the values from a binary file of doubles, big endian, without any
+     * header. Files are memory mapped while loading.
+     *
+     * @param path
+     *            the path of the file, or of the resource in the classpath
+     * @param minX
+     *            x coordinate of the first column
+     * @param minY
+     *            y coordinate of the first row
+     * @param step
+     *            distance between two adjacent rows or columns
+     * @param columns
+     *            number of columns
+     * @throws IOException
+     *             if the file can not be read
+     */
+    public RasterLayer(final String path, final double minX, final double minY, final double step, final int columns) throws IOException {
+        this(minX, minY, step, columns, readDoubles(path), null);
+    }
+
+    /**
+     * Loads the values from an image, whose pixels become the samples. The
+     * brightness of each pixel is scaled linearly, from the value of black to
+     * the value of white.
+     *
+     * @param path
+     *            the path of the image, or of the resource in the classpath
+     * @param minX
+     *            x coordinate of the leftmost pixels
+     * @param minY
+     *            y coordinate of the bottom pixels
+     * @param step
+     *            size of the pixels
+     * @param black
+     *            value of black pixels
+     * @param white
+     *            value of white pixels
+     * @throws IOException
+     *             if the image can not be read
+     */
+    public RasterLayer(
+            final String path,
+            final double minX,
+            final double minY,
+            final double step,
+            final double black,
+            final double white) throws IOException {
+        this(minX, minY, step, readImage(path), black, white);
+    }
+
+    private RasterLayer(
+            final double minX,
+            final double minY,
+            final double step,
+            final BufferedImage image,
+            final double black,
+            final double white) {
+        this(minX, minY, step, image.getWidth(), brightness(image, black, white), null);
+    }
+
+    private RasterLayer(
+            final double minX,
+            final double minY,
+            final double step,
+            final int columns,
+            final double[] values,
+            final Layer<? extends Number, P> outside) {
+        if (!(step > 0) || Double.isInfinite(step)) {
+            throw new IllegalArgumentException("The step must be a positive finite number, got " + step);
+        }
+        if (columns <= 0 || values.length == 0 || values.length % columns != 0) {
+            throw new IllegalArgumentException(values.length + " values can not be arranged in " + columns + " columns");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.step = step;
+        this.columns = columns;
+        this.rows = values.length / columns;
+        this.values = values;
+        this.outside = outside;
+    }
+
+    @Override
+    public Double getValue(final P p) {
+        return getValue(p.getX(), p.getY(), p);
+    }
+
+    /**
+     * @param x
+     *            the x coordinate
+     * @param y
+     *            the y coordinate
+     * @return the value in the given point, or in the closest point of the
+     *         grid if it lies outside
+     */
+    public double getValue(final double x, final double y) {
+        return getValue(x, y, null);
+    }
+
+    private double getValue(final double x, final double y, final P position) {
+        final double column = (x - minX) / step;
+        final double row = (y - minY) / step;
+        if (!(column >= 0 && column <= columns - 1 && row >= 0 && row <= rows - 1) && outside != null && position != null) {
+            return outside.getValue(position).doubleValue();
+        }
+        return interpolate(values, columns, rows, column, row);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + columns + "x" + rows + " from (" + minX + ", " + minY + "), step " + step + ']';
+    }
+
+    /*
+     * Bilinear interpolation at fractional column and row, clamped to the grid
+     */
+    static double interpolate(final double[] values, final int columns, final int rows, final double column, final double row) {
+        final double clampedColumn = FastMath.max(0, FastMath.min(column, columns - 1));
+        final double clampedRow = FastMath.max(0, FastMath.min(row, rows - 1));
+        final int left = FastMath.min((int) clampedColumn, FastMath.max(columns - 2, 0));
+        final int bottom = FastMath.min((int) clampedRow, FastMath.max(rows - 2, 0));
+        final int right = FastMath.min(left + 1, columns - 1);
+        final int top = FastMath.min(bottom + 1, rows - 1);
+        final double dx = clampedColumn - left;
+        final double dy = clampedRow - bottom;
+        final double lower = values[bottom * columns + left] * (1 - dx) + values[bottom * columns + right] * dx;
+        final double upper = values[top * columns + left] * (1 - dx) + values[top * columns + right] * dx;
+        return lower * (1 - dy) + upper * dy;
+    }
+
+    static int samples(final double min, final double max, final double step) {
+        if (!(step > 0)) {
+            throw new IllegalArgumentException("The step must be a positive number, got " + step);
+        }
+        if (!(max >= min)) {
+            throw new IllegalArgumentException("Invalid range [" + min + ", " + max + "]");
+        }
+        final double samples = FastMath.ceil((max - min) / step) + 1;
+        if (!(samples <= Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Too many samples in [" + min + ", " + max + "] with step " + step);
+        }
+        return (int) samples;
+    }
+
+    private static <P extends Position2D<? extends P>> double[] sample(
+            final Environment<?, P> environment,
+            final Layer<? extends Number, P> layer,
+            final double minX,
+            final double minY,
+            final double maxX,
+            final double maxY,
+            final double step) {
+        final int columns = samples(minX, maxX, step);
+        final int rows = samples(minY, maxY, step);
+        if ((long) columns * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(columns + "x" + rows + " samples can not be stored");
+        }
+        final double[] result = new double[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                result[row * columns + column] = layer
+                        .getValue(environment.makePosition(minX + column * step, minY + row * step))
+                        .doubleValue();
+            }
+        }
+        return result;
+    }
+
+    private static double[] readDoubles(final String path) throws IOException {
+        final File file = new File(path);
+        if (file.isFile()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                return toDoubles(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        try (InputStream resource = ResourceLoader.getResourceAsStream(path)) {
+            if (resource == null) {
+                throw new IOException(path + " is neither a file nor a resource");
+            }
+            return toDoubles(ByteBuffer.wrap(ByteStreams.toByteArray(resource)));
+        }
+    }
+
+    private static double[] toDoubles(final ByteBuffer bytes) {
+        final DoubleBuffer doubles = bytes.asDoubleBuffer();
+        final double[] result = new double[doubles.remaining()];
+        doubles.get(result);
+        return result;
+    }
+
+    private static BufferedImage readImage(final String path) throws IOException {
+        final InputStream resource = ResourceLoader.getResourceAsStream(path);
+        final BufferedImage image = resource == null ? ImageIO.read(new File(path)) : ImageIO.read(resource);
+        if (image == null) {
+            throw new IOException(path + " is not a supported image");
+        }
+        return image;
+    }
+
+    /*
+     * Image rows go downwards, layer rows upwards
+     */
+    private static double[] brightness(final BufferedImage image, final double black, final double white) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final double[] result = new double[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                final int rgb = image.getRGB(column, height - 1 - row);
+                final double luminance = (RED_WEIGHT * ((rgb >> RED_SHIFT) & COLOR_CHANNEL)
+                        + GREEN_WEIGHT * ((rgb >> GREEN_SHIFT) & COLOR_CHANNEL)
+                        + BLUE_WEIGHT * (rgb & COLOR_CHANNEL)) / COLOR_CHANNEL;
+                result[row * width + column] = black + (white - black) * luminance;
+            }
+        }
+        return result;
+    }
+
+}
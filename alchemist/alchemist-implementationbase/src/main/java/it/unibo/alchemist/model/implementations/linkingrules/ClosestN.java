@@ -7,23 +7,26 @@
  */
 package it.unibo.alchemist.model.implementations.linkingrules;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.commons.math3.util.FastMath;
-import org.danilopianini.util.stream.SmallestN;
-import org.jooq.lambda.tuple.Tuple2;
+import org.danilopianini.util.ListSet;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.MinMaxPriorityQueue;
-import com.google.common.primitives.Doubles;
 
 import it.unibo.alchemist.model.implementations.neighborhoods.Neighborhoods;
+import it.unibo.alchemist.model.implementations.positions.AbstractEuclideanPosition;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.positions.Manhattan2DPosition;
 import it.unibo.alchemist.model.interfaces.Environment;
 import it.unibo.alchemist.model.interfaces.LinkingRule;
 import it.unibo.alchemist.model.interfaces.Neighborhood;
@@ -41,7 +44,14 @@ public class ClosestN<T, P extends Position<P>> implements LinkingRule<T, P> {
 
     private static final long serialVersionUID = 2L;
     private static final double CONNECTION_RANGE_TOLERANCE = 1.1;
-    private final int n, expectedNodes, maxNodes;
+    private static final int SECTORS = 6;
+    /*
+     * Keeps the sides of the sectors off the axes, see sectorCandidates
+     */
+    private static final double SECTOR_ROTATION = 0.1;
+    private static final int MAX_ORTHANT_DIMENSIONS = 3;
+    private static final double HALF = 0.5;
+    private final int n, expectedNodes, maxNodes, propagationDepth;
     @SuppressFBWarnings("SE_TRANSIENT_FIELD_NOT_RESTORED")
     private transient Cache<Node<T>, Double> ranges;
 
@@ -54,14 +64,35 @@ public class ClosestN<T, P extends Position<P>> implements LinkingRule<T, P> {
      * @param maxNodes
      *            the maximum number of nodes for which the connection range
      *            will be cached
+     * @param propagationDepth
+     *            how many hops away from a node which moved the neighborhoods
+     *            get recomputed, see {@link LinkingRule#getPropagationDepth()}
      */
-    public ClosestN(final int n, final int expectedNodes, final int maxNodes) {
+    public ClosestN(final int n, final int expectedNodes, final int maxNodes, final int propagationDepth) {
         if (n < 1) {
             throw new IllegalArgumentException("The parameter must be an integer greater than 0");
         }
+        if (propagationDepth < 0) {
+            throw new IllegalArgumentException("The propagation depth can not be negative, got " + propagationDepth);
+        }
         this.n = n;
         this.expectedNodes = expectedNodes;
         this.maxNodes = maxNodes;
+        this.propagationDepth = propagationDepth;
+    }
+
+    /**
+     * @param n
+     *            neighbors
+     * @param expectedNodes
+     *            how many nodes are expected to be inserted in the environment
+     *            (used for optimization)
+     * @param maxNodes
+     *            the maximum number of nodes for which the connection range
+     *            will be cached
+     */
+    public ClosestN(final int n, final int expectedNodes, final int maxNodes) {
+        this(n, expectedNodes, maxNodes, Integer.MAX_VALUE);
     }
 
     /**
@@ -83,7 +114,7 @@ public class ClosestN<T, P extends Position<P>> implements LinkingRule<T, P> {
         this(n, 0);
     }
 
-    private Cache<Node<T>, Double> ranges() {
+    private synchronized Cache<Node<T>, Double> ranges() {
         if (ranges == null) {
             ranges = CacheBuilder.newBuilder()
                 .maximumSize(maxNodes)
@@ -98,47 +129,288 @@ public class ClosestN<T, P extends Position<P>> implements LinkingRule<T, P> {
             return Neighborhoods.make(env, center);
         }
         return Neighborhoods.make(env, center,
-                Stream.concat(
-                    closestN(center, env),
-                    /*
-                     * Of all nodes but myself...
-                     */
-                    env.getNodes().parallelStream()
-                        /*
-                         * ...select those for which I'm on the closest n
-                         */
-                        .filter(node -> 
-                                !center.equals(node)
-                                && closestN(node, env).anyMatch(center::equals)
-                        )
-                )
-                .sequential()
-                .collect(Collectors.toCollection(LinkedHashSet::new)));
+                Stream.concat(closestN(center, env), reverseClosestN(center, env))
+                    .collect(Collectors.toCollection(LinkedHashSet::new)));
     }
 
-    private Stream<Node<T>> closestN(final Node<T> center, final Environment<T, ?> env) {
+    private Stream<Node<T>> closestN(final Node<T> center, final Environment<T, P> env) {
         if (!nodeIsEnabled(center)) {
             return Stream.empty();
         }
-        double currentRange = getRange(env, center);
-        Set<Node<T>> inRange;
-        final double maxRange = Doubles.max(env.getSizeInDistanceUnits()) * 2;
-        do {
-            inRange = (env.getNodesNumber() > n && currentRange < maxRange
-                    ? nodesInRange(env, center, currentRange).stream()
-                    : env.getNodes().stream())
-                        .filter(n -> !n.equals(center) && nodeIsEnabled(n))
-                        .collect(Collectors.toCollection(LinkedHashSet::new));
-            currentRange *= 2;
-        } while (inRange.size() < n && inRange.size() < env.getNodesNumber() - 1 && currentRange < maxRange * 2);
-        if (inRange.isEmpty()) {
-            return Stream.empty();
+        final P position = env.getPosition(center);
+        /*
+         * Disabled nodes are skipped: look further until n enabled ones are found
+         */
+        for (int k = n + 1;; k *= 2) {
+            final ListSet<Node<T>> nearest = env.getKNearestNodes(position, k);
+            final List<Node<T>> closest = nearest.stream()
+                    .filter(node -> !node.equals(center) && nodeIsEnabled(node))
+                    .limit(n)
+                    .collect(Collectors.toList());
+            if (closest.size() == n || nearest.size() < k) {
+                if (!closest.isEmpty()) {
+                    final double farthest = env.getPosition(closest.get(closest.size() - 1)).getDistanceTo(position);
+                    setRange(center, Math.max(Double.MIN_VALUE, farthest) * CONNECTION_RANGE_TOLERANCE);
+                }
+                return closest.stream();
+            }
+        }
+    }
+
+    /*
+     * Of all nodes but the center, selects those for which the center is among
+     * the closest n. Only the nodes found by the expanding queries of
+     * sectorCandidates or orthantCandidates get checked, except for positions
+     * whose distance gives no such bound (e.g. geographic ones), for which
+     * every node does.
+     */
+    private Stream<Node<T>> reverseClosestN(final Node<T> center, final Environment<T, P> env) {
+        final P position = env.getPosition(center);
+        final Stream<Node<T>> candidates;
+        if (position instanceof Euclidean2DPosition) {
+            candidates = sectorCandidates(center, position, env).stream();
+        } else if (position instanceof AbstractEuclideanPosition
+                && position.getDimensions() <= MAX_ORTHANT_DIMENSIONS) {
+            candidates = orthantCandidates(center, position, env, false).stream();
+        } else if (position instanceof Manhattan2DPosition) {
+            candidates = orthantCandidates(center, position, env, true).stream();
+        } else {
+            candidates = env.getNodes().parallelStream();
         }
-        final MinMaxPriorityQueue<Tuple2<Double, Node<T>>> closestN = inRange.stream()
-                .map(node -> new Tuple2<>(env.getDistanceBetweenNodes(center, node), node))
-                .collect(new SmallestN<>(n));
-        setRange(center, Math.max(Double.MIN_VALUE, closestN.peekLast().v1()) * CONNECTION_RANGE_TOLERANCE);
-        return closestN.stream().map(Tuple2::v2);
+        return candidates.filter(node -> !center.equals(node) && closestN(node, env).anyMatch(center::equals));
+    }
+
+    /*
+     * Splits the plane around the center in sectors of sixty degrees. If a
+     * sector holds n nodes at least as close to the center as some other node
+     * of the same sector, each of them is at least as close to that node as
+     * the center is: the center can not be among its closest n. Hence, only
+     * the closest n nodes of each sector are candidates. Sectors with fewer
+     * nodes, e.g. those pointing outside for nodes on the border, stop growing
+     * once the search radius covers the part of the environment they span.
+     * Sectors are slightly rotated: otherwise, for nodes on the border of
+     * environments aligned with the axes, the side of a sector would lie along
+     * the border, and the sector would span it up to the farthest corner.
+     */
+    private List<Node<T>> sectorCandidates(final Node<T> center, final P position, final Environment<T, P> env) {
+        final Euclidean2DPosition origin = (Euclidean2DPosition) position;
+        return coneCandidates(center, position, env, SECTORS,
+                other -> sectorOf(
+                        ((Euclidean2DPosition) other).getX() - origin.getX(),
+                        ((Euclidean2DPosition) other).getY() - origin.getY()),
+                sectorReach(origin.getX(), origin.getY(), env.getOffset(), env.getSize()));
+    }
+
+    /*
+     * Splits the space around the center in cones, one for each axis along which
+     * a node may be farthest from the center, each combination of signs of its
+     * offsets from the center, and each combination of halves of the ratios
+     * between its other offsets and the largest one. For Euclidean distances up
+     * to three dimensions, and for Manhattan distances in two, two nodes of the
+     * same cone are strictly closer to each other than the farther of them is to
+     * the center (this does not hold for Manhattan distances in three
+     * dimensions). As for sectors, only the closest n nodes of each cone are
+     * candidates.
+     */
+    private List<Node<T>> orthantCandidates(
+            final Node<T> center,
+            final P position,
+            final Environment<T, P> env,
+            final boolean manhattan) {
+        final double[] apex = position.getCartesianCoordinates();
+        return coneCandidates(center, position, env, orthants(apex.length),
+                other -> orthantOf(apex, other.getCartesianCoordinates()),
+                orthantReach(apex, env.getOffset(), env.getSize(), manhattan));
+    }
+
+    /*
+     * Looks for the closest n enabled nodes in each cone, stopping when every
+     * cone is either full or entirely within the search radius.
+     */
+    private List<Node<T>> coneCandidates(
+            final Node<T> center,
+            final P position,
+            final Environment<T, P> env,
+            final int cones,
+            final ToIntFunction<P> coneOf,
+            final double[] reach) {
+        for (int k = n * cones + 1;; k *= 2) {
+            final ListSet<Node<T>> nearest = env.getKNearestNodes(position, k);
+            final int[] found = new int[cones];
+            final List<Node<T>> candidates = new ArrayList<>(n * cones);
+            for (final Node<T> node: nearest) {
+                if (!node.equals(center) && nodeIsEnabled(node)) {
+                    final P other = env.getPosition(node);
+                    if (other.getDistanceTo(position) == 0) { // NOPMD: exact comparison is intended
+                        /*
+                         * As close as the center to any node: bounds nothing
+                         */
+                        candidates.add(node);
+                    } else {
+                        final int cone = coneOf.applyAsInt(other);
+                        if (found[cone] < n) {
+                            candidates.add(node);
+                            found[cone]++;
+                        }
+                    }
+                }
+            }
+            if (nearest.size() < k) {
+                return candidates;
+            }
+            /*
+             * Nodes not found yet are at least as far as the farthest found
+             */
+            final double radius = env.getPosition(nearest.get(nearest.size() - 1)).getDistanceTo(position);
+            boolean complete = true;
+            for (int cone = 0; cone < cones && complete; cone++) {
+                complete = found[cone] == n || reach[cone] < radius;
+            }
+            if (complete) {
+                return candidates;
+            }
+        }
+    }
+
+    private static int sectorOf(final double dx, final double dy) {
+        double angle = FastMath.atan2(dy, dx) + Math.PI - SECTOR_ROTATION;
+        if (angle < 0) {
+            angle += 2 * Math.PI;
+        }
+        return Math.min(SECTORS - 1, (int) (angle / (2 * Math.PI) * SECTORS));
+    }
+
+    /*
+     * Distance from the center of the farthest point of the environment within each sector. The farthest point of
+     * the intersection of a sector and a rectangle is either where one of the sides of the sector leaves the
+     * rectangle, or a corner of the rectangle.
+     */
+    private static double[] sectorReach(final double x, final double y, final double[] offset, final double[] size) {
+        final double minX = offset[0];
+        final double minY = offset[1];
+        final double maxX = minX + size[0];
+        final double maxY = minY + size[1];
+        final double[] reach = new double[SECTORS];
+        for (int sector = 0; sector < SECTORS; sector++) {
+            final double angle = 2 * Math.PI * sector / SECTORS - Math.PI + SECTOR_ROTATION;
+            final double border = exitDistance(x, y, FastMath.cos(angle), FastMath.sin(angle), minX, minY, maxX, maxY);
+            reach[sector] = Math.max(reach[sector], border);
+            final int previous = (sector + SECTORS - 1) % SECTORS;
+            reach[previous] = Math.max(reach[previous], border);
+        }
+        for (final double cornerX: new double[] { minX, maxX }) {
+            for (final double cornerY: new double[] { minY, maxY }) {
+                if (cornerX != x || cornerY != y) { // NOPMD: exact comparison is intended
+                    final int sector = sectorOf(cornerX - x, cornerY - y);
+                    reach[sector] = Math.max(reach[sector], FastMath.hypot(cornerX - x, cornerY - y));
+                }
+            }
+        }
+        /*
+         * Unknown bounds bound nothing
+         */
+        for (int sector = 0; sector < SECTORS; sector++) {
+            if (Double.isNaN(reach[sector])) {
+                reach[sector] = Double.POSITIVE_INFINITY;
+            }
+        }
+        return reach;
+    }
+
+    private static int orthants(final int dimensions) {
+        return dimensions << (2 * dimensions - 1);
+    }
+
+    /*
+     * The largest offset first, then the signs of the offsets, then which of
+     * the other offsets exceed half the largest one
+     */
+    private static int orthantOf(final double[] apex, final double[] other) {
+        int dominant = 0;
+        for (int i = 1; i < apex.length; i++) {
+            if (Math.abs(other[i] - apex[i]) > Math.abs(other[dominant] - apex[dominant])) {
+                dominant = i;
+            }
+        }
+        final double largest = Math.abs(other[dominant] - apex[dominant]);
+        int orthant = dominant;
+        for (int i = 0; i < apex.length; i++) {
+            orthant = orthant << 1 | (other[i] < apex[i] ? 1 : 0);
+        }
+        for (int i = 0; i < apex.length; i++) {
+            if (i != dominant) {
+                orthant = orthant << 1 | (Math.abs(other[i] - apex[i]) > HALF * largest ? 1 : 0);
+            }
+        }
+        return orthant;
+    }
+
+    /*
+     * Upper bound to the distance from the center of the points of the environment within each orthant: within the
+     * rectangle, the largest offset can not exceed the room on its side, nor twice the room for the offsets that
+     * must be larger than its half, and the other offsets can not exceed their room, nor the largest offset (or its
+     * half). Orthants requiring offsets towards a side with no room are empty.
+     */
+    private static double[] orthantReach(
+            final double[] apex,
+            final double[] offset,
+            final double[] size,
+            final boolean manhattan) {
+        final int dimensions = apex.length;
+        final double[] reach = new double[orthants(dimensions)];
+        final double[] room = new double[dimensions];
+        for (int orthant = 0; orthant < reach.length; orthant++) {
+            final int dominant = orthant >> (2 * dimensions - 1);
+            boolean empty = false;
+            for (int i = 0; i < dimensions; i++) {
+                final boolean negative = (orthant >> (2 * dimensions - 2 - i) & 1) == 1;
+                room[i] = negative ? apex[i] - offset[i] : offset[i] + size[i] - apex[i];
+                empty |= negative && room[i] <= 0;
+            }
+            double largest = room[dominant];
+            int half = dimensions - 2;
+            for (int i = 0; i < dimensions; i++) {
+                if (i != dominant && (orthant >> half-- & 1) == 1) {
+                    largest = Math.min(largest, room[i] / HALF);
+                }
+            }
+            double distance = manhattan ? largest : largest * largest;
+            half = dimensions - 2;
+            for (int i = 0; i < dimensions; i++) {
+                if (i != dominant) {
+                    final double other = Math.min(room[i], ((orthant >> half-- & 1) == 1 ? 1 : HALF) * largest);
+                    distance += manhattan ? other : other * other;
+                }
+            }
+            if (empty) {
+                reach[orthant] = Double.NEGATIVE_INFINITY;
+            } else if (Double.isNaN(distance)) {
+                /*
+                 * Unknown bounds bound nothing
+                 */
+                reach[orthant] = Double.POSITIVE_INFINITY;
+            } else {
+                reach[orthant] = manhattan ? distance : FastMath.sqrt(distance);
+            }
+        }
+        return reach;
+    }
+
+    /*
+     * Distance along the direction at which a ray leaves the rectangle
+     */
+    private static double exitDistance(
+            final double x,
+            final double y,
+            final double dx,
+            final double dy,
+            final double minX,
+            final double minY,
+            final double maxX,
+            final double maxY) {
+        final double alongX = dx > 0 ? (maxX - x) / dx : dx < 0 ? (minX - x) / dx : Double.POSITIVE_INFINITY;
+        final double alongY = dy > 0 ? (maxY - y) / dy : dy < 0 ? (minY - y) / dy : Double.POSITIVE_INFINITY;
+        return Math.max(0, Math.min(alongX, alongY));
     }
 
     /**
@@ -210,6 +482,22 @@ public class ClosestN<T, P extends Position<P>> implements LinkingRule<T, P> {
         return false;
     }
 
+    /**
+     * Neighborhoods only depend on the positions and on
+     * {@link #nodeIsEnabled(Node)}, hence they can be computed in parallel.
+     * Subclasses whose {@link #nodeIsEnabled(Node)} is not thread safe must
+     * return false.
+     */
+    @Override
+    public boolean isParallelizable() {
+        return true;
+    }
+
+    @Override
+    public final int getPropagationDepth() {
+        return propagationDepth;
+    }
+
     /**
      * @return the number of neighbors
      */
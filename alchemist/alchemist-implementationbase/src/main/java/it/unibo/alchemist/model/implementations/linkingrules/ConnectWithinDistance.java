@@ -45,8 +45,21 @@ public class ConnectWithinDistance<T, P extends Position<P>> extends AbstractLoc
     /**
      * @return the range
      */
-    protected final double getRange() {
+    public final double getRange() {
         return range;
     }
 
+    /**
+     * Environments can update incrementally the neighborhood of moving nodes
+     * linked by rules connecting all and only the nodes within
+     * {@link #getRange()}, without calling
+     * {@link #computeNeighborhood(Node, Environment)}. This is the case of this
+     * class, but not of its subclasses, unless they override this method.
+     *
+     * @return true if this rule links all and only the nodes within range
+     */
+    public boolean isExactlyWithinRange() {
+        return getClass() == ConnectWithinDistance.class;
+    }
+
 }
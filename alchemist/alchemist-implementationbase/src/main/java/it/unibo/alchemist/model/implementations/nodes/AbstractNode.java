@@ -57,7 +57,14 @@ public abstract class AbstractNode<T> implements Node<T> {
         MUTEX.acquireUninterruptibly();
         AtomicInteger idgen = IDGENERATOR.get(Objects.requireNonNull(env));
         if (idgen == null) {
-            idgen = new AtomicInteger();
+            /*
+             * Environments restored from a checkpoint may already contain nodes
+             */
+            int first = 0;
+            for (final Node<?> node : env.getNodes()) {
+                first = Math.max(first, node.getId() + 1);
+            }
+            idgen = new AtomicInteger(first);
             IDGENERATOR.put(env, idgen);
         }
         MUTEX.release();
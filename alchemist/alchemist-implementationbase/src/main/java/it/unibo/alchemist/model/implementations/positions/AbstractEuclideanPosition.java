@@ -105,7 +105,10 @@ public abstract class AbstractEuclideanPosition<P extends AbstractEuclideanPosit
 
     @Override
     public final double getDistanceTo(final P p) {
-        final double[] coord = p.getCartesianCoordinates();
+        /*
+         * Reads the coordinates in place rather than copying them
+         */
+        final double[] coord = ((AbstractEuclideanPosition<?>) p).c;
         if (c.length == coord.length) {
             return MathArrays.distance(c, coord);
         } else {
@@ -127,8 +130,7 @@ public abstract class AbstractEuclideanPosition<P extends AbstractEuclideanPosit
      * @return true if the two positions are the the same
      */
     public boolean samePosition(final P o) {
-        final double[] p = o.getCartesianCoordinates();
-        return Arrays.equals(c, p);
+        return Arrays.equals(c, ((AbstractEuclideanPosition<?>) o).c);
     }
 
     /**
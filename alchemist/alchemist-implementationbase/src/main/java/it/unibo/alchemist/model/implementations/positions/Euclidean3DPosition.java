@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+
+package it.unibo.alchemist.model.implementations.positions;
+
+import it.unibo.alchemist.model.interfaces.Position3D;
+import it.unibo.alchemist.model.interfaces.geometry.Vector;
+
+/**
+ * A position in a tridimensional Euclidean space.
+ */
+public final class Euclidean3DPosition
+        extends AbstractEuclideanPosition<Euclidean3DPosition>
+    implements Position3D<Euclidean3DPosition>, Vector<Euclidean3DPosition> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DIMENSIONS = 3;
+
+    private Euclidean3DPosition(final boolean copy, final double xp, final double yp, final double zp) {
+        super(copy, xp, yp, zp);
+    }
+
+    /**
+     * @param xp
+     *            The X coordinate
+     * @param yp
+     *            The Y coordinate
+     * @param zp
+     *            The Z coordinate
+     */
+    public Euclidean3DPosition(final double xp, final double yp, final double zp) {
+        this(true, xp, yp, zp);
+    }
+
+    /**
+     * @param c an array of length 3 containing the coordinates
+     */
+    public Euclidean3DPosition(final double[] c) {
+        super(true, c);
+        if (c.length != DIMENSIONS) {
+            throw new IllegalArgumentException("The array must have exactly three elements.");
+        }
+    }
+
+    @Override
+    public double getX() {
+        return getCoordinate(0);
+    }
+
+    @Override
+    public double getY() {
+        return getCoordinate(1);
+    }
+
+    @Override
+    public double getZ() {
+        return getCoordinate(2);
+    }
+
+    @Override
+    protected Euclidean3DPosition unsafeConstructor(final double[] coordinates) {
+        return new Euclidean3DPosition(false, coordinates[0], coordinates[1], coordinates[2]);
+    }
+}
@@ -7,6 +7,7 @@
  */
 package it.unibo.alchemist.model.implementations.reactions;
 
+import it.unibo.alchemist.model.implementations.timedistributions.TauLeapingTime;
 import it.unibo.alchemist.model.interfaces.Condition;
 import it.unibo.alchemist.model.interfaces.Environment;
 import it.unibo.alchemist.model.interfaces.Node;
@@ -14,14 +15,20 @@ import it.unibo.alchemist.model.interfaces.Time;
 import it.unibo.alchemist.model.interfaces.TimeDistribution;
 
 /**
- * 
- * 
+ * A reaction whose rate is the rate of its time distribution, multiplied by
+ * the propensity contributions of its conditions.
+ * <p>
+ * If the time distribution is a {@link TauLeapingTime}, the reaction fires as
+ * many times as sampled by the distribution at each execution, within the
+ * bound computed by {@link #getMaxFiringsPerLeap(double)}.
+ *
  * @param <T>
  */
 public class ChemicalReaction<T> extends AbstractReaction<T> {
 
     private static final long serialVersionUID = -5260452049415003046L;
     private double currentRate;
+    private final TauLeapingTime<T> leaping;
 
     /**
      * @param n
@@ -31,6 +38,7 @@ public class ChemicalReaction<T> extends AbstractReaction<T> {
      */
     public ChemicalReaction(final Node<T> n, final TimeDistribution<T> pd) {
         super(n, pd);
+        leaping = pd instanceof TauLeapingTime ? (TauLeapingTime<T>) pd : null;
     }
 
     /**
@@ -41,6 +49,59 @@ public class ChemicalReaction<T> extends AbstractReaction<T> {
         return makeClone(() -> new ChemicalReaction<>(n, getTimeDistribution().clone(currentTime)));
     }
 
+    /**
+     * Fires the reaction once, or, if tau-leaping, as many times as sampled by
+     * the time distribution. Subclasses should override {@link #fire()} and
+     * {@link #fire(int)} instead.
+     */
+    @Override
+    public void execute() {
+        final int firings = leaping == null ? 1 : leaping.sampleFirings(getTau());
+        if (firings == 1) {
+            fire();
+        } else if (firings > 1) {
+            fire(firings);
+        }
+    }
+
+    /**
+     * Executes all the actions once. Override in case a single firing
+     * requires more than that.
+     */
+    protected void fire() {
+        super.execute();
+    }
+
+    /**
+     * Applies the effects of many firings at the end of a leap. Subclasses
+     * allowing leaps through {@link #getMaxFiringsPerLeap(double)} should
+     * override this method and apply all of them in one step; this
+     * implementation fires once at a time, stopping as soon as the conditions
+     * no longer hold.
+     *
+     * @param firings
+     *            how many times the reaction fires, at least one
+     */
+    protected void fire(final int firings) {
+        for (int i = 0; i < firings && (i == 0 || canExecute()); i++) {
+            fire();
+        }
+    }
+
+    /**
+     * Computes how many times the reaction can fire in a single leap without
+     * changing any species by more than the given fraction. Only used when
+     * tau-leaping: this implementation returns zero, namely always simulates
+     * exactly, as the effects of generic actions are unknown.
+     *
+     * @param epsilon
+     *            the maximum relative change allowed
+     * @return the maximum number of firings in a leap
+     */
+    protected double getMaxFiringsPerLeap(final double epsilon) {
+        return 0;
+    }
+
     @Override
     public final void initializationComplete(final Time t, final Environment<T, ?> env) {
         update(t, true, env);
@@ -63,6 +124,9 @@ public class ChemicalReaction<T> extends AbstractReaction<T> {
             }
             currentRate *= cond.getPropensityContribution();
         }
+        if (leaping != null) {
+            leaping.setMaxFiringsPerLeap(currentRate > 0 ? getMaxFiringsPerLeap(leaping.getEpsilon()) : 0);
+        }
     }
 
     @Override
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.reactions;
+
+import it.unibo.alchemist.model.implementations.layers.DiffusionLayer;
+import it.unibo.alchemist.model.interfaces.Action;
+import it.unibo.alchemist.model.interfaces.Context;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position2D;
+import it.unibo.alchemist.model.interfaces.Time;
+import it.unibo.alchemist.model.interfaces.TimeDistribution;
+
+import java.util.List;
+
+/**
+ * Advances a {@link DiffusionLayer} to the time of each execution, then runs
+ * its actions, if any. Use it with a
+ * {@link it.unibo.alchemist.model.implementations.timedistributions.DiracComb}
+ * to solve the layer at fixed time steps. The layer is advanced at most once
+ * per time, so it does not matter how many nodes host this reaction.
+ * <p>
+ * The layer is shared by all the nodes, hence this reaction has a global
+ * output context, whatever its actions: engines never execute it
+ * concurrently with other events, nor within batches of rounds.
+ *
+ * @param <T> concentration type
+ */
+public final class DiffusionLayerUpdate<T> extends AbstractReaction<T> {
+
+    private static final long serialVersionUID = 1L;
+    private final DiffusionLayer<?> layer;
+    private final Molecule molecule;
+
+    /**
+     * @param environment
+     *            the environment, containing the layer
+     * @param node
+     *            the node this reaction belongs to
+     * @param timeDistribution
+     *            the {@link TimeDistribution} this reaction should use
+     * @param molecule
+     *            the molecule identifying the {@link DiffusionLayer}
+     * @param <P>
+     *            position type
+     */
+    public <P extends Position2D<? extends P>> DiffusionLayerUpdate(
+            final Environment<T, P> environment,
+            final Node<T> node,
+            final TimeDistribution<T> timeDistribution,
+            final Molecule molecule) {
+        this(node, timeDistribution, molecule, environment.getLayer(molecule)
+                .filter(it -> it instanceof DiffusionLayer)
+                .map(it -> (DiffusionLayer<?>) it)
+                .orElseThrow(() -> new IllegalArgumentException("There is no " + DiffusionLayer.class.getSimpleName()
+                        + " for " + molecule)));
+    }
+
+    private DiffusionLayerUpdate(
+            final Node<T> node,
+            final TimeDistribution<T> timeDistribution,
+            final Molecule molecule,
+            final DiffusionLayer<?> layer) {
+        super(node, timeDistribution);
+        this.molecule = molecule;
+        this.layer = layer;
+        setOutputContext(Context.GLOBAL);
+    }
+
+    @Override
+    public void execute() {
+        layer.advanceTo(getTau().toDouble());
+        super.execute();
+    }
+
+    /**
+     * The output context stays global.
+     */
+    @Override
+    public void setActions(final List<Action<T>> actions) {
+        super.setActions(actions);
+        setOutputContext(Context.GLOBAL);
+    }
+
+    @Override
+    protected void updateInternalStatus(final Time curTime, final boolean executed, final Environment<T, ?> env) {
+    }
+
+    @Override
+    public double getRate() {
+        return getTimeDistribution().getRate();
+    }
+
+    @Override
+    public DiffusionLayerUpdate<T> cloneOnNewNode(final Node<T> n, final Time currentTime) {
+        return makeClone(() -> new DiffusionLayerUpdate<>(n, getTimeDistribution().clone(currentTime), molecule, layer));
+    }
+
+    @Override
+    protected String getReactionName() {
+        return getClass().getSimpleName() + "(" + molecule + ")";
+    }
+
+}
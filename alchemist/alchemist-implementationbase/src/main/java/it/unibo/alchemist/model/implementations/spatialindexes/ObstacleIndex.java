@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.spatialindexes;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import it.unibo.alchemist.model.interfaces.Obstacle2D;
+import org.apache.commons.math3.util.FastMath;
+
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Indexes {@link Obstacle2D}s by their bounding box, in the square cells of a
+ * uniform grid. Only non-empty cells are stored, in a hash map.
+ * <p>
+ * Queries do not allocate: results are either passed to a {@link Visitor},
+ * or written in an array of ids provided by the caller, to be resolved with
+ * {@link #get(int)}. Obstacles spanning multiple cells are reported once, in
+ * the first cell they share with the query area, hence queries keep no state
+ * and do not modify the index.
+ * Mobile obstacles can be updated with {@link #replace(Obstacle2D, Obstacle2D)},
+ * which only touches the cells which are left or entered.
+ * <p>
+ * Unless a cell size is specified, a few obstacles are scanned linearly, and
+ * the grid is rebuilt each time the number of obstacles doubles, with cells
+ * holding about an obstacle each on average. Queries can run concurrently
+ * with each other, but not with updates.
+ *
+ * @param <W>
+ *            the obstacle type
+ */
+public final class ObstacleIndex<W extends Obstacle2D> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final long LOW_BITS = 0xFFFFFFFFL;
+    private static final int BOUNDS = 4;
+    private static final int MIN_X = 0;
+    private static final int MIN_Y = 1;
+    private static final int MAX_X = 2;
+    private static final int MAX_Y = 3;
+    private static final int INITIAL_CAPACITY = 16;
+    private final boolean adaptive;
+    private boolean indexed;
+    private double cellSize = Double.NaN;
+    private int rebuildThreshold = INITIAL_CAPACITY;
+    private TLongObjectHashMap<TIntArrayList> cells = new TLongObjectHashMap<>();
+    private Object[] obstacles = new Object[INITIAL_CAPACITY];
+    /*
+     * minX, minY, maxX, maxY of each obstacle
+     */
+    private double[] bounds = new double[INITIAL_CAPACITY * BOUNDS];
+    private final TIntArrayList free = new TIntArrayList();
+    private int size;
+    private int used;
+
+    /**
+     * Visits the obstacles found by a query.
+     *
+     * @param <W>
+     *            the obstacle type
+     */
+    @FunctionalInterface
+    public interface Visitor<W> {
+        /**
+         * @param obstacle
+         *            the obstacle
+         * @return true if the query should continue, false to stop it
+         */
+        boolean visit(W obstacle);
+    }
+
+    /**
+     * Builds an index which adapts its cell size to the obstacles.
+     */
+    public ObstacleIndex() {
+        adaptive = true;
+    }
+
+    /**
+     * @param cellSize
+     *            the side of the cells
+     */
+    public ObstacleIndex(final double cellSize) {
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("The cell size must be a positive finite number, got " + cellSize);
+        }
+        adaptive = false;
+        indexed = true;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return the side of the cells, NaN if the grid has not been built yet
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return the number of obstacles
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param obstacle
+     *            the obstacle to add
+     */
+    public void insert(final W obstacle) {
+        final int id = allocate();
+        obstacles[id] = Objects.requireNonNull(obstacle);
+        setBounds(id, obstacle);
+        if (indexed) {
+            forEachCell(id, true);
+        }
+        size++;
+        if (adaptive && size > rebuildThreshold) {
+            rebuildThreshold = size * 2;
+            rebuild();
+        }
+    }
+
+    /**
+     * @param obstacle
+     *            the obstacle to remove
+     * @return true if the obstacle was found and removed
+     */
+    public boolean remove(final W obstacle) {
+        final int id = find(obstacle);
+        if (id < 0) {
+            return false;
+        }
+        if (indexed) {
+            forEachCell(id, false);
+        }
+        obstacles[id] = null;
+        free.add(id);
+        size--;
+        return true;
+    }
+
+    /**
+     * Replaces an obstacle, typically with a moved copy of itself. The cells
+     * covered by both are not updated.
+     *
+     * @param obstacle
+     *            the obstacle to replace
+     * @param replacement
+     *            the new obstacle
+     * @return true if the obstacle was found and replaced
+     */
+    public boolean replace(final W obstacle, final W replacement) {
+        final int id = find(obstacle);
+        if (id < 0) {
+            return false;
+        }
+        final int offset = id * BOUNDS;
+        final int minX = cellOf(bounds[offset + MIN_X]);
+        final int minY = cellOf(bounds[offset + MIN_Y]);
+        final int maxX = cellOf(bounds[offset + MAX_X]);
+        final int maxY = cellOf(bounds[offset + MAX_Y]);
+        obstacles[id] = Objects.requireNonNull(replacement);
+        setBounds(id, replacement);
+        if (!indexed) {
+            return true;
+        }
+        final int newMinX = cellOf(bounds[offset + MIN_X]);
+        final int newMinY = cellOf(bounds[offset + MIN_Y]);
+        final int newMaxX = cellOf(bounds[offset + MAX_X]);
+        final int newMaxY = cellOf(bounds[offset + MAX_Y]);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                if (x < newMinX || x > newMaxX || y < newMinY || y > newMaxY) {
+                    removeFromCell(key(x, y), id);
+                }
+            }
+        }
+        for (int x = newMinX; x <= newMaxX; x++) {
+            for (int y = newMinY; y <= newMaxY; y++) {
+                if (x < minX || x > maxX || y < minY || y > maxY) {
+                    addToCell(key(x, y), id);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param id
+     *            an id returned by {@link #query(double, double, double, double, int[])}
+     * @return the corresponding obstacle
+     */
+    @SuppressWarnings("unchecked")
+    public W get(final int id) {
+        return (W) obstacles[id];
+    }
+
+    /**
+     * @return a new list with all the obstacles
+     */
+    @SuppressWarnings("unchecked")
+    public List<W> getAll() {
+        final List<W> result = new ArrayList<>(size);
+        for (int id = 0; id < used; id++) {
+            if (obstacles[id] != null) {
+                result.add((W) obstacles[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits the obstacles whose bounding box intersects the given rectangle,
+     * borders included.
+     *
+     * @param minX
+     *            minimum x of the rectangle
+     * @param minY
+     *            minimum y of the rectangle
+     * @param maxX
+     *            maximum x of the rectangle
+     * @param maxY
+     *            maximum y of the rectangle
+     * @param visitor
+     *            the {@link Visitor}
+     * @return false if the visitor stopped the query
+     */
+    @SuppressWarnings("unchecked")
+    public boolean forEach(final double minX, final double minY, final double maxX, final double maxY, final Visitor<? super W> visitor) {
+        final int minCellX = cellOf(minX);
+        final int minCellY = cellOf(minY);
+        final int maxCellX = cellOf(maxX);
+        final int maxCellY = cellOf(maxY);
+        final double scannedCells = ((double) maxCellX - minCellX + 1) * ((double) maxCellY - minCellY + 1);
+        if (!indexed || scannedCells > cells.size()) {
+            /*
+             * The area is larger than the populated space: visiting the
+             * obstacles is cheaper than enumerating the empty cells
+             */
+            for (int id = 0; id < used; id++) {
+                if (obstacles[id] != null && overlaps(id, minX, minY, maxX, maxY) && !visitor.visit((W) obstacles[id])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int x = minCellX; x <= maxCellX; x++) {
+            for (int y = minCellY; y <= maxCellY; y++) {
+                final TIntArrayList cell = cells.get(key(x, y));
+                if (cell != null) {
+                    for (int i = 0; i < cell.size(); i++) {
+                        final int id = cell.getQuick(i);
+                        if (isFirstCell(id, x, y, minCellX, minCellY)
+                                && overlaps(id, minX, minY, maxX, maxY) && !visitor.visit((W) obstacles[id])) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the ids of the obstacles whose bounding box intersects the given
+     * rectangle, borders included, in the destination array.
+     *
+     * @param minX
+     *            minimum x of the rectangle
+     * @param minY
+     *            minimum y of the rectangle
+     * @param maxX
+     *            maximum x of the rectangle
+     * @param maxY
+     *            maximum y of the rectangle
+     * @param destination
+     *            the array where ids are written
+     * @return the number of obstacles found. If larger than the destination
+     *         length, only the first ids have been written, and the query
+     *         should be repeated with a larger array.
+     */
+    public int query(final double minX, final double minY, final double maxX, final double maxY, final int[] destination) {
+        int found = 0;
+        final int minCellX = cellOf(minX);
+        final int minCellY = cellOf(minY);
+        final int maxCellX = cellOf(maxX);
+        final int maxCellY = cellOf(maxY);
+        final double scannedCells = ((double) maxCellX - minCellX + 1) * ((double) maxCellY - minCellY + 1);
+        if (!indexed || scannedCells > cells.size()) {
+            for (int id = 0; id < used; id++) {
+                if (obstacles[id] != null && overlaps(id, minX, minY, maxX, maxY)) {
+                    if (found < destination.length) {
+                        destination[found] = id;
+                    }
+                    found++;
+                }
+            }
+            return found;
+        }
+        for (int x = minCellX; x <= maxCellX; x++) {
+            for (int y = minCellY; y <= maxCellY; y++) {
+                final TIntArrayList cell = cells.get(key(x, y));
+                if (cell != null) {
+                    for (int i = 0; i < cell.size(); i++) {
+                        final int id = cell.getQuick(i);
+                        if (isFirstCell(id, x, y, minCellX, minCellY) && overlaps(id, minX, minY, maxX, maxY)) {
+                            if (found < destination.length) {
+                                destination[found] = id;
+                            }
+                            found++;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[cellSize=" + cellSize + ", obstacles=" + size + ", cells=" + cells.size() + ']';
+    }
+
+    private int allocate() {
+        if (!free.isEmpty()) {
+            return free.removeAt(free.size() - 1);
+        }
+        if (used == obstacles.length) {
+            obstacles = Arrays.copyOf(obstacles, used * 2);
+            bounds = Arrays.copyOf(bounds, used * 2 * BOUNDS);
+        }
+        return used++;
+    }
+
+    private int find(final W obstacle) {
+        if (!indexed) {
+            for (int id = 0; id < used; id++) {
+                if (obstacle.equals(obstacles[id])) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+        /*
+         * Obstacles are always registered in the cell of their minimum corner
+         */
+        final Rectangle2D box = obstacle.getBounds2D();
+        final TIntArrayList cell = cells.get(key(
+                cellOf(FastMath.min(box.getMinX(), box.getMaxX())),
+                cellOf(FastMath.min(box.getMinY(), box.getMaxY()))));
+        if (cell != null) {
+            for (int i = 0; i < cell.size(); i++) {
+                final int id = cell.getQuick(i);
+                if (obstacle.equals(obstacles[id])) {
+                    return id;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Rectangles with negative sides report swapped minimum and maximum
+     */
+    private void setBounds(final int id, final W obstacle) {
+        final Rectangle2D box = obstacle.getBounds2D();
+        final int offset = id * BOUNDS;
+        bounds[offset + MIN_X] = FastMath.min(box.getMinX(), box.getMaxX());
+        bounds[offset + MIN_Y] = FastMath.min(box.getMinY(), box.getMaxY());
+        bounds[offset + MAX_X] = FastMath.max(box.getMinX(), box.getMaxX());
+        bounds[offset + MAX_Y] = FastMath.max(box.getMinY(), box.getMaxY());
+    }
+
+    /*
+     * Whether the cell is the first one, in both dimensions, among those shared
+     * by the obstacle and a query starting from the given cell
+     */
+    private boolean isFirstCell(final int id, final int x, final int y, final int minCellX, final int minCellY) {
+        final int offset = id * BOUNDS;
+        return x == FastMath.max(cellOf(bounds[offset + MIN_X]), minCellX)
+                && y == FastMath.max(cellOf(bounds[offset + MIN_Y]), minCellY);
+    }
+
+    private boolean overlaps(final int id, final double minX, final double minY, final double maxX, final double maxY) {
+        final int offset = id * BOUNDS;
+        return bounds[offset + MIN_X] <= maxX && bounds[offset + MIN_Y] <= maxY
+                && bounds[offset + MAX_X] >= minX && bounds[offset + MAX_Y] >= minY;
+    }
+
+    private void forEachCell(final int id, final boolean add) {
+        final int offset = id * BOUNDS;
+        for (int x = cellOf(bounds[offset + MIN_X]); x <= cellOf(bounds[offset + MAX_X]); x++) {
+            for (int y = cellOf(bounds[offset + MIN_Y]); y <= cellOf(bounds[offset + MAX_Y]); y++) {
+                if (add) {
+                    addToCell(key(x, y), id);
+                } else {
+                    removeFromCell(key(x, y), id);
+                }
+            }
+        }
+    }
+
+    private void addToCell(final long key, final int id) {
+        TIntArrayList cell = cells.get(key);
+        if (cell == null) {
+            cell = new TIntArrayList();
+            cells.put(key, cell);
+        }
+        cell.add(id);
+    }
+
+    private void removeFromCell(final long key, final int id) {
+        final TIntArrayList cell = cells.get(key);
+        cell.remove(id);
+        if (cell.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    /*
+     * Cells holding about an obstacle each, if the obstacles were spread
+     * uniformly over their bounding box
+     */
+    private void rebuild() {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int id = 0; id < used; id++) {
+            if (obstacles[id] != null) {
+                final int offset = id * BOUNDS;
+                minX = FastMath.min(minX, bounds[offset + MIN_X]);
+                minY = FastMath.min(minY, bounds[offset + MIN_Y]);
+                maxX = FastMath.max(maxX, bounds[offset + MAX_X]);
+                maxY = FastMath.max(maxY, bounds[offset + MAX_Y]);
+            }
+        }
+        final double area = (maxX - minX) * (maxY - minY);
+        final double side = area > 0
+                ? FastMath.sqrt(area / size)
+                : FastMath.max(maxX - minX, maxY - minY) / size;
+        if (side > 0 && !Double.isInfinite(side)) {
+            indexed = true;
+            cellSize = side;
+            cells = new TLongObjectHashMap<>();
+            for (int id = 0; id < used; id++) {
+                if (obstacles[id] != null) {
+                    forEachCell(id, true);
+                }
+            }
+        }
+    }
+
+    private int cellOf(final double coordinate) {
+        /*
+         * The cast saturates, hence far away coordinates (including infinite
+         * ones) share the border cells
+         */
+        return (int) FastMath.floor(coordinate / cellSize);
+    }
+
+    private static long key(final int x, final int y) {
+        return ((long) x << Integer.SIZE) | (y & LOW_BITS);
+    }
+
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.spatialindexes;
+
+import org.apache.commons.math3.util.FastMath;
+import org.danilopianini.util.SpatialIndex;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A tridimensional {@link SpatialIndex}, recursively splitting the space in
+ * eight cubic octants. Octants holding more elements than the capacity get
+ * split, octants whose descendants hold less than half of it get merged back.
+ * As the FlexibleQuadTree does in two dimensions, the tree adapts to the
+ * distribution of the elements and grows as they spread, hence the space
+ * covered is unbounded.
+ * <p>
+ * Moving an element within its octant takes constant time. Queries only visit
+ * the octants overlapping the requested area, and collect the elements of
+ * those entirely contained without checking them one by one.
+ *
+ * @param <E>
+ *            the type of the indexed elements
+ */
+public final class Octree<E> implements SpatialIndex<E> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DIMENSIONS = 3;
+    private static final int CHILDREN = 8;
+    private static final int DEFAULT_CAPACITY = 32;
+    private final int capacity;
+    private Octant root = new Octant();
+
+    /**
+     * Builds an octree whose octants hold up to 32 elements.
+     */
+    public Octree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            the maximum number of elements in an octant before it gets
+     *            split. Octants may exceed it only if their elements are all
+     *            in the same position.
+     */
+    public Octree(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive, got " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the maximum number of elements in an octant before it gets
+     *         split
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getDimensions() {
+        return DIMENSIONS;
+    }
+
+    @Override
+    public void insert(final E element, final double... position) {
+        checkDimensions(position);
+        for (final double coordinate: position) {
+            if (!Double.isFinite(coordinate)) {
+                throw new IllegalArgumentException("Only finite coordinates can be indexed, got " + Arrays.toString(position));
+            }
+        }
+        if (root.isBounded()) {
+            while (!root.contains(position)) {
+                root = root.grow(position);
+            }
+        }
+        Octant target = root;
+        while (!target.isLeaf()) {
+            target.count++;
+            target = target.childFor(position);
+        }
+        target.add(element, position);
+        if (target.size > capacity) {
+            split(target);
+        }
+    }
+
+    @Override
+    public boolean remove(final E element, final double... position) {
+        checkDimensions(position);
+        final List<Octant> path = new ArrayList<>();
+        final Octant leaf = leafFor(position, path);
+        final int index = leaf == null ? -1 : leaf.indexOf(element);
+        if (index < 0) {
+            return false;
+        }
+        leaf.remove(index);
+        for (final Octant octant: path) {
+            octant.count--;
+        }
+        if (root.count == 0) {
+            root = new Octant();
+        } else {
+            for (final Octant octant: path) {
+                if (octant.count <= capacity / 2) {
+                    octant.merge();
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean move(final E element, final double[] start, final double[] end) {
+        checkDimensions(start);
+        checkDimensions(end);
+        final Octant leaf = leafFor(start, null);
+        if (leaf != null && root.contains(end) && leaf == leafFor(end, null)) {
+            final int index = leaf.indexOf(element);
+            if (index >= 0) {
+                leaf.set(index, end);
+                return true;
+            }
+            return false;
+        }
+        if (remove(element, start)) {
+            insert(element, end);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public List<E> query(final double[]... parallelotope) {
+        if (parallelotope.length == 0) {
+            throw new IllegalArgumentException("At least a point is required to define the query area");
+        }
+        final double[] min = new double[DIMENSIONS];
+        final double[] max = new double[DIMENSIONS];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (final double[] vertex: parallelotope) {
+            checkDimensions(vertex);
+            for (int i = 0; i < DIMENSIONS; i++) {
+                min[i] = FastMath.min(min[i], vertex[i]);
+                max[i] = FastMath.max(max[i], vertex[i]);
+            }
+        }
+        final List<E> result = new ArrayList<>();
+        final Deque<Octant> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+        while (!toVisit.isEmpty()) {
+            final Octant current = toVisit.pop();
+            if (current.isLeaf()) {
+                current.collect(min, max, result);
+            } else if (current.isWithin(min, max)) {
+                current.collectAll(result);
+            } else {
+                for (int index = 0; index < CHILDREN; index++) {
+                    final Octant child = current.children[index];
+                    if (child != null && current.childOverlaps(index, min, max)) {
+                        toVisit.push(child);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[capacity=" + capacity + ", elements=" + root.count + ']';
+    }
+
+    /*
+     * Returns the leaf where the position would be stored, or null if there is
+     * none. If a path is provided, the octants traversed are added to it.
+     */
+    private Octant leafFor(final double[] position, final List<Octant> path) {
+        Octant current = root;
+        while (current != null && !current.isLeaf()) {
+            if (path != null) {
+                path.add(current);
+            }
+            current = current.children[current.childIndex(position)];
+        }
+        return current;
+    }
+
+    private void split(final Octant leaf) {
+        if (!leaf.isBounded() && !leaf.bound()) {
+            return;
+        }
+        final Deque<Octant> toSplit = new ArrayDeque<>();
+        toSplit.push(leaf);
+        while (!toSplit.isEmpty()) {
+            final Octant current = toSplit.pop();
+            if (current.canSplit()) {
+                current.split();
+                for (final Octant child: current.children) {
+                    if (child != null && child.size > capacity) {
+                        toSplit.push(child);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void checkDimensions(final double[] position) {
+        if (position.length != DIMENSIONS) {
+            throw new IllegalArgumentException("Expected a " + DIMENSIONS + "D position, got " + Arrays.toString(position));
+        }
+    }
+
+    /*
+     * A cube, identified by its center and half side. Leaves store elements and
+     * coordinates in parallel arrays, inner octants store up to eight
+     * children, created as needed. Only the root may be unbounded, as long as
+     * it is a leaf.
+     *
+     * Elements are assigned to children by comparing their coordinates with
+     * the center, and queries select children the same way, so that rounding
+     * errors in the cube bounds can never make an element unreachable. The
+     * region of an octant is bounded by the centers of its ancestors and, for
+     * the root, by the bounds computed when it was first split: growing
+     * reuses them as they are, hence the regions of the existing octants never
+     * change.
+     */
+    private static final class Octant implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final int INITIAL_CAPACITY = 4;
+        private final double[] center;
+        private final double[] lower = new double[DIMENSIONS];
+        private final double[] upper = new double[DIMENSIONS];
+        private double half;
+        private Octant[] children;
+        private Object[] elements = new Object[INITIAL_CAPACITY];
+        private double[] coordinates = new double[INITIAL_CAPACITY * DIMENSIONS];
+        private int size;
+        private int count;
+
+        private Octant() {
+            this(new double[DIMENSIONS], Double.NaN);
+        }
+
+        private Octant(final double[] center, final double half) {
+            this.center = center;
+            this.half = half;
+            Arrays.fill(lower, Double.NEGATIVE_INFINITY);
+            Arrays.fill(upper, Double.POSITIVE_INFINITY);
+        }
+
+        private boolean isBounded() {
+            return !Double.isNaN(half);
+        }
+
+        private boolean isLeaf() {
+            return children == null;
+        }
+
+        /*
+         * The upper bounds are excluded, as they are the centers of the larger
+         * octants built by grow
+         */
+        private boolean contains(final double[] position) {
+            if (!isBounded()) {
+                return true;
+            }
+            for (int i = 0; i < DIMENSIONS; i++) {
+                if (!(position[i] >= lower[i] && position[i] < upper[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean childOverlaps(final int index, final double[] min, final double[] max) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                if ((index >> i & 1) == 0 ? min[i] >= center[i] : max[i] < center[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isWithin(final double[] min, final double[] max) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                if (lower[i] < min[i] || upper[i] > max[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int childIndex(final double[] position) {
+            int index = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                if (position[i] >= center[i]) {
+                    index |= 1 << i;
+                }
+            }
+            return index;
+        }
+
+        private Octant childFor(final double[] position) {
+            final int index = childIndex(position);
+            if (children[index] == null) {
+                final double childHalf = half / 2;
+                final double[] childCenter = new double[DIMENSIONS];
+                for (int i = 0; i < DIMENSIONS; i++) {
+                    childCenter[i] = center[i] + ((index >> i & 1) == 0 ? -childHalf : childHalf);
+                }
+                children[index] = new Octant(childCenter, childHalf);
+                children[index].restrict(this, index);
+            }
+            return children[index];
+        }
+
+        /*
+         * Returns a twice as large parent, extending this octant towards the
+         * position. The bounds of this octant become the center of the parent
+         * and one of its bounds.
+         */
+        private Octant grow(final double[] position) {
+            final Octant parent = new Octant(new double[DIMENSIONS], half * 2);
+            int index = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                if (position[i] >= lower[i]) {
+                    parent.center[i] = upper[i];
+                    parent.lower[i] = lower[i];
+                    parent.upper[i] = upper[i] + parent.half;
+                } else {
+                    parent.center[i] = lower[i];
+                    parent.lower[i] = lower[i] - parent.half;
+                    parent.upper[i] = upper[i];
+                    index |= 1 << i;
+                }
+            }
+            parent.children = new Octant[CHILDREN];
+            parent.children[index] = this;
+            parent.count = count;
+            parent.elements = null;
+            parent.coordinates = null;
+            return parent;
+        }
+
+        /*
+         * Computes the region of this octant as the index-th child of parent
+         */
+        private void restrict(final Octant parent, final int index) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                if ((index >> i & 1) == 0) {
+                    lower[i] = parent.lower[i];
+                    upper[i] = parent.center[i];
+                } else {
+                    lower[i] = parent.center[i];
+                    upper[i] = parent.upper[i];
+                }
+            }
+        }
+
+        /*
+         * Makes an unbounded leaf the smallest cube centered in the middle of
+         * its elements. Returns false if they all are in the same position.
+         */
+        private boolean bound() {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < size; j++) {
+                    min = FastMath.min(min, coordinates[j * DIMENSIONS + i]);
+                    max = FastMath.max(max, coordinates[j * DIMENSIONS + i]);
+                }
+                center[i] = min + (max - min) / 2;
+            }
+            double newHalf = 0;
+            for (int j = 0; j < size * DIMENSIONS; j++) {
+                newHalf = FastMath.max(newHalf, FastMath.abs(coordinates[j] - center[j % DIMENSIONS]));
+            }
+            if (newHalf > 0) {
+                half = newHalf;
+                for (int i = 0; i < DIMENSIONS; i++) {
+                    lower[i] = FastMath.min(center[i] - half, center[i]);
+                    upper[i] = FastMath.nextUp(center[i] + half);
+                    for (int j = 0; j < size; j++) {
+                        lower[i] = FastMath.min(lower[i], coordinates[j * DIMENSIONS + i]);
+                        upper[i] = FastMath.max(upper[i], FastMath.nextUp(coordinates[j * DIMENSIONS + i]));
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /*
+         * Splitting is pointless if all the elements are in the same position,
+         * and impossible once halving the side does not move the centers
+         * anymore
+         */
+        private boolean canSplit() {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                if (center[i] + half / 2 == center[i] || center[i] - half / 2 == center[i]) { // NOPMD: exact comparison is intended
+                    return false;
+                }
+            }
+            for (int j = DIMENSIONS; j < size * DIMENSIONS; j++) {
+                if (coordinates[j] != coordinates[j % DIMENSIONS]) { // NOPMD: exact comparison is intended
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void split() {
+            children = new Octant[CHILDREN];
+            final double[] position = new double[DIMENSIONS];
+            for (int j = 0; j < size; j++) {
+                System.arraycopy(coordinates, j * DIMENSIONS, position, 0, DIMENSIONS);
+                final Octant child = childFor(position);
+                child.add(elements[j], position);
+            }
+            elements = null;
+            coordinates = null;
+            size = 0;
+        }
+
+        /*
+         * Makes this octant a leaf again, gathering the elements of all its
+         * descendants
+         */
+        private void merge() {
+            final Object[] mergedElements = new Object[Math.max(count, INITIAL_CAPACITY)];
+            final double[] mergedCoordinates = new double[mergedElements.length * DIMENSIONS];
+            int merged = 0;
+            final Deque<Octant> toVisit = new ArrayDeque<>();
+            toVisit.push(this);
+            while (!toVisit.isEmpty()) {
+                final Octant current = toVisit.pop();
+                if (current.isLeaf()) {
+                    System.arraycopy(current.elements, 0, mergedElements, merged, current.size);
+                    System.arraycopy(current.coordinates, 0, mergedCoordinates, merged * DIMENSIONS, current.size * DIMENSIONS);
+                    merged += current.size;
+                } else {
+                    for (final Octant child: current.children) {
+                        if (child != null) {
+                            toVisit.push(child);
+                        }
+                    }
+                }
+            }
+            assert merged == count;
+            children = null;
+            elements = mergedElements;
+            coordinates = mergedCoordinates;
+            size = merged;
+        }
+
+        private void add(final Object element, final double[] position) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+                coordinates = Arrays.copyOf(coordinates, size * 2 * DIMENSIONS);
+            }
+            elements[size] = element;
+            set(size, position);
+            size++;
+            count++;
+        }
+
+        private int indexOf(final Object element) {
+            for (int i = 0; i < size; i++) {
+                if (Objects.equals(element, elements[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /*
+         * Swaps the last element in, the order of the elements is not relevant
+         */
+        private void remove(final int index) {
+            size--;
+            count--;
+            elements[index] = elements[size];
+            System.arraycopy(coordinates, size * DIMENSIONS, coordinates, index * DIMENSIONS, DIMENSIONS);
+            elements[size] = null;
+        }
+
+        private void set(final int index, final double[] position) {
+            System.arraycopy(position, 0, coordinates, index * DIMENSIONS, DIMENSIONS);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <E> void collect(final double[] min, final double[] max, final List<E> destination) {
+            for (int j = 0; j < size; j++) {
+                boolean inside = true;
+                for (int i = 0; inside && i < DIMENSIONS; i++) {
+                    final double coordinate = coordinates[j * DIMENSIONS + i];
+                    inside = coordinate >= min[i] && coordinate <= max[i];
+                }
+                if (inside) {
+                    destination.add((E) elements[j]);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <E> void collectAll(final List<E> destination) {
+            final Deque<Octant> toVisit = new ArrayDeque<>();
+            toVisit.push(this);
+            while (!toVisit.isEmpty()) {
+                final Octant current = toVisit.pop();
+                if (current.isLeaf()) {
+                    for (int j = 0; j < current.size; j++) {
+                        destination.add((E) current.elements[j]);
+                    }
+                } else {
+                    for (final Octant child: current.children) {
+                        if (child != null) {
+                            toVisit.push(child);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.spatialindexes;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.apache.commons.math3.util.FastMath;
+import org.danilopianini.util.SpatialIndex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A bidimensional {@link SpatialIndex} partitioning the space in square cells
+ * of fixed size (a cell list). Only non-empty cells are stored, in a hash map,
+ * hence the space covered is unbounded.
+ * <p>
+ * Moving an element within its cell, or to another cell, takes constant time
+ * (provided that cells are not crowded). Queries scan the cells overlapping
+ * the requested area: when the cell size is close to the typical query range
+ * (e.g. the radius of a {@link it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance}
+ * rule), a query scans a fixed block of 3x3 cells. This index performs best
+ * with mostly uniform densities: when nodes are heavily clustered, trees adapt
+ * better.
+ *
+ * @param <E>
+ *            the type of the indexed elements
+ */
+public final class UniformGridIndex<E> implements SpatialIndex<E> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int DIMENSIONS = 2;
+    private static final long LOW_BITS = 0xFFFFFFFFL;
+    private final double cellSize;
+    private final TLongObjectHashMap<Cell<E>> cells = new TLongObjectHashMap<>();
+
+    /**
+     * @param cellSize
+     *            the side of the cells. Should be about the range of the
+     *            typical query.
+     */
+    public UniformGridIndex(final double cellSize) {
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("The cell size must be a positive finite number, got " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return the side of the cells
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public int getDimensions() {
+        return DIMENSIONS;
+    }
+
+    @Override
+    public void insert(final E element, final double... position) {
+        checkDimensions(position);
+        final long key = key(position);
+        Cell<E> cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell<>();
+            cells.put(key, cell);
+        }
+        cell.add(element, position[0], position[1]);
+    }
+
+    @Override
+    public boolean remove(final E element, final double... position) {
+        checkDimensions(position);
+        final long key = key(position);
+        final Cell<E> cell = cells.get(key);
+        if (cell != null) {
+            final int index = cell.indexOf(element);
+            if (index >= 0) {
+                cell.remove(index);
+                if (cell.size == 0) {
+                    cells.remove(key);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean move(final E element, final double[] start, final double[] end) {
+        checkDimensions(start);
+        checkDimensions(end);
+        final long from = key(start);
+        final long to = key(end);
+        if (from == to) {
+            final Cell<E> cell = cells.get(from);
+            final int index = cell == null ? -1 : cell.indexOf(element);
+            if (index >= 0) {
+                cell.set(index, end[0], end[1]);
+                return true;
+            }
+            return false;
+        }
+        if (remove(element, start)) {
+            insert(element, end);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public List<E> query(final double[]... parallelotope) {
+        if (parallelotope.length == 0) {
+            throw new IllegalArgumentException("At least a point is required to define the query area");
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (final double[] vertex: parallelotope) {
+            checkDimensions(vertex);
+            minX = FastMath.min(minX, vertex[0]);
+            minY = FastMath.min(minY, vertex[1]);
+            maxX = FastMath.max(maxX, vertex[0]);
+            maxY = FastMath.max(maxY, vertex[1]);
+        }
+        final List<E> result = new ArrayList<>();
+        final int minCellX = cellOf(minX);
+        final int minCellY = cellOf(minY);
+        final int maxCellX = cellOf(maxX);
+        final int maxCellY = cellOf(maxY);
+        final double scannedCells = ((double) maxCellX - minCellX + 1) * ((double) maxCellY - minCellY + 1);
+        if (scannedCells > cells.size()) {
+            /*
+             * The area is larger than the populated space: visiting the
+             * existing cells is cheaper than enumerating the empty ones
+             */
+            for (final Cell<E> cell: cells.valueCollection()) {
+                cell.collect(minX, minY, maxX, maxY, result);
+            }
+        } else {
+            for (int x = minCellX; x <= maxCellX; x++) {
+                for (int y = minCellY; y <= maxCellY; y++) {
+                    final Cell<E> cell = cells.get(key(x, y));
+                    if (cell != null) {
+                        cell.collect(minX, minY, maxX, maxY, result);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[cellSize=" + cellSize + ", cells=" + cells.size() + ']';
+    }
+
+    private int cellOf(final double coordinate) {
+        /*
+         * The cast saturates, hence far away coordinates (including infinite
+         * ones) share the border cells
+         */
+        return (int) FastMath.floor(coordinate / cellSize);
+    }
+
+    private long key(final double[] position) {
+        return key(cellOf(position[0]), cellOf(position[1]));
+    }
+
+    private static long key(final int x, final int y) {
+        return ((long) x << Integer.SIZE) | (y & LOW_BITS);
+    }
+
+    private static void checkDimensions(final double[] position) {
+        if (position.length != DIMENSIONS) {
+            throw new IllegalArgumentException("Expected a " + DIMENSIONS + "D position, got " + Arrays.toString(position));
+        }
+    }
+
+    /*
+     * Elements and coordinates are stored in parallel arrays, so that
+     * filtering a cell does not require dereferencing the elements.
+     */
+    private static final class Cell<E> implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private static final int INITIAL_CAPACITY = 4;
+        private Object[] elements = new Object[INITIAL_CAPACITY];
+        private double[] coordinates = new double[INITIAL_CAPACITY * DIMENSIONS];
+        private int size;
+
+        private void add(final E element, final double x, final double y) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+                coordinates = Arrays.copyOf(coordinates, size * 2 * DIMENSIONS);
+            }
+            elements[size] = element;
+            set(size, x, y);
+            size++;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void collect(final double minX, final double minY, final double maxX, final double maxY, final List<E> destination) {
+            for (int i = 0; i < size; i++) {
+                final double x = coordinates[i * DIMENSIONS];
+                final double y = coordinates[i * DIMENSIONS + 1];
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    destination.add((E) elements[i]);
+                }
+            }
+        }
+
+        private int indexOf(final Object element) {
+            for (int i = 0; i < size; i++) {
+                if (Objects.equals(element, elements[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /*
+         * Swaps the last element in, the order of the elements is not relevant
+         */
+        private void remove(final int index) {
+            size--;
+            elements[index] = elements[size];
+            coordinates[index * DIMENSIONS] = coordinates[size * DIMENSIONS];
+            coordinates[index * DIMENSIONS + 1] = coordinates[size * DIMENSIONS + 1];
+            elements[size] = null;
+        }
+
+        private void set(final int index, final double x, final double y) {
+            coordinates[index * DIMENSIONS] = x;
+            coordinates[index * DIMENSIONS + 1] = y;
+        }
+    }
+
+}
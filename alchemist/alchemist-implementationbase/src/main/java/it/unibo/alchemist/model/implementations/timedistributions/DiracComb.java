@@ -46,6 +46,14 @@ public class DiracComb<T> extends AbstractDistribution<T> {
         return 1 / timeInterval;
     }
 
+    /**
+     * @return true, as the next event gets scheduled only upon execution
+     */
+    @Override
+    public final boolean isExecutionDriven() {
+        return true;
+    }
+
     @Override
     protected final void updateStatus(
             final Time curTime,
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.timedistributions;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.special.Gamma;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Markovian events, approximated through tau-leaping. Rather than occurring
+ * once per firing, the event occurs at the end of a leap, and the reaction
+ * fires as many times as drawn by {@link #sampleFirings(Time)}, i.e., a
+ * Poisson-distributed number of times whose mean is the propensity integrated
+ * over the leap.
+ * <p>
+ * The reaction bounds the firings per leap through
+ * {@link #setMaxFiringsPerLeap(double)}, usually such that no species it
+ * changes varies by more than {@link #getEpsilon()} times its count. Leaps get
+ * shortened if the bound decreases while they are in progress. When the bound
+ * allows less than {@link #CRITICAL_FIRINGS} firings (e.g., because counts are
+ * low) the distribution falls back to exact stochastic simulation, behaving as
+ * an {@link ExponentialTime}.
+ * <p>
+ * If a leap ends without the reaction executing (e.g., because its conditions
+ * do not hold at that time), the firings expected within it are not lost: they
+ * are carried over, and drawn at the next execution, either leaped or exact.
+ *
+ * @param <T>
+ *            concentration type
+ */
+public class TauLeapingTime<T> extends AbstractDistribution<T> {
+
+    /**
+     * Leaps expected to contain less firings than this get simulated exactly.
+     */
+    public static final double CRITICAL_FIRINGS = 10;
+    private static final long serialVersionUID = 1L;
+    /*
+     * Constants of the transformed rejection sampler, see samplePoisson
+     */
+    private static final double PTRS_MIN_MEAN = 10;
+    private static final double PTRS_B = 0.931;
+    private static final double PTRS_B_SLOPE = 2.53;
+    private static final double PTRS_A = -0.059;
+    private static final double PTRS_A_SLOPE = 0.02483;
+    private static final double PTRS_INV_ALPHA = 1.1239;
+    private static final double PTRS_INV_ALPHA_SLOPE = 1.1328;
+    private static final double PTRS_INV_ALPHA_SHIFT = 3.4;
+    private static final double PTRS_VR = 0.9277;
+    private static final double PTRS_VR_SLOPE = 3.6224;
+    private static final double PTRS_SHIFT = 0.43;
+    private static final double PTRS_SQUEEZE = 0.07;
+    private static final double PTRS_TAIL = 0.013;
+    @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "All the random engines provided by Apache are Serializable")
+    private final RandomGenerator rand;
+    private final double rate;
+    private final double epsilon;
+    private double oldPropensity = -1;
+    private double maxFiringsPerLeap;
+    private boolean leaping;
+    /*
+     * Propensity integrated from the beginning of the leap to the last update,
+     * plus that of the leaps which ended without executing
+     */
+    private double expectedFirings;
+    private Time lastUpdate = DoubleTime.ZERO_TIME;
+
+    /**
+     * @param markovianRate
+     *            Markovian rate for this distribution
+     * @param epsilon
+     *            the maximum relative change of the species changed by the
+     *            reaction within a leap, in (0, 1)
+     * @param random
+     *            {@link RandomGenerator} used internally
+     */
+    public TauLeapingTime(final double markovianRate, final double epsilon, final RandomGenerator random) {
+        this(markovianRate, epsilon, DoubleTime.ZERO_TIME, random);
+    }
+
+    /**
+     * @param markovianRate
+     *            Markovian rate for this distribution
+     * @param epsilon
+     *            the maximum relative change of the species changed by the
+     *            reaction within a leap, in (0, 1)
+     * @param start
+     *            initial time
+     * @param random
+     *            {@link RandomGenerator} used internally
+     */
+    public TauLeapingTime(final double markovianRate, final double epsilon, final Time start, final RandomGenerator random) {
+        super(start);
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("The leap error control must be in (0, 1), got " + epsilon);
+        }
+        rate = markovianRate;
+        this.epsilon = epsilon;
+        rand = random;
+    }
+
+    /**
+     * @return the maximum relative change of the species changed by the
+     *         reaction within a leap
+     */
+    public final double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * @return true if the current event is the end of a leap, false if it is
+     *         a single, exactly simulated firing
+     */
+    public final boolean isLeaping() {
+        return leaping;
+    }
+
+    /**
+     * Sets how many times the reaction can fire in a single leap. Must be
+     * called by the reaction before each update.
+     *
+     * @param maxFirings
+     *            the maximum number of firings per leap. Zero or negative
+     *            values force exact simulation.
+     */
+    public final void setMaxFiringsPerLeap(final double maxFirings) {
+        maxFiringsPerLeap = maxFirings;
+    }
+
+    /**
+     * Consumes the firings expected so far.
+     *
+     * @param currentTime
+     *            the time at which the reaction is being executed
+     * @return how many times the reaction should fire: a Poisson-distributed
+     *         number when leaping, one when simulating exactly, plus a
+     *         Poisson-distributed number for the firings carried over from
+     *         leaps which ended without executing
+     */
+    public final int sampleFirings(final Time currentTime) {
+        double mean = expectedFirings;
+        if (leaping) {
+            mean += oldPropensity * currentTime.minus(lastUpdate).toDouble();
+        }
+        expectedFirings = 0;
+        lastUpdate = currentTime;
+        final int firings = mean > 0 ? samplePoisson(mean) : 0;
+        return leaping ? firings : firings + 1;
+    }
+
+    /*
+     * Draws directly from the random generator, as the mean changes at every
+     * leap and building a distribution each time costs more than sampling.
+     * Small means multiply uniforms (Knuth), larger ones use the transformed
+     * rejection with squeeze of Hoermann, "The transformed rejection method
+     * for generating Poisson random variables" (1993).
+     */
+    private int samplePoisson(final double mean) {
+        if (mean < PTRS_MIN_MEAN) {
+            final double limit = FastMath.exp(-mean);
+            int firings = 0;
+            for (double product = rand.nextDouble(); product > limit; product *= rand.nextDouble()) {
+                firings++;
+            }
+            return firings;
+        }
+        final double logMean = FastMath.log(mean);
+        final double b = PTRS_B + PTRS_B_SLOPE * FastMath.sqrt(mean);
+        final double a = PTRS_A + PTRS_A_SLOPE * b;
+        final double logInvAlpha = FastMath.log(PTRS_INV_ALPHA + PTRS_INV_ALPHA_SLOPE / (b - PTRS_INV_ALPHA_SHIFT));
+        final double vr = PTRS_VR - PTRS_VR_SLOPE / (b - 2);
+        while (true) {
+            final double u = rand.nextDouble() - 0.5;
+            final double v = rand.nextDouble();
+            final double us = 0.5 - FastMath.abs(u);
+            final double firings = FastMath.floor((2 * a / us + b) * u + mean + PTRS_SHIFT);
+            if (us >= PTRS_SQUEEZE && v <= vr) {
+                return (int) firings;
+            }
+            if (firings >= 0 && (us >= PTRS_TAIL || v <= us)
+                    && FastMath.log(v) + logInvAlpha - FastMath.log(a / (us * us) + b)
+                        <= -mean + firings * logMean - Gamma.logGamma(firings + 1)) {
+                return (int) firings;
+            }
+        }
+    }
+
+    @Override
+    @SuppressFBWarnings("FE_FLOATING_POINT_EQUALITY")
+    protected final void updateStatus(
+            final Time curTime,
+            final boolean executed,
+            final double newpropensity,
+            final Environment<T, ?> env) {
+        assert !Double.isNaN(newpropensity);
+        if (executed || oldPropensity <= 0) {
+            startInterval(curTime, newpropensity);
+        } else if (leaping) {
+            expectedFirings += oldPropensity * curTime.minus(lastUpdate).toDouble();
+            lastUpdate = curTime;
+            if (newpropensity > 0) {
+                final Time shortened = curTime.plus(new DoubleTime(maxFiringsPerLeap / newpropensity));
+                if (shortened.compareTo(getNextOccurence()) < 0) {
+                    setTau(shortened);
+                }
+            }
+        } else if (newpropensity == 0) {
+            setTau(DoubleTime.INFINITE_TIME);
+        } else if (oldPropensity != newpropensity) {
+            final Time sub = getNextOccurence().minus(curTime);
+            setTau(sub.times(oldPropensity / newpropensity).plus(curTime));
+        }
+        oldPropensity = newpropensity;
+    }
+
+    private void startInterval(final Time curTime, final double propensity) {
+        if (leaping) {
+            /*
+             * Zero if the firings got sampled, carried over otherwise
+             */
+            expectedFirings += oldPropensity * curTime.minus(lastUpdate).toDouble();
+        }
+        lastUpdate = curTime;
+        if (propensity == 0) {
+            leaping = false;
+            setTau(DoubleTime.INFINITE_TIME);
+        } else {
+            leaping = maxFiringsPerLeap >= CRITICAL_FIRINGS;
+            final double delta = leaping
+                ? maxFiringsPerLeap / propensity
+                : -FastMath.log1p(-rand.nextDouble()) / propensity;
+            setTau(curTime.plus(new DoubleTime(delta)));
+        }
+    }
+
+    @Override
+    public TauLeapingTime<T> clone(final Time currentTime) {
+        return new TauLeapingTime<>(rate, epsilon, currentTime, rand);
+    }
+
+    /**
+     * @return the rate of the reaction
+     */
+    @Override
+    public double getRate() {
+        return rate;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[rate=" + rate + ", epsilon=" + epsilon + "]";
+    }
+
+}
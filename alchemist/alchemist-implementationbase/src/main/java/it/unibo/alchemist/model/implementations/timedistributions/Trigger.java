@@ -36,6 +36,11 @@ public final class Trigger<T> extends AbstractDistribution<T> {
         return Double.NaN;
     }
 
+    @Override
+    public boolean isExecutionDriven() {
+        return true;
+    }
+
     @Override
     protected void updateStatus(final Time curTime, final boolean executed, final double param, final Environment<T, ?> env) {
         if (dryRunDone && curTime.compareTo(getNextOccurence()) >= 0 && executed) {
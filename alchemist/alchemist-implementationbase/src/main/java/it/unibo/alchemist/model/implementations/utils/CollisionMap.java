@@ -0,0 +1,516 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.utils;
+
+import org.apache.commons.math3.util.FastMath;
+
+import java.io.Serializable;
+
+/**
+ * A grid of square cells, each of which is either free or occupied by an
+ * obstacle. Coordinates are measured in cells: the cell in column c and row r
+ * spans [c, c + 1] x [r, r + 1], and the grid spans [0, columns] x [0, rows].
+ * Outside of the grid there are no obstacles.
+ * <p>
+ * Occupancy is stored one bit per cell. On top of it, two Euclidean distance
+ * transforms are computed on the first query after a change: the distance of
+ * each cell from the closest occupied one, and the closest free cell of each
+ * occupied one. Checking a position or finding the closest free cell are
+ * then array lookups, while segments are traversed cell by cell only close
+ * to obstacles, and skip the free space in between.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class CollisionMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int ADDRESS_BITS = 6;
+    /*
+     * Stands for infinity in the transforms, keeping the arithmetic finite
+     */
+    private static final double FAR = 1e20;
+    /*
+     * Points of two cells are at least as far as their centers minus this
+     */
+    private static final double DIAGONAL = FastMath.sqrt(2);
+    /*
+     * Clearance, in cells, above which segments jump instead of stepping
+     */
+    private static final double MIN_JUMP = 1;
+    private final int columns;
+    private final int rows;
+    private final long[] occupied;
+    /*
+     * Distance between the center of each cell and the center of the closest
+     * occupied cell
+     */
+    private transient float[] distances;
+    /*
+     * Index of the closest free cell of each cell, -1 if all cells are occupied
+     */
+    private transient int[] nearestFree;
+
+    /**
+     * Builds a grid with no obstacles.
+     *
+     * @param columns
+     *            the number of columns
+     * @param rows
+     *            the number of rows
+     */
+    public CollisionMap(final int columns, final int rows) {
+        if (columns <= 0 || rows <= 0 || (long) columns * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid grid size " + columns + "x" + rows);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.occupied = new long[((columns * rows - 1) >>> ADDRESS_BITS) + 1];
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Marks as occupied or free all the cells in the given columns and rows,
+     * ignoring those out of the grid.
+     *
+     * @param minColumn
+     *            first column, inclusive
+     * @param minRow
+     *            first row, inclusive
+     * @param maxColumn
+     *            last column, exclusive
+     * @param maxRow
+     *            last row, exclusive
+     * @param value
+     *            true to mark the cells as occupied, false to free them
+     * @return true if at least a cell changed
+     */
+    public boolean fill(final int minColumn, final int minRow, final int maxColumn, final int maxRow, final boolean value) {
+        boolean changed = false;
+        for (int row = FastMath.max(0, minRow); row < FastMath.min(rows, maxRow); row++) {
+            for (int column = FastMath.max(0, minColumn); column < FastMath.min(columns, maxColumn); column++) {
+                final int index = row * columns + column;
+                if (isOccupied(index) != value) {
+                    occupied[index >>> ADDRESS_BITS] ^= 1L << index;
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            distances = null;
+            nearestFree = null;
+        }
+        return changed;
+    }
+
+    /**
+     * @param column
+     *            the column
+     * @param row
+     *            the row
+     * @return true if the cell is within the grid and occupied
+     */
+    public boolean isOccupied(final int column, final int row) {
+        return column >= 0 && column < columns && row >= 0 && row < rows && isOccupied(row * columns + column);
+    }
+
+    /**
+     * @param x
+     *            the x coordinate, in cells
+     * @param y
+     *            the y coordinate, in cells
+     * @return true if the point is in an occupied cell
+     */
+    public boolean isOccupied(final double x, final double y) {
+        return isOccupied((int) FastMath.floor(x), (int) FastMath.floor(y));
+    }
+
+    /**
+     * @param x
+     *            the x coordinate, in cells
+     * @param y
+     *            the y coordinate, in cells
+     * @return a lower bound of the distance of the point from the occupied
+     *         cells, in cells. Infinite if there are none.
+     */
+    public double getClearance(final double x, final double y) {
+        final int column = (int) FastMath.floor(x);
+        final int row = (int) FastMath.floor(y);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            /*
+             * Obstacles are at least as far as the grid, and as the closest
+             * point of the grid minus its distance
+             */
+            final double outside = FastMath.hypot(
+                    FastMath.max(0, FastMath.max(-x, x - columns)),
+                    FastMath.max(0, FastMath.max(-y, y - rows)));
+            final double border = getClearance(
+                    FastMath.max(0, FastMath.min(x, FastMath.nextDown((double) columns))),
+                    FastMath.max(0, FastMath.min(y, FastMath.nextDown((double) rows))));
+            return FastMath.max(outside, border - outside);
+        }
+        return FastMath.max(0, distances()[row * columns + column] - DIAGONAL);
+    }
+
+    /**
+     * @param column
+     *            the column
+     * @param row
+     *            the row
+     * @return the index (row * columns + column) of the free cell closest to
+     *         the given one, which is the cell itself if free, or -1 if all
+     *         the cells are occupied
+     */
+    public int getNearestFreeCell(final int column, final int row) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            throw new IllegalArgumentException("(" + column + ", " + row + ") is out of the grid");
+        }
+        final int index = row * columns + column;
+        return isOccupied(index) ? nearestFree()[index] : index;
+    }
+
+    /**
+     * @param sx
+     *            start x, in cells
+     * @param sy
+     *            start y, in cells
+     * @param ex
+     *            end x, in cells
+     * @param ey
+     *            end y, in cells
+     * @return true if the segment touches an occupied cell
+     */
+    public boolean intersects(final double sx, final double sy, final double ex, final double ey) {
+        return firstHit(sx, sy, ex, ey) <= 1;
+    }
+
+    /**
+     * Finds where a segment first enters an occupied cell.
+     *
+     * @param sx
+     *            start x, in cells
+     * @param sy
+     *            start y, in cells
+     * @param ex
+     *            end x, in cells
+     * @param ey
+     *            end y, in cells
+     * @return t in [0, 1] such that [sx + t * (ex - sx), sy + t * (ey - sy)]
+     *         is the first point of the segment in an occupied cell, or
+     *         positive infinity if the segment is free
+     */
+    public double firstHit(final double sx, final double sy, final double ex, final double ey) {
+        final double dx = ex - sx;
+        final double dy = ey - sy;
+        /*
+         * Clip the segment to the grid
+         */
+        if (dx == 0 && (sx < 0 || sx > columns) || dy == 0 && (sy < 0 || sy > rows)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double enter = FastMath.max(0, FastMath.max(entering(sx, dx, columns), entering(sy, dy, rows)));
+        final double exit = FastMath.min(1, FastMath.min(exiting(sx, dx, columns), exiting(sy, dy, rows)));
+        if (enter > exit) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double length = FastMath.hypot(dx, dy);
+        final int stepX = dx > 0 ? 1 : dx < 0 ? -1 : 0;
+        final int stepY = dy > 0 ? 1 : dy < 0 ? -1 : 0;
+        final double deltaX = stepX == 0 ? Double.POSITIVE_INFINITY : 1 / FastMath.abs(dx);
+        final double deltaY = stepY == 0 ? Double.POSITIVE_INFINITY : 1 / FastMath.abs(dy);
+        final float[] clearances = distances();
+        double t = enter;
+        while (t <= exit) {
+            /*
+             * Start traversing the grid cell by cell from the current point
+             */
+            int column = clamp((int) FastMath.floor(sx + t * dx), columns);
+            int row = clamp((int) FastMath.floor(sy + t * dy), rows);
+            double nextX = stepX == 0 ? Double.POSITIVE_INFINITY : (column + (stepX > 0 ? 1 : 0) - sx) / dx;
+            double nextY = stepY == 0 ? Double.POSITIVE_INFINITY : (row + (stepY > 0 ? 1 : 0) - sy) / dy;
+            while (true) {
+                final int index = row * columns + column;
+                if (isOccupied(index)) {
+                    return t;
+                }
+                final double clearance = clearances[index] - DIAGONAL;
+                if (clearance >= MIN_JUMP && length > 0) {
+                    /*
+                     * No obstacle within the clearance: jump
+                     */
+                    t += clearance / length;
+                    break;
+                }
+                if (nextX < nextY) {
+                    t = nextX;
+                    nextX += deltaX;
+                    column += stepX;
+                } else {
+                    t = nextY;
+                    nextY += deltaY;
+                    row += stepY;
+                }
+                if (t > exit || column < 0 || column >= columns || row < 0 || row >= rows) {
+                    return Double.POSITIVE_INFINITY;
+                }
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Decomposes the occupied cells in disjoint rectangles, greedily growing
+     * them rightwards and then upwards.
+     *
+     * @param visitor
+     *            receives the rectangles
+     */
+    public void forEachRectangle(final RectangleVisitor visitor) {
+        forEachRectangle(0, 0, columns, rows, visitor);
+    }
+
+    /**
+     * Decomposes the occupied cells in the given columns and rows, as
+     * {@link #forEachRectangle(RectangleVisitor)} does, ignoring the others:
+     * rectangles do not extend beyond the given bounds. The cost depends on
+     * the area within the bounds, and is constant if the clearance around them
+     * proves they hold no occupied cell.
+     *
+     * @param minColumn
+     *            first column, inclusive
+     * @param minRow
+     *            first row, inclusive
+     * @param maxColumn
+     *            last column, exclusive
+     * @param maxRow
+     *            last row, exclusive
+     * @param visitor
+     *            receives the rectangles
+     */
+    public void forEachRectangle(final int minColumn, final int minRow, final int maxColumn, final int maxRow, final RectangleVisitor visitor) {
+        final int fromColumn = FastMath.max(0, minColumn);
+        final int fromRow = FastMath.max(0, minRow);
+        final int toColumn = FastMath.min(columns, maxColumn);
+        final int toRow = FastMath.min(rows, maxRow);
+        if (fromColumn >= toColumn || fromRow >= toRow) {
+            return;
+        }
+        final double halfWidth = (toColumn - fromColumn) / 2.0;
+        final double halfHeight = (toRow - fromRow) / 2.0;
+        if (getClearance(fromColumn + halfWidth, fromRow + halfHeight) > FastMath.hypot(halfWidth, halfHeight)) {
+            return;
+        }
+        final int width = toColumn - fromColumn;
+        /*
+         * Indexed relatively to the bounds
+         */
+        final long[] covered = new long[((width * (toRow - fromRow) - 1) >>> ADDRESS_BITS) + 1];
+        for (int row = fromRow; row < toRow; row++) {
+            for (int column = fromColumn; column < toColumn; column++) {
+                if (isOccupied(row * columns + column) && !isSet(covered, (row - fromRow) * width + column - fromColumn)) {
+                    int endColumn = column + 1;
+                    while (endColumn < toColumn && isRunFree(covered, fromColumn, fromRow, width, row, endColumn, endColumn + 1)) {
+                        endColumn++;
+                    }
+                    int endRow = row + 1;
+                    while (endRow < toRow && isRunFree(covered, fromColumn, fromRow, width, endRow, column, endColumn)) {
+                        endRow++;
+                    }
+                    for (int r = row; r < endRow; r++) {
+                        for (int c = column; c < endColumn; c++) {
+                            final int index = (r - fromRow) * width + c - fromColumn;
+                            covered[index >>> ADDRESS_BITS] |= 1L << index;
+                        }
+                    }
+                    visitor.visit(column, row, endColumn, endRow);
+                    column = endColumn - 1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + columns + "x" + rows + ']';
+    }
+
+    /*
+     * True if the cells of the row are all occupied and not covered yet. Covered cells are indexed relatively to the
+     * first column and row, in rows of the given width.
+     */
+    private boolean isRunFree(
+            final long[] covered,
+            final int fromColumn,
+            final int fromRow,
+            final int width,
+            final int row,
+            final int minColumn,
+            final int maxColumn) {
+        for (int column = minColumn; column < maxColumn; column++) {
+            if (!isOccupied(row * columns + column) || isSet(covered, (row - fromRow) * width + column - fromColumn)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isOccupied(final int index) {
+        return isSet(occupied, index);
+    }
+
+    private float[] distances() {
+        if (distances == null) {
+            final double[] squared = new double[columns * rows];
+            transform(true, squared, null);
+            distances = new float[squared.length];
+            for (int i = 0; i < squared.length; i++) {
+                distances[i] = squared[i] >= FAR / 2 ? Float.POSITIVE_INFINITY : (float) FastMath.sqrt(squared[i]);
+            }
+        }
+        return distances;
+    }
+
+    private int[] nearestFree() {
+        if (nearestFree == null) {
+            final int[] nearest = new int[columns * rows];
+            final double[] squared = new double[nearest.length];
+            transform(false, squared, nearest);
+            for (int i = 0; i < nearest.length; i++) {
+                if (squared[i] >= FAR / 2) {
+                    nearest[i] = -1;
+                }
+            }
+            nearestFree = nearest;
+        }
+        return nearestFree;
+    }
+
+    /*
+     * Squared Euclidean distance transform of Felzenszwalb and Huttenlocher,
+     * computed by columns and then by rows. Targets are the occupied cells if
+     * the flag is true, the free ones otherwise. If nearest is not null, it
+     * receives the index of the closest target of each cell.
+     */
+    private void transform(final boolean targetOccupied, final double[] squared, final int[] nearest) {
+        final int longest = FastMath.max(columns, rows);
+        final double[] f = new double[longest];
+        final double[] d = new double[longest];
+        final int[] arg = new int[longest];
+        final int[] v = new int[longest];
+        final double[] z = new double[longest + 1];
+        final double[] byColumn = new double[columns * rows];
+        final int[] closestRow = nearest == null ? null : new int[columns * rows];
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                f[row] = isOccupied(row * columns + column) == targetOccupied ? 0 : FAR;
+            }
+            transform(f, rows, d, arg, v, z);
+            for (int row = 0; row < rows; row++) {
+                byColumn[row * columns + column] = d[row];
+                if (closestRow != null) {
+                    closestRow[row * columns + column] = arg[row];
+                }
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            System.arraycopy(byColumn, row * columns, f, 0, columns);
+            transform(f, columns, d, arg, v, z);
+            System.arraycopy(d, 0, squared, row * columns, columns);
+            if (nearest != null) {
+                for (int column = 0; column < columns; column++) {
+                    nearest[row * columns + column] = closestRow[row * columns + arg[column]] * columns + arg[column];
+                }
+            }
+        }
+    }
+
+    /*
+     * One dimensional transform: lower envelope of the parabolas rooted in
+     * each sample, whose vertices are v and whose boundaries are z
+     */
+    private static void transform(final double[] f, final int n, final double[] d, final int[] arg, final int[] v, final double[] z) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = Double.NEGATIVE_INFINITY;
+        z[1] = Double.POSITIVE_INFINITY;
+        for (int q = 1; q < n; q++) {
+            double s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            final double offset = q - v[k];
+            d[q] = offset * offset + f[v[k]];
+            arg[q] = v[k];
+        }
+    }
+
+    private static double intersection(final double[] f, final int q, final int p) {
+        return (f[q] + (double) q * q - f[p] - (double) p * p) / (2.0 * q - 2.0 * p);
+    }
+
+    /*
+     * Smallest and largest t for which start + t * delta is within [0, max]
+     */
+    private static double entering(final double start, final double delta, final double max) {
+        return delta == 0 ? Double.NEGATIVE_INFINITY : FastMath.min(-start / delta, (max - start) / delta);
+    }
+
+    private static double exiting(final double start, final double delta, final double max) {
+        return delta == 0 ? Double.POSITIVE_INFINITY : FastMath.max(-start / delta, (max - start) / delta);
+    }
+
+    private static int clamp(final int value, final int size) {
+        return FastMath.max(0, FastMath.min(value, size - 1));
+    }
+
+    private static boolean isSet(final long[] bits, final int index) {
+        return (bits[index >>> ADDRESS_BITS] & (1L << index)) != 0;
+    }
+
+    /**
+     * Receives rectangles of cells.
+     */
+    @FunctionalInterface
+    public interface RectangleVisitor {
+        /**
+         * @param minColumn
+         *            first column, inclusive
+         * @param minRow
+         *            first row, inclusive
+         * @param maxColumn
+         *            last column, exclusive
+         * @param maxRow
+         *            last row, exclusive
+         */
+        void visit(int minColumn, int minRow, int maxColumn, int maxRow);
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.utils;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Collection;
+
+/**
+ * Answers line of sight queries among a fixed set of {@link RectObstacle2D}s.
+ * <p>
+ * The obstacles are registered in the square cells of a uniform grid they
+ * overlap. For each pair of cells ever queried, the index remembers which
+ * obstacles intersect the convex hull of the two cells: any segment
+ * connecting them can only touch those. Pairs of cells with no obstacle in
+ * between (the vast majority, in open spaces and within rooms) are answered
+ * with two hash lookups, the other ones test only the remembered obstacles.
+ * <p>
+ * The memory grows with the number of pairs of cells queried, which is
+ * bounded when queries are local (e.g., within a communication range). This
+ * class is not thread safe.
+ */
+public final class VisibilityIndex {
+
+    private static final long LOW_BITS = 0xFFFFFFFFL;
+    /*
+     * Relative to the cell size, absorbs the fuzzy comparisons of RectObstacle2D
+     */
+    private static final double TOLERANCE = 1e-6;
+    private static final int[] NONE = new int[0];
+    private final RectObstacle2D[] obstacles;
+    private final double cellSize;
+    private final TLongObjectHashMap<int[]> grid = new TLongObjectHashMap<>();
+    private final TLongObjectHashMap<TLongObjectHashMap<int[]>> memo = new TLongObjectHashMap<>();
+    private final int[] visited;
+    private int visit;
+
+    /**
+     * Builds an index whose cells contain, on average, about an obstacle.
+     *
+     * @param obstacles
+     *            the obstacles
+     */
+    public VisibilityIndex(final Collection<RectObstacle2D> obstacles) {
+        this(obstacles, defaultCellSize(obstacles));
+    }
+
+    /**
+     * @param obstacles
+     *            the obstacles
+     * @param cellSize
+     *            the side of the cells. Smaller cells find more pairs of
+     *            cells with no obstacle in between, but remember more pairs.
+     */
+    public VisibilityIndex(final Collection<RectObstacle2D> obstacles, final double cellSize) {
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("The cell size must be a positive finite number, got " + cellSize);
+        }
+        this.obstacles = obstacles.toArray(new RectObstacle2D[0]);
+        this.cellSize = cellSize;
+        visited = new int[this.obstacles.length];
+        final TLongObjectHashMap<TIntArrayList> cells = new TLongObjectHashMap<>();
+        for (int i = 0; i < this.obstacles.length; i++) {
+            final RectObstacle2D obstacle = this.obstacles[i];
+            for (int x = cellOf(obstacle.getMinX()); x <= cellOf(obstacle.getMaxX()); x++) {
+                for (int y = cellOf(obstacle.getMinY()); y <= cellOf(obstacle.getMaxY()); y++) {
+                    final long key = key(x, y);
+                    TIntArrayList cell = cells.get(key);
+                    if (cell == null) {
+                        cell = new TIntArrayList();
+                        cells.put(key, cell);
+                    }
+                    cell.add(i);
+                }
+            }
+        }
+        cells.forEachEntry((key, cell) -> {
+            grid.put(key, cell.toArray());
+            return true;
+        });
+    }
+
+    /**
+     * @return the side of the cells
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Checks whether there is at least an obstacle intersecting the segment
+     * connecting [sx, sy] and [ex, ey], with the same criterion of
+     * {@link it.unibo.alchemist.model.implementations.environments.Continuous2DObstacles}.
+     *
+     * @param sx start x
+     * @param sy start y
+     * @param ex end x
+     * @param ey end y
+     * @return true if the segment touches an obstacle
+     */
+    @SuppressFBWarnings("FE_FLOATING_POINT_EQUALITY")
+    public boolean intersectsObstacle(final double sx, final double sy, final double ex, final double ey) {
+        if (obstacles.length == 0) {
+            return false;
+        }
+        final long start = key(cellOf(sx), cellOf(sy));
+        final long end = key(cellOf(ex), cellOf(ey));
+        final int[] candidates = start <= end ? candidates(start, end) : candidates(end, start);
+        final double minX = FastMath.min(sx, ex);
+        final double minY = FastMath.min(sy, ey);
+        final double maxX = FastMath.max(sx, ex);
+        final double maxY = FastMath.max(sy, ey);
+        for (final int candidate: candidates) {
+            final RectObstacle2D obstacle = obstacles[candidate];
+            if (obstacle.getMinX() <= maxX && obstacle.getMaxX() >= minX
+                    && obstacle.getMinY() <= maxY && obstacle.getMaxY() >= minY) {
+                final double[] coords = obstacle.nearestIntersection(sx, sy, ex, ey);
+                if (coords[0] != ex || coords[1] != ey || obstacle.contains(coords[0], coords[1])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[cellSize=" + cellSize + ", obstacles=" + obstacles.length + ']';
+    }
+
+    private int[] candidates(final long first, final long second) {
+        TLongObjectHashMap<int[]> pairs = memo.get(first);
+        if (pairs == null) {
+            pairs = new TLongObjectHashMap<>();
+            memo.put(first, pairs);
+        }
+        int[] result = pairs.get(second);
+        if (result == null) {
+            result = computeCandidates((int) (first >> Integer.SIZE), (int) first, (int) (second >> Integer.SIZE), (int) second);
+            pairs.put(second, result);
+        }
+        return result;
+    }
+
+    /*
+     * The convex hull of two cells is the cell swept along the segment
+     * connecting their centers: it intersects an obstacle if such segment
+     * intersects the obstacle enlarged by half a cell on each side.
+     */
+    private int[] computeCandidates(final int x1, final int y1, final int x2, final int y2) {
+        final double half = cellSize / 2;
+        final double margin = half + cellSize * TOLERANCE;
+        final double cx1 = x1 * cellSize + half;
+        final double cy1 = y1 * cellSize + half;
+        final double cx2 = x2 * cellSize + half;
+        final double cy2 = y2 * cellSize + half;
+        final TIntArrayList result = new TIntArrayList();
+        visit++;
+        /*
+         * The hull is within the cells between the two, one more cell on each
+         * side accounts for rounding
+         */
+        for (int x = FastMath.min(x1, x2) - 1; x <= FastMath.max(x1, x2) + 1; x++) {
+            for (int y = FastMath.min(y1, y2) - 1; y <= FastMath.max(y1, y2) + 1; y++) {
+                final int[] cell = grid.get(key(x, y));
+                if (cell != null) {
+                    for (final int candidate: cell) {
+                        if (visited[candidate] != visit) {
+                            visited[candidate] = visit;
+                            final RectObstacle2D obstacle = obstacles[candidate];
+                            if (segmentIntersectsBox(cx1, cy1, cx2, cy2,
+                                    obstacle.getMinX() - margin, obstacle.getMinY() - margin,
+                                    obstacle.getMaxX() + margin, obstacle.getMaxY() + margin)) {
+                                result.add(candidate);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result.isEmpty() ? NONE : result.toArray();
+    }
+
+    private int cellOf(final double coordinate) {
+        return (int) FastMath.floor(coordinate / cellSize);
+    }
+
+    private static long key(final int x, final int y) {
+        return ((long) x << Integer.SIZE) | (y & LOW_BITS);
+    }
+
+    /*
+     * Slab method: clips the parameter of the segment between the vertical
+     * sides of the box, then between the horizontal ones.
+     */
+    private static boolean segmentIntersectsBox(
+            final double sx, final double sy, final double ex, final double ey,
+            final double minX, final double minY, final double maxX, final double maxY) {
+        double from = 0;
+        double to = 1;
+        final double dx = ex - sx;
+        if (dx == 0) {
+            if (sx < minX || sx > maxX) {
+                return false;
+            }
+        } else {
+            from = FastMath.max(from, FastMath.min((minX - sx) / dx, (maxX - sx) / dx));
+            to = FastMath.min(to, FastMath.max((minX - sx) / dx, (maxX - sx) / dx));
+        }
+        final double dy = ey - sy;
+        if (dy == 0) {
+            return sy >= minY && sy <= maxY && from <= to;
+        }
+        from = FastMath.max(from, FastMath.min((minY - sy) / dy, (maxY - sy) / dy));
+        to = FastMath.min(to, FastMath.max((minY - sy) / dy, (maxY - sy) / dy));
+        return from <= to;
+    }
+
+    private static double defaultCellSize(final Collection<RectObstacle2D> obstacles) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (final RectObstacle2D obstacle: obstacles) {
+            minX = FastMath.min(minX, obstacle.getMinX());
+            minY = FastMath.min(minY, obstacle.getMinY());
+            maxX = FastMath.max(maxX, obstacle.getMaxX());
+            maxY = FastMath.max(maxY, obstacle.getMaxY());
+        }
+        final double width = maxX - minX;
+        final double height = maxY - minY;
+        final double side = FastMath.sqrt(width * height / obstacles.size());
+        if (side > 0 && !Double.isInfinite(side)) {
+            return side;
+        }
+        final double longest = FastMath.max(width, height) / obstacles.size();
+        return longest > 0 && !Double.isInfinite(longest) ? longest : 1;
+    }
+
+}
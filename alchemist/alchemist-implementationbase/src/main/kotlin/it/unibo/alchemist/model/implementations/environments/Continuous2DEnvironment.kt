@@ -7,11 +7,23 @@ import it.unibo.alchemist.model.interfaces.environments.EuclideanPhysics2DEnviro
 import it.unibo.alchemist.model.interfaces.geometry.GeometricShapeFactory
 import it.unibo.alchemist.model.interfaces.geometry.euclidean.twod.Euclidean2DShape
 import it.unibo.alchemist.model.interfaces.geometry.euclidean.twod.Euclidean2DShapeFactory
+import org.apache.commons.math3.util.FastMath.hypot
+import org.apache.commons.math3.util.Pair
+import org.danilopianini.util.FlexibleQuadTree
+import org.danilopianini.util.SpatialIndex
+import java.util.TreeMap
 
 /**
- * Implementation of [EuclideanPhysics2DEnvironment]
+ * Implementation of [EuclideanPhysics2DEnvironment], retrieving nodes through the given [SpatialIndex].
  */
-open class Continuous2DEnvironment<T> : Abstract2DEnvironment<T, Euclidean2DPosition>(), EuclideanPhysics2DEnvironment<T> {
+open class Continuous2DEnvironment<T>(
+    index: SpatialIndex<Node<T>>
+) : Abstract2DEnvironment<T, Euclidean2DPosition>(index), EuclideanPhysics2DEnvironment<T> {
+
+    /**
+     * Builds an environment indexing its nodes with a [FlexibleQuadTree].
+     */
+    constructor() : this(FlexibleQuadTree())
 
     companion object {
         @JvmStatic private val serialVersionUID: Long = 1L
@@ -20,12 +32,27 @@ open class Continuous2DEnvironment<T> : Abstract2DEnvironment<T, Euclidean2DPosi
     override val shapeFactory: Euclidean2DShapeFactory = GeometricShapeFactory.getInstance()
     private val defaultHeading = Euclidean2DPosition(0.0, 0.0)
     private val nodeToHeading = mutableMapOf<Node<T>, Euclidean2DPosition>()
-    private var largestShapeDiameter: Double = 0.0
+    /*
+     * Multiset of the bounding radii of the nodes' shapes, see boundingRadius.
+     */
+    private val boundingRadii = TreeMap<Double, Int>()
+    private val largestBoundingRadius: Double
+        get() = if (boundingRadii.isEmpty()) 0.0 else boundingRadii.lastKey()
 
-    override fun getNodesWithin(shape: Euclidean2DShape): List<Node<T>> =
-        if (shape.diameter + largestShapeDiameter <= 0) emptyList()
-        else getNodesWithinRange(shape.centroid, (shape.diameter + largestShapeDiameter) / 2)
-            .filter { shape.intersects(getShape(it)) }
+    /**
+     * Nodes whose shape can not reach the given one are discarded comparing their bounding radius with the distance
+     * from the shape: the exact intersection is checked on the remaining ones only.
+     */
+    override fun getNodesWithin(shape: Euclidean2DShape): List<Node<T>> {
+        val radius = shape.diameter / 2
+        val centroid = shape.centroid
+        return if (radius + largestBoundingRadius <= 0) emptyList()
+        else getNodesWithinRange(centroid, radius + largestBoundingRadius)
+            .filter {
+                getPosition(it).getDistanceTo(centroid) <= radius + boundingRadius(it) &&
+                    shape.intersects(getShape(it))
+            }
+    }
 
     override fun getHeading(node: Node<T>) =
         nodeToHeading.getOrPut(node, { defaultHeading })
@@ -48,15 +75,20 @@ open class Continuous2DEnvironment<T> : Abstract2DEnvironment<T, Euclidean2DPosi
             }
 
     /**
-     * Keeps track of the largest diameter of the shapes.
+     * Keeps track of the bounding radii of the shapes.
      */
     override fun nodeAdded(node: Node<T>, position: Euclidean2DPosition, neighborhood: Neighborhood<T>) {
         super.nodeAdded(node, position, neighborhood)
-        if (node.shape.diameter > largestShapeDiameter) {
-            largestShapeDiameter = node.shape.diameter
-        }
+        boundingRadii.merge(boundingRadius(node), 1) { old, new -> old + new }
     }
 
+    /**
+     * Collision checks at insertion depend on the largest bounding radius of the shapes: nodes can be added in bulk
+     * only if none of them is larger.
+     */
+    override fun canAddInBulk(toAdd: Collection<Pair<out Node<T>, out Euclidean2DPosition>>) =
+        toAdd.all { boundingRadius(it.first) <= largestBoundingRadius }
+
     /**
      * {@inheritDoc}
      */
@@ -64,11 +96,15 @@ open class Continuous2DEnvironment<T> : Abstract2DEnvironment<T, Euclidean2DPosi
         super.nodeRemoved(node, neighborhood)
             .also {
                 nodeToHeading.remove(node)
-                if (largestShapeDiameter >= node.shape.diameter) {
-                    largestShapeDiameter = nodes.map { it.shape.diameter }.max() ?: 0.0
-                }
+                boundingRadii.computeIfPresent(boundingRadius(node)) { _, count -> if (count > 1) count - 1 else null }
             }
 
+    /*
+     * Radius of the circle centered in the node's position which contains its shape, whatever the heading.
+     */
+    private fun boundingRadius(node: Node<T>) =
+        shapeFactory.requireCompatible(node.shape).let { hypot(it.centroid.x, it.centroid.y) + it.diameter / 2 }
+
     /**
      * Moves the node only if it doesn't collide with others.
      */
@@ -11,12 +11,23 @@ import java.awt.geom.Point2D
 
 /**
  * [it.unibo.alchemist.model.interfaces.geometry.GeometricShape] delegated to java.awt.geom.
+ * Circles and circular sectors also carry an [Euclidean2DPrimitive], which is used to check their intersections
+ * analytically: transformed shapes compute their awt counterpart only if needed.
  */
-internal class AwtEuclidean2DShape(
-    private val shape: Shape,
-    private val origin: Euclidean2DPosition = Euclidean2DPosition(0.0, 0.0)
+internal class AwtEuclidean2DShape private constructor(
+    private val lazyShape: Lazy<Shape>,
+    private val origin: Euclidean2DPosition,
+    private val primitive: Euclidean2DPrimitive?
 ) : Euclidean2DShape, AwtShapeCompatible {
 
+    constructor(
+        shape: Shape,
+        origin: Euclidean2DPosition = Euclidean2DPosition(0.0, 0.0),
+        primitive: Euclidean2DPrimitive? = null
+    ) : this(lazyOf(shape), origin, primitive)
+
+    private val shape by lazyShape
+
     override val diameter: Double by lazy {
         val rect = shape.bounds2D
         Euclidean2DPosition(rect.minX, rect.minY).getDistanceTo(Euclidean2DPosition(rect.maxX, rect.maxY))
@@ -44,7 +55,8 @@ internal class AwtEuclidean2DShape(
              not checking for it results in paradoxes like shape.intersects(other) != other.intersects(shape).
              The asymmetry is tolerated in favour of a half-good implementation.
              */
-            is AwtEuclidean2DShape -> shape.intersects(other.shape.bounds2D) // || other.shape.intersects(shape.bounds2D)
+            is AwtEuclidean2DShape -> other.primitive?.let { primitive?.intersects(it) }
+                ?: shape.intersects(other.shape.bounds2D) // || other.shape.intersects(shape.bounds2D)
             is AdimensionalShape -> false
             else -> throw UnsupportedOperationException("AwtEuclidean2DShape only works with other AwtEuclidean2DShape")
         }
@@ -68,7 +80,11 @@ internal class AwtEuclidean2DShape(
                 transform.rotate(newRotation)
             }
             transform.translate(-origin.x, -origin.y)
-            return AwtEuclidean2DShape(transform.createTransformedShape(shape), newOrigin)
+            return AwtEuclidean2DShape(
+                lazy { transform.createTransformedShape(shape) },
+                newOrigin,
+                primitive?.transformed(origin, newOrigin, newRotation)
+            )
         }
     }
 }
\ No newline at end of file
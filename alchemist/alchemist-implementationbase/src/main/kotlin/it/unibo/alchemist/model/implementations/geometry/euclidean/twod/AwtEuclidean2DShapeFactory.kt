@@ -30,9 +30,15 @@ internal class AwtEuclidean2DShapeFactory(
 
     override fun circleSector(radius: Double, angle: Double, heading: Double): Euclidean2DShape {
         val startAngle = -heading - angle / 2
-        return AwtEuclidean2DShape(Arc2D.Double(-radius, -radius, radius * 2, radius * 2, toDegrees(startAngle), toDegrees(angle), Arc2D.PIE))
+        return AwtEuclidean2DShape(
+            Arc2D.Double(-radius, -radius, radius * 2, radius * 2, toDegrees(startAngle), toDegrees(angle), Arc2D.PIE),
+            primitive = Euclidean2DPrimitive.Sector(Euclidean2DPosition(0.0, 0.0), radius, heading, angle / 2)
+        )
     }
 
     override fun circle(radius: Double): Euclidean2DShape =
-        AwtEuclidean2DShape(Ellipse2D.Double(-radius, -radius, radius * 2, radius * 2))
+        AwtEuclidean2DShape(
+            Ellipse2D.Double(-radius, -radius, radius * 2, radius * 2),
+            primitive = Euclidean2DPrimitive.Circle(Euclidean2DPosition(0.0, 0.0), radius)
+        )
 }
@@ -0,0 +1,109 @@
+package it.unibo.alchemist.model.implementations.geometry.euclidean.twod
+
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition
+import org.apache.commons.math3.util.FastMath.PI
+import org.apache.commons.math3.util.FastMath.abs
+import org.apache.commons.math3.util.FastMath.atan2
+import org.apache.commons.math3.util.FastMath.cos
+import org.apache.commons.math3.util.FastMath.hypot
+import org.apache.commons.math3.util.FastMath.max
+import org.apache.commons.math3.util.FastMath.min
+import org.apache.commons.math3.util.FastMath.rint
+import org.apache.commons.math3.util.FastMath.sin
+import java.io.Serializable
+
+/**
+ * Analytic description of the shapes whose intersections can be checked
+ * without java.awt. As the interiors of awt shapes, shapes which only touch do
+ * not intersect.
+ */
+internal sealed class Euclidean2DPrimitive : Serializable {
+
+    /**
+     * Moves the point [from] to [to], rotating by [angle] radians around it.
+     */
+    abstract fun transformed(from: Euclidean2DPosition, to: Euclidean2DPosition, angle: Double): Euclidean2DPrimitive
+
+    /**
+     * Returns null if the intersection with [other] can not be computed
+     * analytically.
+     */
+    abstract fun intersects(other: Euclidean2DPrimitive): Boolean?
+
+    /**
+     * A circle.
+     */
+    data class Circle(val center: Euclidean2DPosition, val radius: Double) : Euclidean2DPrimitive() {
+
+        override fun transformed(from: Euclidean2DPosition, to: Euclidean2DPosition, angle: Double) =
+            Circle(center.moved(from, to, angle), radius)
+
+        override fun intersects(other: Euclidean2DPrimitive) = when (other) {
+            is Circle -> hypot(center.x - other.center.x, center.y - other.center.y) < radius + other.radius
+            is Sector -> other.intersects(this)
+        }
+    }
+
+    /**
+     * A circular sector, spanning [halfAngle] radians on each side of
+     * [heading].
+     */
+    data class Sector(
+        val apex: Euclidean2DPosition,
+        val radius: Double,
+        val heading: Double,
+        val halfAngle: Double
+    ) : Euclidean2DPrimitive() {
+
+        override fun transformed(from: Euclidean2DPosition, to: Euclidean2DPosition, angle: Double) =
+            Sector(apex.moved(from, to, angle), radius, heading + angle, halfAngle)
+
+        /*
+         * If the center of the circle lies within the angle of the sector,
+         * the closest point of the sector is along the same direction.
+         * Otherwise, it lies on one of the two radii bounding the sector.
+         */
+        override fun intersects(other: Euclidean2DPrimitive) = when (other) {
+            is Circle -> {
+                val dx = other.center.x - apex.x
+                val dy = other.center.y - apex.y
+                val distance = hypot(dx, dy)
+                distance < radius + other.radius && (
+                    halfAngle >= PI ||
+                    distance == 0.0 ||
+                    abs(normalized(atan2(dy, dx) - heading)) <= halfAngle ||
+                    radiusDistance(heading - halfAngle, dx, dy) < other.radius ||
+                    radiusDistance(heading + halfAngle, dx, dy) < other.radius
+                )
+            }
+            is Sector -> null
+        }
+
+        /*
+         * Distance of the point (dx, dy), relative to the apex, from the
+         * radius along the given direction
+         */
+        private fun radiusDistance(direction: Double, dx: Double, dy: Double): Double {
+            val ux = cos(direction)
+            val uy = sin(direction)
+            val projection = min(max(dx * ux + dy * uy, 0.0), radius)
+            return hypot(dx - projection * ux, dy - projection * uy)
+        }
+
+        /*
+         * The same angle, in [-PI, PI]
+         */
+        private fun normalized(angle: Double) = angle - 2 * PI * rint(angle / (2 * PI))
+    }
+
+    protected fun Euclidean2DPosition.moved(from: Euclidean2DPosition, to: Euclidean2DPosition, angle: Double) =
+        if (angle == 0.0) {
+            Euclidean2DPosition(x - from.x + to.x, y - from.y + to.y)
+        } else {
+            val cos = cos(angle)
+            val sin = sin(angle)
+            val dx = x - from.x
+            val dy = y - from.y
+            Euclidean2DPosition(dx * cos - dy * sin + to.x, dx * sin + dy * cos + to.y)
+        }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.neighborhoods
+
+import it.unibo.alchemist.model.interfaces.Environment
+import it.unibo.alchemist.model.interfaces.Neighborhood
+import it.unibo.alchemist.model.interfaces.Node
+import it.unibo.alchemist.model.interfaces.Position
+import org.danilopianini.util.Hashes
+
+/**
+ * Base class for the [Neighborhood]s of this package: neighborhoods with the
+ * same environment, center and neighbors are equal, regardless of the order of
+ * the neighbors and of the implementation.
+ */
+abstract class AbstractNeighborhood<T, P : Position<P>> internal constructor(
+    protected val environment: Environment<T, P>,
+    private val center: Node<T>
+) : Neighborhood<T> {
+
+    final override fun getCenter() = center
+
+    final override fun toString() = "$center links: ${joinToString(prefix = "[", postfix = "]")}"
+
+    @Suppress("UNCHECKED_CAST")
+    final override fun equals(other: Any?): Boolean = other is AbstractNeighborhood<*, *> &&
+        other.environment == environment &&
+        other.center == center &&
+        other.size() == size() &&
+        other.all { contains(it as Node<T>) }
+
+    final override fun hashCode(): Int = Hashes.hash32(environment, center, sumBy { it.hashCode() })
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.model.implementations.neighborhoods
+
+import it.unibo.alchemist.model.interfaces.Environment
+import it.unibo.alchemist.model.interfaces.Node
+import it.unibo.alchemist.model.interfaces.Position
+import org.danilopianini.util.ImmutableListSet
+import org.danilopianini.util.ListSet
+import java.util.Arrays
+
+/**
+ * A [it.unibo.alchemist.model.interfaces.Neighborhood] keeping its neighbors
+ * in insertion order, as [SimpleNeighborhood] does, in an array of nodes which
+ * is never modified after creation. A second array holds the ids of the
+ * neighbors sorted, and a third one the position of each of them in the
+ * array of nodes: it serves only as a lookup index, and does not affect
+ * iteration nor [getNeighborByNumber].
+ * Membership is checked with a binary search on the ids, and [add] and
+ * [remove] build the new neighborhood with a binary search and a few array
+ * copies, hashing no node: it is meant for large neighborhoods, see
+ * [Neighborhoods.make]. As in [SimpleNeighborhood], [add] appends the new
+ * neighbor, and [remove] keeps the order of the others. The [ListSet]
+ * returned by [getNeighbors] is built on first request.
+ */
+class CompactNeighborhood<T, P : Position<P>> private constructor(
+    environment: Environment<T, P>,
+    center: Node<T>,
+    private val nodes: Array<Any>,
+    private val ids: IntArray,
+    private val indexes: IntArray
+) : AbstractNeighborhood<T, P>(environment, center) {
+
+    @Suppress("UNCHECKED_CAST")
+    private val nodeList: List<Node<T>> = nodes.asList() as List<Node<T>>
+
+    private val listSet: ListSet<Node<T>> by lazy {
+        ImmutableListSet.Builder<Node<T>>().addAll(nodeList).build()
+    }
+
+    override fun clone() = CompactNeighborhood(environment, getCenter(), nodes, ids, indexes)
+
+    override fun contains(n: Node<T>?) = n != null && Arrays.binarySearch(ids, n.id) >= 0
+
+    override fun getNeighborByNumber(num: Int): Node<T> = nodeList[num]
+
+    override fun getNeighbors(): ListSet<out Node<T>> = listSet
+
+    override fun isEmpty() = nodes.isEmpty()
+
+    override fun iterator() = nodeList.iterator()
+
+    override fun size() = nodes.size
+
+    override fun add(node: Node<T>): CompactNeighborhood<T, P> {
+        val index = Arrays.binarySearch(ids, node.id)
+        if (index >= 0) {
+            return this
+        }
+        val insertion = -index - 1
+        val newNodes = nodes.copyOf(nodes.size + 1)
+        newNodes[nodes.size] = node
+        val newIds = IntArray(ids.size + 1)
+        val newIndexes = IntArray(ids.size + 1)
+        System.arraycopy(ids, 0, newIds, 0, insertion)
+        System.arraycopy(indexes, 0, newIndexes, 0, insertion)
+        newIds[insertion] = node.id
+        newIndexes[insertion] = nodes.size
+        System.arraycopy(ids, insertion, newIds, insertion + 1, ids.size - insertion)
+        System.arraycopy(indexes, insertion, newIndexes, insertion + 1, ids.size - insertion)
+        @Suppress("UNCHECKED_CAST")
+        return CompactNeighborhood(environment, getCenter(), newNodes as Array<Any>, newIds, newIndexes)
+    }
+
+    override fun remove(node: Node<T>): CompactNeighborhood<T, P> {
+        val index = Arrays.binarySearch(ids, node.id)
+        require(index >= 0) { "$node not in $this" }
+        val removed = indexes[index]
+        val newNodes = arrayOfNulls<Any>(nodes.size - 1)
+        System.arraycopy(nodes, 0, newNodes, 0, removed)
+        System.arraycopy(nodes, removed + 1, newNodes, removed, nodes.size - removed - 1)
+        val newIds = IntArray(ids.size - 1)
+        val newIndexes = IntArray(ids.size - 1)
+        System.arraycopy(ids, 0, newIds, 0, index)
+        System.arraycopy(indexes, 0, newIndexes, 0, index)
+        System.arraycopy(ids, index + 1, newIds, index, ids.size - index - 1)
+        System.arraycopy(indexes, index + 1, newIndexes, index, ids.size - index - 1)
+        /*
+         * The neighbors after the removed one moved back by one
+         */
+        for (i in newIndexes.indices) {
+            if (newIndexes[i] > removed) {
+                newIndexes[i]--
+            }
+        }
+        @Suppress("UNCHECKED_CAST")
+        return CompactNeighborhood(environment, getCenter(), newNodes as Array<Any>, newIds, newIndexes)
+    }
+
+    internal companion object {
+        private const val INDEX_BITS = 32
+        private const val INDEX_MASK = 0xFFFFFFFFL
+
+        /**
+         * Creates a [CompactNeighborhood], ignoring duplicate neighbors and
+         * keeping the order of the first occurrences.
+         */
+        fun <T, P : Position<P>> of(
+            env: Environment<T, P>,
+            center: Node<T>,
+            neighbors: Iterable<Node<T>>
+        ): CompactNeighborhood<T, P> {
+            val distinct = neighbors.distinctBy { it.id }
+            /*
+             * Sorting ids and positions together, packed in longs, avoids boxing
+             */
+            val packed = LongArray(distinct.size) { (distinct[it].id.toLong() shl INDEX_BITS) or it.toLong() }
+            packed.sort()
+            val ids = IntArray(packed.size) { (packed[it] shr INDEX_BITS).toInt() }
+            val indexes = IntArray(packed.size) { (packed[it] and INDEX_MASK).toInt() }
+            return CompactNeighborhood(env, center, distinct.toTypedArray<Any>(), ids, indexes)
+        }
+    }
+}
@@ -8,24 +8,38 @@
 package it.unibo.alchemist.model.implementations.neighborhoods
 
 import it.unibo.alchemist.model.interfaces.Environment
+import it.unibo.alchemist.model.interfaces.Neighborhood
 import it.unibo.alchemist.model.interfaces.Node
 import it.unibo.alchemist.model.interfaces.Position
 
 class Neighborhoods {
     companion object {
         /**
-         * Creates a [SimpleNeighborhood].
+         * Neighborhoods with more neighbors than this are [CompactNeighborhood]s.
+         */
+        const val COMPACT_THRESHOLD = 32
+
+        /**
+         * Creates a [SimpleNeighborhood], or a [CompactNeighborhood] if there
+         * are more than [COMPACT_THRESHOLD] neighbors.
          *
          * @param env The environment of the neighborhood.
          * @param center The center of the neighborhood.
          * @param neighbors The neighbors in the neighborhood, defaults to empty.
          *
-         * @return The newly created [SimpleNeighborhood].
+         * @return The newly created [Neighborhood].
          */
         @JvmStatic @JvmOverloads fun <T, P : Position<P>> make(
             env: Environment<T, P>,
             center: Node<T>,
             neighbors: Iterable<Node<T>> = mutableListOf()
-        ) = SimpleNeighborhood(env, center, neighbors)
+        ): Neighborhood<T> {
+            val collected = neighbors as? Collection<Node<T>> ?: neighbors.toList()
+            return if (collected.size > COMPACT_THRESHOLD) {
+                CompactNeighborhood.of(env, center, collected)
+            } else {
+                SimpleNeighborhood(env, center, collected)
+            }
+        }
     }
-}
\ No newline at end of file
+}
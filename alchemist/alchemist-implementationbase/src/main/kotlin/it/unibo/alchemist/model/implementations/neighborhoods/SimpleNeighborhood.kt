@@ -12,19 +12,19 @@ import it.unibo.alchemist.model.interfaces.Neighborhood
 import it.unibo.alchemist.model.interfaces.Node
 import it.unibo.alchemist.model.interfaces.Position
 import org.danilopianini.util.ArrayListSet
-import org.danilopianini.util.Hashes
 import org.danilopianini.util.ImmutableListSet
 import org.danilopianini.util.ListSet
 import org.danilopianini.util.ListSets
 
 /**
- * A basic implementation of the [Neighborhood] interface.
+ * A basic implementation of the [Neighborhood] interface. Once it grows larger
+ * than [Neighborhoods.COMPACT_THRESHOLD], [add] returns a [CompactNeighborhood].
  */
 class SimpleNeighborhood<T, P : Position<P>> private constructor(
-    private val environment: Environment<T, P>,
-    private val center: Node<T>,
+    environment: Environment<T, P>,
+    center: Node<T>,
     private val neighbors: ImmutableListSet<out Node<T>>
-) : Neighborhood<T> {
+) : AbstractNeighborhood<T, P>(environment, center) {
 
     internal constructor(
         env: Environment<T, P>,
@@ -32,12 +32,10 @@ class SimpleNeighborhood<T, P : Position<P>> private constructor(
         neighbors: Iterable<Node<T>>
     ) : this(env, center, ImmutableListSet.Builder<Node<T>>().addAll(neighbors).build())
 
-    override fun clone() = SimpleNeighborhood(environment, center, ArrayListSet(neighbors))
+    override fun clone() = SimpleNeighborhood(environment, getCenter(), ArrayListSet(neighbors))
 
     override fun contains(n: Node<T>?) = neighbors.contains(n)
 
-    override fun getCenter() = center
-
     override fun getNeighborByNumber(num: Int): Node<T> = neighbors[num]
 
     override fun getNeighbors(): ListSet<out Node<T>> = ListSets.unmodifiableListSet(neighbors)
@@ -48,35 +46,30 @@ class SimpleNeighborhood<T, P : Position<P>> private constructor(
 
     override fun size() = neighbors.size
 
-    override fun toString() = "$center links: $neighbors"
-
-    override fun equals(other: Any?): Boolean = other is SimpleNeighborhood<*, *> &&
-        other.environment == environment &&
-        other.center == center &&
-        other.neighbors == neighbors
-
-    override fun hashCode(): Int = Hashes.hash32(environment, center, neighbors)
-
-    override fun add(node: Node<T>) = SimpleNeighborhood(environment, center, Iterable {
-        object : Iterator<Node<T>> {
-            val previousNodes = neighbors.iterator()
-            var nodeReady = true
-            override fun hasNext() = nodeReady
-            override fun next() = if (previousNodes.hasNext()) {
-                previousNodes.next()
-            } else {
-                if (nodeReady) {
-                    nodeReady = false
-                    node
+    override fun add(node: Node<T>): Neighborhood<T> = if (size() >= Neighborhoods.COMPACT_THRESHOLD) {
+        CompactNeighborhood.of(environment, getCenter(), neighbors + node)
+    } else {
+        SimpleNeighborhood(environment, getCenter(), Iterable {
+            object : Iterator<Node<T>> {
+                val previousNodes = neighbors.iterator()
+                var nodeReady = true
+                override fun hasNext() = nodeReady
+                override fun next() = if (previousNodes.hasNext()) {
+                    previousNodes.next()
                 } else {
-                    throw IllegalStateException("No other elements.")
+                    if (nodeReady) {
+                        nodeReady = false
+                        node
+                    } else {
+                        throw IllegalStateException("No other elements.")
+                    }
                 }
             }
-        }
-    })
+        })
+    }
 
     override fun remove(node: Node<T>) = if (this.contains(node)) {
-        SimpleNeighborhood(environment, center, Iterable {
+        SimpleNeighborhood(environment, getCenter(), Iterable {
             object : Iterator<Node<T>> {
                 val base = neighbors.iterator()
                 var lookahead = updateLookAhead()
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.environments.Continuous3DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ClosestN;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.nodes.IntNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.positions.Euclidean3DPosition;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Position;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link ClosestN} links the nodes as the brute force definition
+ * would.
+ */
+public final class TestClosestN {
+
+    private static final int N = 3;
+    private static final int NODES = 200;
+    private static final double SIDE = 10;
+    private static final int GRID_SIDE = 100;
+    private static final int MAX_CHECKED = 1000;
+    private static final int SHARED_POSITION_EVERY = 10;
+
+    /**
+     * Two nodes must be linked if either one is among the N closest to the
+     * other.
+     */
+    @Test
+    public void testSymmetricNeighborhoods() {
+        final Continuous2DEnvironment<Integer> env = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new NoLinks<>());
+        final RandomGenerator rng = new MersenneTwister(0);
+        for (int i = 0; i < NODES; i++) {
+            env.addNode(new IntNode(env), new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE));
+        }
+        assertSymmetricNeighborhoods(env, new ClosestN<>(N));
+    }
+
+    /**
+     * As {@link #testSymmetricNeighborhoods()}, in three dimensions, where
+     * the candidates are found through orthants rather than sectors, with
+     * some nodes sharing their position with another one.
+     */
+    @Test
+    public void testSymmetricNeighborhoodsIn3D() {
+        final Continuous3DEnvironment<Integer> env = new Continuous3DEnvironment<>();
+        env.setLinkingRule(new NoLinks<>());
+        final RandomGenerator rng = new MersenneTwister(0);
+        Euclidean3DPosition position = null;
+        for (int i = 0; i < NODES; i++) {
+            if (i % SHARED_POSITION_EVERY != 0 || position == null) {
+                position = new Euclidean3DPosition(
+                        rng.nextDouble() * SIDE, rng.nextDouble() * SIDE, rng.nextDouble() * SIDE);
+            }
+            env.addNode(new IntNode(env), position);
+        }
+        assertSymmetricNeighborhoods(env, new ClosestN<>(N));
+    }
+
+    private static <P extends Position<P>> void assertSymmetricNeighborhoods(
+            final Environment<Integer, P> env,
+            final ClosestN<Integer, P> rule) {
+        for (final Node<Integer> center: env.getNodes()) {
+            final Set<Node<Integer>> expected = new HashSet<>(closestN(env, center));
+            for (final Node<Integer> other: env.getNodes()) {
+                if (!other.equals(center) && closestN(env, other).contains(center)) {
+                    expected.add(other);
+                }
+            }
+            assertEquals(expected, new HashSet<>(rule.computeNeighborhood(center, env).getNeighbors()));
+        }
+    }
+
+    /**
+     * Computing the neighborhoods of each layer in parallel must link the
+     * nodes as the serial propagation does, and limiting the propagation
+     * depth must keep the links symmetric.
+     */
+    @Test
+    public void testPropagation() {
+        final Continuous2DEnvironment<Integer> parallel = new Continuous2DEnvironment<>();
+        parallel.setLinkingRule(new ClosestN<>(N));
+        final Continuous2DEnvironment<Integer> serial = new Continuous2DEnvironment<>();
+        serial.setLinkingRule(new ClosestN<Integer, Euclidean2DPosition>(N) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public boolean isParallelizable() {
+                return false;
+            }
+        });
+        final Continuous2DEnvironment<Integer> shallow = new Continuous2DEnvironment<>();
+        shallow.setLinkingRule(new ClosestN<>(N, 0, 0, 1));
+        final List<Continuous2DEnvironment<Integer>> environments = Arrays.asList(parallel, serial, shallow);
+        final RandomGenerator rng = new MersenneTwister(0);
+        for (int i = 0; i < NODES / 2; i++) {
+            final Euclidean2DPosition position = new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE);
+            environments.forEach(env -> env.addNode(new IntNode(env), position));
+        }
+        for (int i = 0; i < NODES; i++) {
+            final int index = rng.nextInt(NODES / 2);
+            final Euclidean2DPosition destination = new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE);
+            environments.forEach(env -> env.moveNodeToPosition(env.getNodes().get(index), destination));
+        }
+        for (int i = 0; i < NODES / 2; i++) {
+            assertEquals(neighborIds(serial, i), neighborIds(parallel, i));
+        }
+        for (final Node<Integer> node: shallow.getNodes()) {
+            for (final Node<Integer> neighbor: shallow.getNeighborhood(node)) {
+                assertTrue(shallow.getNeighborhood(neighbor).contains(node));
+            }
+        }
+    }
+
+    /**
+     * Nodes on the border and in the corners of a large grid must be linked
+     * looking only at the nodes around them, rather than at all the nodes,
+     * as the sectors pointing outside of the environment never fill up.
+     */
+    @Test
+    public void testBorderCandidates() {
+        final Continuous2DEnvironment<Integer> env = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new NoLinks<>());
+        for (int i = 0; i < GRID_SIDE * GRID_SIDE; i++) {
+            env.addNode(new IntNode(env), new Euclidean2DPosition(i % GRID_SIDE, i / GRID_SIDE));
+        }
+        final AtomicInteger checked = new AtomicInteger();
+        final ClosestN<Integer, Euclidean2DPosition> rule = new ClosestN<Integer, Euclidean2DPosition>(N) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean nodeIsEnabled(final Node<Integer> node) {
+                checked.incrementAndGet();
+                return true;
+            }
+        };
+        for (final int index: new int[] { 0, GRID_SIDE - 1, GRID_SIDE * GRID_SIDE - 1, GRID_SIDE / 2, GRID_SIDE * (GRID_SIDE / 2) }) {
+            final Node<Integer> center = env.getNodes().get(index);
+            checked.set(0);
+            final Set<Node<Integer>> neighbors = new HashSet<>(rule.computeNeighborhood(center, env).getNeighbors());
+            assertTrue(checked.get() < MAX_CHECKED, "Checked " + checked.get() + " nodes to link node " + index);
+            assertTrue(neighbors.containsAll(closestN(env, center)));
+            for (final Node<Integer> neighbor: neighbors) {
+                assertTrue(env.getDistanceBetweenNodes(center, neighbor) < 2);
+            }
+        }
+    }
+
+    private static Set<Integer> neighborIds(final Continuous2DEnvironment<Integer> env, final int index) {
+        return env.getNeighborhood(env.getNodes().get(index)).getNeighbors().stream()
+                .map(Node::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private static Set<Node<Integer>> closestN(final Environment<Integer, ?> env, final Node<Integer> center) {
+        return env.getNodes().stream()
+                .filter(node -> !node.equals(center))
+                .sorted(Comparator.<Node<Integer>>comparingDouble(node -> env.getDistanceBetweenNodes(center, node))
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(N)
+                .collect(Collectors.toSet());
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.utils.CollisionMap;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link CollisionMap} against the test of every cell.
+ */
+public final class TestCollisionMap {
+
+    private static final int SEEDS = 10;
+    private static final int MIN_SIDE = 5;
+    private static final int MAX_SIDE = 40;
+    private static final int MAX_OBSTACLE = 4;
+    private static final int QUERIES = 5000;
+    private static final double MAX_DENSITY = 0.1;
+    private static final double OUTSIDE = 5;
+    private static final double QUERY_SIZE = 30;
+    private static final double HALF = 0.5;
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * Random segments must touch the same cells found by a linear scan, and
+     * the closest free cells and clearances must be correct.
+     */
+    @Test
+    public void testAgainstLinearScan() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            final RandomGenerator rng = new MersenneTwister(seed);
+            final int columns = MIN_SIDE + rng.nextInt(MAX_SIDE);
+            final int rows = MIN_SIDE + rng.nextInt(MAX_SIDE);
+            final CollisionMap map = new CollisionMap(columns, rows);
+            final boolean[][] occupied = new boolean[columns][rows];
+            final double density = rng.nextDouble() * MAX_DENSITY;
+            for (int i = 0; i < columns * rows * density; i++) {
+                final int column = rng.nextInt(columns);
+                final int row = rng.nextInt(rows);
+                final int maxColumn = column + 1 + rng.nextInt(MAX_OBSTACLE);
+                final int maxRow = row + 1 + rng.nextInt(MAX_OBSTACLE);
+                final boolean free = i % 2 == 1;
+                map.fill(column, row, maxColumn, maxRow, !free);
+                for (int c = column; c < Math.min(columns, maxColumn); c++) {
+                    for (int r = row; r < Math.min(rows, maxRow); r++) {
+                        occupied[c][r] = !free;
+                    }
+                }
+            }
+            checkRectangles(map, occupied);
+            checkCells(map, occupied, rng);
+            for (int i = 0; i < QUERIES; i++) {
+                final double sx = rng.nextDouble() * (columns + 2 * OUTSIDE) - OUTSIDE;
+                final double sy = rng.nextDouble() * (rows + 2 * OUTSIDE) - OUTSIDE;
+                /*
+                 * Some segments are vertical or horizontal
+                 */
+                // CHECKSTYLE: MagicNumber OFF
+                final double ex = i % 10 == 0 ? sx : sx + (rng.nextDouble() - HALF) * QUERY_SIZE;
+                final double ey = i % 13 == 0 ? sy : sy + (rng.nextDouble() - HALF) * QUERY_SIZE;
+                // CHECKSTYLE: MagicNumber ON
+                boolean expected = false;
+                for (int c = 0; c < columns && !expected; c++) {
+                    for (int r = 0; r < rows && !expected; r++) {
+                        expected = occupied[c][r] && segmentIntersectsCell(sx, sy, ex, ey, c, r);
+                    }
+                }
+                assertEquals(expected, map.intersects(sx, sy, ex, ey));
+                final double hit = map.firstHit(sx, sy, ex, ey);
+                if (hit <= 1) {
+                    final double before = hit - TOLERANCE;
+                    assertTrue(before < 0 || !map.isOccupied(sx + before * (ex - sx), sy + before * (ey - sy)));
+                }
+            }
+        }
+    }
+
+    /**
+     * The grid must have cells.
+     */
+    @Test
+    public void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new CollisionMap(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CollisionMap(Integer.MAX_VALUE, 2));
+        final CollisionMap full = new CollisionMap(2, 2);
+        assertTrue(full.fill(-1, -1, 3, 3, true));
+        assertFalse(full.fill(0, 0, 2, 2, true));
+        assertEquals(-1, full.getNearestFreeCell(1, 1));
+        assertFalse(full.intersects(-1, -1, -1, 3));
+    }
+
+    private static void checkRectangles(final CollisionMap map, final boolean[][] occupied) {
+        final int[][] covered = new int[occupied.length][occupied[0].length];
+        map.forEachRectangle((minColumn, minRow, maxColumn, maxRow) -> {
+            for (int c = minColumn; c < maxColumn; c++) {
+                for (int r = minRow; r < maxRow; r++) {
+                    covered[c][r]++;
+                }
+            }
+        });
+        for (int c = 0; c < occupied.length; c++) {
+            for (int r = 0; r < occupied[c].length; r++) {
+                assertEquals(occupied[c][r] ? 1 : 0, covered[c][r]);
+            }
+        }
+    }
+
+    private static void checkCells(final CollisionMap map, final boolean[][] occupied, final RandomGenerator rng) {
+        for (int c = 0; c < occupied.length; c++) {
+            for (int r = 0; r < occupied[c].length; r++) {
+                assertEquals(occupied[c][r], map.isOccupied(c, r));
+                final double x = c + rng.nextDouble();
+                final double y = r + rng.nextDouble();
+                double closestFree = Double.POSITIVE_INFINITY;
+                double obstacleDistance = Double.POSITIVE_INFINITY;
+                for (int oc = 0; oc < occupied.length; oc++) {
+                    for (int or = 0; or < occupied[oc].length; or++) {
+                        if (occupied[oc][or]) {
+                            obstacleDistance = Math.min(obstacleDistance, Math.hypot(
+                                    Math.max(0, Math.max(oc - x, x - oc - 1)), Math.max(0, Math.max(or - y, y - or - 1))));
+                        } else {
+                            closestFree = Math.min(closestFree, Math.hypot(oc - c, or - r));
+                        }
+                    }
+                }
+                assertTrue(map.getClearance(x, y) <= obstacleDistance + TOLERANCE);
+                final int free = map.getNearestFreeCell(c, r);
+                final int freeColumn = free % occupied.length;
+                final int freeRow = free / occupied.length;
+                assertFalse(occupied[freeColumn][freeRow]);
+                assertEquals(closestFree, Math.hypot(freeColumn - c, freeRow - r), TOLERANCE);
+            }
+        }
+    }
+
+    private static boolean segmentIntersectsCell(final double sx, final double sy, final double ex, final double ey, final int column, final int row) {
+        double from = 0;
+        double to = 1;
+        final double dx = ex - sx;
+        final double dy = ey - sy;
+        if (dx == 0) {
+            if (sx < column || sx > column + 1) {
+                return false;
+            }
+        } else {
+            from = Math.max(from, Math.min((column - sx) / dx, (column + 1 - sx) / dx));
+            to = Math.min(to, Math.max((column - sx) / dx, (column + 1 - sx) / dx));
+        }
+        if (dy == 0) {
+            return sy >= row && sy <= row + 1 && from <= to;
+        }
+        from = Math.max(from, Math.min((row - sy) / dy, (row + 1 - sy) / dy));
+        to = Math.min(to, Math.max((row - sy) / dy, (row + 1 - sy) / dy));
+        return from <= to;
+    }
+
+}
@@ -8,14 +8,25 @@
 package it.unibo.alchemist.test;
 
 import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
 import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
 import it.unibo.alchemist.model.implementations.nodes.IntNode;
 import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
 import it.unibo.alchemist.model.interfaces.Node;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.Pair;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -32,6 +43,13 @@ public final class TestContinuous2DEnvironment {
     private static final double [] P2_3 = {2, 3};
     private static final double [] P2_2 = {2, 2};
     private static final double TOLERANCE = 1E-15;
+    private static final double FAR = 100;
+    private static final double RANGE = 1.5;
+    private static final double SIDE = 10;
+    private static final int NODES = 100;
+    private static final int MOVES = 500;
+    private static final int QUERY_CENTERS = 10;
+    private static final int QUERIES = 10_000;
     private Continuous2DEnvironment<Integer> env = new Continuous2DEnvironment<>();
 
     /**
@@ -104,4 +122,158 @@ public final class TestContinuous2DEnvironment {
         assertEquals(Collections.singletonList(dummy2), env.getNodesWithinRange(dummy, Math.nextUp(0)));
     }
 
+    /**
+     * Moving a node must invalidate only the cached queries around its old and
+     * new positions.
+     */
+    @Test
+    public void testRangeQueryCache() {
+        final Node<Integer> near = new IntNode(env);
+        final Node<Integer> far = new IntNode(env);
+        final Node<Integer> moving = new IntNode(env);
+        final Euclidean2DPosition nearPosition = new Euclidean2DPosition(ZEROS);
+        final Euclidean2DPosition farPosition = new Euclidean2DPosition(FAR, FAR);
+        env.addNode(near, nearPosition);
+        env.addNode(far, farPosition);
+        env.addNode(moving, new Euclidean2DPosition(P2_2));
+        assertEquals(Collections.singletonList(near), env.getNodesWithinRange(nearPosition, 1));
+        assertEquals(Collections.singletonList(far), env.getNodesWithinRange(farPosition, 1));
+        assertEquals(0, env.getRangeQueryCacheHits());
+        assertEquals(2, env.getRangeQueryCacheMisses());
+        env.moveNodeToPosition(moving, new Euclidean2DPosition(FAR, FAR + 1));
+        assertEquals(Collections.singletonList(near), env.getNodesWithinRange(nearPosition, 1));
+        assertEquals(1, env.getRangeQueryCacheHits());
+        assertEquals(2, env.getNodesWithinRange(farPosition, 1).size());
+        assertEquals(3, env.getRangeQueryCacheMisses());
+        env.removeNode(moving);
+        assertEquals(Collections.singletonList(far), env.getNodesWithinRange(farPosition, 1));
+        assertEquals(Collections.singletonList(near), env.getNodesWithinRange(nearPosition, 1));
+        assertEquals(2, env.getRangeQueryCacheHits());
+        assertEquals(4, env.getRangeQueryCacheMisses());
+    }
+
+    /**
+     * Range queries issued concurrently must find the same nodes as a scan of
+     * all the nodes, whether they are answered from the cache or not.
+     */
+    @Test
+    public void testConcurrentRangeQueries() {
+        final RandomGenerator rng = new MersenneTwister(0);
+        for (int i = 0; i < NODES; i++) {
+            env.addNode(new IntNode(env), new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE));
+        }
+        final List<Euclidean2DPosition> centers = new ArrayList<>();
+        for (int i = 0; i < QUERY_CENTERS; i++) {
+            centers.add(new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE));
+        }
+        IntStream.range(0, QUERIES).parallel().forEach(i -> {
+            final Euclidean2DPosition center = centers.get(i % QUERY_CENTERS);
+            final Set<Node<Integer>> expected = env.getNodes().stream()
+                    .filter(node -> env.getPosition(node).getDistanceTo(center) <= RANGE)
+                    .collect(Collectors.toSet());
+            assertEquals(expected, new HashSet<>(env.getNodesWithinRange(center, RANGE)));
+        });
+        assertTrue(env.getRangeQueryCacheHits() > 0);
+        assertEquals(QUERIES, env.getRangeQueryCacheHits() + env.getRangeQueryCacheMisses());
+    }
+
+    /**
+     * Neighborhoods maintained incrementally while nodes move must be the same
+     * as the ones computed from scratch.
+     */
+    @Test
+    public void testIncrementalNeighborhoods() {
+        final Continuous2DEnvironment<Integer> fromScratch = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        /*
+         * Subclasses do not get updated incrementally
+         */
+        fromScratch.setLinkingRule(new ConnectWithinDistance<Integer, Euclidean2DPosition>(RANGE) {
+            private static final long serialVersionUID = 1L;
+        });
+        final RandomGenerator rng = new MersenneTwister(0);
+        for (int i = 0; i < NODES; i++) {
+            final Euclidean2DPosition position = new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE);
+            env.addNode(new IntNode(env), position);
+            fromScratch.addNode(new IntNode(fromScratch), position);
+        }
+        for (int step = 0; step < MOVES; step++) {
+            final Node<Integer> node = env.getNodeByID(rng.nextInt(NODES));
+            final Euclidean2DPosition direction = new Euclidean2DPosition(rng.nextGaussian(), rng.nextGaussian());
+            env.moveNode(node, direction);
+            fromScratch.moveNode(fromScratch.getNodeByID(node.getId()), direction);
+            assertSameNeighborhoods(fromScratch);
+        }
+    }
+
+    /**
+     * Nodes added in bulk must get the same neighborhoods as if they were added
+     * one by one, and the nodes already present must get linked to them.
+     */
+    @Test
+    public void testAddNodes() {
+        final Continuous2DEnvironment<Integer> oneByOne = new Continuous2DEnvironment<>();
+        env.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+        /*
+         * Subclasses do not get added in bulk
+         */
+        oneByOne.setLinkingRule(new ConnectWithinDistance<Integer, Euclidean2DPosition>(RANGE) {
+            private static final long serialVersionUID = 1L;
+        });
+        final RandomGenerator rng = new MersenneTwister(0);
+        final List<Pair<Node<Integer>, Euclidean2DPosition>> batch = new ArrayList<>();
+        final List<Pair<Node<Integer>, Euclidean2DPosition>> sameBatch = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            final Euclidean2DPosition position = new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE);
+            if (i < NODES / 2) {
+                env.addNode(new IntNode(env), position);
+                oneByOne.addNode(new IntNode(oneByOne), position);
+            } else {
+                batch.add(new Pair<>(new IntNode(env), position));
+                sameBatch.add(new Pair<>(new IntNode(oneByOne), position));
+            }
+        }
+        env.addNodes(batch);
+        oneByOne.addNodes(sameBatch);
+        assertEquals(NODES, env.getNodesNumber());
+        assertSameNeighborhoods(oneByOne);
+        for (final Pair<Node<Integer>, Euclidean2DPosition> pair: batch) {
+            assertEquals(pair.getSecond(), env.getPosition(pair.getFirst()));
+        }
+    }
+
+    /**
+     * The k nearest nodes must be the same that sorting all nodes by distance
+     * would find.
+     */
+    @Test
+    public void testKNearestNodes() {
+        final RandomGenerator rng = new MersenneTwister(0);
+        for (int i = 0; i < NODES; i++) {
+            env.addNode(new IntNode(env), new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE));
+        }
+        assertTrue(env.getKNearestNodes(new Euclidean2DPosition(ZEROS), 0).isEmpty());
+        assertEquals(NODES, env.getKNearestNodes(new Euclidean2DPosition(ZEROS), NODES * 2).size());
+        for (int k = 1; k <= NODES; k *= 2) {
+            /*
+             * Centers are also picked outside the area covered by nodes
+             */
+            final Euclidean2DPosition center = new Euclidean2DPosition(
+                    (rng.nextDouble() * 2 - 1) * FAR, (rng.nextDouble() * 2 - 1) * FAR);
+            final List<Node<Integer>> expected = new ArrayList<>(env.getNodes());
+            expected.sort(Comparator.comparingDouble(n -> env.getPosition(n).getDistanceTo(center)));
+            assertEquals(expected.subList(0, k), new ArrayList<>(env.getKNearestNodes(center, k)));
+        }
+    }
+
+    private void assertSameNeighborhoods(final Continuous2DEnvironment<Integer> reference) {
+        for (final Node<Integer> node: env.getNodes()) {
+            final Set<Integer> expected = new HashSet<>();
+            reference.getNeighborhood(reference.getNodeByID(node.getId())).forEach(n -> expected.add(n.getId()));
+            final Set<Integer> actual = new HashSet<>();
+            env.getNeighborhood(node).forEach(n -> actual.add(n.getId()));
+            assertEquals(expected, actual);
+        }
+    }
+
 }
@@ -16,6 +16,8 @@ import org.apache.commons.math3.util.FastMath;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  */
@@ -23,6 +25,7 @@ public class TestContinuous2DObstacle {
 
     private static final RectObstacle2D R1021 = new RectObstacle2D(1, 0, 1, 1);
     private static final RectObstacle2D R0527 = new RectObstacle2D(0, 5, 2, -2);
+    private static final double HALF = 0.5;
 
     /**
      * 
@@ -58,4 +61,21 @@ public class TestContinuous2DObstacle {
         assertEquals(env.getObstaclesInRange(0d, 0d, 0.5d).size(), 0);
     }
 
+    /**
+     * Replaced obstacles must no longer block nodes nor lines of sight.
+     */
+    @Test
+    public void testReplaceObstacle() {
+        final Continuous2DObstacles<Integer> env = new Continuous2DObstacles<>();
+        env.setLinkingRule(new NoLinks<>());
+        env.addObstacle(R1021);
+        assertTrue(env.intersectsObstacle(0, HALF, 2, HALF));
+        assertTrue(env.replaceObstacle(R1021, R0527));
+        assertFalse(env.replaceObstacle(R1021, R0527));
+        assertFalse(env.intersectsObstacle(0, HALF, 2, HALF));
+        env.addNode(new IntNode(env), new Euclidean2DPosition(1, HALF));
+        assertEquals(1, env.getNodesNumber());
+        assertEquals(1, env.getObstacles().size());
+    }
+
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.actions.BrownianMove;
+import it.unibo.alchemist.model.implementations.environments.Continuous3DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.nodes.IntNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean3DPosition;
+import it.unibo.alchemist.model.implementations.spatialindexes.UniformGridIndex;
+import it.unibo.alchemist.model.interfaces.Node;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the neighborhoods and the positions of
+ * {@link Continuous3DEnvironment}.
+ */
+public final class TestContinuous3DEnvironment {
+
+    private static final int NODES = 300;
+    private static final int MOVES = 1000;
+    private static final double SIDE = 10;
+    private static final double RANGE = 1.5;
+    private static final double TOLERANCE = 1E-15;
+    private Continuous3DEnvironment<Integer> env;
+
+    /**
+     * Instances the environment.
+     */
+    @BeforeEach
+    public void setUp() {
+        env = new Continuous3DEnvironment<>();
+        env.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+    }
+
+    /**
+     * Neighborhoods must match the nodes within range while nodes move.
+     */
+    @Test
+    public void testNeighborhoods() {
+        final RandomGenerator rng = new MersenneTwister(0);
+        for (int i = 0; i < NODES; i++) {
+            env.addNode(new IntNode(env), randomPosition(rng));
+        }
+        assertNeighborhoodsWithinRange();
+        for (int i = 0; i < MOVES; i++) {
+            final Node<Integer> node = env.getNodes().get(rng.nextInt(env.getNodesNumber()));
+            env.moveNode(node, new Euclidean3DPosition(rng.nextGaussian(), rng.nextGaussian(), rng.nextGaussian()));
+        }
+        assertNeighborhoodsWithinRange();
+    }
+
+    /**
+     * Moves performed by {@link BrownianMove} happen along all the three
+     * axes.
+     */
+    @Test
+    public void testBrownianMove() {
+        final Node<Integer> node = new IntNode(env);
+        final Euclidean3DPosition start = new Euclidean3DPosition(0, 0, 0);
+        env.addNode(node, start);
+        new BrownianMove<>(env, node, new MersenneTwister(0), 1).execute();
+        final Euclidean3DPosition end = env.getPosition(node);
+        assertNotEquals(start.getX(), end.getX());
+        assertNotEquals(start.getY(), end.getY());
+        assertNotEquals(start.getZ(), end.getZ());
+    }
+
+    /**
+     * The size must include all the nodes.
+     */
+    @Test
+    public void testEnvironmentSize() {
+        env.addNode(new IntNode(env), new Euclidean3DPosition(1, 2, 3));
+        assertArrayEquals(new double[] { 0, 0, 0 }, env.getSize(), TOLERANCE);
+        env.addNode(new IntNode(env), new Euclidean3DPosition(0, 0, 0));
+        assertArrayEquals(new double[] { 1, 2, 3 }, env.getSize(), TOLERANCE);
+        assertArrayEquals(new double[] { 0, 0, 0 }, env.getOffset(), TOLERANCE);
+    }
+
+    /**
+     * Only tridimensional positions and spatial indexes are accepted.
+     */
+    @Test
+    public void testInvalidArguments() {
+        assertEquals(new Euclidean3DPosition(1, 2, 3), env.makePosition(1, 2, 3));
+        assertThrows(IllegalArgumentException.class, () -> env.makePosition(1, 2));
+        assertThrows(IllegalArgumentException.class, () -> new Continuous3DEnvironment<>(new UniformGridIndex<>(RANGE)));
+    }
+
+    private void assertNeighborhoodsWithinRange() {
+        for (final Node<Integer> node: env.getNodes()) {
+            final Set<Node<Integer>> expected = env.getNodes().stream()
+                    .filter(other -> other != node && env.getDistanceBetweenNodes(node, other) <= RANGE)
+                    .collect(Collectors.toSet());
+            assertEquals(expected, new HashSet<>(env.getNeighborhood(node).getNeighbors()));
+        }
+    }
+
+    private static Euclidean3DPosition randomPosition(final RandomGenerator rng) {
+        return new Euclidean3DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE, rng.nextDouble() * SIDE);
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.environments.DenseContinuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.nodes.IntNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.interfaces.Node;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the dense coordinates of {@link DenseContinuous2DEnvironment}
+ * stay in sync with the positions.
+ */
+public final class TestDenseContinuous2DEnvironment {
+
+    private static final int NODES = 100;
+    private static final int MOVES = 1000;
+    private static final double SIDE = 10;
+    private static final double RANGE = 1;
+    private DenseContinuous2DEnvironment<Integer> env;
+
+    /**
+     * Instances the environment.
+     */
+    @BeforeEach
+    public void setUp() {
+        env = new DenseContinuous2DEnvironment<>();
+        env.setLinkingRule(new ConnectWithinDistance<>(RANGE));
+    }
+
+    /**
+     * Moves and removes random nodes, checking the coordinates.
+     */
+    @Test
+    public void testCoordinatesMatchPositions() {
+        final RandomGenerator rng = new MersenneTwister(0);
+        for (int i = 0; i < NODES; i++) {
+            env.addNode(new IntNode(env), new Euclidean2DPosition(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE));
+        }
+        for (int i = 0; i < MOVES; i++) {
+            final Node<Integer> node = env.getNodes().get(rng.nextInt(env.getNodesNumber()));
+            if (rng.nextInt(NODES) == 0) {
+                env.removeNode(node);
+                assertThrows(IllegalArgumentException.class, () -> env.getX(node));
+            } else {
+                env.moveBy(node, rng.nextGaussian(), rng.nextGaussian());
+            }
+            checkCoordinates();
+        }
+    }
+
+    /**
+     * Primitive moves must update the neighborhoods as any other move.
+     */
+    @Test
+    public void testMoveTo() {
+        final Node<Integer> first = new IntNode(env);
+        final Node<Integer> second = new IntNode(env);
+        env.addNode(first, new Euclidean2DPosition(0, 0));
+        env.addNode(second, new Euclidean2DPosition(SIDE, SIDE));
+        assertTrue(env.getNeighborhood(first).isEmpty());
+        env.moveTo(second, RANGE, 0);
+        assertEquals(RANGE, env.getDistance(first, second));
+        assertEquals(new Euclidean2DPosition(RANGE, 0), env.getPosition(second));
+        assertTrue(env.getNeighborhood(first).contains(second));
+        /*
+         * Positions are built on request, not stored
+         */
+        assertNotSame(env.getPosition(second), env.getPosition(second));
+    }
+
+    private void checkCoordinates() {
+        for (final Node<Integer> node: env.getNodes()) {
+            final Euclidean2DPosition position = env.getPosition(node);
+            assertEquals(position.getX(), env.getX(node));
+            assertEquals(position.getY(), env.getY(node));
+        }
+    }
+
+}
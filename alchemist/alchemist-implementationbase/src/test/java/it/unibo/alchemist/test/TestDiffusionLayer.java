@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.layers.DiffusionLayer;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the solution of {@link DiffusionLayer}.
+ */
+public final class TestDiffusionLayer {
+
+    private static final double TOLERANCE = 1e-9;
+    private static final double QUANTITY = 1000;
+    private static final double DIFFUSION = 0.5;
+    private static final double TIME = 10;
+    /*
+     * Small grids are solved serially, large ones in parallel
+     */
+    private static final int[] SIDES = { 20, 300 };
+
+    /**
+     * A deposit spreads symmetrically, approximating the analytic solution,
+     * and nothing leaves the grid.
+     */
+    @Test
+    public void testDiffusion() {
+        for (final int side: SIDES) {
+            final DiffusionLayer<Euclidean2DPosition> layer = new DiffusionLayer<>(0, 0, side, side, 1, DIFFUSION, 0);
+            final double center = side / 2.0;
+            assertTrue(layer.deposit(new Euclidean2DPosition(center, center), QUANTITY));
+            layer.advanceTo(TIME);
+            assertEquals(QUANTITY, total(layer, side), TOLERANCE * QUANTITY);
+            // CHECKSTYLE: MagicNumber OFF
+            assertEquals(QUANTITY / (4 * Math.PI * DIFFUSION * TIME), layer.getValue(center, center), 0.1);
+            assertEquals(layer.getValue(center + 2, center + 1), layer.getValue(center - 1, center - 2), TOLERANCE);
+            assertEquals(layer.getValue(center + 3, center), layer.getValue(new Euclidean2DPosition(center, center - 3)), TOLERANCE);
+            // CHECKSTYLE: MagicNumber ON
+        }
+    }
+
+    /**
+     * Without diffusion, values decay exponentially. Time never goes back.
+     */
+    @Test
+    public void testDecay() {
+        // CHECKSTYLE: MagicNumber OFF
+        final DiffusionLayer<Euclidean2DPosition> layer = new DiffusionLayer<>(0, 0, 2, 2, 1, 0, 0.3);
+        for (int x = 0; x <= 2; x++) {
+            for (int y = 0; y <= 2; y++) {
+                layer.deposit(x, y, 1);
+            }
+        }
+        layer.advanceTo(2);
+        layer.advanceTo(1);
+        assertEquals(2, layer.getTime(), TOLERANCE);
+        assertEquals(Math.exp(-0.6), layer.getValue(new Euclidean2DPosition(0.5, 1.5)), TOLERANCE);
+        assertFalse(layer.deposit(5, 0, 1));
+        assertTrue(layer.deposit(2, 2, -10));
+        assertEquals(0, layer.getValue(2, 2), TOLERANCE);
+        // CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * Coefficients must be non negative, and the grid must be valid.
+     */
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new DiffusionLayer<>(0, 0, 1, 1, 1, -1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new DiffusionLayer<>(0, 0, 1, 1, 1, 0, Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> new DiffusionLayer<>(0, 0, 1, 1, 0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new DiffusionLayer<>(1, 0, 0, 1, 1, 1, 1));
+    }
+
+    private static double total(final DiffusionLayer<?> layer, final int side) {
+        double total = 0;
+        for (int x = 0; x <= side; x++) {
+            for (int y = 0; y <= side; y++) {
+                total += layer.getValue(x, y);
+            }
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.spatialindexes.ObstacleIndex;
+import it.unibo.alchemist.model.implementations.utils.RectObstacle2D;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link ObstacleIndex} retrieves the same obstacles as a linear
+ * scan.
+ */
+public final class TestObstacleIndex {
+
+    private static final int OPERATIONS = 5000;
+    private static final double SIDE = 50;
+    private static final double OBSTACLE_SIZE = 4;
+    private static final double MAX_QUERY = 10;
+    private static final double CELL_SIZE = 1.5;
+    private static final double HALF = 0.5;
+    private static final double INSERTIONS = 0.4;
+    private static final double REPLACEMENTS = 0.7;
+    private static final int CONCURRENT_OBSTACLES = 500;
+    private static final int CONCURRENT_QUERIES = 20_000;
+
+    /**
+     * Random insertions, removals, replacements and queries, with adaptive
+     * and fixed cell size.
+     */
+    @Test
+    public void testMatchesLinearScan() {
+        checkRandomOperations(new ObstacleIndex<>(), 0);
+        checkRandomOperations(new ObstacleIndex<>(CELL_SIZE), 1);
+    }
+
+    /**
+     * Queries keep no shared state, hence they can run in parallel, each
+     * reporting every obstacle once.
+     */
+    @Test
+    public void testConcurrentQueries() {
+        final RandomGenerator rng = new MersenneTwister(2);
+        final ObstacleIndex<RectObstacle2D> index = new ObstacleIndex<>(CELL_SIZE);
+        final List<RectObstacle2D> obstacles = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_OBSTACLES; i++) {
+            final RectObstacle2D obstacle = randomObstacle(rng);
+            obstacles.add(obstacle);
+            index.insert(obstacle);
+        }
+        final double[][] queries = new double[CONCURRENT_QUERIES][];
+        for (int i = 0; i < CONCURRENT_QUERIES; i++) {
+            final double minX = rng.nextDouble() * SIDE;
+            final double minY = rng.nextDouble() * SIDE;
+            queries[i] = new double[] {minX, minY, minX + rng.nextDouble() * MAX_QUERY, minY + rng.nextDouble() * MAX_QUERY};
+        }
+        IntStream.range(0, CONCURRENT_QUERIES).parallel().forEach(i -> {
+            final double[] query = queries[i];
+            final List<RectObstacle2D> expected = obstacles.stream()
+                    .filter(it -> it.getMinX() <= query[2] && it.getMaxX() >= query[0]
+                            && it.getMinY() <= query[3] && it.getMaxY() >= query[1])
+                    .collect(Collectors.toList());
+            final List<RectObstacle2D> visited = new ArrayList<>();
+            index.forEach(query[0], query[1], query[2], query[3], visited::add);
+            assertEquals(expected.size(), visited.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(visited));
+        });
+    }
+
+    /**
+     * The cell size must be positive and finite.
+     */
+    @Test
+    public void testInvalidCellSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ObstacleIndex<>(0));
+        assertThrows(IllegalArgumentException.class, () -> new ObstacleIndex<>(Double.POSITIVE_INFINITY));
+    }
+
+    private static void checkRandomOperations(final ObstacleIndex<RectObstacle2D> index, final int seed) {
+        final RandomGenerator rng = new MersenneTwister(seed);
+        final List<RectObstacle2D> obstacles = new ArrayList<>();
+        int[] ids = new int[1];
+        for (int op = 0; op < OPERATIONS; op++) {
+            final double action = rng.nextDouble();
+            if (obstacles.isEmpty() || action < INSERTIONS) {
+                final RectObstacle2D obstacle = randomObstacle(rng);
+                obstacles.add(obstacle);
+                index.insert(obstacle);
+            } else if (action < HALF) {
+                assertTrue(index.remove(obstacles.remove(rng.nextInt(obstacles.size()))));
+            } else if (action < REPLACEMENTS) {
+                final int target = rng.nextInt(obstacles.size());
+                final RectObstacle2D old = obstacles.get(target);
+                final RectObstacle2D moved = new RectObstacle2D(
+                        old.getMinX() + rng.nextGaussian(), old.getMinY() + rng.nextGaussian(), old.getWidth(), old.getHeight());
+                obstacles.set(target, moved);
+                assertTrue(index.replace(old, moved));
+            } else {
+                final double minX = rng.nextDouble() * SIDE;
+                final double minY = rng.nextDouble() * SIDE;
+                final double maxX = minX + rng.nextDouble() * MAX_QUERY;
+                final double maxY = minY + rng.nextDouble() * MAX_QUERY;
+                final Set<RectObstacle2D> expected = obstacles.stream()
+                        .filter(it -> it.getMinX() <= maxX && it.getMaxX() >= minX && it.getMinY() <= maxY && it.getMaxY() >= minY)
+                        .collect(Collectors.toSet());
+                int found = index.query(minX, minY, maxX, maxY, ids);
+                if (found > ids.length) {
+                    ids = new int[found];
+                    found = index.query(minX, minY, maxX, maxY, ids);
+                }
+                final Set<RectObstacle2D> queried = new HashSet<>();
+                for (int i = 0; i < found; i++) {
+                    queried.add(index.get(ids[i]));
+                }
+                assertEquals(expected, queried);
+                final List<RectObstacle2D> visited = new ArrayList<>();
+                index.forEach(minX, minY, maxX, maxY, visited::add);
+                assertEquals(found, visited.size());
+                assertEquals(expected, new HashSet<>(visited));
+                assertEquals(expected.isEmpty(), index.forEach(minX, minY, maxX, maxY, it -> false));
+            }
+            assertEquals(obstacles.size(), index.size());
+        }
+        assertFalse(index.remove(randomObstacle(rng)));
+    }
+
+    private static RectObstacle2D randomObstacle(final RandomGenerator rng) {
+        return new RectObstacle2D(rng.nextDouble() * SIDE, rng.nextDouble() * SIDE,
+                (rng.nextDouble() - HALF) * OBSTACLE_SIZE, (rng.nextDouble() - HALF) * OBSTACLE_SIZE);
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.spatialindexes.Octree;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.danilopianini.util.SpatialIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link Octree} retrieves the same elements as a linear scan.
+ */
+public final class TestOctree {
+
+    private static final int ELEMENTS = 2000;
+    private static final int OPERATIONS = 5000;
+    private static final int CAPACITY = 4;
+    private static final int SMALL_TREES = 1000;
+    private static final int SMALL_TREE_ELEMENTS = 8;
+    private static final double SIDE = 50;
+    private static final double MAX_QUERY = 10;
+    private static final double REMOVAL_PROBABILITY = 0.1;
+    private static final double CLUSTER_PROBABILITY = 0.2;
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    /**
+     * Random insertions, moves, removals and queries, with a small capacity
+     * for octants to be frequently split and merged. Some elements share the
+     * same position.
+     */
+    @Test
+    public void testMatchesLinearScan() {
+        final RandomGenerator rng = new MersenneTwister(1);
+        final SpatialIndex<Integer> tree = new Octree<>(CAPACITY);
+        final double[][] positions = new double[ELEMENTS][];
+        for (int i = 0; i < ELEMENTS; i++) {
+            positions[i] = randomPoint(rng);
+            tree.insert(i, positions[i]);
+        }
+        for (int op = 0; op < OPERATIONS; op++) {
+            final int target = rng.nextInt(ELEMENTS);
+            if (positions[target] == null) {
+                positions[target] = randomPoint(rng);
+                tree.insert(target, positions[target]);
+            } else if (rng.nextDouble() < REMOVAL_PROBABILITY) {
+                assertTrue(tree.remove(target, positions[target]));
+                positions[target] = null;
+            } else {
+                final double[] destination = rng.nextBoolean()
+                        ? randomPoint(rng)
+                        : new double[] {
+                            positions[target][0] + rng.nextGaussian(),
+                            positions[target][1] + rng.nextGaussian(),
+                            positions[target][2] + rng.nextGaussian(),
+                        };
+                assertTrue(tree.move(target, positions[target], destination));
+                positions[target] = destination;
+            }
+            final double[] corner = randomPoint(rng);
+            final double[] opposite = {
+                corner[0] + rng.nextDouble() * MAX_QUERY,
+                corner[1] + rng.nextDouble() * MAX_QUERY,
+                corner[2] + rng.nextDouble() * MAX_QUERY,
+            };
+            assertEquals(scan(positions, corner, opposite), asSet(tree.query(corner, opposite)));
+        }
+        final double[] min = { -INF, -INF, -INF };
+        final double[] max = { INF, INF, INF };
+        assertEquals(scan(positions, min, max), asSet(tree.query(min, max)));
+    }
+
+    /**
+     * Many small trees, whose root gets bounded on few elements and then grows
+     * repeatedly: every element must stay reachable at its position.
+     */
+    @Test
+    public void testGrowth() {
+        for (int seed = 0; seed < SMALL_TREES; seed++) {
+            final RandomGenerator rng = new MersenneTwister(seed);
+            final SpatialIndex<Integer> tree = new Octree<>(2);
+            final double[][] positions = new double[SMALL_TREE_ELEMENTS][];
+            for (int i = 0; i < SMALL_TREE_ELEMENTS; i++) {
+                positions[i] = randomPoint(rng);
+                tree.insert(i, positions[i]);
+            }
+            for (int i = 0; i < SMALL_TREE_ELEMENTS; i++) {
+                final double[] destination = randomPoint(rng);
+                assertTrue(tree.move(i, positions[i], destination));
+                positions[i] = destination;
+            }
+            for (int i = 0; i < SMALL_TREE_ELEMENTS; i++) {
+                assertTrue(tree.query(positions[i]).contains(i));
+                assertTrue(tree.remove(i, positions[i]));
+            }
+        }
+    }
+
+    /**
+     * Missing elements can not be moved nor removed, and the tree can be
+     * emptied and reused.
+     */
+    @Test
+    public void testMissingElements() {
+        final SpatialIndex<Integer> tree = new Octree<>(1);
+        tree.insert(0, 0, 0, 0);
+        tree.insert(1, 1, 1, 1);
+        assertFalse(tree.move(2, new double[] { 0, 0, 0 }, new double[] { 1, 1, 1 }));
+        assertFalse(tree.move(0, new double[] { 2, 2, 2 }, new double[] { 1, 1, 1 }));
+        assertFalse(tree.remove(0, 2, 2, 2));
+        assertTrue(tree.remove(0, 0, 0, 0));
+        assertTrue(tree.remove(1, 1, 1, 1));
+        assertTrue(tree.query(new double[] { -1, -1, -1 }, new double[] { 1, 1, 1 }).isEmpty());
+        tree.insert(0, SIDE, SIDE, SIDE);
+        assertEquals(1, tree.query(new double[] { SIDE, SIDE, SIDE }).size());
+    }
+
+    /**
+     * Only positive capacities and finite tridimensional positions are
+     * accepted.
+     */
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new Octree<>(0));
+        assertThrows(IllegalArgumentException.class, () -> new Octree<Integer>().insert(0, 1, 2));
+        assertThrows(IllegalArgumentException.class, () -> new Octree<Integer>().insert(0, 1, 2, INF));
+    }
+
+    private static double[] randomPoint(final RandomGenerator rng) {
+        if (rng.nextDouble() < CLUSTER_PROBABILITY) {
+            return new double[] { 0, 0, 0 };
+        }
+        return new double[] { rng.nextDouble() * SIDE, rng.nextDouble() * SIDE, rng.nextDouble() * SIDE };
+    }
+
+    private static Set<Integer> scan(final double[][] positions, final double[] min, final double[] max) {
+        final Set<Integer> result = new HashSet<>();
+        for (int i = 0; i < positions.length; i++) {
+            final double[] position = positions[i];
+            if (position != null
+                    && position[0] >= min[0] && position[0] <= max[0]
+                    && position[1] >= min[1] && position[1] <= max[1]
+                    && position[2] >= min[2] && position[2] <= max[2]) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    private static <E> Set<E> asSet(final List<E> elements) {
+        final Set<E> result = new HashSet<>(elements);
+        assertEquals(elements.size(), result.size());
+        return result;
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.layers.BidimensionalGaussianLayer;
+import it.unibo.alchemist.model.implementations.layers.RasterLayer;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the lookups of {@link RasterLayer}.
+ */
+public final class TestRasterLayer {
+
+    private static final double TOLERANCE = 1e-9;
+    // CHECKSTYLE: MagicNumber OFF
+    private static final double[] VALUES = {
+        0, 1, 2,
+        3, 4, 5,
+    };
+    // CHECKSTYLE: MagicNumber ON
+    private static final int COLUMNS = 3;
+
+    /**
+     * Samples are returned exactly, and interpolated bilinearly in between.
+     */
+    @Test
+    public void testInterpolation() {
+        final RasterLayer<Euclidean2DPosition> layer = new RasterLayer<>(1, 1, 2, COLUMNS, VALUES);
+        // CHECKSTYLE: MagicNumber OFF
+        assertEquals(0, layer.getValue(1, 1), TOLERANCE);
+        assertEquals(2, layer.getValue(5, 1), TOLERANCE);
+        assertEquals(4, layer.getValue(new Euclidean2DPosition(3, 3)), TOLERANCE);
+        assertEquals(0.5, layer.getValue(2, 1), TOLERANCE);
+        assertEquals(1.5, layer.getValue(1, 2), TOLERANCE);
+        assertEquals(3, layer.getValue(4, 2), TOLERANCE);
+        /*
+         * Out of the grid, the closest border
+         */
+        assertEquals(5, layer.getValue(100, 100), TOLERANCE);
+        assertEquals(0, layer.getValue(new Euclidean2DPosition(-100, -100)), TOLERANCE);
+        assertEquals(1.5, layer.getValue(-100, 2), TOLERANCE);
+        // CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * A sampled layer must match the original one on the grid, and be used
+     * outside of it.
+     */
+    @Test
+    public void testSampling() {
+        final Continuous2DEnvironment<Double> env = new Continuous2DEnvironment<>();
+        // CHECKSTYLE: MagicNumber OFF
+        final BidimensionalGaussianLayer<Euclidean2DPosition> gaussian = new BidimensionalGaussianLayer<>(0, 0, 10, 3);
+        final RasterLayer<Euclidean2DPosition> layer = new RasterLayer<>(env, gaussian, -5, -5, 5, 5, 0.5);
+        for (double x = -5; x <= 5; x += 0.5) {
+            for (double y = -5; y <= 5; y += 0.5) {
+                final Euclidean2DPosition position = new Euclidean2DPosition(x, y);
+                assertEquals(gaussian.getValue(position), layer.getValue(position), TOLERANCE);
+            }
+        }
+        assertEquals(gaussian.getValue(new Euclidean2DPosition(0.25, 0.25)), layer.getValue(new Euclidean2DPosition(0.25, 0.25)), 0.1);
+        final Euclidean2DPosition outside = new Euclidean2DPosition(6, 7);
+        assertEquals(gaussian.getValue(outside), layer.getValue(outside), TOLERANCE);
+        // CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * Binary files and images must be loaded with the first row at the
+     * lowest y.
+     *
+     * @throws IOException if the temporary files can not be written
+     */
+    @Test
+    public void testFiles() throws IOException {
+        final File binary = File.createTempFile("raster", ".bin");
+        binary.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(binary))) {
+            for (final double value: VALUES) {
+                out.writeDouble(value);
+            }
+        }
+        final RasterLayer<Euclidean2DPosition> fromBinary = new RasterLayer<>(binary.getAbsolutePath(), 0, 0, 1, COLUMNS);
+        final RasterLayer<Euclidean2DPosition> reference = new RasterLayer<>(0, 0, 1, COLUMNS, VALUES);
+        // CHECKSTYLE: MagicNumber OFF
+        for (double x = 0; x <= 2; x += 0.25) {
+            for (double y = 0; y <= 1; y += 0.25) {
+                assertEquals(reference.getValue(x, y), fromBinary.getValue(x, y), TOLERANCE);
+            }
+        }
+        final BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, Color.WHITE.getRGB());
+        image.setRGB(1, 0, Color.WHITE.getRGB());
+        image.setRGB(0, 1, Color.BLACK.getRGB());
+        image.setRGB(1, 1, Color.BLACK.getRGB());
+        final File png = File.createTempFile("raster", ".png");
+        png.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(png)) {
+            ImageIO.write(image, "png", out);
+        }
+        final RasterLayer<Euclidean2DPosition> fromImage = new RasterLayer<>(png.getAbsolutePath(), 0, 0, 1, 10, 20);
+        assertEquals(10, fromImage.getValue(0, 0), TOLERANCE);
+        assertEquals(20, fromImage.getValue(1, 1), TOLERANCE);
+        assertEquals(15, fromImage.getValue(0.5, 0.5), TOLERANCE);
+        // CHECKSTYLE: MagicNumber ON
+        assertThrows(IOException.class, () -> new RasterLayer<>(binary.getAbsolutePath() + ".missing", 0, 0, 1, COLUMNS));
+    }
+
+    /**
+     * Steps must be positive, and values must fill the rows.
+     */
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new RasterLayer<>(0, 0, 0, COLUMNS, VALUES));
+        assertThrows(IllegalArgumentException.class, () -> new RasterLayer<>(0, 0, Double.NaN, COLUMNS, VALUES));
+        assertThrows(IllegalArgumentException.class, () -> new RasterLayer<>(0, 0, 1, COLUMNS + 1, VALUES));
+        assertThrows(IllegalArgumentException.class, () -> new RasterLayer<>(0, 0, 1, COLUMNS, new double[0]));
+        assertThrows(IllegalArgumentException.class, () -> new RasterLayer<>(
+                new Continuous2DEnvironment<Double>(), new BidimensionalGaussianLayer<>(0, 0, 1, 1), 1, 1, 0, 0, 1));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.ConnectWithinDistance;
+import it.unibo.alchemist.model.implementations.nodes.IntNode;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.spatialindexes.UniformGridIndex;
+import it.unibo.alchemist.model.interfaces.Node;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.danilopianini.util.FlexibleQuadTree;
+import org.danilopianini.util.SpatialIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link UniformGridIndex} retrieves the same elements as a
+ * {@link FlexibleQuadTree}.
+ */
+public final class TestUniformGridIndex {
+
+    private static final int ELEMENTS = 2000;
+    private static final int OPERATIONS = 5000;
+    private static final double SIDE = 50;
+    private static final double CELL_SIZE = 1.5;
+    private static final double MAX_QUERY = 10;
+    private static final double REMOVAL_PROBABILITY = 0.1;
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    /**
+     * Random insertions, moves, removals and queries.
+     */
+    @Test
+    public void testMatchesQuadTree() {
+        final RandomGenerator rng = new MersenneTwister(1);
+        final SpatialIndex<Integer> grid = new UniformGridIndex<>(CELL_SIZE);
+        final SpatialIndex<Integer> tree = new FlexibleQuadTree<>();
+        final double[][] positions = new double[ELEMENTS][];
+        for (int i = 0; i < ELEMENTS; i++) {
+            positions[i] = randomPoint(rng);
+            grid.insert(i, positions[i]);
+            tree.insert(i, positions[i]);
+        }
+        for (int op = 0; op < OPERATIONS; op++) {
+            final int target = rng.nextInt(ELEMENTS);
+            if (positions[target] == null) {
+                positions[target] = randomPoint(rng);
+                grid.insert(target, positions[target]);
+                tree.insert(target, positions[target]);
+            } else if (rng.nextDouble() < REMOVAL_PROBABILITY) {
+                assertTrue(grid.remove(target, positions[target]));
+                tree.remove(target, positions[target]);
+                positions[target] = null;
+            } else {
+                final double[] destination = rng.nextBoolean()
+                        ? randomPoint(rng)
+                        : new double[] { positions[target][0] + rng.nextGaussian(), positions[target][1] + rng.nextGaussian() };
+                assertTrue(grid.move(target, positions[target], destination));
+                tree.move(target, positions[target], destination);
+                positions[target] = destination;
+            }
+            final double[] corner = randomPoint(rng);
+            final double[] opposite = { corner[0] + rng.nextDouble() * MAX_QUERY, corner[1] + rng.nextDouble() * MAX_QUERY };
+            assertEquals(asSet(tree.query(corner, opposite)), asSet(grid.query(corner, opposite)));
+        }
+        final double[][] everything = { { -INF, -INF }, { INF, INF } };
+        assertEquals(asSet(tree.query(everything)), asSet(grid.query(everything)));
+    }
+
+    /**
+     * Missing elements can not be moved nor removed.
+     */
+    @Test
+    public void testMissingElements() {
+        final SpatialIndex<Integer> grid = new UniformGridIndex<>(CELL_SIZE);
+        grid.insert(0, 0, 0);
+        assertFalse(grid.move(1, new double[] { 0, 0 }, new double[] { 1, 1 }));
+        assertFalse(grid.move(0, new double[] { 2, 2 }, new double[] { 1, 1 }));
+        assertFalse(grid.remove(0, 2, 2));
+        assertTrue(grid.remove(0, 0, 0));
+        assertTrue(grid.query(new double[] { -1, -1 }, new double[] { 1, 1 }).isEmpty());
+    }
+
+    /**
+     * Only positive, finite cell sizes and bidimensional positions are
+     * accepted.
+     */
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new UniformGridIndex<>(0));
+        assertThrows(IllegalArgumentException.class, () -> new UniformGridIndex<>(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> new UniformGridIndex<>(INF));
+        assertThrows(IllegalArgumentException.class, () -> new UniformGridIndex<Integer>(1).insert(0, 1, 2, 3));
+    }
+
+    /**
+     * Environments using a grid must compute the same neighborhoods as those
+     * using a quadtree.
+     */
+    @Test
+    public void testEnvironmentNeighborhoods() {
+        final Continuous2DEnvironment<Integer> withGrid = new Continuous2DEnvironment<>(new UniformGridIndex<>(CELL_SIZE));
+        final Continuous2DEnvironment<Integer> withTree = new Continuous2DEnvironment<>();
+        withGrid.setLinkingRule(new ConnectWithinDistance<>(CELL_SIZE));
+        withTree.setLinkingRule(new ConnectWithinDistance<>(CELL_SIZE));
+        final RandomGenerator rng = new MersenneTwister(2);
+        for (int i = 0; i < ELEMENTS / 10; i++) {
+            final Euclidean2DPosition position = new Euclidean2DPosition(randomPoint(rng));
+            withGrid.addNode(new IntNode(withGrid), position);
+            withTree.addNode(new IntNode(withTree), position);
+        }
+        for (final Node<Integer> node: withGrid.getNodes()) {
+            withGrid.moveNode(node, new Euclidean2DPosition(rng.nextGaussian(), rng.nextGaussian()));
+            final Node<Integer> twin = withTree.getNodeByID(node.getId());
+            withTree.moveNodeToPosition(twin, withGrid.getPosition(node));
+        }
+        for (final Node<Integer> node: withGrid.getNodes()) {
+            assertEquals(
+                    idsOf(withTree.getNeighborhood(withTree.getNodeByID(node.getId())).getNeighbors()),
+                    idsOf(withGrid.getNeighborhood(node).getNeighbors()));
+        }
+    }
+
+    private static double[] randomPoint(final RandomGenerator rng) {
+        return new double[] { rng.nextDouble() * SIDE, rng.nextDouble() * SIDE };
+    }
+
+    private static <E> Set<E> asSet(final List<E> elements) {
+        final Set<E> result = new HashSet<>(elements);
+        assertEquals(elements.size(), result.size());
+        return result;
+    }
+
+    private static Set<Integer> idsOf(final Iterable<? extends Node<Integer>> nodes) {
+        final Set<Integer> result = new HashSet<>();
+        nodes.forEach(n -> result.add(n.getId()));
+        return result;
+    }
+
+}
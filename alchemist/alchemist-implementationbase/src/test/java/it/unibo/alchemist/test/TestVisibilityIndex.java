@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.model.implementations.environments.Continuous2DObstacles;
+import it.unibo.alchemist.model.implementations.utils.RectObstacle2D;
+import it.unibo.alchemist.model.implementations.utils.VisibilityIndex;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link VisibilityIndex} against the test of every obstacle.
+ */
+public final class TestVisibilityIndex {
+
+    private static final int SEEDS = 20;
+    private static final int OBSTACLES = 50;
+    private static final int QUERIES = 2000;
+    private static final double SIDE = 100;
+    private static final double OBSTACLE_SIZE = 20;
+    private static final double QUERY_SIZE = 30;
+    private static final double HALF = 0.5;
+
+    /**
+     * Random segments must intersect the same obstacles found by a linear
+     * scan, with both the default and custom cell sizes.
+     */
+    @Test
+    public void testAgainstLinearScan() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            final RandomGenerator rng = new MersenneTwister(seed);
+            final List<RectObstacle2D> obstacles = new ArrayList<>();
+            for (int i = 0; i < OBSTACLES; i++) {
+                obstacles.add(new RectObstacle2D(
+                        rng.nextDouble() * SIDE, rng.nextDouble() * SIDE,
+                        (rng.nextDouble() - HALF) * OBSTACLE_SIZE, (rng.nextDouble() - HALF) * OBSTACLE_SIZE));
+            }
+            final VisibilityIndex index = seed % 2 == 0
+                    ? new VisibilityIndex(obstacles)
+                    : new VisibilityIndex(obstacles, 1 + rng.nextDouble() * OBSTACLE_SIZE);
+            for (int i = 0; i < QUERIES; i++) {
+                final double sx = rng.nextDouble() * SIDE;
+                final double sy = rng.nextDouble() * SIDE;
+                final double ex = sx + (rng.nextDouble() - HALF) * QUERY_SIZE;
+                final double ey = sy + (rng.nextDouble() - HALF) * QUERY_SIZE;
+                final boolean expected = obstacles.stream().anyMatch(obstacle -> {
+                    final double[] coords = obstacle.nearestIntersection(sx, sy, ex, ey);
+                    return coords[0] != ex || coords[1] != ey || obstacle.contains(ex, ey);
+                });
+                assertEquals(expected, index.intersectsObstacle(sx, sy, ex, ey));
+            }
+        }
+    }
+
+    /**
+     * The environment must update its index when obstacles change.
+     */
+    @Test
+    public void testEnvironment() {
+        final Continuous2DObstacles<Integer> env = new Continuous2DObstacles<>();
+        // CHECKSTYLE: MagicNumber OFF
+        final RectObstacle2D wall = new RectObstacle2D(1, -1, 1, 2);
+        assertFalse(env.intersectsObstacle(0, 0, 3, 0));
+        env.addObstacle(wall);
+        assertTrue(env.intersectsObstacle(0, 0, 3, 0));
+        assertFalse(env.intersectsObstacle(0, 2, 3, 2));
+        env.removeObstacle(wall);
+        assertFalse(env.intersectsObstacle(0, 0, 3, 0));
+        // CHECKSTYLE: MagicNumber ON
+    }
+
+    /**
+     * Cells must have a positive finite size.
+     */
+    @Test
+    public void testInvalidCellSize() {
+        assertThrows(IllegalArgumentException.class, () -> new VisibilityIndex(Collections.emptyList(), 0));
+        assertThrows(IllegalArgumentException.class, () -> new VisibilityIndex(Collections.emptyList(), Double.NaN));
+        assertFalse(new VisibilityIndex(Collections.emptyList()).intersectsObstacle(0, 0, 1, 1));
+    }
+
+}
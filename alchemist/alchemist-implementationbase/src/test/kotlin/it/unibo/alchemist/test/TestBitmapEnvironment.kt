@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test
+
+import it.unibo.alchemist.model.implementations.environments.BitmapEnvironment
+import it.unibo.alchemist.model.implementations.utils.RectObstacle2D
+import org.apache.commons.math3.random.MersenneTwister
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.kaikikm.threadresloader.ResourceLoader
+
+/**
+ * Checks that nodes in a [BitmapEnvironment] never end up inside obstacles.
+ */
+class TestBitmapEnvironment {
+
+    private val images = listOf(
+        "piantina1.png",
+        "planimetriabn1.png",
+        "Pastorello.png",
+        "2rettangolo_nero.png"
+    )
+
+    /**
+     * Free positions must be free, and movements must stop before obstacles.
+     */
+    @Test
+    fun testMovements() {
+        val rng = MersenneTwister(0)
+        images.asSequence()
+            .map { ResourceLoader.getResource(it).path }
+            .flatMap { sequenceOf(BitmapEnvironment<Any>(it), BitmapEnvironment(it, ZOOM, DELTA, DELTA)) }
+            .forEach { env ->
+                Assertions.assertTrue(env.obstacles.isNotEmpty())
+                val (minX, maxX) = env.offset[0] to env.offset[0] + env.size[0]
+                val (minY, maxY) = env.offset[1] to env.offset[1] + env.size[1]
+                repeat(QUERIES) {
+                    val start = env.getNearestFreePosition(
+                        minX + rng.nextDouble() * (maxX - minX),
+                        minY + rng.nextDouble() * (maxY - minY)
+                    )
+                    Assertions.assertFalse(env.intersectsObstacle(start, start))
+                    val end = env.next(
+                        start.x,
+                        start.y,
+                        start.x + (rng.nextDouble() - HALF) * STEP,
+                        start.y + (rng.nextDouble() - HALF) * STEP
+                    )
+                    Assertions.assertFalse(env.intersectsObstacle(start, end))
+                }
+            }
+    }
+
+    /**
+     * Added obstacles block movements until they are removed.
+     */
+    @Test
+    fun testAddAndRemove() {
+        val env = BitmapEnvironment<Any>(ResourceLoader.getResource("2rettangolo_nero.png").path)
+        val obstacle = RectObstacle2D(0.0, 0.0, 1.0, env.size[1])
+        val from = env.getNearestFreePosition(2.0, 1.0)
+        Assertions.assertFalse(env.intersectsObstacle(from.x, from.y, -1.0, from.y))
+        env.addObstacle(obstacle)
+        Assertions.assertTrue(env.intersectsObstacle(from.x, from.y, -1.0, from.y))
+        Assertions.assertTrue(env.next(from.x, from.y, -1.0, from.y).x >= 1.0)
+        Assertions.assertTrue(env.removeObstacle(obstacle))
+        Assertions.assertFalse(env.intersectsObstacle(from.x, from.y, -1.0, from.y))
+    }
+
+    /**
+     * Obstacles in range must cover exactly the obstacle area within range.
+     */
+    @Test
+    fun testObstaclesInRange() {
+        val rng = MersenneTwister(0)
+        val env = BitmapEnvironment<Any>(ResourceLoader.getResource("piantina1.png").path)
+        val all = env.obstacles
+        val (minX, maxX) = env.offset[0] to env.offset[0] + env.size[0]
+        val (minY, maxY) = env.offset[1] to env.offset[1] + env.size[1]
+        repeat(RANGE_QUERIES) {
+            val (x, y) = minX + rng.nextDouble() * (maxX - minX) to minY + rng.nextDouble() * (maxY - minY)
+            val range = rng.nextDouble() * STEP
+            val inRange = env.getObstaclesInRange(x, y, range)
+            Assertions.assertTrue(inRange.size <= all.size)
+            repeat(POINTS) {
+                val px = x + (rng.nextDouble() * 2 - 1) * range
+                val py = y + (rng.nextDouble() * 2 - 1) * range
+                if (Math.hypot(px - x, py - y) <= range) {
+                    Assertions.assertEquals(
+                        all.any { it.contains(px, py) },
+                        inRange.any { it.contains(px, py) }
+                    )
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val RANGE_QUERIES = 100
+        private const val POINTS = 100
+        private const val QUERIES = 1000
+        private const val ZOOM = 0.1
+        private const val DELTA = -10.0
+        private const val HALF = 0.5
+        private const val STEP = 100.0
+    }
+}
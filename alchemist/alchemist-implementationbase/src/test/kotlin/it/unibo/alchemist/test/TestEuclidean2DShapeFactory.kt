@@ -72,4 +72,18 @@ class TestEuclidean2DShapeFactory : FreeSpec({
             }
         }
     }
+
+    "Circles and circle sectors intersect only if their points overlap" {
+        val circle = factory.circle(DEFAULT_SHAPE_SIZE)
+        // the bounding boxes overlap, the circles do not
+        circle.intersects(circle.transformed { origin(1.5 * DEFAULT_SHAPE_SIZE, 1.5 * DEFAULT_SHAPE_SIZE) }) shouldBe false
+        circle.intersects(circle.transformed { origin(1.9 * DEFAULT_SHAPE_SIZE, 0.0) }) shouldBe true
+        val sector = factory.circleSector(2 * DEFAULT_SHAPE_SIZE, Math.PI / 2, 0.0)
+        val small = factory.circle(DEFAULT_SHAPE_SIZE / 2)
+        sector.intersects(small.transformed { origin(DEFAULT_SHAPE_SIZE, 0.0) }) shouldBe true
+        sector.intersects(small.transformed { origin(-DEFAULT_SHAPE_SIZE, 0.0) }) shouldBe false
+        sector.intersects(small.transformed { origin(0.0, DEFAULT_SHAPE_SIZE) }) shouldBe false
+        sector.transformed { rotate(Math.PI / 2) }.intersects(small.transformed { origin(0.0, DEFAULT_SHAPE_SIZE) }) shouldBe true
+        small.transformed { origin(0.0, DEFAULT_SHAPE_SIZE) }.intersects(sector) shouldBe false
+    }
 })
\ No newline at end of file
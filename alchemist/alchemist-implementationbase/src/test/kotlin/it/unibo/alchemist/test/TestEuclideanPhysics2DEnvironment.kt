@@ -57,5 +57,21 @@ class TestEuclideanPhysics2DEnvironment : StringSpec() {
             val shape = env.shapeFactory.rectangle(3.1 * DEFAULT_SHAPE_SIZE, DEFAULT_SHAPE_SIZE)
             env.getNodesWithin(shape) shouldContainExactlyInAnyOrder listOf(node1, node2)
         }
+
+        "Circular nodes can be closer than their bounding boxes" {
+            env.addNode(node1, Euclidean2DPosition(0.0, 0.0))
+            env.addNode(node2, Euclidean2DPosition(0.75 * DEFAULT_SHAPE_SIZE, 0.75 * DEFAULT_SHAPE_SIZE))
+            env.nodes shouldContainExactlyInAnyOrder listOf(node1, node2)
+        }
+
+        "Removing the largest node does not affect collisions" {
+            val large = CircleNode(env, 10 * DEFAULT_SHAPE_SIZE)
+            env.addNode(large, Euclidean2DPosition(0.0, 0.0))
+            env.removeNode(large)
+            env.addNode(node1, Euclidean2DPosition(0.0, 0.0))
+            env.addNode(node2, Euclidean2DPosition(DEFAULT_SHAPE_SIZE / 2, 0.0))
+            env.addNode(node3, Euclidean2DPosition(2 * DEFAULT_SHAPE_SIZE, 0.0))
+            env.nodes shouldContainExactlyInAnyOrder listOf(node1, node3)
+        }
     }
 }
\ No newline at end of file
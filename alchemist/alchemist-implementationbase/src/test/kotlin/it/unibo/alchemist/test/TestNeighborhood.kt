@@ -8,10 +8,12 @@
 package it.unibo.alchemist.test
 
 import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment
+import it.unibo.alchemist.model.implementations.neighborhoods.CompactNeighborhood
 import it.unibo.alchemist.model.implementations.neighborhoods.Neighborhoods
 import it.unibo.alchemist.model.implementations.nodes.IntNode
 import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.Test
+import kotlin.random.Random
 
 /**
  * Tests pertaining to the [it.unibo.alchemist.model.implementations.neighborhoods] package.
@@ -31,4 +33,61 @@ class TestNeighborhood {
         Assertions.assertEquals(0, neigh2.size())
         Assertions.assertTrue(neigh1.neighbors.contains(n2))
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that large neighborhoods are [CompactNeighborhood]s, and that
+     * they behave as [it.unibo.alchemist.model.implementations.neighborhoods.SimpleNeighborhood]s.
+     */
+    @Test
+    fun testCompact() {
+        val env = Continuous2DEnvironment<Int>()
+        val center = IntNode(env)
+        val nodes = (0..Neighborhoods.COMPACT_THRESHOLD + 1).map { IntNode(env) }
+        val small = Neighborhoods.make(env, center, nodes.take(Neighborhoods.COMPACT_THRESHOLD))
+        Assertions.assertFalse(small is CompactNeighborhood<*, *>)
+        val large = Neighborhoods.make(env, center, nodes.reversed() + nodes.first())
+        Assertions.assertTrue(large is CompactNeighborhood<*, *>)
+        Assertions.assertEquals(nodes.size, large.size())
+        Assertions.assertEquals(nodes.toSet(), large.neighbors.toSet())
+        Assertions.assertEquals(nodes.reversed(), large.toList())
+        val grown = small.add(nodes[Neighborhoods.COMPACT_THRESHOLD]).add(nodes.last())
+        Assertions.assertTrue(grown is CompactNeighborhood<*, *>)
+        Assertions.assertEquals(large, grown)
+        Assertions.assertEquals(large.hashCode(), grown.hashCode())
+        val shrunk = nodes.drop(Neighborhoods.COMPACT_THRESHOLD).fold(large) { neighborhood, node -> neighborhood.remove(node) }
+        Assertions.assertEquals(small, shrunk)
+        Assertions.assertEquals(small.hashCode(), shrunk.hashCode())
+        Assertions.assertFalse(shrunk.contains(nodes.last()))
+        Assertions.assertTrue(large.contains(nodes.last()))
+        Assertions.assertThrows(IllegalArgumentException::class.java) { shrunk.remove(nodes.last()) }
+        Assertions.assertFalse(large.contains(center))
+    }
+
+    /**
+     * Tests that [CompactNeighborhood]s iterate and number their neighbors in
+     * insertion order, as [it.unibo.alchemist.model.implementations.neighborhoods.SimpleNeighborhood]s do,
+     * whatever their ids.
+     */
+    @Test
+    fun testCompactOrder() {
+        val env = Continuous2DEnvironment<Int>()
+        val center = IntNode(env)
+        val nodes = (0..Neighborhoods.COMPACT_THRESHOLD * 2).map { IntNode(env) }
+        val shuffled = nodes.shuffled(Random(0))
+        val small = Neighborhoods.make(env, center, shuffled.take(Neighborhoods.COMPACT_THRESHOLD))
+        val grown = shuffled.drop(Neighborhoods.COMPACT_THRESHOLD).fold(small) { neighborhood, node -> neighborhood.add(node) }
+        val large = Neighborhoods.make(env, center, shuffled + shuffled.reversed())
+        listOf(grown, large).forEach { neighborhood ->
+            Assertions.assertTrue(neighborhood is CompactNeighborhood<*, *>)
+            Assertions.assertEquals(shuffled, neighborhood.toList())
+            Assertions.assertEquals(shuffled, neighborhood.neighbors.toList())
+            shuffled.forEachIndexed { index, node -> Assertions.assertSame(node, neighborhood.getNeighborByNumber(index)) }
+        }
+        val removed = shuffled.filterIndexed { index, _ -> index % 3 == 0 }
+        val shrunk = removed.fold(large) { neighborhood, node -> neighborhood.remove(node) }
+        Assertions.assertEquals(shuffled - removed, shrunk.toList())
+        removed.forEach { Assertions.assertFalse(shrunk.contains(it)) }
+        (shuffled - removed).forEach { Assertions.assertTrue(shrunk.contains(it)) }
+        Assertions.assertEquals(shuffled - removed + removed.first(), shrunk.add(removed.first()).toList())
+    }
+}
@@ -36,6 +36,13 @@ public final class ChangeBiomolConcentrationInCell extends AbstractActionOnSingl
         throw new UnsupportedOperationException("cloneOnNewNode(Node, Reaction) has to be implemented in: " + getClass());
     }
 
+    /**
+     * @return the change in concentration applied at each execution
+     */
+    public double getDeltaConcentration() {
+        return deltaC;
+    }
+
     @Override
     public void execute() {
         super.getNode().setConcentration(getMolecule(), super.getNode().getConcentration(getMolecule()) + deltaC);
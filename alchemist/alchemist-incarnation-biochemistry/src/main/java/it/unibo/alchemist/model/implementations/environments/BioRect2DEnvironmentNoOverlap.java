@@ -16,12 +16,14 @@ import it.unibo.alchemist.model.interfaces.Neighborhood;
 import it.unibo.alchemist.model.interfaces.Node;
 import org.apache.bcel.classfile.ClassFormatException;
 import org.apache.commons.math3.util.FastMath;
+import org.apache.commons.math3.util.Pair;
 import org.danilopianini.lang.MathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.stream.Stream;
 
@@ -232,6 +234,15 @@ public final class BioRect2DEnvironmentNoOverlap extends BioRect2DEnvironment im
         return Optional.of(result);
     }
 
+    /**
+     * Insertion positions depend on the biggest cells, which get updated as
+     * cells are added: cells can not be added in bulk.
+     */
+    @Override
+    protected boolean canAddInBulk(final Collection<? extends Pair<? extends Node<Double>, ? extends Euclidean2DPosition>> toAdd) {
+        return toAdd.stream().noneMatch(it -> it.getFirst() instanceof CellWithCircularArea) && super.canAddInBulk(toAdd);
+    }
+
     @Override
     @SuppressWarnings(UNCHECKED)
     protected void nodeAdded(final Node<Double> node, final Euclidean2DPosition position, final Neighborhood<Double> neighborhood) {
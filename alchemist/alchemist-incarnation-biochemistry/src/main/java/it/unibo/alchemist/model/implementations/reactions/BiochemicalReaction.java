@@ -10,9 +10,12 @@ package it.unibo.alchemist.model.implementations.reactions;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import it.unibo.alchemist.model.implementations.actions.AbstractNeighborAction;
+import it.unibo.alchemist.model.implementations.actions.ChangeBiomolConcentrationInCell;
 import it.unibo.alchemist.model.implementations.conditions.AbstractNeighborCondition;
+import it.unibo.alchemist.model.interfaces.Action;
 import it.unibo.alchemist.model.interfaces.Condition;
 import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
 import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Time;
 import it.unibo.alchemist.model.interfaces.TimeDistribution;
@@ -84,8 +87,8 @@ public final class BiochemicalReaction extends ChemicalReaction<Double> {
         super.updateInternalStatus(curTime, executed, env);
     }
 
-    @Override 
-    public void execute() {
+    @Override
+    protected void fire() {
         if (neighborConditionsPresent) {
             final List<Pair<Node<Double>, Double>> neighborsList = validNeighbors.entrySet().stream()
                     .map(e -> new Pair<>(e.getKey(), e.getValue()))
@@ -102,8 +105,58 @@ public final class BiochemicalReaction extends ChemicalReaction<Double> {
                 }
             });
         } else {
-            super.execute();
+            super.fire();
+        }
+    }
+
+    /**
+     * Leaps only happen if all the actions change concentrations in the cell:
+     * the changes of all the firings are applied at once, as many firings as
+     * possible without any concentration going negative (and at least one).
+     */
+    @Override
+    protected void fire(final int firings) {
+        final Map<Molecule, Double> changes = new LinkedHashMap<>();
+        for (final Action<Double> action : getActions()) {
+            if (!(action instanceof ChangeBiomolConcentrationInCell)) {
+                super.fire(firings);
+                return;
+            }
+            final ChangeBiomolConcentrationInCell change = (ChangeBiomolConcentrationInCell) action;
+            changes.merge(change.getMolecule(), change.getDeltaConcentration(), Double::sum);
+        }
+        double applied = firings;
+        for (final Map.Entry<Molecule, Double> change : changes.entrySet()) {
+            if (change.getValue() < 0) {
+                applied = Math.min(applied, Math.floor(getNode().getConcentration(change.getKey()) / -change.getValue()));
+            }
+        }
+        applied = Math.max(1, applied);
+        for (final Map.Entry<Molecule, Double> change : changes.entrySet()) {
+            getNode().setConcentration(change.getKey(), getNode().getConcentration(change.getKey()) + applied * change.getValue());
+        }
+    }
+
+    /**
+     * Leaps are allowed only if all the actions change concentrations in the
+     * cell: in this case, a leap must not change any of them by more than
+     * epsilon times its current value (and at least by one firing).
+     */
+    @Override
+    protected double getMaxFiringsPerLeap(final double epsilon) {
+        double max = Double.POSITIVE_INFINITY;
+        for (final Action<Double> action : getActions()) {
+            if (!(action instanceof ChangeBiomolConcentrationInCell)) {
+                return 0;
+            }
+            final ChangeBiomolConcentrationInCell change = (ChangeBiomolConcentrationInCell) action;
+            final double delta = Math.abs(change.getDeltaConcentration());
+            if (delta > 0) {
+                final double current = getNode().getConcentration(change.getMolecule());
+                max = Math.min(max, Math.max(epsilon * current, delta) / delta);
+            }
         }
+        return Double.isInfinite(max) ? 0 : max;
     }
 
     @Override
@@ -31,6 +31,8 @@ import it.unibo.alchemist.model.implementations.conditions.JunctionPresentInCell
 import it.unibo.alchemist.model.implementations.conditions.NeighborhoodPresent;
 import it.unibo.alchemist.model.implementations.molecules.Biomolecule;
 import it.unibo.alchemist.model.implementations.molecules.Junction;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.implementations.timedistributions.TauLeapingTime;
 import it.unibo.alchemist.model.interfaces.Action;
 import it.unibo.alchemist.model.interfaces.CellNode;
 import it.unibo.alchemist.model.interfaces.Condition;
@@ -76,7 +78,7 @@ public class BiochemicalReactionBuilder<P extends Position<P>> {
     private RandomGenerator rand;
     private TimeDistribution<Double> time;
     private String reactionString;
-
+    private double leapEpsilon = Double.NaN;
 
     /**
      * Construct a builder for biochemical reactions.
@@ -101,7 +103,10 @@ public class BiochemicalReactionBuilder<P extends Position<P>> {
         parser.removeErrorListeners();
         parser.addErrorListener(new BiochemistryParseErrorListener(reactionString));
         final ParseTree tree = parser.reaction();
-        final BiochemistryDSLVisitor<P> eval = new BiochemistryDSLVisitor<>(rand, incarnation, time, node, env);
+        final TimeDistribution<Double> td = Double.isNaN(leapEpsilon) || time instanceof TauLeapingTime
+                ? time
+                : new TauLeapingTime<>(time.getRate(), leapEpsilon, time.getNextOccurence(), rand);
+        final BiochemistryDSLVisitor<P> eval = new BiochemistryDSLVisitor<>(rand, incarnation, td, node, env);
         return eval.visit(tree);
     }
 
@@ -115,6 +120,9 @@ public class BiochemicalReactionBuilder<P extends Position<P>> {
         if (reactionString == null) {
             throw new IllegalArgumentException("Reaction string cannot be null");
         }
+        if (!Double.isNaN(leapEpsilon) && !(time instanceof ExponentialTime || time instanceof TauLeapingTime)) {
+            throw new IllegalArgumentException("Tau-leaping requires an exponential time distribution, got " + time);
+        }
     }
 
     /**
@@ -147,6 +155,18 @@ public class BiochemicalReactionBuilder<P extends Position<P>> {
         return this;
     }
 
+    /**
+     * Simulate the reaction through tau-leaping. The time distribution must be
+     * an {@link ExponentialTime}, and gets replaced by a {@link TauLeapingTime}
+     * with the same rate.
+     * @param epsilon the maximum relative change of the concentrations within a leap, in (0, 1)
+     * @return .
+     */
+    public BiochemicalReactionBuilder<P> tauLeaping(final double epsilon) {
+        leapEpsilon = epsilon;
+        return this;
+    }
+
     private static final class BiochemistryDSLVisitor<P extends Position<? extends P>> extends BiochemistrydslBaseVisitor<Reaction<Double>> {
         private static final String CONDITIONS_PACKAGE = "it.unibo.alchemist.model.implementations.conditions.";
         private static final String ACTIONS_PACKAGE = "it.unibo.alchemist.model.implementations.actions.";
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.interfaces.Simulation;
+import it.unibo.alchemist.loader.YamlLoader;
+import it.unibo.alchemist.model.BiochemistryIncarnation;
+import it.unibo.alchemist.model.implementations.environments.BioRect2DEnvironment;
+import it.unibo.alchemist.model.implementations.molecules.Biomolecule;
+import it.unibo.alchemist.model.implementations.nodes.CellNodeImpl;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.implementations.reactions.BiochemicalReactionBuilder;
+import it.unibo.alchemist.model.implementations.timedistributions.DiracComb;
+import it.unibo.alchemist.model.implementations.timedistributions.ExponentialTime;
+import it.unibo.alchemist.model.implementations.timedistributions.TauLeapingTime;
+import it.unibo.alchemist.model.implementations.times.DoubleTime;
+import it.unibo.alchemist.model.interfaces.CellNode;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kaikikm.threadresloader.ResourceLoader;
+
+import java.io.InputStream;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the tau-leaping approximation of biochemical reactions.
+ */
+public class TestTauLeaping {
+
+    private static final BiochemistryIncarnation<Euclidean2DPosition> INCARNATION = new BiochemistryIncarnation<>();
+    private static final Biomolecule A = new Biomolecule("A");
+    private static final Biomolecule B = new Biomolecule("B");
+    private static final String DECAY = "[A] --> [B]";
+    private static final double EPSILON = 0.03;
+    private static final double TOLERANCE = 0.05;
+    private static final double MANY = 100_000;
+    private static final double FEW = 5;
+    private static final long MAX_LEAPS = 1000;
+    private static final double LEAP_FIRINGS = 1000;
+    private static final double PROPENSITY = 100;
+    private Environment<Double, Euclidean2DPosition> env;
+    private CellNode<Euclidean2DPosition> node;
+    private RandomGenerator rand;
+
+    /**
+     */
+    @BeforeEach
+    public void setUp() {
+        env = new BioRect2DEnvironment();
+        node = new CellNodeImpl<>(env);
+        rand = new MersenneTwister(0);
+        env.addNode(node, new Euclidean2DPosition(0, 0));
+    }
+
+    private Reaction<Double> decay() {
+        return new BiochemicalReactionBuilder<>(INCARNATION, node, env)
+                .randomGenerator(rand)
+                .timeDistribution(new ExponentialTime<>(1, rand))
+                .tauLeaping(EPSILON)
+                .program(DECAY)
+                .build();
+    }
+
+    /**
+     * With many molecules, the decay must follow the expected exponential
+     * law, conserving the molecules, in much less steps than firings.
+     */
+    @Test
+    public void testLeapsWithManyMolecules() {
+        node.setConcentration(A, MANY);
+        final Reaction<Double> reaction = decay();
+        assertTrue(reaction.getTimeDistribution() instanceof TauLeapingTime);
+        node.addReaction(reaction);
+        assertDecays(env, node);
+    }
+
+    /**
+     * A TauLeapingTime time distribution in a YAML simulation file enables
+     * tau-leaping for the reaction.
+     */
+    @Test
+    public void testLeapsWhenLoaded() {
+        final InputStream resource = ResourceLoader.getResourceAsStream("tauLeaping.yml");
+        assertNotNull(resource);
+        final Environment<Double, Euclidean2DPosition> loaded = new YamlLoader(resource).getWith(Collections.emptyMap());
+        assertEquals(1, loaded.getNodesNumber());
+        final Node<Double> cell = loaded.getNodes().get(0);
+        assertEquals(1, cell.getReactions().size());
+        assertTrue(cell.getReactions().get(0).getTimeDistribution() instanceof TauLeapingTime);
+        assertEquals(EPSILON, ((TauLeapingTime<Double>) cell.getReactions().get(0).getTimeDistribution()).getEpsilon());
+        assertDecays(loaded, cell);
+    }
+
+    /**
+     * The firings expected within a leap which ended without executing get
+     * drawn at the next execution.
+     */
+    @Test
+    public void testCarriesOverLeapsNotExecuted() {
+        final TauLeapingTime<Double> leaps = new TauLeapingTime<>(1, EPSILON, rand);
+        leaps.setMaxFiringsPerLeap(LEAP_FIRINGS);
+        leaps.update(DoubleTime.ZERO_TIME, true, PROPENSITY, env);
+        assertTrue(leaps.isLeaping());
+        final Time end = leaps.getNextOccurence();
+        assertEquals(LEAP_FIRINGS / PROPENSITY, end.toDouble());
+        /*
+         * The leap ends, but the reaction does not execute
+         */
+        leaps.update(end, true, PROPENSITY, env);
+        final int firings = leaps.sampleFirings(end);
+        assertTrue(FastMath.abs(firings - LEAP_FIRINGS) < LEAP_FIRINGS * TOLERANCE * 2, () -> firings + " firings");
+        assertEquals(0, leaps.sampleFirings(end));
+    }
+
+    /**
+     * With few molecules, every firing must be simulated exactly.
+     */
+    @Test
+    public void testExactWithFewMolecules() {
+        node.setConcentration(A, FEW);
+        final Reaction<Double> reaction = decay();
+        node.addReaction(reaction);
+        final Simulation<Double, Euclidean2DPosition> sim = new Engine<>(env, (long) FEW);
+        sim.play();
+        sim.run();
+        assertFalse(sim.getError().isPresent());
+        assertFalse(((TauLeapingTime<Double>) reaction.getTimeDistribution()).isLeaping());
+        assertEquals(0, node.getConcentration(A).doubleValue());
+        assertEquals(FEW, node.getConcentration(B).doubleValue());
+    }
+
+    private static void assertDecays(final Environment<Double, Euclidean2DPosition> env, final Node<Double> cell) {
+        final Simulation<Double, Euclidean2DPosition> sim = new Engine<>(env, new DoubleTime(1));
+        sim.play();
+        sim.run();
+        assertFalse(sim.getError().isPresent());
+        final double left = cell.getConcentration(A);
+        final double expected = MANY * FastMath.exp(-1);
+        assertTrue(FastMath.abs(left - expected) < expected * TOLERANCE, () -> left + " is too far from " + expected);
+        assertEquals(MANY, left + cell.getConcentration(B));
+        assertTrue(sim.getStep() < MAX_LEAPS, () -> sim.getStep() + " steps");
+    }
+
+    /**
+     * Only Markovian reactions can leap.
+     */
+    @Test
+    public void testRequiresExponentialTime() {
+        assertThrows(IllegalArgumentException.class, () -> new BiochemicalReactionBuilder<>(INCARNATION, node, env)
+                .randomGenerator(rand)
+                .timeDistribution(new DiracComb<>(1))
+                .tauLeaping(EPSILON)
+                .program(DECAY)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> new TauLeapingTime<>(1, 1, rand));
+    }
+
+}
@@ -8,7 +8,7 @@
 package it.unibo.alchemist.model.implementations.actions
 
 import java.time.LocalDateTime
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.{ConcurrentLinkedQueue, TimeUnit}
 
 import it.unibo.alchemist.model.interfaces.Dependency
 import it.unibo.alchemist.model.interfaces.Node
@@ -48,6 +48,12 @@ sealed class RunScafiProgram[P <: Position[P]] (
   import RunScafiProgram.NBRData
   private val program = ResourceLoader.classForName(programName).newInstance().asInstanceOf[CONTEXT => EXPORT]
   private[this] var nbrData: Map[ID, NBRData[P]] = Map()
+  /*
+   * Exports sent while the simulation executes a batch of rounds are delivered at the beginning of the next round,
+   * skipping those sent at the same time: rounds of the same batch never observe each other, and may run
+   * concurrently (read-old, write-new). Any other export is delivered immediately, as rounds run one at a time.
+   */
+  private[this] val inbox = new ConcurrentLinkedQueue[(ID, NBRData[P])]()
   declareDependencyTo(Dependency.EVERY_MOLECULE)
 
   override def cloneAction(n: Node[Any], r: Reaction[Any]) = {
@@ -64,6 +70,16 @@ sealed class RunScafiProgram[P <: Position[P]] (
 
     val position: P = environment.getPosition(node)
     val currentTime = reaction.getTau
+    val arrived = inbox.iterator()
+    while (arrived.hasNext) {
+      val (id, data) = arrived.next()
+      if (data.executionTime < currentTime) {
+        if (nbrData.get(id).forall(_.executionTime < data.executionTime)) {
+          nbrData += id -> data
+        }
+        arrived.remove()
+      }
+    }
     if(!nbrData.contains(node.getId)) nbrData += node.getId -> new NBRData(factory.emptyExport(), environment.getPosition(node), Double.NaN)
     nbrData = nbrData.filter { case (id,data) => id==node.getId || data.executionTime >= currentTime - retentionTime }
     val deltaTime = currentTime.minus(nbrData.get(node.getId).map( _.executionTime).getOrElse(Double.NaN))
@@ -110,7 +126,13 @@ sealed class RunScafiProgram[P <: Position[P]] (
     }
   }
 
-  private def sendExport(id: ID, export: NBRData[P]) { nbrData += id -> export }
+  private def sendExport(id: ID, export: NBRData[P]) {
+    if (Option(environment.getSimulation).exists(_.isExecutingBatch)) {
+      inbox.add(id -> export)
+    } else {
+      nbrData += id -> export
+    }
+  }
 }
 
 object RunScafiProgram {
@@ -20,6 +20,13 @@ class ScafiGradientProgram extends AggregateProgram {
     }
 }
 
+class ScafiSameInstantProgram extends AggregateProgram {
+  /*
+   * Counts the neighbors whose last round happened at the same instant
+   */
+  override def main(): Int = foldhood(0)(_ + _)(mux(nbrvar[Double](NBR_ALCHEMIST_LAG) == 0.0) { 1 } { 0 })
+}
+
 class ScafiEnvProgram extends AggregateProgram with StandardSensors with ScafiAlchemistSupport {
   override def main(): Any = {
     node.put("number2", node.get[Int]("number")+100)
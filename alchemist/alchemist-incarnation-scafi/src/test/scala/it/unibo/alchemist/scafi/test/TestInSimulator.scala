@@ -57,6 +57,19 @@ class TestInSimulator[P <: Position[P]] extends FunSuite with Matchers {
     })
   }
 
+  test("Rounds at the same instant observe the exports sent before them"){
+    val (rounds, nodeCount) = (4, 20)
+    val env = testNoVar[Any]("/test_same_instant.yml", maxSteps = rounds * nodeCount)
+    val program = new SimpleMolecule(classOf[ScafiSameInstantProgram].getName)
+    val nodes = env.getNodes.asScala
+    /*
+     * Rounds run one at a time: of any two neighbors, the latter sees the export of the former
+     */
+    val links = nodes.map(env.getNeighborhood(_).size).sum / 2
+    links should be > 0
+    nodes.map(_.getConcentration(program).asInstanceOf[Int]).sum shouldBe links
+  }
+
   private def testNoVar[T](resource: String, maxSteps: Long = 1000): Environment[T, P] = {
     testLoading(resource, Map(), maxSteps)
   }
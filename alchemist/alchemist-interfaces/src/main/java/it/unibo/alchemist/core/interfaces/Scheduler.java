@@ -10,15 +10,18 @@ package it.unibo.alchemist.core.interfaces;
 
 import it.unibo.alchemist.model.interfaces.Reaction;
 
+import java.io.Serializable;
+
 /**
  * The type which describes the concentration of a molecule
  * 
  * This interface is meant to be implemented by the data structure(s) which must
- * manage the reactions.
+ * manage the reactions. Schedulers are serializable, along with the
+ * reactions they hold, so that a running simulation can be checkpointed.
  * 
  * @param <T>
  */
-public interface Scheduler<T> {
+public interface Scheduler<T> extends Serializable {
 
     /**
      * Adds a reaction to the data structure.
@@ -88,6 +88,20 @@ public interface Simulation<T, P extends Position<? extends P>> extends Runnable
      */
     Time getTime();
 
+    /**
+     * Engines may execute several events at the same instant as a batch,
+     * whose events must not observe each other. While a batch is running,
+     * reactions sharing state with other nodes without going through their
+     * molecules must buffer what they send, and deliver it after the batch
+     * (read-old, write-new).
+     *
+     * @return true if a batch of events is being executed. Defaults to
+     *         false.
+     */
+    default boolean isExecutingBatch() {
+        return false;
+    }
+
     /**
      * Executes a certain number of steps, then pauses it.
      * 
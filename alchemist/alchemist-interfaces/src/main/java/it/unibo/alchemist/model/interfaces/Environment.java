@@ -8,10 +8,16 @@
 package it.unibo.alchemist.model.interfaces;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Optional;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
+import org.apache.commons.math3.util.Pair;
+import org.danilopianini.util.ArrayListSet;
 import org.danilopianini.util.ListSet;
+import org.danilopianini.util.ListSets;
 
 import it.unibo.alchemist.core.interfaces.Simulation;
 
@@ -48,6 +54,22 @@ public interface Environment<T, P extends Position<? extends P>> extends Seriali
      */
     void addNode(Node<T> node, P p);
 
+    /**
+     * Adds many nodes at once. The final state must be the same as if each
+     * node were added in order through {@link #addNode(Node, Position)}, but
+     * implementations may get there faster. The default implementation does
+     * exactly that.
+     * 
+     * @param nodes
+     *            the nodes to add, each paired with the position where to
+     *            place it
+     */
+    default void addNodes(final Collection<? extends Pair<? extends Node<T>, ? extends P>> nodes) {
+        for (final Pair<? extends Node<T>, ? extends P> pair: nodes) {
+            addNode(pair.getFirst(), pair.getSecond());
+        }
+    }
+
     /**
      * @param terminator
      *            a {@link Predicate} indicating whether the simulation should
@@ -78,6 +100,58 @@ public interface Environment<T, P extends Position<? extends P>> extends Seriali
      */
     Optional<Incarnation<T, P>> getIncarnation();
 
+    /**
+     * Finds the nodes closest to a {@link Position}. The default
+     * implementation runs {@link #getNodesWithinRange(Position, double)}
+     * within growing ranges, starting from the range that would contain about
+     * k nodes if they were uniformly distributed, and doubling it until at
+     * least k nodes are found. Nodes at the same distance are sorted by id.
+     * 
+     * @param center
+     *            the {@link Position} to consider as center
+     * @param k
+     *            how many nodes to find
+     * @return the k nodes closest to the center, sorted by increasing
+     *         distance, or all the nodes if they are fewer than k
+     */
+    default ListSet<Node<T>> getKNearestNodes(final P center, final int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("The number of nodes to find must be non negative (provided: " + k + ")");
+        }
+        final int nodes = getNodesNumber();
+        if (k == 0 || nodes == 0) {
+            return ListSets.emptyListSet();
+        }
+        @SuppressWarnings("unchecked")
+        final Position<P> origin = (Position<P>) center;
+        Collection<Node<T>> candidates = getNodes();
+        if (k < nodes) {
+            final double[] size = getSizeInDistanceUnits();
+            double volume = 1;
+            double diagonal = 0;
+            for (final double side: size) {
+                volume *= side;
+                diagonal = Math.hypot(diagonal, side);
+            }
+            /*
+             * Beyond this range, every node would be found
+             */
+            final double limit = origin.getDistanceTo(getPosition(getNodes().get(0))) + diagonal;
+            for (double range = Math.pow(volume * k / nodes, 1d / size.length); range > 0 && range < limit; range *= 2) {
+                final ListSet<Node<T>> inRange = getNodesWithinRange(center, range);
+                if (inRange.size() >= k) {
+                    candidates = inRange;
+                    break;
+                }
+            }
+        }
+        return candidates.stream()
+                .sorted(Comparator.<Node<T>>comparingDouble(node -> origin.getDistanceTo(getPosition(node)))
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(k)
+                .collect(Collectors.toCollection(() -> new ArrayListSet<>(Math.min(k, nodes))));
+    }
+
     /**
      * Get the layer associate to the given molecule. If no Layer is associated
      * with the given molecule, return an empty optional.
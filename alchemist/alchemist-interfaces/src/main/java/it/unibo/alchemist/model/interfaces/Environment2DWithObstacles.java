@@ -102,4 +102,22 @@ public interface Environment2DWithObstacles<W extends Obstacle2D, T, P extends P
      */
     boolean removeObstacle(W o);
 
+    /**
+     * Replaces an {@link Obstacle2D} of this environment, e.g., to move it.
+     * By default, the obstacle is removed and the replacement added.
+     *
+     * @param o
+     *            the {@link Obstacle2D} to replace
+     * @param replacement
+     *            the new {@link Obstacle2D}
+     * @return true if the {@link Obstacle2D} has actually been replaced
+     */
+    default boolean replaceObstacle(final W o, final W replacement) {
+        if (removeObstacle(o)) {
+            addObstacle(replacement);
+            return true;
+        }
+        return false;
+    }
+
 }
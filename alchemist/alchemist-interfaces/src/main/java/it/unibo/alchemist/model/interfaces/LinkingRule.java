@@ -46,4 +46,32 @@ public interface LinkingRule<T, P extends Position<? extends P>> extends Seriali
      */
     boolean isLocallyConsistent();
 
+    /**
+     * Rules which are not locally consistent get re-applied to the nodes
+     * reached by a change, breadth first. The nodes at the same distance from
+     * the change can have their neighborhoods computed in parallel, if
+     * {@link #computeNeighborhood(Node, Environment)} can run concurrently on
+     * different nodes and does not depend on their neighborhoods.
+     * Ignored by locally consistent rules.
+     *
+     * @return true if the neighborhoods of different nodes can be computed in
+     *         parallel
+     */
+    default boolean isParallelizable() {
+        return false;
+    }
+
+    /**
+     * Rules which are not locally consistent get re-applied to the nodes
+     * reached by a change, breadth first, up to this number of hops from the
+     * node which changed. Past it, the links which changed are mirrored on
+     * the other end without computing its neighborhood: links stay symmetric,
+     * but the result is an approximation. Ignored by locally consistent rules.
+     *
+     * @return the maximum number of hops a change propagates through
+     */
+    default int getPropagationDepth() {
+        return Integer.MAX_VALUE;
+    }
+
 }
@@ -41,6 +41,19 @@ public interface TimeDistribution<T> extends Cloneable, Serializable {
      */
     double getRate();
 
+    /**
+     * Engines may exploit distributions whose next occurrence can change only
+     * when the event is executed (and not when it is updated because some
+     * other event changed the environment) to predict that no event will
+     * happen earlier than currently scheduled.
+     *
+     * @return true if the next occurrence changes only upon execution of the
+     *         event. Defaults to false.
+     */
+    default boolean isExecutionDriven() {
+        return false;
+    }
+
     /**
      * @param currentTime
      *            the time at which the cloning operation happened
@@ -7,6 +7,7 @@
  */
 package it.unibo.alchemist.loader;
 
+import it.unibo.alchemist.core.interfaces.Scheduler;
 import it.unibo.alchemist.loader.export.Extractor;
 import it.unibo.alchemist.loader.variables.DependentVariable;
 import it.unibo.alchemist.loader.variables.Variable;
@@ -16,6 +17,7 @@ import it.unibo.alchemist.model.interfaces.Position;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * An entity which is able to produce an Alchemist {@link Environment}, possibly
@@ -80,4 +82,15 @@ public interface Loader extends Serializable {
      */
     List<String> getDependencies();
 
+    /**
+     * Builds a new {@link Scheduler}, if the simulation requires a specific
+     * one. Each invocation returns a fresh, empty instance.
+     *
+     * @param <T>
+     *            concentration type
+     * @return the {@link Scheduler} to use, or {@link Optional#empty()} if the
+     *         engine default should be used
+     */
+    <T> Optional<Scheduler<T>> getScheduler();
+
 }
@@ -19,6 +19,7 @@ import com.google.common.collect.Table;
 import com.google.common.collect.Table.Cell;
 import com.google.common.reflect.TypeToken;
 import it.unibo.alchemist.SupportedIncarnations;
+import it.unibo.alchemist.core.interfaces.Scheduler;
 import it.unibo.alchemist.loader.displacements.Displacement;
 import it.unibo.alchemist.loader.export.Extractor;
 import it.unibo.alchemist.loader.export.FilteringPolicy;
@@ -33,7 +34,11 @@ import it.unibo.alchemist.loader.variables.LinearVariable;
 import it.unibo.alchemist.loader.variables.NumericConstant;
 import it.unibo.alchemist.loader.variables.Variable;
 import it.unibo.alchemist.model.implementations.environments.Continuous2DEnvironment;
+import it.unibo.alchemist.model.implementations.environments.Continuous3DEnvironment;
+import it.unibo.alchemist.model.implementations.layers.RasterLayer;
 import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.spatialindexes.Octree;
+import it.unibo.alchemist.model.implementations.spatialindexes.UniformGridIndex;
 import it.unibo.alchemist.model.implementations.times.DoubleTime;
 import it.unibo.alchemist.model.interfaces.Action;
 import it.unibo.alchemist.model.interfaces.Concentration;
@@ -53,8 +58,11 @@ import kotlin.Triple;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.util.Pair;
 import org.danilopianini.jirf.Factory;
 import org.danilopianini.jirf.FactoryBuilder;
+import org.danilopianini.util.FlexibleQuadTree;
+import org.danilopianini.util.SpatialIndex;
 import org.jetbrains.annotations.NotNull;
 import org.kaikikm.threadresloader.ResourceLoader;
 import org.slf4j.Logger;
@@ -72,6 +80,7 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -108,6 +117,8 @@ public final class YamlLoader implements Loader {
     private static final String ACTIONS = SYNTAX.getString("actions");
     private static final String AGGREGATORS = SYNTAX.getString("aggregators");
     private static final String ALCHEMIST_PACKAGE_ROOT = "it.unibo.alchemist.";
+    private static final String CACHE = SYNTAX.getString("cache");
+    private static final String CELL_SIZE = SYNTAX.getString("cell-size");
     private static final String CONCENTRATION = SYNTAX.getString("concentration");
     private static final String CONDITIONS = SYNTAX.getString("conditions");
     private static final String CONTENTS = SYNTAX.getString("contents");
@@ -118,6 +129,10 @@ public final class YamlLoader implements Loader {
     private static final String FORMULA = SYNTAX.getString("formula");
     private static final String IN = SYNTAX.getString("in");
     private static final String INCARNATION = SYNTAX.getString("incarnation");
+    private static final String INDEX = SYNTAX.getString("index");
+    private static final String INDEX_GRID = "grid";
+    private static final String INDEX_OCTREE = "octree";
+    private static final String INDEX_QUADTREE = "quadtree";
     private static final String LANGUAGE = SYNTAX.getString("language");
     private static final String LAYERS = SYNTAX.getString("layers");
     private static final String LINKING_RULE = SYNTAX.getString("linking-rule");
@@ -135,6 +150,7 @@ public final class YamlLoader implements Loader {
     private static final String REACTION = SYNTAX.getString("reaction");
     private static final String REMOTE_DEPENDENCIES = SYNTAX.getString("remote-dependencies");
     private static final String SCENARIO_SEED = SYNTAX.getString("scenario-seed");
+    private static final String SCHEDULER = SYNTAX.getString("scheduler");
     private static final String SEEDS = SYNTAX.getString("seeds");
     private static final String SIMULATION_SEED = SYNTAX.getString("simulation-seed");
     private static final String STEP = SYNTAX.getString("step");
@@ -150,6 +166,7 @@ public final class YamlLoader implements Loader {
             .put(Layer.class, ImmutableMap.of(TYPE, CharSequence.class, MOLECULE, CharSequence.class))
             .build();
     private static final Map<Class<?>, Map<String, Class<?>>> DEFAULT_OPTIONAL_PARAMETERS = ImmutableMap.<Class<?>, Map<String, Class<?>>>builder()
+            .put(Layer.class, ImmutableMap.of(PARAMS, List.class, CACHE, Map.class))
             .put(Variable.class, ImmutableMap.of(PARAMS, List.class, NAME, CharSequence.class))
             .put(DependentVariable.class, ImmutableMap.of(PARAMS, List.class, NAME, CharSequence.class))
             .put(Reaction.class, ImmutableMap.of(PARAMS, List.class, TIMEDISTRIBUTION, Object.class, ACTIONS, List.class, CONDITIONS, List.class))
@@ -199,6 +216,7 @@ public final class YamlLoader implements Loader {
             .put(Node.class, MODEL_PACKAGE_ROOT + "nodes.")
             .put(Predicate.class, MODEL_PACKAGE_ROOT + "terminators.")
             .put(Reaction.class, MODEL_PACKAGE_ROOT + "reactions.")
+            .put(Scheduler.class, ALCHEMIST_PACKAGE_ROOT + "core.implementations.")
             .put(Shape.class, ALCHEMIST_PACKAGE_ROOT + "loader.shapes.")
             .put(TimeDistribution.class, MODEL_PACKAGE_ROOT + "timedistributions.")
             .put(Variable.class, ALCHEMIST_PACKAGE_ROOT + "loader.variables.")
@@ -413,6 +431,16 @@ public final class YamlLoader implements Loader {
         return this.dependencies;
     }
 
+    @Override
+    public <T> Optional<Scheduler<T>> getScheduler() {
+        final Object schedulerDescriptor = contents.get(SCHEDULER);
+        if (schedulerDescriptor == null) {
+            return Optional.empty();
+        }
+        final Builder<Scheduler<T>> schedulerBuilder = new Builder<>(Scheduler.class, emptySet(), makeBaseFactory(incarnation));
+        return Optional.of(schedulerBuilder.build(schedulerDescriptor));
+    }
+
     @Override
     public <T, P extends Position<P>> Environment<T, P> getWith(final Map<String, ?> values) {
         if (values.size() > variables.size()) {
@@ -481,7 +509,12 @@ public final class YamlLoader implements Loader {
          */
         @SuppressWarnings("unchecked")
         final BuilderConfiguration<Environment<T, P>> envDefaultConfig = emptyConfig(factory, () -> (Environment<T, P>) new Continuous2DEnvironment<>());
-        final Builder<Environment<T, P>> envBuilder = new Builder<>(Environment.class, ImmutableSet.of(envDefaultConfig), factory);
+        final BuilderConfiguration<Environment<T, P>> envIndexConfig = new BuilderConfiguration<>(
+                ImmutableMap.of(INDEX, CharSequence.class),
+                ImmutableMap.of(TYPE, CharSequence.class, PARAMS, List.class, CELL_SIZE, Number.class),
+                factory,
+                m -> makeIndexedEnvironment(factory, m));
+        final Builder<Environment<T, P>> envBuilder = new Builder<>(Environment.class, ImmutableSet.of(envDefaultConfig, envIndexConfig), factory);
         factory.registerSingleton(RandomGenerator.class, simRng);
         final Environment<T, P> env = envBuilder.build(contents.get(ENVIRONMENT));
         env.setIncarnation(incarnation);
@@ -496,7 +529,8 @@ public final class YamlLoader implements Loader {
         final Builder<Layer<T, P>> layerBuilder = new Builder<>(Layer.class, emptySet(), factory);
         layers.forEach(o -> {
             final Map<String, Object> layerMap = cast(factory, MAP_STRING_OBJECT, o, "layer");
-            final Layer<T, P> layer = layerBuilder.build(layerMap);
+            final Layer<T, P> built = layerBuilder.build(layerMap);
+            final Layer<T, P> layer = layerMap.containsKey(CACHE) ? makeCachedLayer(factory, env, built, layerMap.get(CACHE)) : built;
             final Molecule molecule = molBuilder.build(layerMap.get(MOLECULE));
             env.addLayer(molecule, layer);
         });
@@ -551,6 +585,7 @@ public final class YamlLoader implements Loader {
                  * Nodes
                  */
                 factory.registerSingleton(RandomGenerator.class, simRng);
+                final List<Pair<Node<T>, P>> displaced = new ArrayList<>();
                 for (@NotNull final P position: displacement) {
                     final Node<T> node = nodeBuilder.build(dispMap.get(NODE));
                     factory.registerSingleton(Node.class, node);
@@ -623,8 +658,9 @@ public final class YamlLoader implements Loader {
                     if (!factory.deregisterSingleton(node)) {
                         throw new IllegalStateException("This is a bug in " + getClass() + ": singletons are not correctly cleared.");
                     }
-                    env.addNode(node, position);
+                    displaced.add(new Pair<>(node, position));
                 }
+                env.addNodes(displaced);
                 if (!factory.deregisterSingleton(displacement)) {
                     throw new IllegalStateException("This is a bug in " + getClass() + ": singletons are not correctly cleared.");
                 }
@@ -769,6 +805,76 @@ public final class YamlLoader implements Loader {
                 .orElse(new MersenneTwister(0));
     }
 
+    /*
+     * Builds the environment passing the requested spatial index as first
+     * parameter. If no type is specified, Continuous3DEnvironment is used with
+     * the octree, Continuous2DEnvironment otherwise.
+     */
+    @SuppressWarnings(UNCHECKED)
+    private static <T, P extends Position<P>> Environment<T, P> makeIndexedEnvironment(final Factory factory, final Map<String, Object> m) {
+        final String indexName = m.get(INDEX).toString().toLowerCase(Locale.ENGLISH);
+        final Optional<Number> cellSize = Optional.ofNullable((Number) m.get(CELL_SIZE));
+        final SpatialIndex<Node<T>> index;
+        if (INDEX_GRID.equals(indexName)) {
+            index = new UniformGridIndex<>(cellSize
+                    .orElseThrow(() -> new IllegalAlchemistYAMLException(INDEX + " " + INDEX_GRID + " requires a " + CELL_SIZE))
+                    .doubleValue());
+        } else if (INDEX_QUADTREE.equals(indexName)) {
+            if (cellSize.isPresent()) {
+                throw new IllegalAlchemistYAMLException(INDEX + " " + INDEX_QUADTREE + " does not accept a " + CELL_SIZE);
+            }
+            index = new FlexibleQuadTree<>();
+        } else if (INDEX_OCTREE.equals(indexName)) {
+            if (cellSize.isPresent()) {
+                throw new IllegalAlchemistYAMLException(INDEX + " " + INDEX_OCTREE + " does not accept a " + CELL_SIZE);
+            }
+            index = new Octree<>();
+        } else {
+            throw new IllegalAlchemistYAMLException(indexName + " is not a valid " + INDEX
+                    + ", use " + INDEX_GRID + ", " + INDEX_QUADTREE + " or " + INDEX_OCTREE);
+        }
+        final String type = Optional.ofNullable(m.get(TYPE))
+                .map(Object::toString)
+                .map(t -> (t.contains(".") ? "" : PACKAGE_ROOTS.get(Environment.class)) + t)
+                .orElse((index instanceof Octree ? Continuous3DEnvironment.class : Continuous2DEnvironment.class).getName());
+        final List<?> parameters = Optional.ofNullable(m.get(PARAMS)).map(l -> (List<?>) l).orElse(emptyList());
+        try {
+            final Class<?> actualClass = ResourceLoader.classForName(type);
+            if (!Environment.class.isAssignableFrom(actualClass)) {
+                throw new IllegalAlchemistYAMLException(type + " is not a subclass of " + Environment.class);
+            }
+            return (Environment<T, P>) factory.build(actualClass, Lists.asList(index, parameters.toArray()));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalAlchemistYAMLException(type + " is not a valid Java class", e);
+        }
+    }
+
+    @SuppressWarnings({ UNCHECKED, "rawtypes" })
+    private static <T, P extends Position<P>> Layer<T, P> makeCachedLayer(
+            final Factory factory,
+            final Environment<T, P> env,
+            final Layer<T, P> layer,
+            final Object descriptor) {
+        final Map<String, Object> cache = cast(factory, MAP_STRING_OBJECT, descriptor, "layer " + CACHE);
+        if (!cache.keySet().equals(ImmutableSet.of(MIN, MAX, STEP))) {
+            throw new IllegalAlchemistYAMLException("A layer " + CACHE + " requires exactly " + MIN + ", " + MAX + " and " + STEP + ", got " + cache);
+        }
+        final List<Number> min = cast(factory, LIST_NUMBER, cache.get(MIN), "layer " + CACHE + " " + MIN);
+        final List<Number> max = cast(factory, LIST_NUMBER, cache.get(MAX), "layer " + CACHE + " " + MAX);
+        if (env.getDimensions() != 2 || min.size() != 2 || max.size() != 2) {
+            throw new IllegalAlchemistYAMLException("Layers can be cached only in bidimensional environments, with bidimensional " + MIN + " and " + MAX);
+        }
+        final Number step = cast(factory, Number.class, cache.get(STEP), "layer " + CACHE + " " + STEP);
+        try {
+            return (Layer<T, P>) new RasterLayer(env, (Layer) layer,
+                    min.get(0).doubleValue(), min.get(1).doubleValue(),
+                    max.get(0).doubleValue(), max.get(1).doubleValue(),
+                    step.doubleValue());
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new IllegalAlchemistYAMLException(layer + " can not be cached with " + cache, e);
+        }
+    }
+
     private static <T> BuilderConfiguration<T> singleParamConfig(final Factory factory, final Function<Object, T> supplier) {
         return new BuilderConfiguration<>(ImmutableMap.of(PARAMETER, Object.class), emptyMap(), factory, m -> supplier.apply(m.get(PARAMETER)));
     }
@@ -10,31 +10,42 @@ package it.unibo.alchemist.loader.export;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+
+import it.unibo.alchemist.model.implementations.environments.AbstractEnvironment;
 import it.unibo.alchemist.model.interfaces.BenchmarkableEnvironment;
 import it.unibo.alchemist.model.interfaces.Environment;
 import it.unibo.alchemist.model.interfaces.Reaction;
 import it.unibo.alchemist.model.interfaces.Time;
 
 /**
- * Exports the stats about the performance of the environment.
+ * Exports the stats about the performance of the environment: the benchmark
+ * result of {@link BenchmarkableEnvironment}s, and the hits and misses of the
+ * range query cache of {@link AbstractEnvironment}s. Values not available for
+ * the environment are exported as NaN.
  *
  */
 public final class EnvPerformanceStats implements Extractor {
 
     private static final List<String> COLNAME;
-    private static final double[] EMPTY = new double[0];
     static {
         final List<String> cName = new LinkedList<>();
         cName.add("envPerformance");
+        cName.add("rangeQueryCacheHits");
+        cName.add("rangeQueryCacheMisses");
         COLNAME = Collections.unmodifiableList(cName);
     }
 
     @Override
     public double[] extractData(final Environment<?, ?> env, final Reaction<?> r, final Time time, final long step) {
+        final double[] result = { Double.NaN, Double.NaN, Double.NaN };
         if (env instanceof BenchmarkableEnvironment) {
-            return new double[]{((BenchmarkableEnvironment<?, ?>) env).getBenchmarkResult()};
+            result[0] = ((BenchmarkableEnvironment<?, ?>) env).getBenchmarkResult();
+        }
+        if (env instanceof AbstractEnvironment) {
+            result[1] = ((AbstractEnvironment<?, ?>) env).getRangeQueryCacheHits();
+            result[2] = ((AbstractEnvironment<?, ?>) env).getRangeQueryCacheMisses();
         }
-        return EMPTY;
+        return result;
     }
 
     @Override
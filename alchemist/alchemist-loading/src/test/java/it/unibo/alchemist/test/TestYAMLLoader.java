@@ -13,7 +13,11 @@ import it.unibo.alchemist.core.implementations.Engine;
 import it.unibo.alchemist.core.interfaces.Simulation;
 import it.unibo.alchemist.loader.Loader;
 import it.unibo.alchemist.loader.YamlLoader;
+import it.unibo.alchemist.model.implementations.environments.AbstractEnvironment;
+import it.unibo.alchemist.model.implementations.environments.Continuous3DEnvironment;
+import it.unibo.alchemist.model.implementations.layers.RasterLayer;
 import it.unibo.alchemist.model.implementations.layers.StepLayer;
+import it.unibo.alchemist.model.implementations.spatialindexes.UniformGridIndex;
 import it.unibo.alchemist.model.implementations.timedistributions.AnyRealDistribution;
 import it.unibo.alchemist.model.interfaces.Environment;
 import it.unibo.alchemist.model.interfaces.Incarnation;
@@ -81,6 +85,32 @@ public class TestYAMLLoader {
             .forEach(TestYAMLLoader::testNoVar);
     }
 
+    /**
+     * Test selecting the spatial index of the environment.
+     */
+    @Test
+    public void testGridIndex() {
+        final Environment<Object, ?> env = testNoVar("synthetic/gridindex.yml");
+        assertTrue(env instanceof AbstractEnvironment);
+        assertTrue(((AbstractEnvironment<Object, ?>) env).getSpatialIndex() instanceof UniformGridIndex);
+        assertEquals(100, env.getNodesNumber());
+        env.forEach(n -> env.getNeighborhood(n).forEach(neighbor ->
+            assertTrue(env.getDistanceBetweenNodes(n, neighbor) <= 1.5)));
+        env.forEach(n -> assertEquals(
+            env.getNodes().stream().filter(other -> other != n && env.getDistanceBetweenNodes(n, other) <= 1.5).count(),
+            env.getNeighborhood(n).size()));
+    }
+
+    /**
+     * Test selecting the octree, which implies a tridimensional environment.
+     */
+    @Test
+    public void testOctreeIndex() {
+        final Environment<Object, ?> env = testNoVar("synthetic/octreeindex.yml");
+        assertTrue(env instanceof Continuous3DEnvironment);
+        assertEquals(3, env.getDimensions());
+    }
+
     /**
      * Test loading layer classes.
      *
@@ -106,6 +136,27 @@ public class TestYAMLLoader {
         assertTrue(env.getLayer(b).get() instanceof StepLayer);
     }
 
+    /**
+     * Test caching a layer on a grid.
+     *
+     * @param <P> Used for internal consistency
+     */
+    @Test
+    public <P extends Position<P>> void testCachedLayer() {
+        @SuppressWarnings("unchecked")
+        final Environment<Object, P> env = (Environment<Object, P>) testNoVar("synthetic/cachedlayer.yml");
+        final Incarnation<?, ?> inc = SupportedIncarnations.get("sapere").orElseThrow(
+                () -> new IllegalStateException("No SAPERE incarnation available"));
+        final Layer<Object, P> layer = env.getLayer(inc.createMolecule("A"))
+                .orElseThrow(() -> new IllegalStateException("No layer A"));
+        assertTrue(layer instanceof RasterLayer);
+        // CHECKSTYLE: MagicNumber OFF
+        assertEquals(0.0, layer.getValue(env.makePosition(1, 1)));
+        assertEquals(100.0, layer.getValue(env.makePosition(5, 5)));
+        assertEquals(100.0, ((Number) layer.getValue(env.makePosition(20, 20))).doubleValue());
+        // CHECKSTYLE: MagicNumber ON
+    }
+
     /**
      * Test loading layer classes.
      */
@@ -19,12 +19,56 @@ import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 
 import it.unibo.alchemist.model.implementations.environments.OSMEnvironment;
+import it.unibo.alchemist.model.implementations.linkingrules.NoLinks;
+import it.unibo.alchemist.model.implementations.nodes.AbstractNode;
+import it.unibo.alchemist.model.implementations.positions.LatLongPosition;
+import it.unibo.alchemist.model.interfaces.GeoPosition;
+import it.unibo.alchemist.model.interfaces.Node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  *
  */
 public class TestOSMEnvironment {
 
+    private static final String TESTMAP = "maps/cesena.pbf";
+    private static final double RANGE = 1;
+    /*
+     * Rocca Malatestiana and Montefiore: latitude and longitude differ, so
+     * swapping them would misplace nodes in the spatial index
+     */
+    private static final GeoPosition START = new LatLongPosition(44.135_81, 12.240_3);
+    private static final GeoPosition END = new LatLongPosition(44.143_493, 12.260_879);
+
+    /**
+     * Moved nodes must be found at their new position, and only there.
+     *
+     * @throws IOException if the map can not be loaded
+     */
+    @Test
+    public void testMoveNode() throws IOException {
+        final OSMEnvironment<Object> env = new OSMEnvironment<>(TESTMAP, false, false);
+        env.setLinkingRule(new NoLinks<>());
+        final Node<Object> node = new AbstractNode<Object>(env) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected Object createT() {
+                return null;
+            }
+        };
+        env.addNode(node, START);
+        env.moveNodeToPosition(node, END);
+        assertEquals(END, env.getPosition(node));
+        assertTrue(env.getNodesWithinRange(END, RANGE).contains(node));
+        assertTrue(env.getNodesWithinRange(START, RANGE).isEmpty());
+        env.moveNodeToPosition(node, START);
+        assertEquals(START, env.getPosition(node));
+        assertTrue(env.getNodesWithinRange(START, RANGE).contains(node));
+        assertTrue(env.getNodesWithinRange(END, RANGE).isEmpty());
+    }
+
     /**
      * Tests for parallel creation of {@link OSMEnvironment}.
      * 
@@ -17,4 +17,6 @@ dependencies {
     implementation(Libs.commons_io)
     implementation(Libs.commons_lang3)
     implementation(Libs.guava)
+
+    testRuntimeOnly(project(":alchemist-incarnation-biochemistry"))
 }
@@ -14,7 +14,15 @@ import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import it.unibo.alchemist.boundary.gui.SingleRunGUI;
 import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.core.implementations.ArrayIndexedPriorityQueue;
+import it.unibo.alchemist.core.implementations.Checkpoints;
+import it.unibo.alchemist.core.implementations.CompactDependencyGraph;
 import it.unibo.alchemist.core.implementations.Engine;
+import it.unibo.alchemist.core.implementations.ParallelEngine;
+import it.unibo.alchemist.core.implementations.SynchronousEngine;
+import it.unibo.alchemist.core.implementations.JGraphTDependencyGraph;
+import it.unibo.alchemist.core.interfaces.DependencyGraph;
+import it.unibo.alchemist.core.interfaces.Scheduler;
 import it.unibo.alchemist.core.interfaces.Simulation;
 import it.unibo.alchemist.grid.cluster.Cluster;
 import it.unibo.alchemist.grid.cluster.ClusterImpl;
@@ -34,7 +42,10 @@ import it.unibo.alchemist.loader.variables.Variable;
 import it.unibo.alchemist.model.implementations.times.DoubleTime;
 import it.unibo.alchemist.model.interfaces.BenchmarkableEnvironment;
 import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Molecule;
+import it.unibo.alchemist.model.interfaces.Node;
 import it.unibo.alchemist.model.interfaces.Position2D;
+import it.unibo.alchemist.model.interfaces.Reaction;
 import it.unibo.alchemist.model.interfaces.Time;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.output.FileWriterWithEncoding;
@@ -45,6 +56,8 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.GraphicsEnvironment;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -56,6 +69,7 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -102,6 +116,11 @@ public final class AlchemistRunner<T, P extends Position2D<P>> {
     private final double samplingInterval;
     private final Optional<String> gridConfigFile;
     private final Optional<String> benchmarkOutputFile;
+    private final Optional<Supplier<? extends Scheduler<T>>> schedulerFactory;
+    private final Optional<Function<Environment<T, P>, ? extends DependencyGraph<T>>> dependencyGraphFactory;
+    private final int engineThreads;
+    private final boolean synchronousRounds;
+    private final Optional<Time> warmUpTime;
 
     private AlchemistRunner(final Loader source,
             final Time endTime,
@@ -114,7 +133,12 @@ public final class AlchemistRunner<T, P extends Position2D<P>> {
             final int closeOperation,
             final ImmutableCollection<Supplier<OutputMonitor<T, P>>> outputMonitors,
             final Optional<String> gridConfigFile,
-            final Optional<String> benchmarkOutputFile) {
+            final Optional<String> benchmarkOutputFile,
+            final Optional<Supplier<? extends Scheduler<T>>> schedulerFactory,
+            final Optional<Function<Environment<T, P>, ? extends DependencyGraph<T>>> dependencyGraphFactory,
+            final int engineThreads,
+            final boolean synchronousRounds,
+            final Optional<Time> warmUpTime) {
         this.effectsFile = effectsFile;
         this.endTime = endTime;
         this.endStep = endStep;
@@ -127,6 +151,11 @@ public final class AlchemistRunner<T, P extends Position2D<P>> {
         this.outputMonitors = outputMonitors;
         this.gridConfigFile = gridConfigFile;
         this.benchmarkOutputFile = benchmarkOutputFile;
+        this.schedulerFactory = schedulerFactory;
+        this.dependencyGraphFactory = dependencyGraphFactory;
+        this.engineThreads = engineThreads;
+        this.synchronousRounds = synchronousRounds;
+        this.warmUpTime = warmUpTime;
     }
 
     /**
@@ -155,6 +184,9 @@ public final class AlchemistRunner<T, P extends Position2D<P>> {
                 }
             }
             if (this.gridConfigFile.isPresent()) {
+                if (warmUpTime.isPresent()) {
+                    throw new IllegalStateException("Warm-up is not supported in distributed mode");
+                }
                 exception = launchRemote(variables);
             } else {
                 exception = launchLocal(variables);
@@ -288,12 +320,147 @@ public final class AlchemistRunner<T, P extends Position2D<P>> {
         }
     }
 
+    private Scheduler<T> makeScheduler() {
+        if (schedulerFactory.isPresent()) {
+            return schedulerFactory.get().get();
+        }
+        return loader.<T>getScheduler().orElseGet(ArrayIndexedPriorityQueue::new);
+    }
+
+    /*
+     * Multithreaded engines default to a graph supporting concurrent queries
+     */
+    private DependencyGraph<T> makeDependencyGraph(final Environment<T, P> env) {
+        if (dependencyGraphFactory.isPresent()) {
+            return dependencyGraphFactory.get().apply(env);
+        }
+        return engineThreads > 1 ? new CompactDependencyGraph<>(env) : new JGraphTDependencyGraph<>(env);
+    }
+
+    private Simulation<T, P> makeSimulation(final Environment<T, P> env, final Time finalTime) {
+        if (synchronousRounds) {
+            return new SynchronousEngine<>(env, endStep, finalTime, engineThreads, makeScheduler(),
+                    makeDependencyGraph(env), SynchronousEngine::isRoundBased);
+        }
+        if (engineThreads > 1) {
+            return new ParallelEngine<>(env, endStep, finalTime, engineThreads, engineThreads,
+                    this::makeScheduler, makeDependencyGraph(env));
+        }
+        return new Engine<>(env, endStep, finalTime, makeScheduler(), makeDependencyGraph(env));
+    }
+
+    /*
+     * Runs the common warm-up, and saves a checkpoint at its end
+     */
+    private byte[] warmUp(final Time duration) {
+        final Environment<T, P> env = loader.getDefault();
+        final Engine<T, P> sim = new Engine<>(env, endStep, duration, makeScheduler(), makeDependencyGraph(env));
+        sim.play();
+        sim.run();
+        sim.getError().ifPresent(e -> {
+            throw new IllegalStateException("The warm-up failed", e);
+        });
+        L.info("Warm-up completed at time {}, step {}", sim.getTime(), sim.getStep());
+        final ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        try {
+            Checkpoints.save(sim, checkpoint);
+        } catch (final IOException e) {
+            throw new IllegalStateException("The warm-up state could not be saved", e);
+        }
+        return checkpoint.toByteArray();
+    }
+
+    /*
+     * Node contents by id, as loaded
+     */
+    private static <T> Map<Integer, Map<Molecule, T>> initialContents(final Environment<T, ?> env) {
+        final Map<Integer, Map<Molecule, T>> result = new HashMap<>();
+        for (final Node<T> node : env) {
+            result.put(node.getId(), ImmutableMap.copyOf(node.getContents()));
+        }
+        return result;
+    }
+
+    /*
+     * Initial contents that the variables make differ from the default ones, by node id, with empty values for the
+     * molecules to remove. The environment loaded with the variables is only needed while they get computed, and can
+     * be collected before the checkpoint gets restored.
+     */
+    private Map<Integer, Map<Molecule, Optional<T>>> overrides(
+            final Map<Integer, Map<Molecule, T>> defaults,
+            final Map<String, ? extends Serializable> vars) {
+        final Map<Integer, Map<Molecule, Optional<T>>> result = new HashMap<>();
+        for (final Node<T> initial : loader.<T, P>getWith(vars)) {
+            final Map<Molecule, T> reference = defaults.getOrDefault(initial.getId(), ImmutableMap.of());
+            final Map<Molecule, Optional<T>> changes = new HashMap<>();
+            for (final Entry<Molecule, T> content : initial.getContents().entrySet()) {
+                if (!Objects.equals(reference.get(content.getKey()), content.getValue())) {
+                    changes.put(content.getKey(), Optional.of(content.getValue()));
+                }
+            }
+            for (final Molecule molecule : reference.keySet()) {
+                if (!initial.contains(molecule)) {
+                    changes.put(molecule, Optional.empty());
+                }
+            }
+            if (!changes.isEmpty()) {
+                result.put(initial.getId(), changes);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Restores a deep copy of the warm-up checkpoint, reseeds its generators from the variables, and applies the
+     * initial contents that the variables make differ from the default ones to the nodes that survived the warm-up
+     */
+    private Simulation<T, P> fork(
+            final byte[] checkpoint,
+            final Map<Integer, Map<Molecule, T>> defaults,
+            final Map<String, ? extends Serializable> vars) throws IOException {
+        final Map<Integer, Map<Molecule, Optional<T>>> overrides = overrides(defaults, vars);
+        final int[] seed = { vars.hashCode(), 0 };
+        final Engine<T, P> sim = Checkpoints.restore(new ByteArrayInputStream(checkpoint), endStep, endTime,
+                this::makeDependencyGraph, generator -> {
+                    generator.setSeed(seed);
+                    seed[1]++;
+                });
+        final Environment<T, P> env = sim.getEnvironment();
+        boolean changed = false;
+        for (final Node<T> node : env) {
+            for (final Entry<Molecule, Optional<T>> change : overrides.getOrDefault(node.getId(), ImmutableMap.of()).entrySet()) {
+                if (change.getValue().isPresent()) {
+                    node.setConcentration(change.getKey(), change.getValue().get());
+                    changed = true;
+                } else if (node.contains(change.getKey())) {
+                    node.removeConcentration(change.getKey());
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            for (final Node<T> node : env) {
+                for (final Reaction<T> reaction : node.getReactions()) {
+                    reaction.update(sim.getTime(), false, env);
+                    sim.getReactionManager().updateReaction(reaction);
+                }
+            }
+        }
+        return sim;
+    }
+
     private <R> Stream<Callable<R>> prepareSimulations(final Function<Simulation<T, P>, R> finalizer, final String... variables) {
+        if (warmUpTime.isPresent() && (engineThreads > 1 || synchronousRounds)) {
+            throw new IllegalStateException("Warm-up is only supported with a single engine thread and without synchronous rounds");
+        }
+        final Optional<byte[]> checkpoint = warmUpTime.map(this::warmUp);
+        final Optional<Map<Integer, Map<Molecule, T>>> defaults = checkpoint.map(it -> initialContents(loader.getDefault()));
         return getVariablesCartesianProduct(variables).stream()
             .map(ImmutableMap::copyOf)
             .map(vars -> () -> {
-                final Environment<T, P> env = loader.getWith(vars);
-                final Simulation<T, P> sim = new Engine<>(env, endStep, endTime);
+                final Simulation<T, P> sim = checkpoint.isPresent()
+                        ? fork(checkpoint.get(), defaults.get(), vars)
+                        : makeSimulation(loader.getWith(vars), endTime);
                 outputMonitors.stream().map(Supplier::get).forEach(sim::addOutputMonitor);
                 if (exportFileRoot.isPresent()) {
                     final String filename = exportFileRoot.get() + (vars.isEmpty() ? "" : "_" + vars.entrySet().stream()
@@ -338,6 +505,12 @@ public final class AlchemistRunner<T, P extends Position2D<P>> {
         private double samplingInt = 1;
         private Optional<String> gridConfigFile = Optional.empty();
         private Optional<String> benchmarkOutputFile = Optional.empty();
+        private Optional<Supplier<? extends Scheduler<T>>> schedulerFactory = Optional.empty();
+        private int engineThreads = 1;
+        private boolean synchronousRounds;
+        private Optional<Time> warmUpTime = Optional.empty();
+        private Optional<Function<Environment<T, P>, ? extends DependencyGraph<T>>> dependencyGraphFactory =
+                Optional.empty();
 
         /**
          *
@@ -364,7 +537,9 @@ public final class AlchemistRunner<T, P extends Position2D<P>> {
         public AlchemistRunner<T, P> build() {
             return new AlchemistRunner<>(this.loader, this.endTime, this.endStep, this.exportFileRoot, this.effectsFile,
                     this.samplingInt, this.parallelism, this.headless, this.closeOperation,
-                    ImmutableList.copyOf(outputMonitors), this.gridConfigFile, this.benchmarkOutputFile);
+                    ImmutableList.copyOf(outputMonitors), this.gridConfigFile, this.benchmarkOutputFile,
+                    this.schedulerFactory, this.dependencyGraphFactory, this.engineThreads,
+                    this.synchronousRounds, this.warmUpTime);
         }
 
         /**
@@ -458,6 +633,98 @@ public final class AlchemistRunner<T, P extends Position2D<P>> {
             return this;
         }
 
+        /**
+         * Sets the {@link DependencyGraph} used by the simulations. By
+         * default, {@link JGraphTDependencyGraph} is used with a single engine
+         * thread, and {@link CompactDependencyGraph} with more, as the
+         * {@link ParallelEngine} queries the graph concurrently.
+         *
+         * @param factory
+         *            a function building a new, empty {@link DependencyGraph}
+         *            for the environment of each simulation. With more than
+         *            one engine thread, the graphs must support concurrent
+         *            calls to {@link DependencyGraph#outboundDependencies}
+         * @return builder
+         */
+        public Builder<T, P> withDependencyGraph(
+                final Function<Environment<T, P>, ? extends DependencyGraph<T>> factory) {
+            this.dependencyGraphFactory = Optional.of(factory);
+            return this;
+        }
+
+        /**
+         * Sets how many threads each simulation uses to execute events. With
+         * more than one thread, simulations run on a {@link ParallelEngine},
+         * splitting each dimension of the environment in as many regions as
+         * threads. By default, simulations run sequentially on an {@link Engine}.
+         *
+         * @param threads
+         *            the number of threads per simulation
+         * @return builder
+         */
+        public Builder<T, P> withEngineThreads(final int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("At least a thread is required, got " + threads);
+            }
+            this.engineThreads = threads;
+            return this;
+        }
+
+        /**
+         * Makes simulations execute all the rounds of round-based reactions
+         * (e.g., aggregate programs) due at the same instant as a single
+         * batch, on a {@link SynchronousEngine} using as many threads as set
+         * by {@link #withEngineThreads(int)}.
+         *
+         * @param synchronous
+         *            true to run rounds in batches
+         * @return builder
+         */
+        public Builder<T, P> withSynchronousRounds(final boolean synchronous) {
+            this.synchronousRounds = synchronous;
+            return this;
+        }
+
+        /**
+         * Simulates a warm-up phase once, with all the variables at their
+         * default values, and saves its final state through
+         * {@link Checkpoints}. Each run restores its own deep copy of that
+         * state, sharing nothing with the other runs, and continues from the
+         * time the warm-up reached, with every random generator reseeded from
+         * the run variables. Variables reach runs through the initial node
+         * contents they determine: contents that differ from the default ones
+         * get set on the restored nodes still in the environment, matched by
+         * id. Everything else the variables affect (e.g., displacements or
+         * programs) keeps the warm-up values. Runs use an {@link Engine}, hence
+         * warm-up can not be combined with more engine threads or with
+         * synchronous rounds.
+         *
+         * @param t
+         *            the warm-up duration
+         * @return builder
+         */
+        public Builder<T, P> warmingUpFor(final Number t) {
+            final double dt = t.doubleValue();
+            if (!(dt > 0)) {
+                throw new IllegalArgumentException("The warm-up time (" + dt + ") must be positive");
+            }
+            this.warmUpTime = Optional.of(new DoubleTime(dt));
+            return this;
+        }
+
+        /**
+         * Overrides the {@link Scheduler} used by the simulations (including
+         * the one possibly specified in the simulation file).
+         *
+         * @param factory
+         *            a function building a new, empty {@link Scheduler} for each simulation
+         * @return builder
+         */
+        public Builder<T, P> withScheduler(final Supplier<? extends Scheduler<T>> factory) {
+            this.schedulerFactory = Optional.of(factory);
+            return this;
+        }
+
         /**
          *
          * @param uri
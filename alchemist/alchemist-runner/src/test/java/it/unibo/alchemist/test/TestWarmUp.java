@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2010-2019, Danilo Pianini and contributors listed in the main project's alchemist/build.gradle file.
+ *
+ * This file is part of Alchemist, and is distributed under the terms of the
+ * GNU General Public License, with a linking exception,
+ * as described in the file LICENSE in the Alchemist distribution's top directory.
+ */
+package it.unibo.alchemist.test;
+
+import com.google.common.collect.ImmutableSet;
+import it.unibo.alchemist.AlchemistRunner;
+import it.unibo.alchemist.boundary.interfaces.OutputMonitor;
+import it.unibo.alchemist.loader.YamlLoader;
+import it.unibo.alchemist.model.implementations.positions.Euclidean2DPosition;
+import it.unibo.alchemist.model.interfaces.Environment;
+import it.unibo.alchemist.model.interfaces.Node;
+import it.unibo.alchemist.model.interfaces.Reaction;
+import it.unibo.alchemist.model.interfaces.Time;
+import org.junit.jupiter.api.Test;
+import org.kaikikm.threadresloader.ResourceLoader;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests runs forked from a common warm-up by {@link AlchemistRunner}.
+ */
+public class TestWarmUp {
+
+    private static final double WARM_UP = 5;
+    private static final double END = 10;
+    private static final double INITIAL_B = 1000;
+    private static final Set<Double> AMOUNTS = ImmutableSet.of(10.0, 20.0, 30.0);
+
+    /**
+     * Every run must start from the state the warm-up reached, with the
+     * contents set by its own variables on the nodes that survived the
+     * warm-up.
+     */
+    @Test
+    public void testForks() {
+        final Map<Double, Double> forkedB = new ConcurrentHashMap<>();
+        final Set<Integer> forkedNodes = ConcurrentHashMap.newKeySet();
+        new AlchemistRunner.Builder<Double, Euclidean2DPosition>(new YamlLoader(ResourceLoader.getResourceAsStream("warmup.yml")))
+            .headless(true)
+            .warmingUpFor(WARM_UP)
+            .endingAtTime(END)
+            .addOutputMonitorSupplier(() -> new OutputMonitor<Double, Euclidean2DPosition>() {
+                private static final long serialVersionUID = 1L;
+                @Override
+                public void initialized(final Environment<Double, Euclidean2DPosition> env) {
+                    forkedNodes.add(env.getNodesNumber());
+                    final Node<Double> node = env.getNodes().get(0);
+                    forkedB.put(concentration(node, "A"), concentration(node, "B"));
+                }
+                @Override
+                public void stepDone(final Environment<Double, Euclidean2DPosition> env, final Reaction<Double> r, final Time time, final long step) {
+                }
+                @Override
+                public void finished(final Environment<Double, Euclidean2DPosition> env, final Time time, final long step) {
+                }
+            })
+            .build()
+            .launch("amount");
+        assertEquals(AMOUNTS, forkedB.keySet());
+        /*
+         * The node removed during the warm-up must be gone
+         */
+        assertEquals(ImmutableSet.of(1), forkedNodes);
+        /*
+         * All the runs share the warm-up state
+         */
+        assertEquals(1, forkedB.values().stream().distinct().count());
+        final double warmB = forkedB.values().iterator().next();
+        assertTrue(warmB < INITIAL_B && warmB >= 0, () -> "Unexpected concentration after warm-up: " + warmB);
+    }
+
+    private static double concentration(final Node<Double> node, final String name) {
+        return node.getContents().entrySet().stream()
+            .filter(it -> it.getKey().getName().equals(name))
+            .map(Map.Entry::getValue)
+            .findAny()
+            .orElse(0.0);
+    }
+
+}
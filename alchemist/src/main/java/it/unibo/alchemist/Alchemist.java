@@ -58,6 +58,7 @@ public final class Alchemist { // NOPMD MoreThanOneLogger
     private static final char NODE = 's';
     private static final char PARALLELISM = 'p';
     private static final char TIME = 't';
+    private static final char WARM_UP = 'w';
     private static final char YAML = 'y';
 
     static {
@@ -110,6 +111,7 @@ public final class Alchemist { // NOPMD MoreThanOneLogger
                 try {
                     ifPresent(cmd, INTERVAL, Double::parseDouble, simBuilder::samplingEvery);
                     ifPresent(cmd, TIME, Double::parseDouble, simBuilder::endingAtTime);
+                    ifPresent(cmd, WARM_UP, Double::parseDouble, simBuilder::warmingUpFor);
                     final String[] varsUnderRun = cmd.getOptionValues(VARIABLES);
                     if (cmd.hasOption(BATCH)) {
                         if (cmd.hasOption(PARALLELISM)) {